@@ -0,0 +1,34 @@
+package org.sagebionetworks.bridge;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Helpers for running work on executor threads with a request's context. The request context is held in a thread
+ * local, so tasks submitted to an executor from a request thread must be wrapped in order to see the caller's study,
+ * substudies and roles.
+ */
+public final class RequestContexts {
+
+    private RequestContexts() {
+    }
+
+    /** Wraps a task so that it runs with the request context of the calling thread. */
+    public static <T> Callable<T> withRequestContext(Callable<T> task) {
+        return withRequestContext(BridgeUtils.getRequestContext(), task);
+    }
+
+    /**
+     * Wraps a task so that it runs with the given request context. Streaming responses write from a thread other
+     * than the request thread, so they capture the context in the request thread and pass it in here.
+     */
+    public static <T> Callable<T> withRequestContext(RequestContext context, Callable<T> task) {
+        return () -> {
+            BridgeUtils.setRequestContext(context);
+            try {
+                return task.call();
+            } finally {
+                BridgeUtils.setRequestContext(null);
+            }
+        };
+    }
+}
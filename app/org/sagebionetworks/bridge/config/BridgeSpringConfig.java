@@ -6,8 +6,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Resource;
 
@@ -91,6 +94,9 @@ import org.sagebionetworks.bridge.hibernate.HibernateSubstudy;
 import org.sagebionetworks.bridge.hibernate.SubstudyPersistenceExceptionConverter;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.s3.S3Helper;
+import org.sagebionetworks.bridge.sms.FakeSmsProvider;
+import org.sagebionetworks.bridge.sms.SmsProvider;
+import org.sagebionetworks.bridge.sms.SnsSmsProvider;
 import org.sagebionetworks.bridge.upload.DecryptHandler;
 import org.sagebionetworks.bridge.upload.InitRecordHandler;
 import org.sagebionetworks.bridge.upload.S3DownloadHandler;
@@ -112,6 +118,12 @@ import org.sagebionetworks.bridge.upload.UploadValidationHandler;
 @Configuration
 public class BridgeSpringConfig {
     
+    /**
+     * Number of threads evaluating schedules for workers. Evaluation doesn't do any I/O, so there is one thread per
+     * core.
+     */
+    static final int SCHEDULE_EVALUATION_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    
     @Bean(name = "bridgeObjectMapper")
     public BridgeObjectMapper bridgeObjectMapper() {
         return BridgeObjectMapper.get();
@@ -265,6 +277,109 @@ public class BridgeSpringConfig {
         return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("async.worker.thread.count"));
     }
 
+    /**
+     * Executor fanning out the items of bulk API requests, with bulk.request.thread.count threads. This bounds the
+     * total concurrency of all bulk requests on a host, so a single large request can't exhaust the DynamoDB
+     * connection pool.
+     */
+    @Bean(name = "bulkRequestExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService bulkRequestExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("bulk.request.thread.count"));
+    }
+
+    /**
+     * Executor reading participant roster partitions for roster exports, with roster.export.thread.count threads.
+     * Each thread holds a database connection while reading a page, so this is kept well below the connection pool
+     * size.
+     */
+    @Bean(name = "rosterExportExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService rosterExportExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("roster.export.thread.count"));
+    }
+
+    /**
+     * Executor running roster exports, with roster.export.job.thread.count threads (the number of exports that run
+     * at once on a host). Each export's coordinator waits for the whole export, so exports have their own pool
+     * instead of holding async worker threads.
+     */
+    @Bean(name = "rosterExportJobExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService rosterExportJobExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("roster.export.job.thread.count"));
+    }
+
+    /**
+     * Executor for the concurrent reads of composite worker views, with worker.view.thread.count threads. This is
+     * separate from the bulk request executor, so dashboard reads aren't queued behind large bulk requests.
+     */
+    @Bean(name = "workerViewExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService workerViewExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("worker.view.thread.count"));
+    }
+
+    /**
+     * Executor notifying the participants of notification fan-outs, with notification.fan.out.thread.count threads.
+     * Fan-out threads wait on the SNS publish rate limiter, so they have their own executor instead of blocking bulk
+     * request threads.
+     */
+    @Bean(name = "notificationFanOutExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService notificationFanOutExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("notification.fan.out.thread.count"));
+    }
+
+    /**
+     * Executor running notification fan-outs, with notification.fan.out.job.thread.count threads (the number of
+     * fan-outs that run at once on a host). Each fan-out's coordinator pages through the whole segment, so fan-outs
+     * have their own pool instead of holding async worker threads.
+     */
+    @Bean(name = "notificationFanOutJobExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService notificationFanOutJobExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("notification.fan.out.job.thread.count"));
+    }
+
+    /**
+     * Executor sending bulk SMS messages, with sms.dispatch.thread.count threads. Sends are also limited by each
+     * study's SMS rate limiter. At most sms.dispatch.queue.capacity messages wait to be sent; bulk SMS requests
+     * beyond this are rejected instead of queued, so a burst of campaigns can't hold unbounded work in memory.
+     */
+    @Bean(name = "smsDispatchExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService smsDispatchExecutorService(BridgeConfig bridgeConfig) {
+        int threadCount = bridgeConfig.getPropertyAsInt("sms.dispatch.thread.count");
+        return new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(bridgeConfig.getPropertyAsInt("sms.dispatch.queue.capacity")));
+    }
+
+    /**
+     * Executor loading surveys into the view cache, with survey.cache.warming.thread.count threads. Warming at
+     * startup loads every published survey, so this is kept small to limit the load on DynamoDB while the server is
+     * also taking traffic.
+     */
+    @Bean(name = "surveyCacheWarmingExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService surveyCacheWarmingExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("survey.cache.warming.thread.count"));
+    }
+
+    @Bean(name = "scheduleEvaluationExecutorService")
+    public ExecutorService scheduleEvaluationExecutorService() {
+        return Executors.newFixedThreadPool(SCHEDULE_EVALUATION_THREAD_COUNT);
+    }
+
+    /** SNS, unless the sms.provider config property is "fake", for offline development. */
+    @Bean(name = "smsProvider")
+    public SmsProvider smsProvider() {
+        if ("fake".equals(bridgeConfig().getProperty("sms.provider"))) {
+            return new FakeSmsProvider();
+        }
+        return new SnsSmsProvider(snsClient());
+    }
+
     @Bean(name = "supportEmail")
     @Resource(name = "bridgeConfig")
     public String supportEmail(BridgeConfig bridgeConfig) {
@@ -0,0 +1,18 @@
+package org.sagebionetworks.bridge.dao;
+
+import org.joda.time.DateTime;
+
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
+
+/** Reads health data records a page at a time, so callers never hold more than one page of records in memory. */
+public interface HealthDataRecordPageDao {
+
+    /**
+     * Returns one page of the records for the given health code, created between the given times (inclusive), in
+     * createdOn order. Pass the nextPageOffsetKey of the returned list as the offsetKey to get the next page. The
+     * offset key is null on the first page.
+     */
+    ForwardCursorPagedResourceList<HealthDataRecord> getRecordsByHealthCodeCreatedOn(String healthCode,
+            DateTime createdOnStart, DateTime createdOnEnd, String offsetKey, int pageSize);
+}
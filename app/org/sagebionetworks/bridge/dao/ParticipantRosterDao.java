@@ -0,0 +1,97 @@
+package org.sagebionetworks.bridge.dao;
+
+import java.util.List;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+
+import org.sagebionetworks.bridge.models.AccountSummarySearch;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.accounts.AccountSummary;
+import org.sagebionetworks.bridge.models.accounts.ParticipantRosterEntry;
+import org.sagebionetworks.bridge.models.accounts.SegmentMember;
+
+/**
+ * Reads a study's participant roster using keyset pagination on (createdOn, id). Each page starts strictly after the
+ * last entry of the previous page, so reading page N costs the same as reading page 1, unlike offset paging, which
+ * has to scan and discard every skipped row.
+ */
+public interface ParticipantRosterDao {
+
+    /**
+     * Splits the roster into up to partitionCount ranges with about the same number of accounts, so they can be read
+     * in parallel. Returns the last entry of each range but the last, in (createdOn, id) order: range i runs from just
+     * after boundary i-1 (or the start of the roster) up to and including boundary i (or the end of the roster).
+     * Returns fewer boundaries if there are fewer accounts than partitions, and none if there's at most one.
+     *
+     * @param studyId
+     *         study to read
+     * @param substudyIds
+     *         only accounts in at least one of these substudies; may be null or empty for any substudy
+     * @param partitionCount
+     *         maximum number of ranges
+     */
+    List<ParticipantRosterEntry> getPartitionBoundaries(String studyId, Set<String> substudyIds, int partitionCount);
+
+    /**
+     * Gets the next page of roster entries for the study, ordered by (createdOn, id). This is read by background
+     * exports, where there's no request context, so the caller's substudies are passed in.
+     *
+     * @param studyId
+     *         study to read
+     * @param substudyIds
+     *         only accounts in at least one of these substudies; may be null or empty for any substudy
+     * @param afterCreatedOn
+     *         createdOn of the entry before the page, or null to start at the beginning of the roster
+     * @param afterId
+     *         ID of the entry before the page, or null to start at the beginning of the roster
+     * @param untilCreatedOn
+     *         createdOn of the last entry to read (inclusive), or null to read to the end of the roster
+     * @param untilId
+     *         ID of the last entry to read (inclusive), or null to read to the end of the roster
+     * @param pageSize
+     *         maximum number of entries to return
+     * @return entries, in (createdOn, id) order; fewer than pageSize entries means there are no more pages
+     */
+    List<ParticipantRosterEntry> getRosterPage(String studyId, Set<String> substudyIds, DateTime afterCreatedOn,
+            String afterId, DateTime untilCreatedOn, String untilId, int pageSize);
+
+    /**
+     * Searches the study's accounts, one page of account summaries at a time. This is the keyset-paged counterpart of
+     * the offset-paged account summary search, and takes the same filters (email, phone, language, data groups, and
+     * createdOn range) and page size, but ignores offsetBy: pass the nextPageOffsetKey of a page as the offsetKey to
+     * get the next page. The offset key is opaque to callers. If the caller is limited to some substudies, only
+     * accounts in at least one of them are returned, and only those substudies are listed in the summaries.
+     *
+     * @param studyId
+     *         study to search
+     * @param search
+     *         filters and page size
+     * @param offsetKey
+     *         nextPageOffsetKey of the previous page, or null for the first page
+     */
+    ForwardCursorPagedResourceList<AccountSummary> searchAccountSummaries(String studyId, AccountSummarySearch search,
+            String offsetKey);
+
+    /**
+     * Gets the next page of enabled accounts in a segment of the study, ordered by (createdOn, id).
+     *
+     * @param studyId
+     *         study to read
+     * @param allOfGroups
+     *         only accounts in all of these data groups; may be null or empty
+     * @param noneOfGroups
+     *         only accounts in none of these data groups; may be null or empty
+     * @param substudyIds
+     *         only accounts in at least one of these substudies; may be null or empty for any substudy
+     * @param afterCreatedOn
+     *         createdOn of the last member of the previous page, or null for the first page
+     * @param afterId
+     *         ID of the last member of the previous page, or null for the first page
+     * @param pageSize
+     *         maximum number of members to return
+     * @return members, in (createdOn, id) order; fewer than pageSize members means there are no more pages
+     */
+    List<SegmentMember> getSegmentPage(String studyId, Set<String> allOfGroups, Set<String> noneOfGroups,
+            Set<String> substudyIds, DateTime afterCreatedOn, String afterId, int pageSize);
+}
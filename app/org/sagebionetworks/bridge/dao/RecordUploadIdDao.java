@@ -0,0 +1,23 @@
+package org.sagebionetworks.bridge.dao;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves health data record IDs to the IDs of the uploads that produced them, without loading the full health data
+ * record.
+ */
+public interface RecordUploadIdDao {
+
+    /**
+     * Returns the upload ID for the given record, or null if the record doesn't exist (or has no upload, as is the
+     * case with records created through the synchronous health data submission API).
+     */
+    String getUploadId(String recordId);
+
+    /**
+     * Returns a map of record ID to upload ID for the given records. Records that don't exist or have no upload ID
+     * are omitted from the map.
+     */
+    Map<String, String> getUploadIds(Set<String> recordIds);
+}
@@ -0,0 +1,22 @@
+package org.sagebionetworks.bridge.dao;
+
+import java.util.List;
+
+import org.sagebionetworks.bridge.models.reports.ReportData;
+import org.sagebionetworks.bridge.models.reports.ReportIndex;
+
+/** Writes report data in batches, for workers that ingest many report records at once. */
+public interface ReportBatchDao {
+
+    /**
+     * Saves the report records. Records must already have their keys set. Saves overwrite, so if any record can't be
+     * written, the call throws and the whole batch can be retried.
+     */
+    void saveReportData(List<ReportData> reportDataList);
+
+    /**
+     * Adds each of the indices that doesn't exist yet. Existing indices are left unchanged, so their public flag and
+     * substudies are kept.
+     */
+    void addIndicesIfMissing(List<ReportIndex> indexList);
+}
@@ -0,0 +1,17 @@
+package org.sagebionetworks.bridge.dao;
+
+import java.util.List;
+
+import org.sagebionetworks.bridge.models.sms.SmsMessage;
+
+/** Logs sent SMS messages in batches, so bulk dispatch doesn't make one write per message. */
+public interface SmsMessageBatchDao {
+
+    /**
+     * Logs the messages. Messages that can't be written after the mapper's retries are logged as errors and
+     * dropped, since the messages themselves have already been sent.
+     *
+     * @return number of messages that could not be written
+     */
+    int logMessages(List<SmsMessage> messageList);
+}
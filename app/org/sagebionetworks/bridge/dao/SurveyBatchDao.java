@@ -0,0 +1,16 @@
+package org.sagebionetworks.bridge.dao;
+
+import java.util.List;
+
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+
+/** Reads many survey versions at once, for callers that need all the surveys referenced by a schedule or a run. */
+public interface SurveyBatchDao {
+
+    /**
+     * Gets the survey versions, with their elements. Versions that don't exist are left out, and the surveys are not
+     * returned in any particular order. Surveys of every study are returned, so callers must check the study.
+     */
+    List<Survey> getSurveys(List<GuidCreatedOnVersionHolder> keysList);
+}
@@ -0,0 +1,106 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Resource;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.DateTime;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.dao.HealthDataRecordPageDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.ResourceList;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
+
+/**
+ * Pages through the healthCode-createdOn-index of the health data record table. The offset key encodes the last
+ * evaluated key of the previous page (createdOn and record ID; the health code comes from the caller), so each page
+ * is a single DynamoDB query that starts where the previous one ended.
+ */
+@Component
+public class DynamoHealthDataRecordPageDao implements HealthDataRecordPageDao {
+    static final String INDEX_NAME = "healthCode-createdOn-index";
+    static final String CREATED_ON_ATTR = "createdOn";
+    static final String HEALTH_CODE_ATTR = "healthCode";
+    static final String ID_ATTR = "id";
+    static final String OFFSET_KEY_SEPARATOR = ":";
+
+    private DynamoDBMapper mapper;
+
+    @Resource(name = "healthDataDdbMapper")
+    final void setMapper(DynamoDBMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ForwardCursorPagedResourceList<HealthDataRecord> getRecordsByHealthCodeCreatedOn(String healthCode,
+            DateTime createdOnStart, DateTime createdOnEnd, String offsetKey, int pageSize) {
+        checkArgument(isNotBlank(healthCode));
+        checkNotNull(createdOnStart);
+        checkNotNull(createdOnEnd);
+        checkArgument(pageSize > 0);
+
+        DynamoHealthDataRecord hashKey = new DynamoHealthDataRecord();
+        hashKey.setHealthCode(healthCode);
+
+        Condition rangeKeyCondition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
+                .withAttributeValueList(new AttributeValue().withN(String.valueOf(createdOnStart.getMillis())),
+                        new AttributeValue().withN(String.valueOf(createdOnEnd.getMillis())));
+
+        DynamoDBQueryExpression<DynamoHealthDataRecord> query = new DynamoDBQueryExpression<DynamoHealthDataRecord>()
+                .withIndexName(INDEX_NAME).withHashKeyValues(hashKey).withConsistentRead(false)
+                .withRangeKeyCondition(CREATED_ON_ATTR, rangeKeyCondition).withLimit(pageSize);
+        if (offsetKey != null) {
+            query.withExclusiveStartKey(decodeOffsetKey(healthCode, offsetKey));
+        }
+
+        QueryResultPage<DynamoHealthDataRecord> resultPage = mapper.queryPage(DynamoHealthDataRecord.class, query);
+        List<HealthDataRecord> recordList = new ArrayList<>(resultPage.getResults());
+        String nextPageOffsetKey = encodeOffsetKey(resultPage.getLastEvaluatedKey());
+
+        return new ForwardCursorPagedResourceList<>(recordList, nextPageOffsetKey)
+                .withRequestParam(ResourceList.START_TIME, createdOnStart)
+                .withRequestParam(ResourceList.END_TIME, createdOnEnd)
+                .withRequestParam(ResourceList.OFFSET_KEY, offsetKey)
+                .withRequestParam(ResourceList.PAGE_SIZE, pageSize);
+    }
+
+    // Offset keys are "[createdOn]:[recordId]". Returns null if there are no more pages.
+    static String encodeOffsetKey(Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+        return lastEvaluatedKey.get(CREATED_ON_ATTR).getN() + OFFSET_KEY_SEPARATOR +
+                lastEvaluatedKey.get(ID_ATTR).getS();
+    }
+
+    static Map<String, AttributeValue> decodeOffsetKey(String healthCode, String offsetKey) {
+        String[] parts = offsetKey.split(OFFSET_KEY_SEPARATOR, 2);
+        if (parts.length != 2 || parts[1].isEmpty()) {
+            throw new BadRequestException("Invalid offsetKey: " + offsetKey);
+        }
+        try {
+            Long.parseLong(parts[0]);
+        } catch (NumberFormatException ex) {
+            throw new BadRequestException("Invalid offsetKey: " + offsetKey);
+        }
+        return ImmutableMap.of(HEALTH_CODE_ATTR, new AttributeValue(healthCode),
+                CREATED_ON_ATTR, new AttributeValue().withN(parts[0]),
+                ID_ATTR, new AttributeValue(parts[1]));
+    }
+}
@@ -0,0 +1,146 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import javax.annotation.Resource;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.dao.RecordUploadIdDao;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+/**
+ * Looks up upload IDs directly from the health data record table, using projection expressions so that only the
+ * record ID and upload ID attributes are read (and counted against read capacity), instead of the full record with
+ * its data and metadata.
+ */
+@Component
+public class DynamoRecordUploadIdDao implements RecordUploadIdDao {
+    static final String ID_ATTR = "id";
+    static final String UPLOAD_ID_ATTR = "uploadId";
+
+    /** DynamoDB limits batch gets to 100 keys per call. */
+    static final int BATCH_GET_SIZE = 100;
+
+    /** Bounds the retries of unprocessed keys, which DynamoDB returns when the table is being throttled. */
+    static final int MAX_UNPROCESSED_RETRIES = 5;
+
+    // Base delay before unprocessed keys are retried. Doubles on each retry, and each delay is jittered so that
+    // concurrent callers that were throttled together don't retry together. Package-scoped for unit tests.
+    long unprocessedKeysDelayMillis = 50;
+
+    private AmazonDynamoDB ddbClient;
+    private String tableName;
+
+    /** DynamoDB client, used for projection reads, which aren't supported by the mapper's load methods. */
+    @Resource(name = "dynamoDbClient")
+    final void setDdbClient(AmazonDynamoDB ddbClient) {
+        this.ddbClient = ddbClient;
+    }
+
+    /**
+     * The health data record mapper. This is only used to resolve the fully qualified table name, so that we are
+     * always reading from the same table as the health data service.
+     */
+    @Resource(name = "healthDataDdbMapper")
+    final void setMapper(DynamoDBMapper mapper) {
+        this.tableName = mapper.generateCreateTableRequest(DynamoHealthDataRecord.class).getTableName();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getUploadId(String recordId) {
+        checkArgument(isNotBlank(recordId));
+
+        GetItemRequest request = new GetItemRequest().withTableName(tableName)
+                .withKey(ImmutableMap.of(ID_ATTR, new AttributeValue(recordId)))
+                .withProjectionExpression(UPLOAD_ID_ATTR);
+        Map<String, AttributeValue> item = ddbClient.getItem(request).getItem();
+        return getUploadIdFromItem(item);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, String> getUploadIds(Set<String> recordIds) {
+        checkNotNull(recordIds);
+
+        Map<String, String> uploadIdsByRecordId = new HashMap<>();
+        for (List<String> recordIdBatch : Iterables.partition(recordIds, BATCH_GET_SIZE)) {
+            List<Map<String, AttributeValue>> keyList = recordIdBatch.stream()
+                    .<Map<String, AttributeValue>>map(recordId -> ImmutableMap.of(ID_ATTR,
+                            new AttributeValue(recordId)))
+                    .collect(Collectors.toList());
+            Map<String, KeysAndAttributes> requestItems = ImmutableMap.of(tableName, new KeysAndAttributes()
+                    .withKeys(keyList).withProjectionExpression(ID_ATTR + "," + UPLOAD_ID_ATTR));
+
+            int numRetries = 0;
+            while (requestItems != null && !requestItems.isEmpty()) {
+                if (numRetries > MAX_UNPROCESSED_RETRIES) {
+                    throw new BridgeServiceException("Could not resolve upload IDs, DynamoDB is throttling reads");
+                }
+                if (numRetries > 0) {
+                    backOff(numRetries - 1);
+                }
+                BatchGetItemResult result = ddbClient.batchGetItem(new BatchGetItemRequest()
+                        .withRequestItems(requestItems));
+                List<Map<String, AttributeValue>> itemList = result.getResponses().get(tableName);
+                if (itemList != null) {
+                    for (Map<String, AttributeValue> item : itemList) {
+                        String uploadId = getUploadIdFromItem(item);
+                        if (uploadId != null) {
+                            uploadIdsByRecordId.put(item.get(ID_ATTR).getS(), uploadId);
+                        }
+                    }
+                }
+                requestItems = result.getUnprocessedKeys();
+                numRetries++;
+            }
+        }
+        return uploadIdsByRecordId;
+    }
+
+    // Sleeps before the given retry of unprocessed keys, for a random time up to the base delay doubled for each
+    // earlier retry ("full jitter").
+    private void backOff(int retryCount) {
+        try {
+            Thread.sleep(getRetryDelayMillis(retryCount));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException("Interrupted while resolving upload IDs");
+        }
+    }
+
+    // Random delay before the given retry, between zero and the exponential backoff delay. Package-scoped for unit
+    // tests.
+    long getRetryDelayMillis(int retryCount) {
+        long maxDelayMillis = unprocessedKeysDelayMillis << retryCount;
+        return ThreadLocalRandom.current().nextLong(maxDelayMillis + 1);
+    }
+
+    // Helper method to extract the upload ID from a (possibly null or empty) projected item.
+    private static String getUploadIdFromItem(Map<String, AttributeValue> item) {
+        if (item == null) {
+            return null;
+        }
+        AttributeValue uploadIdValue = item.get(UPLOAD_ID_ATTR);
+        return uploadIdValue != null ? uploadIdValue.getS() : null;
+    }
+}
@@ -0,0 +1,85 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.dao.ReportBatchDao;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.reports.ReportData;
+import org.sagebionetworks.bridge.models.reports.ReportIndex;
+
+/**
+ * Writes report records with DynamoDB batch writes, which the mapper splits into requests of up to 25 items, so a
+ * batch of N records costs about N/25 requests instead of N. Indices are read once per index key rather than once
+ * per record.
+ */
+@Component
+public class DynamoReportBatchDao implements ReportBatchDao {
+    private static final Logger LOG = LoggerFactory.getLogger(DynamoReportBatchDao.class);
+
+    // Only creates the index if there isn't one, so a concurrent update to the index isn't overwritten.
+    static final DynamoDBSaveExpression DOES_NOT_EXIST_EXPRESSION = new DynamoDBSaveExpression()
+            .withExpectedEntry("identifier", new ExpectedAttributeValue(false));
+
+    private DynamoDBMapper reportDataMapper;
+    private DynamoDBMapper reportIndexMapper;
+
+    @Resource(name = "reportDataMapper")
+    final void setReportDataMapper(DynamoDBMapper reportDataMapper) {
+        this.reportDataMapper = reportDataMapper;
+    }
+
+    @Resource(name = "reportIndexMapper")
+    final void setReportIndexMapper(DynamoDBMapper reportIndexMapper) {
+        this.reportIndexMapper = reportIndexMapper;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void saveReportData(List<ReportData> reportDataList) {
+        checkNotNull(reportDataList);
+        if (reportDataList.isEmpty()) {
+            return;
+        }
+
+        int failedCount = 0;
+        List<FailedBatch> failedBatchList = reportDataMapper.batchSave(reportDataList);
+        for (FailedBatch failedBatch : failedBatchList) {
+            int batchSize = failedBatch.getUnprocessedItems().values().stream().mapToInt(List::size).sum();
+            failedCount += batchSize;
+            LOG.error("Could not save " + batchSize + " report records", failedBatch.getException());
+        }
+        if (failedCount > 0) {
+            throw new BridgeServiceException("Could not save " + failedCount + " of " + reportDataList.size() +
+                    " report records");
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addIndicesIfMissing(List<ReportIndex> indexList) {
+        checkNotNull(indexList);
+
+        for (ReportIndex index : indexList) {
+            if (reportIndexMapper.load(index) == null) {
+                try {
+                    reportIndexMapper.save(index, DOES_NOT_EXIST_EXPRESSION);
+                } catch (ConditionalCheckFailedException ex) {
+                    // Another request created the index after we looked for it. That's the index we wanted.
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.dao.SmsMessageBatchDao;
+import org.sagebionetworks.bridge.models.sms.SmsMessage;
+
+/**
+ * Writes SMS message logs with DynamoDB batch writes. The mapper splits the list into requests of up to 25 items and
+ * retries unprocessed items itself, so a batch of N messages costs about N/25 requests instead of N.
+ */
+@Component
+public class DynamoSmsMessageBatchDao implements SmsMessageBatchDao {
+    private static final Logger LOG = LoggerFactory.getLogger(DynamoSmsMessageBatchDao.class);
+
+    private DynamoDBMapper mapper;
+
+    @Resource(name = "smsMessageDdbMapper")
+    final void setMapper(DynamoDBMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int logMessages(List<SmsMessage> messageList) {
+        checkNotNull(messageList);
+        if (messageList.isEmpty()) {
+            return 0;
+        }
+
+        int failedCount = 0;
+        List<FailedBatch> failedBatchList = mapper.batchSave(messageList);
+        for (FailedBatch failedBatch : failedBatchList) {
+            int batchSize = failedBatch.getUnprocessedItems().values().stream().mapToInt(List::size).sum();
+            failedCount += batchSize;
+            LOG.error("Could not log " + batchSize + " SMS messages", failedBatch.getException());
+        }
+        return failedCount;
+    }
+}
@@ -0,0 +1,90 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Resource;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.common.collect.ImmutableList;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.dao.SurveyBatchDao;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.surveys.SurveyElement;
+import org.sagebionetworks.bridge.models.surveys.SurveyElementFactory;
+
+/**
+ * Reads surveys with a DynamoDB batch get, which the mapper splits into requests of up to 100 items, so N surveys
+ * cost about N/100 requests instead of N. Elements are keyed by survey and element order, and the order isn't known
+ * up front, so each survey's elements still take a query.
+ */
+@Component
+public class DynamoSurveyBatchDao implements SurveyBatchDao {
+    private DynamoDBMapper surveyMapper;
+    private DynamoDBMapper surveyElementMapper;
+
+    @Resource(name = "surveyMapper")
+    final void setSurveyMapper(DynamoDBMapper surveyMapper) {
+        this.surveyMapper = surveyMapper;
+    }
+
+    @Resource(name = "surveyElementMapper")
+    final void setSurveyElementMapper(DynamoDBMapper surveyElementMapper) {
+        this.surveyElementMapper = surveyElementMapper;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Survey> getSurveys(List<GuidCreatedOnVersionHolder> keysList) {
+        checkNotNull(keysList);
+        if (keysList.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        List<Object> hashKeyList = new ArrayList<>();
+        for (GuidCreatedOnVersionHolder keys : keysList) {
+            DynamoSurvey hashKey = new DynamoSurvey();
+            hashKey.setGuid(keys.getGuid());
+            hashKey.setCreatedOn(keys.getCreatedOn());
+            hashKeyList.add(hashKey);
+        }
+
+        List<Survey> surveyList = new ArrayList<>();
+        for (List<Object> tableResultList : surveyMapper.batchLoad(hashKeyList).values()) {
+            for (Object result : tableResultList) {
+                Survey survey = (Survey) result;
+                survey.setElements(getElements(survey));
+                surveyList.add(survey);
+            }
+        }
+        return surveyList;
+    }
+
+    private List<SurveyElement> getElements(Survey survey) {
+        DynamoSurveyElement template = new DynamoSurveyElement();
+        template.setSurveyKeyComponents(survey.getGuid(), survey.getCreatedOn());
+        DynamoDBQueryExpression<DynamoSurveyElement> query = new DynamoDBQueryExpression<DynamoSurveyElement>()
+                .withHashKeyValues(template);
+
+        List<SurveyElement> elementList = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            query.setExclusiveStartKey(lastEvaluatedKey);
+            QueryResultPage<DynamoSurveyElement> page = surveyElementMapper.queryPage(DynamoSurveyElement.class,
+                    query);
+            for (DynamoSurveyElement element : page.getResults()) {
+                elementList.add(SurveyElementFactory.fromDynamoEntity(element));
+            }
+            lastEvaluatedKey = page.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null);
+        return elementList;
+    }
+}
@@ -0,0 +1,79 @@
+package org.sagebionetworks.bridge.file;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Named files in a directory on the local disk, for generated exports that are too large to hold in memory. Files
+ * are only visible to the server that wrote them. Names are flat (no directories), so callers can't escape the store
+ * directory.
+ */
+@Component
+public class LocalFileStore {
+    static final String DEFAULT_DIR_NAME = "bridge-file-store";
+
+    private Path rootDir = Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_DIR_NAME);
+
+    /** Directory files are stored in. Defaults to a directory under java.io.tmpdir. */
+    public final void setRootDir(Path rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    /** Opens the named file for writing, replacing it if it already exists. The caller must close the stream. */
+    public OutputStream openForWrite(String name) throws IOException {
+        Path path = resolve(name);
+        Files.createDirectories(rootDir);
+        return Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    /** Opens the named file for appending, creating it if it doesn't exist. The caller must close the stream. */
+    public OutputStream openForAppend(String name) throws IOException {
+        Path path = resolve(name);
+        Files.createDirectories(rootDir);
+        return Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                StandardOpenOption.WRITE);
+    }
+
+    /** Opens the named file for reading. The caller must close the stream. */
+    public InputStream openForRead(String name) throws IOException {
+        return Files.newInputStream(resolve(name));
+    }
+
+    /** The named file, for APIs (like Play's file results) that need a File. */
+    public File getFile(String name) {
+        return resolve(name).toFile();
+    }
+
+    public boolean exists(String name) {
+        return Files.exists(resolve(name));
+    }
+
+    /** Deletes the named file, if it exists. */
+    public void delete(String name) {
+        try {
+            Files.deleteIfExists(resolve(name));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Path resolve(String name) {
+        checkArgument(isNotBlank(name), "name must be specified");
+        checkArgument(!name.contains("/") && !name.contains("\\") && !name.startsWith("."),
+                "name must be a plain file name");
+        return rootDir.resolve(name);
+    }
+}
@@ -0,0 +1,358 @@
+package org.sagebionetworks.bridge.hibernate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.dao.ParticipantRosterDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.models.AccountSummarySearch;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.ResourceList;
+import org.sagebionetworks.bridge.models.accounts.AccountStatus;
+import org.sagebionetworks.bridge.models.accounts.AccountSummary;
+import org.sagebionetworks.bridge.models.accounts.ParticipantRosterEntry;
+import org.sagebionetworks.bridge.models.accounts.Phone;
+import org.sagebionetworks.bridge.models.accounts.SegmentMember;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+
+/**
+ * Keyset-paged roster reads over the Accounts table. Only the roster columns are selected, so Hibernate doesn't load
+ * (or lazily fetch) attributes, consents, or substudies for each account; account summary pages read the substudies
+ * of the whole page in one more query. The (studyId, createdOn, id) ordering lets
+ * MySQL seek straight to the start of each page.
+ */
+@Component
+public class HibernateParticipantRosterDao implements ParticipantRosterDao {
+    static final String COUNT_QUERY_PREFIX = "SELECT COUNT(acct.id) FROM HibernateAccount AS acct "
+            + "WHERE acct.studyId = :studyId";
+    static final String PAGE_QUERY_PREFIX = "SELECT acct.id, acct.createdOn, acct.firstName, acct.lastName, "
+            + "acct.email, acct.phone, acct.externalId, acct.status FROM HibernateAccount AS acct "
+            + "WHERE acct.studyId = :studyId";
+    static final String EMAIL_FILTER_CLAUSE = " AND acct.email LIKE :emailFilter";
+    static final String PHONE_FILTER_CLAUSE = " AND acct.phone.number LIKE :phoneFilter";
+    static final String CREATED_ON_START_CLAUSE = " AND acct.createdOn >= :createdOnStart";
+    static final String CREATED_ON_END_INCLUSIVE_CLAUSE = " AND acct.createdOn <= :createdOnEnd";
+    // The keyset comparisons are spelled out as ORs rather than as (createdOn, id) row-value comparisons, which MySQL
+    // doesn't turn into an index range scan.
+    static final String KEYSET_CLAUSE = " AND (acct.createdOn > :afterCreatedOn OR "
+            + "(acct.createdOn = :afterCreatedOn AND acct.id > :afterId))";
+    static final String KEYSET_END_CLAUSE = " AND (acct.createdOn < :untilCreatedOn OR "
+            + "(acct.createdOn = :untilCreatedOn AND acct.id <= :untilId))";
+    static final String LANGUAGE_CLAUSE = " AND :language IN elements(acct.languages)";
+    static final String ORDER_BY_CLAUSE = " ORDER BY acct.createdOn, acct.id";
+    static final String ACCOUNT_SUBSTUDY_QUERY = "SELECT acctSubstudy.accountId, acctSubstudy.substudyId, "
+            + "acctSubstudy.externalId FROM HibernateAccountSubstudy AS acctSubstudy "
+            + "WHERE acctSubstudy.accountId IN (:accountIds)";
+    static final String SEGMENT_QUERY_PREFIX = "SELECT acct.id, acct.createdOn, acct.healthCode "
+            + "FROM HibernateAccount AS acct WHERE acct.studyId = :studyId AND acct.status != :disabledStatus";
+    static final String ALL_OF_GROUP_CLAUSE = " AND :allOfGroup%d IN elements(acct.dataGroups)";
+    static final String NONE_OF_GROUP_CLAUSE = " AND :noneOfGroup%d NOT IN elements(acct.dataGroups)";
+    static final String SUBSTUDY_CLAUSE = " AND EXISTS (SELECT 1 FROM HibernateAccountSubstudy AS acctSubstudy "
+            + "WHERE acctSubstudy.accountId = acct.id AND acctSubstudy.substudyId IN (:substudyIds))";
+    static final String OFFSET_KEY_SEPARATOR = ":";
+
+    private SessionFactory sessionFactory;
+
+    @Autowired
+    final void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<ParticipantRosterEntry> getPartitionBoundaries(String studyId, Set<String> substudyIds,
+            int partitionCount) {
+        checkArgument(isNotBlank(studyId));
+        checkArgument(partitionCount > 0);
+
+        StringBuilder filterHql = new StringBuilder();
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("studyId", studyId);
+        appendSubstudies(filterHql, parameters, substudyIds);
+
+        try (Session session = sessionFactory.openSession()) {
+            long count = createQuery(session, COUNT_QUERY_PREFIX + filterHql, Long.class, parameters)
+                    .uniqueResult();
+
+            // The boundary of partition i is its last entry, at row (i + 1) * count / partitionCount - 1. Each
+            // boundary is read by skipping the rows before it, which is cheaper than reading them, and is only done
+            // once per partition rather than once per page.
+            List<ParticipantRosterEntry> boundaryList = new ArrayList<>();
+            long previousBoundaryRow = -1;
+            for (int i = 0; i < partitionCount - 1; i++) {
+                long boundaryRow = (i + 1) * count / partitionCount - 1;
+                if (boundaryRow <= previousBoundaryRow) {
+                    // Fewer accounts than partitions.
+                    continue;
+                }
+                previousBoundaryRow = boundaryRow;
+
+                Query<Object[]> query = createQuery(session, PAGE_QUERY_PREFIX + filterHql + ORDER_BY_CLAUSE,
+                        Object[].class, parameters);
+                query.setReadOnly(true);
+                query.setFirstResult((int) boundaryRow);
+                query.setMaxResults(1);
+                List<Object[]> rowList = query.list();
+                if (!rowList.isEmpty()) {
+                    boundaryList.add(toEntry(rowList.get(0)));
+                }
+            }
+            return boundaryList;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<ParticipantRosterEntry> getRosterPage(String studyId, Set<String> substudyIds,
+            DateTime afterCreatedOn, String afterId, DateTime untilCreatedOn, String untilId, int pageSize) {
+        checkArgument(isNotBlank(studyId));
+        checkArgument((afterCreatedOn == null) == (afterId == null));
+        checkArgument((untilCreatedOn == null) == (untilId == null));
+        checkArgument(pageSize > 0);
+
+        StringBuilder hql = new StringBuilder(PAGE_QUERY_PREFIX);
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("studyId", studyId);
+        if (untilCreatedOn != null) {
+            hql.append(KEYSET_END_CLAUSE);
+            parameters.put("untilCreatedOn", untilCreatedOn);
+            parameters.put("untilId", untilId);
+        }
+        appendSubstudies(hql, parameters, substudyIds);
+        return queryPage(hql, parameters, afterCreatedOn, afterId, pageSize,
+                HibernateParticipantRosterDao::toEntry);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ForwardCursorPagedResourceList<AccountSummary> searchAccountSummaries(String studyId,
+            AccountSummarySearch search, String offsetKey) {
+        checkArgument(isNotBlank(studyId));
+        checkNotNull(search);
+        checkArgument(search.getPageSize() > 0);
+
+        StringBuilder hql = new StringBuilder(PAGE_QUERY_PREFIX);
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("studyId", studyId);
+        if (isNotBlank(search.getEmailFilter())) {
+            hql.append(EMAIL_FILTER_CLAUSE);
+            parameters.put("emailFilter", "%" + search.getEmailFilter() + "%");
+        }
+        if (isNotBlank(search.getPhoneFilter())) {
+            hql.append(PHONE_FILTER_CLAUSE);
+            parameters.put("phoneFilter", "%" + search.getPhoneFilter() + "%");
+        }
+        if (isNotBlank(search.getLanguage())) {
+            hql.append(LANGUAGE_CLAUSE);
+            parameters.put("language", search.getLanguage());
+        }
+        appendDataGroups(hql, parameters, search.getAllOfGroups(), search.getNoneOfGroups());
+        if (search.getStartTime() != null) {
+            hql.append(CREATED_ON_START_CLAUSE);
+            parameters.put("createdOnStart", search.getStartTime());
+        }
+        if (search.getEndTime() != null) {
+            hql.append(CREATED_ON_END_INCLUSIVE_CLAUSE);
+            parameters.put("createdOnEnd", search.getEndTime());
+        }
+        Set<String> callerSubstudies = BridgeUtils.getRequestContext().getCallerSubstudies();
+        appendSubstudies(hql, parameters, callerSubstudies);
+
+        DateTime afterCreatedOn = null;
+        String afterId = null;
+        if (offsetKey != null) {
+            String[] parts = decodeOffsetKey(offsetKey);
+            afterCreatedOn = new DateTime(Long.parseLong(parts[0]), DateTimeZone.UTC);
+            afterId = parts[1];
+        }
+
+        // Read one extra entry to tell whether there's another page, so the last page never has a next page key.
+        int pageSize = search.getPageSize();
+        List<Object[]> rowList = queryPage(hql, parameters, afterCreatedOn, afterId, pageSize + 1, row -> row);
+        String nextPageOffsetKey = null;
+        if (rowList.size() > pageSize) {
+            rowList = rowList.subList(0, pageSize);
+            Object[] lastRow = rowList.get(pageSize - 1);
+            nextPageOffsetKey = encodeOffsetKey((DateTime) lastRow[1], (String) lastRow[0]);
+        }
+
+        // The substudies (and substudy external IDs) of the whole page are read in one query, rather than one per
+        // account. Callers limited to some substudies only see those substudies, as in the account summary search.
+        Map<String, Set<String>> substudyIdsByAccount = new HashMap<>();
+        Map<String, Map<String, String>> externalIdsByAccount = new HashMap<>();
+        if (!rowList.isEmpty()) {
+            List<String> accountIds = rowList.stream().map(row -> (String) row[0]).collect(Collectors.toList());
+            Map<String, Object> substudyParameters = ImmutableMap.of("accountIds", accountIds);
+            try (Session session = sessionFactory.openSession()) {
+                Query<Object[]> query = createQuery(session, ACCOUNT_SUBSTUDY_QUERY, Object[].class,
+                        substudyParameters);
+                query.setReadOnly(true);
+                for (Object[] row : query.list()) {
+                    String accountId = (String) row[0];
+                    String substudyId = (String) row[1];
+                    if (callerSubstudies.isEmpty() || callerSubstudies.contains(substudyId)) {
+                        substudyIdsByAccount.computeIfAbsent(accountId, id -> new HashSet<>()).add(substudyId);
+                        if (row[2] != null) {
+                            externalIdsByAccount.computeIfAbsent(accountId, id -> new HashMap<>()).put(substudyId,
+                                    (String) row[2]);
+                        }
+                    }
+                }
+            }
+        }
+
+        StudyIdentifier studyIdentifier = new StudyIdentifierImpl(studyId);
+        List<AccountSummary> summaryList = new ArrayList<>();
+        for (Object[] row : rowList) {
+            String id = (String) row[0];
+            summaryList.add(new AccountSummary((String) row[2], (String) row[3], (String) row[4], (Phone) row[5],
+                    (String) row[6], externalIdsByAccount.getOrDefault(id, ImmutableMap.of()), id,
+                    (DateTime) row[1], (AccountStatus) row[7], studyIdentifier,
+                    substudyIdsByAccount.getOrDefault(id, ImmutableSet.of())));
+        }
+
+        return new ForwardCursorPagedResourceList<>(summaryList, nextPageOffsetKey)
+                .withRequestParam(ResourceList.EMAIL_FILTER, search.getEmailFilter())
+                .withRequestParam(ResourceList.PHONE_FILTER, search.getPhoneFilter())
+                .withRequestParam(ResourceList.LANGUAGE, search.getLanguage())
+                .withRequestParam(ResourceList.ALL_OF_GROUPS, search.getAllOfGroups())
+                .withRequestParam(ResourceList.NONE_OF_GROUPS, search.getNoneOfGroups())
+                .withRequestParam(ResourceList.START_TIME, search.getStartTime())
+                .withRequestParam(ResourceList.END_TIME, search.getEndTime())
+                .withRequestParam(ResourceList.OFFSET_KEY, offsetKey)
+                .withRequestParam(ResourceList.PAGE_SIZE, pageSize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<SegmentMember> getSegmentPage(String studyId, Set<String> allOfGroups, Set<String> noneOfGroups,
+            Set<String> substudyIds, DateTime afterCreatedOn, String afterId, int pageSize) {
+        checkArgument(isNotBlank(studyId));
+        checkArgument((afterCreatedOn == null) == (afterId == null));
+        checkArgument(pageSize > 0);
+
+        StringBuilder hql = new StringBuilder(SEGMENT_QUERY_PREFIX);
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("studyId", studyId);
+        parameters.put("disabledStatus", AccountStatus.DISABLED);
+        appendDataGroups(hql, parameters, allOfGroups, noneOfGroups);
+        appendSubstudies(hql, parameters, substudyIds);
+        return queryPage(hql, parameters, afterCreatedOn, afterId, pageSize,
+                row -> new SegmentMember((String) row[0], (DateTime) row[1], (String) row[2]));
+    }
+
+    private static void appendDataGroups(StringBuilder hql, Map<String, Object> parameters, Set<String> allOfGroups,
+            Set<String> noneOfGroups) {
+        if (allOfGroups != null) {
+            int i = 0;
+            for (String group : allOfGroups) {
+                hql.append(String.format(ALL_OF_GROUP_CLAUSE, i));
+                parameters.put("allOfGroup" + i++, group);
+            }
+        }
+        if (noneOfGroups != null) {
+            int i = 0;
+            for (String group : noneOfGroups) {
+                hql.append(String.format(NONE_OF_GROUP_CLAUSE, i));
+                parameters.put("noneOfGroup" + i++, group);
+            }
+        }
+    }
+
+    // Callers limited to some substudies only see accounts in at least one of them, as in the account summary search.
+    private static void appendSubstudies(StringBuilder hql, Map<String, Object> parameters, Set<String> substudyIds) {
+        if (substudyIds != null && !substudyIds.isEmpty()) {
+            hql.append(SUBSTUDY_CLAUSE);
+            parameters.put("substudyIds", substudyIds);
+        }
+    }
+
+    private <T> List<T> queryPage(StringBuilder hql, Map<String, Object> parameters, DateTime afterCreatedOn,
+            String afterId, int maxResults, Function<Object[], T> rowMapper) {
+        if (afterCreatedOn != null) {
+            hql.append(KEYSET_CLAUSE);
+            parameters.put("afterCreatedOn", afterCreatedOn);
+            parameters.put("afterId", afterId);
+        }
+        hql.append(ORDER_BY_CLAUSE);
+
+        try (Session session = sessionFactory.openSession()) {
+            Query<Object[]> query = createQuery(session, hql.toString(), Object[].class, parameters);
+            query.setReadOnly(true);
+            query.setMaxResults(maxResults);
+
+            List<T> resultList = new ArrayList<>();
+            for (Object[] row : query.list()) {
+                resultList.add(rowMapper.apply(row));
+            }
+            return resultList;
+        }
+    }
+
+    private static <T> Query<T> createQuery(Session session, String hql, Class<T> resultClass,
+            Map<String, Object> parameters) {
+        Query<T> query = session.createQuery(hql, resultClass);
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            if (parameter.getValue() instanceof Collection) {
+                query.setParameterList(parameter.getKey(), (Collection<?>) parameter.getValue());
+            } else {
+                query.setParameter(parameter.getKey(), parameter.getValue());
+            }
+        }
+        return query;
+    }
+
+    // Columns are in the order of PAGE_QUERY_PREFIX.
+    static ParticipantRosterEntry toEntry(Object[] row) {
+        checkNotNull(row);
+        Phone phone = (Phone) row[5];
+        return new ParticipantRosterEntry((String) row[0], (DateTime) row[1], (String) row[2], (String) row[3],
+                (String) row[4], phone == null ? null : phone.getNumber(), (String) row[6], (AccountStatus) row[7]);
+    }
+
+    // Offset keys are "[createdOn millis]:[account ID]", base64-encoded so callers treat them as opaque.
+    static String encodeOffsetKey(DateTime createdOn, String id) {
+        String key = createdOn.getMillis() + OFFSET_KEY_SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String[] decodeOffsetKey(String offsetKey) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(offsetKey), StandardCharsets.UTF_8);
+            String[] parts = key.split(OFFSET_KEY_SEPARATOR, 2);
+            if (parts.length == 2 && !parts[1].isEmpty()) {
+                Long.parseLong(parts[0]);
+                return parts;
+            }
+        } catch (IllegalArgumentException ex) {
+            // Includes NumberFormatException. Fall through.
+        }
+        throw new BadRequestException("Invalid offsetKey: " + offsetKey);
+    }
+}
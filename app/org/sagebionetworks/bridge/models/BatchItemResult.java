@@ -0,0 +1,83 @@
+package org.sagebionetworks.bridge.models;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+/**
+ * The outcome of one item of a batch API call. Batch APIs return one of these per submitted item, so that a failure
+ * of one item doesn't fail the whole batch. The key identifies the item in the request (for example, its index in
+ * the submitted list, or its ID). Successful items carry the status code 200 and (optionally) the resulting object,
+ * failed items carry the error status code and message.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class BatchItemResult<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchItemResult.class);
+
+    static final String INTERNAL_ERROR_MESSAGE = "Internal error";
+
+    private final String key;
+    private final int statusCode;
+    private final T item;
+    private final String message;
+
+    private BatchItemResult(String key, int statusCode, T item, String message) {
+        checkNotNull(key);
+        this.key = key;
+        this.statusCode = statusCode;
+        this.item = item;
+        this.message = message;
+    }
+
+    /** Result for an item that was processed successfully. */
+    public static <T> BatchItemResult<T> succeeded(String key, T item) {
+        return new BatchItemResult<>(key, 200, item, null);
+    }
+
+    /** Result for an item that failed with the given status code and error message. */
+    public static <T> BatchItemResult<T> failed(String key, int statusCode, String message) {
+        return new BatchItemResult<>(key, statusCode, null, message);
+    }
+
+    /**
+     * Result for an item that failed with the given exception. Bridge exceptions carry their own status code and
+     * message. Any other exception is unexpected, so it is logged here and reported as a 500 with a generic message,
+     * rather than returning its message (which can describe server internals) to the caller.
+     */
+    public static <T> BatchItemResult<T> failed(String key, Throwable throwable) {
+        if (throwable instanceof BridgeServiceException) {
+            return failed(key, ((BridgeServiceException) throwable).getStatusCode(), throwable.getMessage());
+        }
+        LOG.error("Error processing batch item " + key, throwable);
+        return failed(key, 500, INTERNAL_ERROR_MESSAGE);
+    }
+
+    /** Identifies the item in the batch request. */
+    public String getKey() {
+        return key;
+    }
+
+    /** HTTP status code that would have been returned had this item been submitted on its own. */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /** The object resulting from processing this item, if any. */
+    public T getItem() {
+        return item;
+    }
+
+    /** Error message, if the item failed. */
+    public String getMessage() {
+        return message;
+    }
+
+    /** True if the item was processed successfully. */
+    public boolean isSucceeded() {
+        return statusCode < 400;
+    }
+}
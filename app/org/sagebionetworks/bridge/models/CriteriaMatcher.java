@@ -0,0 +1,195 @@
+package org.sagebionetworks.bridge.models;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A list of items with criteria (app configs, subpopulations, the schedule criteria of a plan), compiled so a context
+ * can be matched against all of them quickly. The data groups and substudy IDs named by any of the criteria are
+ * numbered, each criteria's allOf and noneOf sets become bit sets over those numbers, and the context's data groups
+ * and substudies are turned into bit sets once per match. Checking the sets of one criteria is then a few word
+ * operations, however many IDs the criteria names. Data groups and substudies that none of the criteria name can't
+ * change whether a criteria matches, so they're ignored.
+ *
+ * A matcher matches the same way CriteriaUtils.matchCriteria does: the app version must be within the criteria's
+ * range for the client's operating system (if the client reports an app version), the context must have all of the
+ * allOf data groups and substudies and none of the noneOf ones, and if the criteria has a language, it must be the
+ * context's first (primary) language. An item without criteria matches every context. Matchers are immutable, and
+ * can be shared between threads as long as the criteria they were compiled from aren't changed.
+ */
+public final class CriteriaMatcher<T> {
+    private final List<T> items;
+    private final Map<String, Integer> dataGroupNumbers;
+    private final Map<String, Integer> substudyNumbers;
+    private final List<CompiledCriteria> compiledCriteria;
+
+    private CriteriaMatcher(List<T> items, Map<String, Integer> dataGroupNumbers,
+            Map<String, Integer> substudyNumbers, List<CompiledCriteria> compiledCriteria) {
+        this.items = items;
+        this.dataGroupNumbers = dataGroupNumbers;
+        this.substudyNumbers = substudyNumbers;
+        this.compiledCriteria = compiledCriteria;
+    }
+
+    /** Compiles the criteria of each of the items, in order. */
+    public static <T> CriteriaMatcher<T> compile(List<T> items, Function<? super T, Criteria> criteriaFunction) {
+        checkNotNull(items);
+        checkNotNull(criteriaFunction);
+
+        List<Criteria> criteriaList = new ArrayList<>(items.size());
+        Map<String, Integer> dataGroupNumbers = new HashMap<>();
+        Map<String, Integer> substudyNumbers = new HashMap<>();
+        for (T item : items) {
+            Criteria criteria = criteriaFunction.apply(item);
+            if (criteria != null) {
+                number(criteria.getAllOfGroups(), dataGroupNumbers);
+                number(criteria.getNoneOfGroups(), dataGroupNumbers);
+                number(criteria.getAllOfSubstudyIds(), substudyNumbers);
+                number(criteria.getNoneOfSubstudyIds(), substudyNumbers);
+            }
+            criteriaList.add(criteria);
+        }
+
+        List<CompiledCriteria> compiledCriteria = new ArrayList<>(criteriaList.size());
+        for (Criteria criteria : criteriaList) {
+            compiledCriteria.add(new CompiledCriteria(criteria, dataGroupNumbers, substudyNumbers));
+        }
+        return new CriteriaMatcher<>(ImmutableList.copyOf(items), dataGroupNumbers, substudyNumbers,
+                compiledCriteria);
+    }
+
+    /** The items whose criteria match the context, in order. */
+    public List<T> getMatches(CriteriaContext context) {
+        checkNotNull(context);
+
+        long[] dataGroupBits = toBits(context.getUserDataGroups(), dataGroupNumbers);
+        long[] substudyBits = toBits(context.getUserSubstudyIds(), substudyNumbers);
+        List<T> matches = new ArrayList<>();
+        for (int i = 0; i < compiledCriteria.size(); i++) {
+            if (compiledCriteria.get(i).matches(context, dataGroupBits, substudyBits)) {
+                matches.add(items.get(i));
+            }
+        }
+        return matches;
+    }
+
+    /** The first item whose criteria match the context, or null if none of them do. */
+    public T getFirstMatch(CriteriaContext context) {
+        checkNotNull(context);
+
+        long[] dataGroupBits = toBits(context.getUserDataGroups(), dataGroupNumbers);
+        long[] substudyBits = toBits(context.getUserSubstudyIds(), substudyNumbers);
+        for (int i = 0; i < compiledCriteria.size(); i++) {
+            if (compiledCriteria.get(i).matches(context, dataGroupBits, substudyBits)) {
+                return items.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static void number(Set<String> ids, Map<String, Integer> numbers) {
+        if (ids != null) {
+            for (String id : ids) {
+                numbers.putIfAbsent(id, numbers.size());
+            }
+        }
+    }
+
+    // IDs without a number aren't named by any of the criteria, and are left out.
+    private static long[] toBits(Set<String> ids, Map<String, Integer> numbers) {
+        long[] bits = new long[wordCount(numbers)];
+        if (ids != null) {
+            for (String id : ids) {
+                Integer number = numbers.get(id);
+                if (number != null) {
+                    bits[number >> 6] |= 1L << number;
+                }
+            }
+        }
+        return bits;
+    }
+
+    private static int wordCount(Map<String, Integer> numbers) {
+        return (numbers.size() + 63) >> 6;
+    }
+
+    private static boolean containsAll(long[] bits, long[] requiredBits) {
+        for (int i = 0; i < requiredBits.length; i++) {
+            if ((bits[i] & requiredBits[i]) != requiredBits[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean intersects(long[] bits, long[] excludedBits) {
+        for (int i = 0; i < excludedBits.length; i++) {
+            if ((bits[i] & excludedBits[i]) != 0L) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class CompiledCriteria {
+        private final boolean matchesAll;
+        private final long[] allOfGroups;
+        private final long[] noneOfGroups;
+        private final long[] allOfSubstudies;
+        private final long[] noneOfSubstudies;
+        private final Map<String, int[]> appVersionRanges;
+        private final String language;
+
+        CompiledCriteria(Criteria criteria, Map<String, Integer> dataGroupNumbers,
+                Map<String, Integer> substudyNumbers) {
+            this.matchesAll = (criteria == null);
+            this.allOfGroups = toBits(matchesAll ? null : criteria.getAllOfGroups(), dataGroupNumbers);
+            this.noneOfGroups = toBits(matchesAll ? null : criteria.getNoneOfGroups(), dataGroupNumbers);
+            this.allOfSubstudies = toBits(matchesAll ? null : criteria.getAllOfSubstudyIds(), substudyNumbers);
+            this.noneOfSubstudies = toBits(matchesAll ? null : criteria.getNoneOfSubstudyIds(), substudyNumbers);
+            this.appVersionRanges = new HashMap<>();
+            if (!matchesAll) {
+                for (String osName : criteria.getAppVersionOperatingSystems()) {
+                    Integer min = criteria.getMinAppVersion(osName);
+                    Integer max = criteria.getMaxAppVersion(osName);
+                    appVersionRanges.put(osName, new int[] { (min == null) ? Integer.MIN_VALUE : min,
+                            (max == null) ? Integer.MAX_VALUE : max });
+                }
+            }
+            this.language = matchesAll ? null : criteria.getLanguage();
+        }
+
+        boolean matches(CriteriaContext context, long[] dataGroupBits, long[] substudyBits) {
+            if (matchesAll) {
+                return true;
+            }
+            ClientInfo clientInfo = context.getClientInfo();
+            Integer appVersion = (clientInfo == null) ? null : clientInfo.getAppVersion();
+            if (appVersion != null) {
+                int[] range = appVersionRanges.get(clientInfo.getOsName());
+                if (range != null && (appVersion < range[0] || appVersion > range[1])) {
+                    return false;
+                }
+            }
+            if (!containsAll(dataGroupBits, allOfGroups) || intersects(dataGroupBits, noneOfGroups)) {
+                return false;
+            }
+            if (!containsAll(substudyBits, allOfSubstudies) || intersects(substudyBits, noneOfSubstudies)) {
+                return false;
+            }
+            if (language == null) {
+                return true;
+            }
+            List<String> languages = context.getLanguages();
+            return languages != null && !languages.isEmpty() && language.equals(languages.get(0));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.sagebionetworks.bridge.models.accounts;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.joda.time.DateTime;
+
+/**
+ * One row of a study's participant roster. This is a flat projection of the account table (no consents, substudies,
+ * or attributes), so that rosters can be read in large pages without loading full accounts. Rows are ordered by
+ * (createdOn, id), which is also the key used to page through the roster.
+ */
+public final class ParticipantRosterEntry {
+    private final String id;
+    private final DateTime createdOn;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final String phone;
+    private final String externalId;
+    private final AccountStatus status;
+
+    public ParticipantRosterEntry(String id, DateTime createdOn, String firstName, String lastName, String email,
+            String phone, String externalId, AccountStatus status) {
+        checkNotNull(id);
+        checkNotNull(createdOn);
+        this.id = id;
+        this.createdOn = createdOn;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.phone = phone;
+        this.externalId = externalId;
+        this.status = status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public DateTime getCreatedOn() {
+        return createdOn;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /** Phone number, in the format it was entered. */
+    public String getPhone() {
+        return phone;
+    }
+
+    public String getExternalId() {
+        return externalId;
+    }
+
+    public AccountStatus getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,183 @@
+package org.sagebionetworks.bridge.models.accounts;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+/**
+ * Status of an asynchronous participant roster export. The job is created in the PENDING state, moves to RUNNING
+ * when the export starts, and ends in SUCCEEDED (the file can be downloaded from the URL) or FAILED (the message says
+ * why). Jobs are kept in Redis, so any server can report on a job, not just the one running it.
+ */
+@JsonFilter("filter")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class RosterExportJob {
+    /** Writes the job for API callers, without the study and substudies it's scoped to. */
+    public static final ObjectWriter PUBLIC_JOB_WRITER = BridgeObjectMapper.get().writer(new SimpleFilterProvider()
+            .addFilter("filter", SimpleBeanPropertyFilter.serializeAllExcept("studyId", "substudyIds")));
+
+    /** Writes the job for the job store. The download URL is generated on each read, so it isn't stored. */
+    public static final ObjectWriter STORED_JOB_WRITER = BridgeObjectMapper.get().writer(new SimpleFilterProvider()
+            .addFilter("filter", SimpleBeanPropertyFilter.serializeAllExcept("url")));
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String mimeType;
+        private final String fileExtension;
+
+        Format(String mimeType, String fileExtension) {
+            this.mimeType = mimeType;
+            this.fileExtension = fileExtension;
+        }
+
+        /** MIME type of the uncompressed content. */
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public String getFileExtension() {
+            return fileExtension;
+        }
+    }
+
+    public enum Status {
+        PENDING,
+        RUNNING,
+        SUCCEEDED,
+        FAILED;
+
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED;
+        }
+    }
+
+    private final String jobId;
+    private final String studyId;
+    private final Set<String> substudyIds;
+    private final Format format;
+    private final DateTime submittedOn;
+    private Status status = Status.PENDING;
+    private long rowCount;
+    private DateTime finishedOn;
+    private String message;
+    private String url;
+
+    public RosterExportJob(String jobId, String studyId, Set<String> substudyIds, Format format,
+            DateTime submittedOn) {
+        checkNotNull(jobId);
+        checkNotNull(studyId);
+        checkNotNull(substudyIds);
+        checkNotNull(format);
+        checkNotNull(submittedOn);
+        this.jobId = jobId;
+        this.studyId = studyId;
+        this.substudyIds = ImmutableSet.copyOf(substudyIds);
+        this.format = format;
+        this.submittedOn = submittedOn;
+    }
+
+    @JsonCreator
+    private RosterExportJob(@JsonProperty("jobId") String jobId, @JsonProperty("studyId") String studyId,
+            @JsonProperty("substudyIds") Set<String> substudyIds, @JsonProperty("format") Format format,
+            @JsonProperty("submittedOn") DateTime submittedOn, @JsonProperty("status") Status status,
+            @JsonProperty("rowCount") long rowCount, @JsonProperty("finishedOn") DateTime finishedOn,
+            @JsonProperty("message") String message) {
+        this(jobId, studyId, substudyIds, format, submittedOn);
+        this.status = checkNotNull(status);
+        this.rowCount = rowCount;
+        this.finishedOn = finishedOn;
+        this.message = message;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /** Study the roster belongs to. Only used to check access, so not returned to callers. */
+    public String getStudyId() {
+        return studyId;
+    }
+
+    /**
+     * Substudies of the caller who started the job. If there are any, only accounts in at least one of them are
+     * exported. Not returned to callers.
+     */
+    public Set<String> getSubstudyIds() {
+        return substudyIds;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public DateTime getSubmittedOn() {
+        return submittedOn;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /** Number of participants written so far. */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public DateTime getFinishedOn() {
+        return finishedOn;
+    }
+
+    /** Error message, if the job failed. */
+    public String getMessage() {
+        return message;
+    }
+
+    /** Presigned URL to download the export file from, if the job has succeeded. The URL expires. */
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    /** Name of the export file, both in S3 and in the local file store while the export is being written. */
+    @JsonIgnore
+    public String getFileName() {
+        return jobId + "." + format.getFileExtension() + ".gz";
+    }
+
+    public void markRunning() {
+        this.status = Status.RUNNING;
+    }
+
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public void markSucceeded(DateTime finishedOn) {
+        this.finishedOn = finishedOn;
+        this.status = Status.SUCCEEDED;
+    }
+
+    public void markFailed(DateTime finishedOn, String message) {
+        this.finishedOn = finishedOn;
+        this.message = message;
+        this.status = Status.FAILED;
+    }
+}
@@ -0,0 +1,36 @@
+package org.sagebionetworks.bridge.models.accounts;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.joda.time.DateTime;
+
+/**
+ * An account that matches a segment of a study (data groups and substudies), as read for server-side fan-out jobs.
+ * Holds the health code, so it is never returned to callers. Members are ordered by (createdOn, id), which is also
+ * the key used to page through a segment.
+ */
+public final class SegmentMember {
+    private final String id;
+    private final DateTime createdOn;
+    private final String healthCode;
+
+    public SegmentMember(String id, DateTime createdOn, String healthCode) {
+        checkNotNull(id);
+        checkNotNull(createdOn);
+        this.id = id;
+        this.createdOn = createdOn;
+        this.healthCode = healthCode;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public DateTime getCreatedOn() {
+        return createdOn;
+    }
+
+    public String getHealthCode() {
+        return healthCode;
+    }
+}
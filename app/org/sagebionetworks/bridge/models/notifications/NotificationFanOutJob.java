@@ -0,0 +1,259 @@
+package org.sagebionetworks.bridge.models.notifications;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+/**
+ * Status and progress of a notification fan-out to a segment of a study. The job is created in the PENDING state,
+ * moves to RUNNING when a worker thread picks it up, and ends in SUCCEEDED or FAILED (the message says why). A
+ * failed job can be resumed. Progress is recorded per participant: the job keeps the position of the last
+ * participant up to which every participant was notified, and the IDs of the participants after it that were also
+ * notified, so a resumed job skips all of them. Only a participant whose notification was being sent when the job
+ * failed (or whose progress wasn't saved yet) may be notified twice.
+ *
+ * Jobs are kept in Redis, so any server can report on or resume a job. Within the server running the job, counts
+ * and status are written by fan-out threads, so they are atomic or volatile.
+ * Publish counts are kept per platform (the registration's OS name), because delivery problems are usually specific
+ * to one platform's push configuration.
+ */
+@JsonFilter("filter")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class NotificationFanOutJob {
+    /** Writes the job for API callers, without its scope, request, or resume position. */
+    public static final ObjectWriter PUBLIC_JOB_WRITER = BridgeObjectMapper.get().writer(new SimpleFilterProvider()
+            .addFilter("filter", SimpleBeanPropertyFilter.serializeAllExcept("studyId", "substudyIds", "request",
+                    "afterCreatedOn", "afterId", "notifiedIds")));
+
+    /** Writes the whole job for the job store. */
+    public static final ObjectWriter STORED_JOB_WRITER = BridgeObjectMapper.get().writer(new SimpleFilterProvider()
+            .addFilter("filter", SimpleBeanPropertyFilter.serializeAllExcept()));
+
+    public enum Status {
+        PENDING,
+        RUNNING,
+        SUCCEEDED,
+        FAILED;
+
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED;
+        }
+    }
+
+    /** Publish counts for one platform. */
+    public static final class PlatformCounts {
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        PlatformCounts() {
+        }
+
+        @JsonCreator
+        private PlatformCounts(@JsonProperty("succeeded") long succeeded, @JsonProperty("failed") long failed) {
+            this.succeeded.set(succeeded);
+            this.failed.set(failed);
+        }
+
+        public long getSucceeded() {
+            return succeeded.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+    }
+
+    /** Platform key for registrations that don't name their OS. */
+    public static final String UNKNOWN_PLATFORM = "unknown";
+
+    private final String jobId;
+    private final String studyId;
+    private final Set<String> substudyIds;
+    private final NotificationFanOutRequest request;
+    private final DateTime submittedOn;
+    private final AtomicLong participantCount = new AtomicLong();
+    private final AtomicLong unregisteredParticipantCount = new AtomicLong();
+    private final Map<String, PlatformCounts> platformCounts = new ConcurrentHashMap<>();
+    private final Set<String> notifiedIds = ConcurrentHashMap.newKeySet();
+    private volatile Status status = Status.PENDING;
+    private volatile DateTime finishedOn;
+    private volatile String message;
+    private volatile DateTime afterCreatedOn;
+    private volatile String afterId;
+
+    public NotificationFanOutJob(String jobId, String studyId, Set<String> substudyIds,
+            NotificationFanOutRequest request, DateTime submittedOn) {
+        checkNotNull(jobId);
+        checkNotNull(studyId);
+        checkNotNull(substudyIds);
+        checkNotNull(request);
+        checkNotNull(submittedOn);
+        this.jobId = jobId;
+        this.studyId = studyId;
+        this.substudyIds = ImmutableSet.copyOf(substudyIds);
+        this.request = request;
+        this.submittedOn = submittedOn;
+    }
+
+    @JsonCreator
+    private NotificationFanOutJob(@JsonProperty("jobId") String jobId, @JsonProperty("studyId") String studyId,
+            @JsonProperty("substudyIds") Set<String> substudyIds,
+            @JsonProperty("request") NotificationFanOutRequest request,
+            @JsonProperty("submittedOn") DateTime submittedOn, @JsonProperty("status") Status status,
+            @JsonProperty("participantCount") long participantCount,
+            @JsonProperty("unregisteredParticipantCount") long unregisteredParticipantCount,
+            @JsonProperty("platformCounts") Map<String, PlatformCounts> platformCounts,
+            @JsonProperty("notifiedIds") Set<String> notifiedIds, @JsonProperty("finishedOn") DateTime finishedOn,
+            @JsonProperty("message") String message, @JsonProperty("afterCreatedOn") DateTime afterCreatedOn,
+            @JsonProperty("afterId") String afterId) {
+        this(jobId, studyId, substudyIds, request, submittedOn);
+        this.status = checkNotNull(status);
+        this.participantCount.set(participantCount);
+        this.unregisteredParticipantCount.set(unregisteredParticipantCount);
+        if (platformCounts != null) {
+            this.platformCounts.putAll(platformCounts);
+        }
+        if (notifiedIds != null) {
+            this.notifiedIds.addAll(notifiedIds);
+        }
+        this.finishedOn = finishedOn;
+        this.message = message;
+        this.afterCreatedOn = afterCreatedOn;
+        this.afterId = afterId;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /** Study of the segment. Only used to check access, so not returned to callers. */
+    public String getStudyId() {
+        return studyId;
+    }
+
+    /**
+     * Substudies of the segment: the request's substudies, limited to the substudies of the caller who started the
+     * job. If there are any, only accounts in at least one of them are notified. Not returned to callers.
+     */
+    public Set<String> getSubstudyIds() {
+        return substudyIds;
+    }
+
+    /** The notification and segment. Kept so the job can be resumed; not returned to callers. */
+    public NotificationFanOutRequest getRequest() {
+        return request;
+    }
+
+    public DateTime getSubmittedOn() {
+        return submittedOn;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /** Number of participants of the segment processed so far. */
+    public long getParticipantCount() {
+        return participantCount.get();
+    }
+
+    /** Number of processed participants that had no push notification registrations. */
+    public long getUnregisteredParticipantCount() {
+        return unregisteredParticipantCount.get();
+    }
+
+    /** Publish counts, keyed by platform. */
+    public Map<String, PlatformCounts> getPlatformCounts() {
+        return platformCounts;
+    }
+
+    public DateTime getFinishedOn() {
+        return finishedOn;
+    }
+
+    /** Error message, if the job failed. */
+    public String getMessage() {
+        return message;
+    }
+
+    /** createdOn of the last participant up to which every participant was notified, or null if there is none. */
+    public DateTime getAfterCreatedOn() {
+        return afterCreatedOn;
+    }
+
+    /** ID of the last participant up to which every participant was notified, or null if there is none. */
+    public String getAfterId() {
+        return afterId;
+    }
+
+    /** IDs of the participants after the afterId participant that were also notified. */
+    public Set<String> getNotifiedIds() {
+        return notifiedIds;
+    }
+
+    /** True if the participant, who comes after the afterId participant, has already been notified. */
+    public boolean isNotified(String id) {
+        return notifiedIds.contains(id);
+    }
+
+    public void incrementParticipantCount() {
+        participantCount.incrementAndGet();
+    }
+
+    public void incrementUnregisteredParticipantCount() {
+        unregisteredParticipantCount.incrementAndGet();
+    }
+
+    public void recordPublish(String platform, boolean succeeded) {
+        PlatformCounts counts = platformCounts.computeIfAbsent(platform == null ? UNKNOWN_PLATFORM : platform,
+                key -> new PlatformCounts());
+        (succeeded ? counts.succeeded : counts.failed).incrementAndGet();
+    }
+
+    /** Records that this participant has been processed. */
+    public void markNotified(String id) {
+        notifiedIds.add(id);
+    }
+
+    /**
+     * Records that every participant up to and including this one has been processed. Must not be called while
+     * participants are being processed.
+     */
+    public void markNotifiedThrough(DateTime afterCreatedOn, String afterId) {
+        this.afterCreatedOn = afterCreatedOn;
+        this.afterId = afterId;
+        notifiedIds.clear();
+    }
+
+    public void markRunning() {
+        this.finishedOn = null;
+        this.message = null;
+        this.status = Status.RUNNING;
+    }
+
+    public void markSucceeded(DateTime finishedOn) {
+        this.finishedOn = finishedOn;
+        this.status = Status.SUCCEEDED;
+    }
+
+    public void markFailed(DateTime finishedOn, String message) {
+        this.finishedOn = finishedOn;
+        this.message = message;
+        this.status = Status.FAILED;
+    }
+}
@@ -0,0 +1,46 @@
+package org.sagebionetworks.bridge.models.notifications;
+
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Request to send a push notification to every participant in a segment of a study. The segment is the set of
+ * enabled accounts that are in all of the allOfGroups data groups, none of the noneOfGroups data groups and (if
+ * substudyIds is not empty) at least one of the substudies. An empty segment definition targets the whole study.
+ */
+public final class NotificationFanOutRequest {
+    private final NotificationMessage message;
+    private final Set<String> allOfGroups;
+    private final Set<String> noneOfGroups;
+    private final Set<String> substudyIds;
+
+    @JsonCreator
+    public NotificationFanOutRequest(@JsonProperty("message") NotificationMessage message,
+            @JsonProperty("allOfGroups") Set<String> allOfGroups,
+            @JsonProperty("noneOfGroups") Set<String> noneOfGroups,
+            @JsonProperty("substudyIds") Set<String> substudyIds) {
+        this.message = message;
+        this.allOfGroups = (allOfGroups == null) ? ImmutableSet.of() : ImmutableSet.copyOf(allOfGroups);
+        this.noneOfGroups = (noneOfGroups == null) ? ImmutableSet.of() : ImmutableSet.copyOf(noneOfGroups);
+        this.substudyIds = (substudyIds == null) ? ImmutableSet.of() : ImmutableSet.copyOf(substudyIds);
+    }
+
+    public NotificationMessage getMessage() {
+        return message;
+    }
+
+    public Set<String> getAllOfGroups() {
+        return allOfGroups;
+    }
+
+    public Set<String> getNoneOfGroups() {
+        return noneOfGroups;
+    }
+
+    public Set<String> getSubstudyIds() {
+        return substudyIds;
+    }
+}
@@ -0,0 +1,31 @@
+package org.sagebionetworks.bridge.models.reports;
+
+import org.joda.time.DateTime;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A page of a public study report as it is held in the view cache. The time the page was read from the database is
+ * kept with it, so cached responses can carry a Last-Modified header that doesn't change until the cache entry does.
+ */
+public final class PublicReportView {
+    private final DateTime cachedOn;
+    private final JsonNode results;
+
+    @JsonCreator
+    public PublicReportView(@JsonProperty("cachedOn") DateTime cachedOn, @JsonProperty("results") JsonNode results) {
+        this.cachedOn = cachedOn;
+        this.results = results;
+    }
+
+    public DateTime getCachedOn() {
+        return cachedOn;
+    }
+
+    /** The report page, as it is returned to the caller. */
+    public JsonNode getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,55 @@
+package org.sagebionetworks.bridge.models.schedules;
+
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.LocalDate;
+
+/**
+ * Participants who share a schedule signature (data groups, substudies, time zone and enrollment date), and the
+ * activities their schedules generate. Each of the users gets all of the activities.
+ */
+public final class ScheduleEvaluationGroup {
+    private final Set<String> dataGroups;
+    private final Set<String> substudyIds;
+    private final String timeZone;
+    private final LocalDate enrollmentDate;
+    private final List<String> userIds;
+    private final List<ScheduledActivity> activities;
+
+    public ScheduleEvaluationGroup(Set<String> dataGroups, Set<String> substudyIds, String timeZone,
+            LocalDate enrollmentDate, List<String> userIds, List<ScheduledActivity> activities) {
+        this.dataGroups = ImmutableSet.copyOf(dataGroups);
+        this.substudyIds = ImmutableSet.copyOf(substudyIds);
+        this.timeZone = timeZone;
+        this.enrollmentDate = enrollmentDate;
+        this.userIds = ImmutableList.copyOf(userIds);
+        this.activities = ImmutableList.copyOf(activities);
+    }
+
+    public Set<String> getDataGroups() {
+        return dataGroups;
+    }
+
+    public Set<String> getSubstudyIds() {
+        return substudyIds;
+    }
+
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    public LocalDate getEnrollmentDate() {
+        return enrollmentDate;
+    }
+
+    public List<String> getUserIds() {
+        return userIds;
+    }
+
+    public List<ScheduledActivity> getActivities() {
+        return activities;
+    }
+}
@@ -0,0 +1,59 @@
+package org.sagebionetworks.bridge.models.schedules;
+
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+
+/**
+ * A participant whose schedule is evaluated by a worker. The time zone is the participant's initial time zone, as a
+ * zone ID or an offset like "-07:00". The health code is only needed when the study has A/B test schedule plans,
+ * which assign participants to schedules by health code.
+ */
+public final class ScheduleEvaluationParticipant {
+    private final String userId;
+    private final String healthCode;
+    private final Set<String> dataGroups;
+    private final Set<String> substudyIds;
+    private final String timeZone;
+    private final DateTime enrolledOn;
+
+    @JsonCreator
+    public ScheduleEvaluationParticipant(@JsonProperty("userId") String userId,
+            @JsonProperty("healthCode") String healthCode, @JsonProperty("dataGroups") Set<String> dataGroups,
+            @JsonProperty("substudyIds") Set<String> substudyIds, @JsonProperty("timeZone") String timeZone,
+            @JsonProperty("enrolledOn") DateTime enrolledOn) {
+        this.userId = userId;
+        this.healthCode = healthCode;
+        this.dataGroups = (dataGroups == null) ? ImmutableSet.of() : ImmutableSet.copyOf(dataGroups);
+        this.substudyIds = (substudyIds == null) ? ImmutableSet.of() : ImmutableSet.copyOf(substudyIds);
+        this.timeZone = timeZone;
+        this.enrolledOn = enrolledOn;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getHealthCode() {
+        return healthCode;
+    }
+
+    public Set<String> getDataGroups() {
+        return dataGroups;
+    }
+
+    public Set<String> getSubstudyIds() {
+        return substudyIds;
+    }
+
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    public DateTime getEnrolledOn() {
+        return enrolledOn;
+    }
+}
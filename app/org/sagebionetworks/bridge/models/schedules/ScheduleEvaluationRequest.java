@@ -0,0 +1,36 @@
+package org.sagebionetworks.bridge.models.schedules;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+
+/** Request to evaluate the schedules of many participants of a study, for activities from startsOn to endsOn. */
+public final class ScheduleEvaluationRequest {
+    private final DateTime startsOn;
+    private final DateTime endsOn;
+    private final List<ScheduleEvaluationParticipant> participants;
+
+    @JsonCreator
+    public ScheduleEvaluationRequest(@JsonProperty("startsOn") DateTime startsOn,
+            @JsonProperty("endsOn") DateTime endsOn,
+            @JsonProperty("participants") List<ScheduleEvaluationParticipant> participants) {
+        this.startsOn = startsOn;
+        this.endsOn = endsOn;
+        this.participants = (participants == null) ? ImmutableList.of() : ImmutableList.copyOf(participants);
+    }
+
+    public DateTime getStartsOn() {
+        return startsOn;
+    }
+
+    public DateTime getEndsOn() {
+        return endsOn;
+    }
+
+    public List<ScheduleEvaluationParticipant> getParticipants() {
+        return participants;
+    }
+}
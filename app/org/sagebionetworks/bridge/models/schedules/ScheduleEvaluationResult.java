@@ -0,0 +1,35 @@
+package org.sagebionetworks.bridge.models.schedules;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/** Result of evaluating the schedules of many participants. There is one group per distinct schedule signature. */
+public final class ScheduleEvaluationResult {
+    private final int participantCount;
+    private final long elapsedMillis;
+    private final List<ScheduleEvaluationGroup> groups;
+
+    public ScheduleEvaluationResult(int participantCount, long elapsedMillis, List<ScheduleEvaluationGroup> groups) {
+        this.participantCount = participantCount;
+        this.elapsedMillis = elapsedMillis;
+        this.groups = ImmutableList.copyOf(groups);
+    }
+
+    public int getParticipantCount() {
+        return participantCount;
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    /** Wall-clock time of the evaluation, not counting parsing the request or writing the response. */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public List<ScheduleEvaluationGroup> getGroups() {
+        return groups;
+    }
+}
@@ -0,0 +1,30 @@
+package org.sagebionetworks.bridge.models.sms;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Request to send the same SMS message to many participants of a study. The message may use the study template
+ * variables (for example ${studyShortName}), which are resolved once for the whole batch.
+ */
+public final class BulkSmsRequest {
+    private final List<String> userIds;
+    private final String message;
+
+    @JsonCreator
+    public BulkSmsRequest(@JsonProperty("userIds") List<String> userIds, @JsonProperty("message") String message) {
+        this.userIds = (userIds == null) ? ImmutableList.of() : ImmutableList.copyOf(userIds);
+        this.message = message;
+    }
+
+    public List<String> getUserIds() {
+        return userIds;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
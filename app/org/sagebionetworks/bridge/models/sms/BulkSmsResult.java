@@ -0,0 +1,42 @@
+package org.sagebionetworks.bridge.models.sms;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import org.sagebionetworks.bridge.models.BatchItemResult;
+
+/**
+ * Result of a bulk SMS dispatch. There is one item per requested user, keyed by user ID, in request order. Items
+ * rejected because the dispatch queue was full have status 503 and can be retried.
+ */
+public final class BulkSmsResult {
+    private final int sentCount;
+    private final int failedCount;
+    private final long elapsedMillis;
+    private final List<BatchItemResult<Void>> items;
+
+    public BulkSmsResult(int sentCount, int failedCount, long elapsedMillis, List<BatchItemResult<Void>> items) {
+        this.sentCount = sentCount;
+        this.failedCount = failedCount;
+        this.elapsedMillis = elapsedMillis;
+        this.items = ImmutableList.copyOf(items);
+    }
+
+    public int getSentCount() {
+        return sentCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    /** Wall-clock time of the dispatch, including time spent waiting on the rate limiter. */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public List<BatchItemResult<Void>> getItems() {
+        return items;
+    }
+}
@@ -0,0 +1,74 @@
+package org.sagebionetworks.bridge.models.sms;
+
+import org.joda.time.DateTime;
+
+/**
+ * Snapshot of bulk SMS dispatch metrics for this server, since it started. Throughput is measured over the time the
+ * server has been up, so it's most meaningful when compared between two snapshots.
+ */
+public final class SmsDispatchMetrics {
+    private final String provider;
+    private final DateTime startedOn;
+    private final DateTime measuredOn;
+    private final long sentCount;
+    private final long failedCount;
+    private final long rejectedCount;
+    private final int queuedCount;
+    private final double averageSendMillis;
+
+    public SmsDispatchMetrics(String provider, DateTime startedOn, DateTime measuredOn, long sentCount,
+            long failedCount, long rejectedCount, int queuedCount, double averageSendMillis) {
+        this.provider = provider;
+        this.startedOn = startedOn;
+        this.measuredOn = measuredOn;
+        this.sentCount = sentCount;
+        this.failedCount = failedCount;
+        this.rejectedCount = rejectedCount;
+        this.queuedCount = queuedCount;
+        this.averageSendMillis = averageSendMillis;
+    }
+
+    /** Name of the SMS provider messages are sent through. */
+    public String getProvider() {
+        return provider;
+    }
+
+    public DateTime getStartedOn() {
+        return startedOn;
+    }
+
+    public DateTime getMeasuredOn() {
+        return measuredOn;
+    }
+
+    /** Messages the provider accepted. */
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    /** Messages that failed, because of the participant (no verified phone) or the provider. */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /** Messages rejected without being attempted, because the dispatch queue was full. */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /** Messages currently waiting in the dispatch queue. */
+    public int getQueuedCount() {
+        return queuedCount;
+    }
+
+    /** Average time of a provider call, not counting time waiting on the rate limiter. */
+    public double getAverageSendMillis() {
+        return averageSendMillis;
+    }
+
+    /** Messages sent per second, averaged since startedOn. */
+    public double getSentPerSecond() {
+        long elapsedMillis = measuredOn.getMillis() - startedOn.getMillis();
+        return (elapsedMillis <= 0) ? 0.0 : sentCount * 1000.0 / elapsedMillis;
+    }
+}
@@ -0,0 +1,50 @@
+package org.sagebionetworks.bridge.models.subpopulations;
+
+import org.joda.time.DateTime;
+
+/**
+ * Snapshot of the consent status cache on this server, since it started. Every sign-in, session refresh and consent
+ * change asks for the caller's consent statuses; each request is either answered from the cache or computed.
+ */
+public final class ConsentStatusCacheMetrics {
+    private final DateTime startedOn;
+    private final DateTime measuredOn;
+    private final long computedCount;
+    private final long avoidedCount;
+    private final long staleCount;
+
+    public ConsentStatusCacheMetrics(DateTime startedOn, DateTime measuredOn, long computedCount, long avoidedCount,
+            long staleCount) {
+        this.startedOn = startedOn;
+        this.measuredOn = measuredOn;
+        this.computedCount = computedCount;
+        this.avoidedCount = avoidedCount;
+        this.staleCount = staleCount;
+    }
+
+    public DateTime getStartedOn() {
+        return startedOn;
+    }
+
+    public DateTime getMeasuredOn() {
+        return measuredOn;
+    }
+
+    /** Requests for which the statuses were computed by the consent service. */
+    public long getComputedCount() {
+        return computedCount;
+    }
+
+    /** Requests answered from the cache, without computing the statuses. */
+    public long getAvoidedCount() {
+        return avoidedCount;
+    }
+
+    /**
+     * Requests that found cached statuses, but computed them again because the study's subpopulations or the
+     * account's signatures had changed since. These are included in the computed count.
+     */
+    public long getStaleCount() {
+        return staleCount;
+    }
+}
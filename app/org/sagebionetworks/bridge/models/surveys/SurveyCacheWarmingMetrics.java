@@ -0,0 +1,53 @@
+package org.sagebionetworks.bridge.models.surveys;
+
+import org.joda.time.DateTime;
+
+/**
+ * Snapshot of survey cache warming on this server, since it started. Warming is queued at startup for every published
+ * survey of every active study, and again for each survey as it's published, so the remaining count shows how far
+ * the startup warm-up has gotten.
+ */
+public final class SurveyCacheWarmingMetrics {
+    private final DateTime startedOn;
+    private final DateTime measuredOn;
+    private final long queuedCount;
+    private final long warmedCount;
+    private final long failedCount;
+
+    public SurveyCacheWarmingMetrics(DateTime startedOn, DateTime measuredOn, long queuedCount, long warmedCount,
+            long failedCount) {
+        this.startedOn = startedOn;
+        this.measuredOn = measuredOn;
+        this.queuedCount = queuedCount;
+        this.warmedCount = warmedCount;
+        this.failedCount = failedCount;
+    }
+
+    public DateTime getStartedOn() {
+        return startedOn;
+    }
+
+    public DateTime getMeasuredOn() {
+        return measuredOn;
+    }
+
+    /** Surveys queued to be warmed. */
+    public long getQueuedCount() {
+        return queuedCount;
+    }
+
+    /** Surveys whose views are in the cache. */
+    public long getWarmedCount() {
+        return warmedCount;
+    }
+
+    /** Surveys that couldn't be loaded. These are left to be cached by the first request for them. */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /** Surveys queued but not yet warmed or failed. */
+    public long getRemainingCount() {
+        return queuedCount - warmedCount - failedCount;
+    }
+}
@@ -0,0 +1,44 @@
+package org.sagebionetworks.bridge.models.upload;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * An upload schema revision together with its field definitions keyed by field name, built once when the revision
+ * is cached, so that code validating many records against the same schema looks fields up by name instead of
+ * scanning the field list for each one.
+ */
+public final class CompiledUploadSchema {
+    private final UploadSchema schema;
+    private final Map<String, UploadFieldDefinition> fieldDefinitionsByName;
+
+    public CompiledUploadSchema(UploadSchema schema) {
+        checkNotNull(schema);
+        this.schema = schema;
+
+        ImmutableMap.Builder<String, UploadFieldDefinition> builder = ImmutableMap.builder();
+        if (schema.getFieldDefinitions() != null) {
+            for (UploadFieldDefinition fieldDef : schema.getFieldDefinitions()) {
+                builder.put(fieldDef.getName(), fieldDef);
+            }
+        }
+        this.fieldDefinitionsByName = builder.build();
+    }
+
+    public UploadSchema getSchema() {
+        return schema;
+    }
+
+    /** The field definition with this name, or null if the schema has no such field. */
+    public UploadFieldDefinition getFieldDefinition(String fieldName) {
+        return fieldDefinitionsByName.get(fieldName);
+    }
+
+    /** All field definitions, keyed by name, in schema order. */
+    public Map<String, UploadFieldDefinition> getFieldDefinitionsByName() {
+        return fieldDefinitionsByName;
+    }
+}
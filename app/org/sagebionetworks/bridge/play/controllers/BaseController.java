@@ -14,6 +14,7 @@ import java.util.Locale;
 import java.util.Locale.LanguageRange;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
@@ -21,6 +22,7 @@ import javax.annotation.Nonnull;
 import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.RequestContexts;
 import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.config.BridgeConfig;
@@ -66,6 +68,7 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
@@ -76,6 +79,14 @@ public abstract class BaseController extends Controller {
     
     protected final static ObjectMapper MAPPER = BridgeObjectMapper.get();
 
+    /** Content type of streamed (chunked) responses that write one JSON object per line. */
+    static final String NDJSON_MIME_TYPE = "application/x-ndjson";
+
+    /** Type of the status line that ends a streamed NDJSON response. */
+    static final String STREAM_STATUS_TYPE = "StreamStatus";
+    static final String STREAM_STATUS_COMPLETE = "complete";
+    static final String STREAM_STATUS_ERROR = "error";
+
     CacheProvider cacheProvider;
     
     BridgeConfig bridgeConfig;
@@ -489,6 +500,39 @@ public abstract class BaseController extends Controller {
         return builder;
     }
 
+    /** See {@link RequestContexts#withRequestContext(Callable)}. */
+    static <T> Callable<T> withRequestContext(Callable<T> task) {
+        return RequestContexts.withRequestContext(task);
+    }
+
+    /** See {@link RequestContexts#withRequestContext(RequestContext, Callable)}. */
+    static <T> Callable<T> withRequestContext(RequestContext context, Callable<T> task) {
+        return RequestContexts.withRequestContext(context, task);
+    }
+
+    /**
+     * The last line of a streamed NDJSON response. The response status is sent before the body, so this line is how a
+     * client tells a stream that finished ({"type":"StreamStatus","status":"complete"}) from one that ended early
+     * because of an error (status "error", with a message naming the request ID). A stream that doesn't end with
+     * this line was cut off.
+     */
+    static String streamStatusLine(String requestId, boolean succeeded) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("type", STREAM_STATUS_TYPE);
+        if (succeeded) {
+            node.put("status", STREAM_STATUS_COMPLETE);
+        } else {
+            node.put("status", STREAM_STATUS_ERROR);
+            node.put("message", streamErrorMessage(requestId));
+        }
+        return node.toString() + "\n";
+    }
+
+    /** Message telling the client that a streamed response ended early, and which request to look up in the logs. */
+    static String streamErrorMessage(String requestId) {
+        return "The stream ended early because of an error (request ID " + requestId + ")";
+    }
+
     /**
      * Helper method to add warning message to http header using play framework
      * @param msg
@@ -1,21 +1,51 @@
 package org.sagebionetworks.bridge.play.controllers;
 
+import static org.sagebionetworks.bridge.BridgeConstants.API_DEFAULT_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
 import static org.sagebionetworks.bridge.Roles.DEVELOPER;
 import static org.sagebionetworks.bridge.Roles.WORKER;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Resource;
+
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Iterables;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
+import play.libs.Json;
 import play.mvc.Result;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.dao.HealthDataRecordPageDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.BatchItemResult;
 import org.sagebionetworks.bridge.models.DateTimeRangeResourceList;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.Metrics;
 import org.sagebionetworks.bridge.models.RequestInfo;
+import org.sagebionetworks.bridge.models.StatusMessage;
 import org.sagebionetworks.bridge.models.ResourceList;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
@@ -30,11 +60,37 @@ import org.sagebionetworks.bridge.upload.UploadValidationException;
 
 @Controller
 public class HealthDataController extends BaseController {
+    private static final Logger LOG = LoggerFactory.getLogger(HealthDataController.class);
+
     static final TypeReference<DateTimeRangeResourceList<HealthDataRecord>> RECORD_RESOURCE_LIST_TYPE_REF =
             new TypeReference<DateTimeRangeResourceList<HealthDataRecord>>() {};
+    static final TypeReference<List<HealthDataSubmission>> SUBMISSION_LIST_TYPE_REF =
+            new TypeReference<List<HealthDataSubmission>>() {};
+
+    /** Maximum number of health data submissions accepted in a single bulk request. */
+    static final int MAX_BULK_SUBMISSIONS = 100;
+
+    /** Number of records whose exporter status is updated in one call to the health data service. */
+    static final int EXPORT_STATUS_BATCH_SIZE = 25;
+
+    /** Maximum number of exporter status batches of a single request that are updated concurrently. */
+    static final int EXPORT_STATUS_MAX_CONCURRENT_BATCHES = 4;
+
+    /** Number of times an exporter status batch is retried after DynamoDB throttles it. */
+    static final int EXPORT_STATUS_MAX_THROTTLE_RETRIES = 3;
+
+    static final String THROTTLED_MESSAGE = "Exporter status update was throttled, try again later";
+
+    /** Number of records read from DynamoDB (and written to the response) at a time when streaming records. */
+    static final int STREAM_PAGE_SIZE = 100;
+
+    // Base delay before a throttled batch is resubmitted. Doubles on each retry. Package-scoped for unit tests.
+    long exportStatusThrottleDelayMillis = 200;
 
     private HealthDataService healthDataService;
     private ParticipantService participantService;
+    private ExecutorService bulkRequestExecutorService;
+    private HealthDataRecordPageDao healthDataRecordPageDao;
 
     @Autowired
     final void setHealthDataService(HealthDataService healthDataService) {
@@ -47,6 +103,18 @@ public class HealthDataController extends BaseController {
         this.participantService = participantService;
     }
 
+    /** Reads records a page at a time, for the paginated and streaming APIs. */
+    @Autowired
+    final void setHealthDataRecordPageDao(HealthDataRecordPageDao healthDataRecordPageDao) {
+        this.healthDataRecordPageDao = healthDataRecordPageDao;
+    }
+
+    /** Executor used to process the items of a bulk submission in parallel. */
+    @Resource(name = "bulkRequestExecutorService")
+    final void setBulkRequestExecutorService(ExecutorService bulkRequestExecutorService) {
+        this.bulkRequestExecutorService = bulkRequestExecutorService;
+    }
+
     /** Gets a list of records for the given healthCode between the specified createdOn times (inclusive). */
     public Result getRecordsByCreatedOn(String createdOnStartString, String createdOnEndString) throws IOException {
         UserSession session = getAuthenticatedAndConsentedSession();
@@ -62,6 +130,101 @@ public class HealthDataController extends BaseController {
         return okResult(HealthDataRecord.PUBLIC_RECORD_WRITER, recordResourceList);
     }
 
+    /**
+     * Gets one page of records for the current user, created between the given times (inclusive). Pass the
+     * nextPageOffsetKey of the result as the offsetKey to get the next page.
+     */
+    public Result getRecordsByCreatedOnV4(String createdOnStartString, String createdOnEndString, String offsetKey,
+            String pageSizeString) throws IOException {
+        UserSession session = getAuthenticatedAndConsentedSession();
+
+        DateTime createdOnStart = BridgeUtils.getDateTimeOrDefault(createdOnStartString, null);
+        DateTime createdOnEnd = BridgeUtils.getDateTimeOrDefault(createdOnEndString, null);
+        validateCreatedOnRange(createdOnStart, createdOnEnd);
+
+        int pageSize = BridgeUtils.getIntOrDefault(pageSizeString, API_DEFAULT_PAGE_SIZE);
+        if (pageSize < 1 || pageSize > API_MAXIMUM_PAGE_SIZE) {
+            throw new BadRequestException("pageSize must be from 1-" + API_MAXIMUM_PAGE_SIZE + " records");
+        }
+
+        ForwardCursorPagedResourceList<HealthDataRecord> page = healthDataRecordPageDao
+                .getRecordsByHealthCodeCreatedOn(session.getHealthCode(), createdOnStart, createdOnEnd, offsetKey,
+                        pageSize);
+        return okResult(HealthDataRecord.PUBLIC_RECORD_WRITER, page);
+    }
+
+    /**
+     * Streams all records for the current user, created between the given times (inclusive), as newline-delimited
+     * JSON in a chunked response. Records are written as each page is read from DynamoDB, so a wide time range
+     * doesn't require holding all the records in memory. The parameters are validated and the first page is read
+     * before the response starts, so those errors get the usual error response. The stream ends with a status line
+     * saying whether all the records were written.
+     */
+    public Result streamRecordsByCreatedOn(String createdOnStartString, String createdOnEndString) {
+        UserSession session = getAuthenticatedAndConsentedSession();
+
+        DateTime createdOnStart = BridgeUtils.getDateTimeOrDefault(createdOnStartString, null);
+        DateTime createdOnEnd = BridgeUtils.getDateTimeOrDefault(createdOnEndString, null);
+        validateCreatedOnRange(createdOnStart, createdOnEnd);
+
+        final String healthCode = session.getHealthCode();
+        final String requestId = getRequestId();
+        final ForwardCursorPagedResourceList<HealthDataRecord> firstPage = healthDataRecordPageDao
+                .getRecordsByHealthCodeCreatedOn(healthCode, createdOnStart, createdOnEnd, null, STREAM_PAGE_SIZE);
+        Chunks<String> chunks = new StringChunks() {
+            @Override
+            public void onReady(final Chunks.Out<String> out) {
+                writeRecords(out, requestId, healthCode, createdOnStart, createdOnEnd, firstPage);
+            }
+        };
+        return ok(chunks).as(NDJSON_MIME_TYPE);
+    }
+
+    // Writes the first page, then reads and writes the rest of the records a page at a time. The response status has
+    // already been sent by the time this runs, so an error is logged and reported in the final status line.
+    // Package-scoped for unit tests.
+    void writeRecords(Chunks.Out<String> out, String requestId, String healthCode, DateTime createdOnStart,
+            DateTime createdOnEnd, ForwardCursorPagedResourceList<HealthDataRecord> firstPage) {
+        boolean succeeded = false;
+        try {
+            ForwardCursorPagedResourceList<HealthDataRecord> page = firstPage;
+            while (true) {
+                if (!page.getItems().isEmpty()) {
+                    StringBuilder chunk = new StringBuilder();
+                    for (HealthDataRecord record : page.getItems()) {
+                        chunk.append(HealthDataRecord.PUBLIC_RECORD_WRITER.writeValueAsString(record)).append('\n');
+                    }
+                    out.write(chunk.toString());
+                }
+                String offsetKey = page.getNextPageOffsetKey();
+                if (offsetKey == null) {
+                    break;
+                }
+                page = healthDataRecordPageDao.getRecordsByHealthCodeCreatedOn(healthCode, createdOnStart,
+                        createdOnEnd, offsetKey, STREAM_PAGE_SIZE);
+            }
+            succeeded = true;
+        } catch (Exception ex) {
+            LOG.error("Error streaming health data records for request " + requestId, ex);
+        } finally {
+            try {
+                out.write(streamStatusLine(requestId, succeeded));
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // Unlike the service, the paged and streaming APIs require both ends of the range.
+    private static void validateCreatedOnRange(DateTime createdOnStart, DateTime createdOnEnd) {
+        if (createdOnStart == null || createdOnEnd == null) {
+            throw new BadRequestException("createdOnStart and createdOnEnd must both be specified");
+        }
+        if (createdOnStart.isAfter(createdOnEnd)) {
+            throw new BadRequestException("createdOnStart can't be after createdOnEnd");
+        }
+    }
+
     /**
      * API to allow consented users to submit health data in a synchronous API, instead of using the asynchronous
      * upload API. This is most beneficial for small data sets, like simple surveys. This API returns the health data
@@ -89,6 +252,71 @@ public class HealthDataController extends BaseController {
         return createdResult(HealthDataRecord.PUBLIC_RECORD_WRITER, savedRecord);
     }
 
+    /**
+     * Bulk version of {@link #submitHealthData}, for apps that are syncing data that was collected offline. The
+     * submissions are validated and saved in parallel, and the result for each submission (the saved record or the
+     * error) is returned in the order the submissions were given. A failed submission doesn't fail the batch. The
+     * user's request info is updated once for the whole batch.
+     */
+    public Result submitHealthDataBulk() throws IOException {
+        UserSession session = getAuthenticatedAndConsentedSession();
+        List<HealthDataSubmission> submissionList = MAPPER.convertValue(parseJson(request(), JsonNode.class),
+                SUBMISSION_LIST_TYPE_REF);
+        if (submissionList == null || submissionList.isEmpty()) {
+            throw new BadRequestException("Health data submissions must be provided");
+        }
+        if (submissionList.size() > MAX_BULK_SUBMISSIONS) {
+            throw new BadRequestException("Cannot submit more than " + MAX_BULK_SUBMISSIONS +
+                    " health data submissions at a time");
+        }
+
+        // Fan out submissions.
+        List<Future<HealthDataRecord>> futureList = new ArrayList<>();
+        for (HealthDataSubmission healthDataSubmission : submissionList) {
+            futureList.add(bulkRequestExecutorService.submit(withRequestContext(() -> healthDataService
+                    .submitHealthData(session.getStudyIdentifier(), session.getParticipant(),
+                            healthDataSubmission))));
+        }
+
+        // Collect results in submission order.
+        List<BatchItemResult<HealthDataRecord>> resultList = new ArrayList<>();
+        List<String> recordIdList = new ArrayList<>();
+        for (int i = 0; i < futureList.size(); i++) {
+            String key = String.valueOf(i);
+            try {
+                HealthDataRecord savedRecord = futureList.get(i).get();
+                recordIdList.add(savedRecord.getId());
+                resultList.add(BatchItemResult.succeeded(key, savedRecord));
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof UploadValidationException) {
+                    resultList.add(BatchItemResult.failed(key, 400, cause.getMessage()));
+                } else {
+                    resultList.add(BatchItemResult.failed(key, cause));
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new BridgeServiceException("Interrupted while submitting health data");
+            }
+        }
+
+        // Write record IDs into the metrics, for logging and diagnostics.
+        Metrics metrics = getMetrics();
+        if (metrics != null && !recordIdList.isEmpty()) {
+            metrics.setRecordId(BridgeUtils.COMMA_SPACE_JOINER.join(recordIdList));
+        }
+
+        // Record upload time to user's request info, once for the whole batch.
+        if (!recordIdList.isEmpty()) {
+            RequestInfo requestInfo = getRequestInfoBuilder(session).withUploadedOn(DateUtils.getCurrentDateTime())
+                    .build();
+            cacheProvider.updateRequestInfo(requestInfo);
+        }
+
+        // Filter out Health Code from the returned records.
+        return okResult(HealthDataRecord.PUBLIC_RECORD_WRITER, new ResourceList<>(resultList));
+    }
+
     /** Allows a developer to submit health data on behalf of the participant. This is generally used for backfills. */
     public Result submitHealthDataForParticipant(String userId) throws IOException, UploadValidationException {
         UserSession session = getAuthenticatedSession(DEVELOPER);
@@ -112,13 +340,127 @@ public class HealthDataController extends BaseController {
         return createdResult(HealthDataRecord.PUBLIC_RECORD_WRITER, savedRecord);
     }
 
+    /**
+     * Updates the exporter status of the given records. The request is validated as a whole, then the list is split
+     * into batches, which are updated in parallel with bounded concurrency. Batches that are throttled by DynamoDB are
+     * resubmitted after a backoff. If some records can't be updated, the others are still updated. The response is the
+     * usual status message, with two extra fields listing the updated record IDs and the records that failed (in
+     * request order), so the exporter can retry just those.
+     */
     public Result updateRecordsStatus() {
         getAuthenticatedSession(WORKER);
 
         RecordExportStatusRequest recordExportStatusRequest = parseJson(request(), RecordExportStatusRequest.class);
+        List<String> recordIdList = recordExportStatusRequest.getRecordIds();
+        if (recordIdList == null || recordIdList.isEmpty()) {
+            throw new BadRequestException("recordIds must be provided");
+        }
+        if (recordExportStatusRequest.getSynapseExporterStatus() == null) {
+            throw new BadRequestException("synapseExporterStatus must be provided");
+        }
+
+        List<List<String>> batchList = new ArrayList<>();
+        Iterables.partition(recordIdList, EXPORT_STATUS_BATCH_SIZE).forEach(batchList::add);
+        int batchCount = batchList.size();
+        List<List<String>> updatedRecordIdsByBatch = new ArrayList<>(Collections.nCopies(batchCount, null));
+        List<Throwable> errorByBatch = new ArrayList<>(Collections.nCopies(batchCount, null));
+        int[] retryCountByBatch = new int[batchCount];
 
-        List<String> updatedRecordIds = healthDataService.updateRecordsWithExporterStatus(recordExportStatusRequest);
+        // Keep at most EXPORT_STATUS_MAX_CONCURRENT_BATCHES batches in flight, so that one exporter request can't
+        // use up the table's write throughput. A throttled batch waits here, rather than on an executor thread, until
+        // its backoff has passed and it's resubmitted.
+        CompletionService<List<String>> completionService = new ExecutorCompletionService<>(
+                bulkRequestExecutorService);
+        Map<Future<List<String>>, Integer> batchIndexByFuture = new HashMap<>();
+        Deque<Integer> readyBatchIndexes = new ArrayDeque<>();
+        for (int i = 0; i < batchCount; i++) {
+            readyBatchIndexes.add(i);
+        }
+        Map<Integer, Long> retryNanosByBatch = new HashMap<>();
+        while (!readyBatchIndexes.isEmpty() || !retryNanosByBatch.isEmpty() || !batchIndexByFuture.isEmpty()) {
+            long nowNanos = System.nanoTime();
+            Iterator<Map.Entry<Integer, Long>> retryIterator = retryNanosByBatch.entrySet().iterator();
+            while (retryIterator.hasNext()) {
+                Map.Entry<Integer, Long> retryEntry = retryIterator.next();
+                if (retryEntry.getValue() - nowNanos <= 0) {
+                    readyBatchIndexes.add(retryEntry.getKey());
+                    retryIterator.remove();
+                }
+            }
+
+            while (!readyBatchIndexes.isEmpty() && batchIndexByFuture.size() < EXPORT_STATUS_MAX_CONCURRENT_BATCHES) {
+                int batchIndex = readyBatchIndexes.remove();
+                RecordExportStatusRequest batchRequest = new RecordExportStatusRequest();
+                batchRequest.setRecordIds(batchList.get(batchIndex));
+                batchRequest.setSynapseExporterStatus(recordExportStatusRequest.getSynapseExporterStatus());
+
+                Future<List<String>> future = completionService.submit(withRequestContext(
+                        () -> healthDataService.updateRecordsWithExporterStatus(batchRequest)));
+                batchIndexByFuture.put(future, batchIndex);
+            }
+
+            try {
+                // Wait for a batch to finish, or for the next throttled batch to be due.
+                Future<List<String>> future;
+                if (retryNanosByBatch.isEmpty()) {
+                    future = completionService.take();
+                } else {
+                    long waitNanos = Collections.min(retryNanosByBatch.values()) - System.nanoTime();
+                    future = completionService.poll(Math.max(waitNanos, 0L), TimeUnit.NANOSECONDS);
+                    if (future == null) {
+                        continue;
+                    }
+                }
+
+                int batchIndex = batchIndexByFuture.remove(future);
+                try {
+                    updatedRecordIdsByBatch.set(batchIndex, future.get());
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    int retryCount = retryCountByBatch[batchIndex];
+                    if (cause instanceof ProvisionedThroughputExceededException &&
+                            retryCount < EXPORT_STATUS_MAX_THROTTLE_RETRIES) {
+                        // Back off, doubling the delay on each retry.
+                        long delayMillis = exportStatusThrottleDelayMillis << retryCount;
+                        retryCountByBatch[batchIndex] = retryCount + 1;
+                        retryNanosByBatch.put(batchIndex, System.nanoTime() +
+                                TimeUnit.MILLISECONDS.toNanos(delayMillis));
+                    } else {
+                        LOG.error("Error updating exporter status for request " + getRequestId() + ", batch " +
+                                batchIndex, cause);
+                        errorByBatch.set(batchIndex, cause);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new BridgeServiceException("Interrupted while updating exporter status");
+            }
+        }
+
+        // Flatten updated and failed records, in request order.
+        List<String> updatedRecordIds = new ArrayList<>();
+        List<BatchItemResult<Void>> failedRecordList = new ArrayList<>();
+        for (int i = 0; i < batchCount; i++) {
+            List<String> batchRecordIds = updatedRecordIdsByBatch.get(i);
+            if (batchRecordIds != null) {
+                updatedRecordIds.addAll(batchRecordIds);
+                continue;
+            }
+            Throwable cause = errorByBatch.get(i);
+            for (String recordId : batchList.get(i)) {
+                if (cause instanceof ProvisionedThroughputExceededException) {
+                    failedRecordList.add(BatchItemResult.failed(recordId, 503, THROTTLED_MESSAGE));
+                } else {
+                    failedRecordList.add(BatchItemResult.failed(recordId, cause));
+                }
+            }
+        }
 
-        return okResult("Update exporter status to: " + updatedRecordIds + " complete.");
+        // Exporters that predate the extra fields only read the message, so it's unchanged.
+        ObjectNode resultNode = (ObjectNode) Json.toJson(new StatusMessage("Update exporter status to: " +
+                updatedRecordIds + " complete."));
+        resultNode.set("updatedRecordIds", MAPPER.valueToTree(updatedRecordIds));
+        resultNode.set("failedRecords", MAPPER.valueToTree(failedRecordList));
+        return ok(resultNode);
     }
 }
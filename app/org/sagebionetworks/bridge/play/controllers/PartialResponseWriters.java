@@ -0,0 +1,156 @@
+package org.sagebionetworks.bridge.play.controllers;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+
+/**
+ * Writers for partial responses, where the caller lists the top-level properties it wants in a <code>fields</code>
+ * query parameter (e.g. <code>fields=id,firstName,dataGroups</code>). Only the requested properties of the root
+ * object are written; nested objects are written in full. Unknown field names are ignored, and the "type" property
+ * is always written so the response can still be deserialized.
+ *
+ * The projection is applied as the Jackson "filter" property filter of the model, on top of whatever filter the
+ * base writer already applies (e.g. excluding the health code), so it can't expose a property the base writer
+ * hides. Writers are cached per base writer and field set, since callers tend to ask for the same few field sets.
+ */
+final class PartialResponseWriters {
+    static final String FILTER_ID = "filter";
+    static final String TYPE_FIELD = "type";
+    static final int MAX_FIELD_COUNT = 50;
+    static final int MAX_CACHED_WRITERS = 500;
+
+    private static final Splitter FIELD_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final Cache<WriterKey, ObjectWriter> WRITER_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_WRITERS).build();
+
+    private PartialResponseWriters() {
+    }
+
+    /**
+     * Parses the fields query parameter. Returns null if the parameter is blank, meaning the full object should be
+     * written. The set is sorted, so "a,b" and "b,a" share a cached writer.
+     */
+    static Set<String> parseFields(String fieldsString) {
+        if (isBlank(fieldsString)) {
+            return null;
+        }
+        Set<String> fields = ImmutableSortedSet.copyOf(FIELD_SPLITTER.split(fieldsString));
+        if (fields.isEmpty()) {
+            return null;
+        }
+        if (fields.size() > MAX_FIELD_COUNT) {
+            throw new BadRequestException("Cannot request more than " + MAX_FIELD_COUNT + " fields");
+        }
+        return fields;
+    }
+
+    /** True if the field should be written, so callers can skip loading the values of fields that won't be. */
+    static boolean includesField(Set<String> fields, String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    /**
+     * Returns a writer that writes only the given fields of the root object, or the base writer itself if fields is
+     * null.
+     */
+    static ObjectWriter forFields(ObjectWriter baseWriter, Set<String> fields) {
+        if (fields == null) {
+            return baseWriter;
+        }
+        try {
+            return WRITER_CACHE.get(new WriterKey(baseWriter, fields), () -> {
+                PropertyFilter baseFilter = findBaseFilter(baseWriter.getConfig().getFilterProvider());
+                return baseWriter.with(new SimpleFilterProvider().addFilter(FILTER_ID,
+                        new FieldsPropertyFilter(fields, baseFilter)));
+            });
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private static PropertyFilter findBaseFilter(FilterProvider filterProvider) {
+        PropertyFilter filter = (filterProvider == null) ? null : filterProvider.findPropertyFilter(FILTER_ID, null);
+        return (filter == null) ? SimpleBeanPropertyFilter.serializeAll() : filter;
+    }
+
+    /** Skips root-level properties that weren't requested and defers everything else to the base writer's filter. */
+    static final class FieldsPropertyFilter extends SimpleBeanPropertyFilter {
+        private final Set<String> fields;
+        private final PropertyFilter baseFilter;
+
+        FieldsPropertyFilter(Set<String> fields, PropertyFilter baseFilter) {
+            this.fields = fields;
+            this.baseFilter = baseFilter;
+        }
+
+        @Override
+        public void serializeAsField(Object pojo, JsonGenerator jgen, SerializerProvider provider,
+                PropertyWriter writer) throws Exception {
+            if (isRootObject(jgen) && !TYPE_FIELD.equals(writer.getName()) && !fields.contains(writer.getName())) {
+                if (!jgen.canOmitFields()) {
+                    writer.serializeAsOmittedField(pojo, jgen, provider);
+                }
+                return;
+            }
+            baseFilter.serializeAsField(pojo, jgen, provider, writer);
+        }
+
+        @Override
+        public void serializeAsElement(Object elementValue, JsonGenerator jgen, SerializerProvider provider,
+                PropertyWriter writer) throws Exception {
+            baseFilter.serializeAsElement(elementValue, jgen, provider, writer);
+        }
+
+        // The fields of the root object are written in an object context directly under the root context.
+        private static boolean isRootObject(JsonGenerator jgen) {
+            JsonStreamContext parent = jgen.getOutputContext().getParent();
+            return parent != null && parent.inRoot();
+        }
+    }
+
+    private static final class WriterKey {
+        private final ObjectWriter baseWriter;
+        private final Set<String> fields;
+
+        WriterKey(ObjectWriter baseWriter, Set<String> fields) {
+            this.baseWriter = baseWriter;
+            this.fields = fields;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(baseWriter), fields);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            WriterKey other = (WriterKey) obj;
+            return baseWriter == other.baseWriter && Objects.equals(fields, other.fields);
+        }
+    }
+}
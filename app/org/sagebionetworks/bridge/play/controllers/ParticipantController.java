@@ -1,6 +1,7 @@
 package org.sagebionetworks.bridge.play.controllers;
 
 import static org.sagebionetworks.bridge.BridgeConstants.API_DEFAULT_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
 import static org.sagebionetworks.bridge.BridgeUtils.getDateTimeOrDefault;
 import static org.sagebionetworks.bridge.BridgeUtils.getIntOrDefault;
 import static org.sagebionetworks.bridge.Roles.RESEARCHER;
@@ -11,15 +12,26 @@ import static org.sagebionetworks.bridge.models.ResourceList.OFFSET_BY;
 import static org.sagebionetworks.bridge.models.ResourceList.START_DATE;
 import static org.sagebionetworks.bridge.models.ResourceList.END_DATE;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import javax.annotation.Resource;
+
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import play.mvc.BodyParser;
@@ -27,42 +39,89 @@ import play.mvc.Result;
 
 import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.RequestContext;
 import org.sagebionetworks.bridge.Roles;
+import org.sagebionetworks.bridge.dao.ParticipantRosterDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
 import org.sagebionetworks.bridge.models.AccountSummarySearch;
+import org.sagebionetworks.bridge.models.BatchItemResult;
 import org.sagebionetworks.bridge.models.CriteriaContext;
 import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.PagedResourceList;
+import org.sagebionetworks.bridge.models.ReportTypeResourceList;
 import org.sagebionetworks.bridge.models.RequestInfo;
+import org.sagebionetworks.bridge.models.ResourceList;
 import org.sagebionetworks.bridge.models.accounts.AccountSummary;
 import org.sagebionetworks.bridge.models.accounts.IdentifierHolder;
 import org.sagebionetworks.bridge.models.accounts.IdentifierUpdate;
+import org.sagebionetworks.bridge.models.accounts.RosterExportJob;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.accounts.UserSessionInfo;
 import org.sagebionetworks.bridge.models.accounts.Withdrawal;
+import org.sagebionetworks.bridge.models.activities.ActivityEvent;
+import org.sagebionetworks.bridge.models.notifications.NotificationFanOutJob;
+import org.sagebionetworks.bridge.models.notifications.NotificationFanOutRequest;
 import org.sagebionetworks.bridge.models.notifications.NotificationMessage;
 import org.sagebionetworks.bridge.models.notifications.NotificationRegistration;
+import org.sagebionetworks.bridge.models.reports.ReportIndex;
+import org.sagebionetworks.bridge.models.reports.ReportType;
 import org.sagebionetworks.bridge.models.schedules.ActivityType;
 import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
+import org.sagebionetworks.bridge.models.sms.BulkSmsRequest;
+import org.sagebionetworks.bridge.models.sms.BulkSmsResult;
 import org.sagebionetworks.bridge.models.studies.SmsTemplate;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
 import org.sagebionetworks.bridge.models.upload.UploadView;
 import org.sagebionetworks.bridge.services.AuthenticationService.ChannelType;
+import org.sagebionetworks.bridge.services.BulkSmsService;
+import org.sagebionetworks.bridge.services.NotificationFanOutService;
+import org.sagebionetworks.bridge.services.ParticipantRosterExportService;
 import org.sagebionetworks.bridge.services.ParticipantService;
+import org.sagebionetworks.bridge.services.ReportService;
 import org.sagebionetworks.bridge.services.UserAdminService;
 
 @Controller
 public class ParticipantController extends BaseController {
+    private static final Logger LOG = LoggerFactory.getLogger(ParticipantController.class);
     
     private static final String NOTIFY_SUCCESS_MESSAGE = "Message has been sent to external notification service.";
+    
+    private static final String CONSENT_HISTORIES_FIELD = "consentHistories";
+    
+    static final TypeReference<List<String>> USER_ID_LIST_TYPE_REF = new TypeReference<List<String>>() {};
+    
+    /** Maximum number of user IDs in one bulk participant request. */
+    static final int MAX_BULK_PARTICIPANTS = 2000;
+    
+    /**
+     * Number of participants read in parallel and written as one chunk of a bulk participant response. This bounds
+     * both the memory the response holds and how much of the bulk executor one request can take.
+     */
+    static final int BULK_PARTICIPANT_WINDOW_SIZE = 20;
 
     private ParticipantService participantService;
     
     private UserAdminService userAdminService;
     
+    private ParticipantRosterExportService participantRosterExportService;
+    
+    private ParticipantRosterDao participantRosterDao;
+    
+    private NotificationFanOutService notificationFanOutService;
+    
+    private BulkSmsService bulkSmsService;
+    
+    private ExecutorService bulkRequestExecutorService;
+    
+    private ExecutorService workerViewExecutorService;
+    
+    private ReportService reportService;
+    
     @Autowired
     final void setParticipantService(ParticipantService participantService) {
         this.participantService = participantService;
@@ -72,6 +131,43 @@ public class ParticipantController extends BaseController {
     final void setUserAdminService(UserAdminService userAdminService) {
         this.userAdminService = userAdminService;
     }
+    
+    @Autowired
+    final void setParticipantRosterExportService(ParticipantRosterExportService participantRosterExportService) {
+        this.participantRosterExportService = participantRosterExportService;
+    }
+    
+    @Autowired
+    final void setParticipantRosterDao(ParticipantRosterDao participantRosterDao) {
+        this.participantRosterDao = participantRosterDao;
+    }
+    
+    @Autowired
+    final void setNotificationFanOutService(NotificationFanOutService notificationFanOutService) {
+        this.notificationFanOutService = notificationFanOutService;
+    }
+    
+    @Autowired
+    final void setBulkSmsService(BulkSmsService bulkSmsService) {
+        this.bulkSmsService = bulkSmsService;
+    }
+    
+    /** Executor used to read the participants of a bulk request in parallel. */
+    @Resource(name = "bulkRequestExecutorService")
+    final void setBulkRequestExecutorService(ExecutorService bulkRequestExecutorService) {
+        this.bulkRequestExecutorService = bulkRequestExecutorService;
+    }
+    
+    /** Executor used to make the reads of a worker participant view concurrently. */
+    @Resource(name = "workerViewExecutorService")
+    final void setWorkerViewExecutorService(ExecutorService workerViewExecutorService) {
+        this.workerViewExecutorService = workerViewExecutorService;
+    }
+    
+    @Autowired
+    final void setReportService(ReportService reportService) {
+        this.reportService = reportService;
+    }
 
     /** Researcher API to allow backfill of SMS notification registrations. */
     @BodyParser.Of(BodyParser.Empty.class)
@@ -83,14 +179,17 @@ public class ParticipantController extends BaseController {
         return createdResult("SMS notification registration created");
     }
 
-    public Result getSelfParticipant(boolean consents) throws Exception {
+    public Result getSelfParticipant(boolean consents, String fieldsString) throws Exception {
         UserSession session = getAuthenticatedSession();
         Study study = studyService.getStudy(session.getStudyIdentifier());
+        Set<String> fields = PartialResponseWriters.parseFields(fieldsString);
         
         CriteriaContext context = getCriteriaContext(session);
-        StudyParticipant participant = participantService.getSelfParticipant(study, context, consents);
+        StudyParticipant participant = participantService.getSelfParticipant(study, context,
+                consents && PartialResponseWriters.includesField(fields, CONSENT_HISTORIES_FIELD));
         
-        String ser = StudyParticipant.API_NO_HEALTH_CODE_WRITER.writeValueAsString(participant);
+        ObjectWriter writer = PartialResponseWriters.forFields(StudyParticipant.API_NO_HEALTH_CODE_WRITER, fields);
+        String ser = writer.writeValueAsString(participant);
         
         return ok(ser).as(BridgeConstants.JSON_MIME_TYPE);
     }
@@ -167,6 +266,69 @@ public class ParticipantController extends BaseController {
                 offsetKey, pageSize);
     }
     
+    /**
+     * Worker API that returns everything a dashboard row needs for one participant in one call: the participant (with
+     * health code), their activity events, the first page of their history for one activity (if activityType and
+     * referentGuid are given), and the study's participant report indices. The study is loaded once and the reads run
+     * concurrently, so the call takes about as long as the slowest read. If any read fails, the call fails with that
+     * read's error.
+     */
+    public Result getParticipantViewForWorker(String studyId, String userId, boolean consents,
+            String activityTypeString, String referentGuid, String historyPageSizeString) throws Exception {
+        getAuthenticatedSession(WORKER);
+        Study study = studyService.getStudy(studyId);
+        
+        ActivityType activityType = (activityTypeString == null) ? null : ActivityType.fromPlural(activityTypeString);
+        if ((activityType == null) != (referentGuid == null)) {
+            throw new BadRequestException("activityType and referentGuid must be provided together");
+        }
+        int historyPageSize = getIntOrDefault(historyPageSizeString, BridgeConstants.API_DEFAULT_PAGE_SIZE);
+        
+        Future<StudyParticipant> participantFuture = workerViewExecutorService.submit(withRequestContext(
+                () -> participantService.getParticipant(study, userId, consents)));
+        Future<List<ActivityEvent>> eventsFuture = workerViewExecutorService.submit(withRequestContext(
+                () -> participantService.getActivityEvents(study, userId)));
+        Future<ForwardCursorPagedResourceList<ScheduledActivity>> historyFuture = (activityType == null) ? null :
+                workerViewExecutorService.submit(withRequestContext(() -> participantService.getActivityHistory(
+                        study, userId, activityType, referentGuid, null, null, null, historyPageSize)));
+        Future<ReportTypeResourceList<? extends ReportIndex>> indicesFuture = workerViewExecutorService.submit(
+                withRequestContext(() -> reportService.getReportIndices(study.getStudyIdentifier(),
+                        ReportType.PARTICIPANT)));
+        
+        ObjectNode view = MAPPER.createObjectNode();
+        try {
+            view.set("participant", MAPPER.readTree(StudyParticipant.API_WITH_HEALTH_CODE_WRITER
+                    .writeValueAsString(participantFuture.get())));
+            view.set("activityEvents", MAPPER.valueToTree(new ResourceList<>(eventsFuture.get())));
+            if (historyFuture != null) {
+                view.set("activityHistory", MAPPER.readTree(ScheduledActivity.SCHEDULED_ACTIVITY_WRITER
+                        .writeValueAsString(historyFuture.get())));
+            }
+            view.set("reportIndices", MAPPER.valueToTree(indicesFuture.get()));
+        } catch (ExecutionException ex) {
+            cancelAll(participantFuture, eventsFuture, historyFuture, indicesFuture);
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BridgeServiceException(cause.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            cancelAll(participantFuture, eventsFuture, historyFuture, indicesFuture);
+            throw new BridgeServiceException("Interrupted while getting participant view");
+        }
+        view.put("type", "WorkerParticipantView");
+        return ok(view);
+    }
+    
+    private static void cancelAll(Future<?>... futures) {
+        for (Future<?> future : futures) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+    
     public Result updateIdentifiers() throws Exception {
         UserSession session = getAuthenticatedSession();
         
@@ -223,6 +385,84 @@ public class ParticipantController extends BaseController {
         return okResult(page);
     }
     
+    /**
+     * Keyset-paged version of getParticipants(). Instead of offsetBy, pass the nextPageOffsetKey of the previous page
+     * as the offsetKey, so deep pages cost the same as the first page.
+     */
+    public Result getParticipantsV4(String offsetKey, String pageSizeString, String emailFilter, String phoneFilter,
+            String startTimeString, String endTimeString) {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        
+        return getParticipantsV4Internal(session.getStudyIdentifier().getIdentifier(), offsetKey, pageSizeString,
+                emailFilter, phoneFilter, startTimeString, endTimeString);
+    }
+    
+    /**
+     * Keyset-paged version of searchForAccountSummaries(), with the same search body. Instead of offsetBy, pass the
+     * nextPageOffsetKey of the previous page as the offsetKey.
+     */
+    public Result searchForAccountSummariesV4(String offsetKey) throws Exception {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        
+        AccountSummarySearch search = parseJson(request(), AccountSummarySearch.class);
+        return searchForAccountSummariesV4Internal(session.getStudyIdentifier().getIdentifier(), search, offsetKey);
+    }
+    
+    public Result searchForAccountSummariesForWorkerV4(String studyId, String offsetKey) throws Exception {
+        getAuthenticatedSession(WORKER);
+        
+        Study study = studyService.getStudy(studyId);
+        AccountSummarySearch search = parseJson(request(), AccountSummarySearch.class);
+        return searchForAccountSummariesV4Internal(study.getIdentifier(), search, offsetKey);
+    }
+    
+    public Result getParticipantsForWorkerV4(String studyId, String offsetKey, String pageSizeString,
+            String emailFilter, String phoneFilter, String startTimeString, String endTimeString) {
+        getAuthenticatedSession(WORKER);
+        
+        Study study = studyService.getStudy(studyId);
+        return getParticipantsV4Internal(study.getIdentifier(), offsetKey, pageSizeString, emailFilter, phoneFilter,
+                startTimeString, endTimeString);
+    }
+    
+    /**
+     * Starts exporting the study's participant roster to a gzipped file in the background, and returns the job. Poll
+     * the job until it has finished, then download the file from the job's URL. Format is "csv" (the default) or
+     * "ndjson".
+     */
+    @BodyParser.Of(BodyParser.Empty.class)
+    public Result startRosterExport(String formatString) throws Exception {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        
+        RosterExportJob.Format format = RosterExportJob.Format.CSV;
+        if (formatString != null) {
+            try {
+                format = RosterExportJob.Format.valueOf(formatString.toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                throw new BadRequestException("Invalid roster export format: " + formatString);
+            }
+        }
+        RosterExportJob job = participantRosterExportService.startExport(session.getStudyIdentifier(), format);
+        
+        return status(202, RosterExportJob.PUBLIC_JOB_WRITER.writeValueAsString(job))
+                .as(BridgeConstants.JSON_MIME_TYPE);
+    }
+    
+    /** Gets the roster export job. Once it has succeeded, the job has a presigned URL to download the file from. */
+    public Result getRosterExport(String jobId) throws Exception {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        
+        RosterExportJob job = participantRosterExportService.getJob(session.getStudyIdentifier(), jobId);
+        return okResult(RosterExportJob.PUBLIC_JOB_WRITER, job);
+    }
+    
+    /** Redirects to the presigned URL of the export file, for clients that download from this endpoint. */
+    public Result downloadRosterExport(String jobId) {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        
+        return redirect(participantRosterExportService.getExportUrl(session.getStudyIdentifier(), jobId));
+    }
+    
     public Result createParticipant() throws Exception {
         UserSession session = getAuthenticatedSession(RESEARCHER);
         Study study = studyService.getStudy(session.getStudyIdentifier());
@@ -232,16 +472,20 @@ public class ParticipantController extends BaseController {
         return createdResult(holder);
     }
     
-    public Result getParticipant(String userId, boolean consents) throws Exception {
+    public Result getParticipant(String userId, boolean consents, String fieldsString) throws Exception {
         UserSession session = getAuthenticatedSession(RESEARCHER);
         Study study = studyService.getStudy(session.getStudyIdentifier());
+        Set<String> fields = PartialResponseWriters.parseFields(fieldsString);
 
-        StudyParticipant participant = participantService.getParticipant(study, userId, consents);
+        // Consent histories are the most expensive part of the participant to load, so they're skipped when the
+        // caller didn't ask for them.
+        StudyParticipant participant = participantService.getParticipant(study, userId,
+                consents && PartialResponseWriters.includesField(fields, CONSENT_HISTORIES_FIELD));
 
         ObjectWriter writer = (study.isHealthCodeExportEnabled()) ?
                 StudyParticipant.API_WITH_HEALTH_CODE_WRITER :
                 StudyParticipant.API_NO_HEALTH_CODE_WRITER;
-        String ser = writer.writeValueAsString(participant);
+        String ser = PartialResponseWriters.forFields(writer, fields).writeValueAsString(participant);
 
         return ok(ser).as(BridgeConstants.JSON_MIME_TYPE);
     }
@@ -258,6 +502,82 @@ public class ParticipantController extends BaseController {
         return ok(ser).as(BridgeConstants.JSON_MIME_TYPE);
     }
     
+    /**
+     * Worker API to get many participants of a study in one call. The request body is a JSON array of user IDs. The
+     * study is loaded once, the participants are read in parallel a window at a time, and each window is streamed
+     * back as it completes, as newline-delimited JSON in request order. Each line is a batch item result keyed by
+     * user ID, holding either the participant (with health code) or the error for that user, so one missing user
+     * doesn't fail the others. The stream ends with a status line saying whether every participant was written.
+     */
+    public Result getParticipantsForWorkerBulk(String studyId, boolean consents) throws Exception {
+        getAuthenticatedSession(WORKER);
+        Study study = studyService.getStudy(studyId);
+        
+        List<String> userIdList = MAPPER.convertValue(parseJson(request(), JsonNode.class), USER_ID_LIST_TYPE_REF);
+        if (userIdList == null || userIdList.isEmpty()) {
+            throw new BadRequestException("User IDs must be provided");
+        }
+        // Drop duplicates, keeping the first occurrence of each ID.
+        List<String> uniqueUserIdList = new ArrayList<>(new LinkedHashSet<>(userIdList));
+        if (uniqueUserIdList.size() > MAX_BULK_PARTICIPANTS) {
+            throw new BadRequestException("Cannot get more than " + MAX_BULK_PARTICIPANTS +
+                    " participants at a time");
+        }
+        
+        final String requestId = getRequestId();
+        final RequestContext context = BridgeUtils.getRequestContext();
+        Chunks<String> chunks = new StringChunks() {
+            @Override
+            public void onReady(final Chunks.Out<String> out) {
+                writeParticipants(out, requestId, context, study, uniqueUserIdList, consents);
+            }
+        };
+        return ok(chunks).as(NDJSON_MIME_TYPE);
+    }
+    
+    // The response status has already been sent by the time this runs, so errors other than those of individual
+    // participants are logged and the stream ends with a status line (see streamStatusLine), as report streams do.
+    // Package-scoped for unit tests.
+    void writeParticipants(Chunks.Out<String> out, String requestId, RequestContext context, Study study,
+            List<String> userIdList, boolean consents) {
+        ObjectWriter writer = StudyParticipant.API_WITH_HEALTH_CODE_WRITER;
+        boolean succeeded = false;
+        try {
+            for (List<String> windowUserIdList : Lists.partition(userIdList, BULK_PARTICIPANT_WINDOW_SIZE)) {
+                List<Future<StudyParticipant>> futureList = new ArrayList<>();
+                for (String userId : windowUserIdList) {
+                    futureList.add(bulkRequestExecutorService.submit(withRequestContext(context,
+                            () -> participantService.getParticipant(study, userId, consents))));
+                }
+                
+                StringBuilder chunk = new StringBuilder();
+                for (int i = 0; i < futureList.size(); i++) {
+                    String userId = windowUserIdList.get(i);
+                    BatchItemResult<StudyParticipant> result;
+                    try {
+                        result = BatchItemResult.succeeded(userId, futureList.get(i).get());
+                    } catch (ExecutionException ex) {
+                        result = BatchItemResult.failed(userId, ex.getCause());
+                    }
+                    chunk.append(writer.writeValueAsString(result)).append('\n');
+                }
+                out.write(chunk.toString());
+            }
+            succeeded = true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while streaming participants for request " + requestId, ex);
+        } catch (Exception ex) {
+            LOG.error("Error streaming participants for request " + requestId, ex);
+        } finally {
+            try {
+                out.write(streamStatusLine(requestId, succeeded));
+            } finally {
+                out.close();
+            }
+        }
+    }
+    
     public Result getRequestInfo(String userId) throws Exception {
         UserSession session = getAuthenticatedSession(RESEARCHER);
         Study study = studyService.getStudy(session.getStudyIdentifier());
@@ -426,6 +746,37 @@ public class ParticipantController extends BaseController {
                 + BridgeUtils.COMMA_SPACE_JOINER.join(erroredNotifications) + ".");
     }
 
+    /**
+     * Starts sending a notification to every participant in a segment of the study (data groups and substudies), in
+     * the background, and returns the job. Poll the job for progress and per-platform publish counts; a failed job
+     * can be resumed.
+     */
+    public Result startNotificationFanOut() throws Exception {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        
+        NotificationFanOutRequest request = parseJson(request(), NotificationFanOutRequest.class);
+        NotificationFanOutJob job = notificationFanOutService.startFanOut(session.getStudyIdentifier(), request);
+        
+        return status(202, NotificationFanOutJob.PUBLIC_JOB_WRITER.writeValueAsString(job))
+                .as(BridgeConstants.JSON_MIME_TYPE);
+    }
+    
+    public Result getNotificationFanOut(String jobId) throws Exception {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        
+        NotificationFanOutJob job = notificationFanOutService.getJob(session.getStudyIdentifier(), jobId);
+        return okResult(NotificationFanOutJob.PUBLIC_JOB_WRITER, job);
+    }
+    
+    @BodyParser.Of(BodyParser.Empty.class)
+    public Result resumeNotificationFanOut(String jobId) throws Exception {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        
+        NotificationFanOutJob job = notificationFanOutService.resumeFanOut(session.getStudyIdentifier(), jobId);
+        return status(202, NotificationFanOutJob.PUBLIC_JOB_WRITER.writeValueAsString(job))
+                .as(BridgeConstants.JSON_MIME_TYPE);
+    }
+
     public Result getActivityEvents(String userId) {
         UserSession researcherSession = getAuthenticatedSession(Roles.RESEARCHER);
         Study study = studyService.getStudy(researcherSession.getStudyIdentifier());
@@ -442,6 +793,20 @@ public class ParticipantController extends BaseController {
         return acceptedResult("Message sent.");
     }
 
+    /**
+     * Worker API to send the same SMS message to many participants of a study (up to 100 per request). The study is
+     * loaded once, and the messages are sent in parallel, subject to the study's SMS rate limit. Returns one result
+     * per user.
+     */
+    public Result sendSmsMessagesForWorker(String studyId) {
+        getAuthenticatedSession(WORKER);
+        Study study = studyService.getStudy(studyId);
+        BulkSmsRequest request = parseJson(request(), BulkSmsRequest.class);
+        
+        BulkSmsResult result = bulkSmsService.sendSmsMessages(study, request.getUserIds(), request.getMessage());
+        return okResult(result);
+    }
+
     private Result getParticipantsInternal(Study study, String offsetByString, String pageSizeString,
             String emailFilter, String phoneFilter, String startDateString, String endDateString,
             String startTimeString, String endTimeString) {
@@ -483,6 +848,31 @@ public class ParticipantController extends BaseController {
         return ok(node);
     }
     
+    private Result getParticipantsV4Internal(String studyId, String offsetKey, String pageSizeString,
+            String emailFilter, String phoneFilter, String startTimeString, String endTimeString) {
+        int pageSize = getIntOrDefault(pageSizeString, API_DEFAULT_PAGE_SIZE);
+        if (pageSize < 1 || pageSize > API_MAXIMUM_PAGE_SIZE) {
+            throw new BadRequestException("pageSize must be from 1-" + API_MAXIMUM_PAGE_SIZE + " records");
+        }
+        AccountSummarySearch search = new AccountSummarySearch.Builder()
+                .withPageSize(pageSize)
+                .withEmailFilter(emailFilter)
+                .withPhoneFilter(phoneFilter)
+                .withStartTime(getDateTimeOrDefault(startTimeString, null))
+                .withEndTime(getDateTimeOrDefault(endTimeString, null)).build();
+        return searchForAccountSummariesV4Internal(studyId, search, offsetKey);
+    }
+    
+    private Result searchForAccountSummariesV4Internal(String studyId, AccountSummarySearch search,
+            String offsetKey) {
+        if (search.getPageSize() < 1 || search.getPageSize() > API_MAXIMUM_PAGE_SIZE) {
+            throw new BadRequestException("pageSize must be from 1-" + API_MAXIMUM_PAGE_SIZE + " records");
+        }
+        ForwardCursorPagedResourceList<AccountSummary> page = participantRosterDao.searchAccountSummaries(studyId,
+                search, offsetKey);
+        return okResult(page);
+    }
+    
     private Result getActivityHistoryInternalV2(Study study, String userId, String activityGuid,
             String scheduledOnStartString, String scheduledOnEndString, String offsetBy, String offsetKey,
             String pageSizeString) throws Exception {
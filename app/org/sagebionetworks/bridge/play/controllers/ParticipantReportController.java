@@ -8,13 +8,21 @@ import static org.sagebionetworks.bridge.BridgeUtils.getDateTimeOrDefault;
 import static org.sagebionetworks.bridge.BridgeUtils.getIntOrDefault;
 import static org.sagebionetworks.bridge.BridgeUtils.getLocalDateOrDefault;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
 import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.RequestContext;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.DateRangeResourceList;
 import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.ReportTypeResourceList;
@@ -28,6 +36,8 @@ import org.sagebionetworks.bridge.models.reports.ReportType;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.services.ReportBatchService;
+import org.sagebionetworks.bridge.services.ReportIndexCache;
 import org.sagebionetworks.bridge.services.ReportService;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -54,6 +64,20 @@ public class ParticipantReportController extends BaseController {
         this.reportService = reportService;
     }
     
+    @Autowired
+    ReportBatchService reportBatchService;
+    
+    final void setReportBatchService(ReportBatchService reportBatchService) {
+        this.reportBatchService = reportBatchService;
+    }
+    
+    @Autowired
+    ReportIndexCache reportIndexCache;
+    
+    final void setReportIndexCache(ReportIndexCache reportIndexCache) {
+        this.reportIndexCache = reportIndexCache;
+    }
+    
     public Result getParticipantReportForSelf(String identifier, String startDateString, String endDateString) {
         UserSession session = getAuthenticatedSession();
 
@@ -89,6 +113,7 @@ public class ParticipantReportController extends BaseController {
         
         reportService.saveParticipantReport(session.getStudyIdentifier(), identifier, 
                 session.getHealthCode(), reportData);
+        reportIndexCache.reportSaved(session.getStudyIdentifier(), ReportType.PARTICIPANT, identifier);
         
         return createdResult("Report data saved.");
     }
@@ -99,7 +124,7 @@ public class ParticipantReportController extends BaseController {
     public Result listParticipantReportIndices() {
         UserSession session = getAuthenticatedSession();
         
-        ReportTypeResourceList<? extends ReportIndex> indices = reportService
+        ReportTypeResourceList<? extends ReportIndex> indices = reportIndexCache
                 .getReportIndices(session.getStudyIdentifier(), ReportType.PARTICIPANT);
         return okResult(indices);
     }
@@ -174,6 +199,42 @@ public class ParticipantReportController extends BaseController {
         return okResult(page);
     }
 
+    /**
+     * Streams a participant's report between the given times as NDJSON or CSV, for reading long ranges without 
+     * paging. Reads stop at the row budget (maxRows); the last cursor in the stream resumes the download. See 
+     * {@link ReportStreams} for the format.
+     */
+    public Result streamParticipantReport(String userId, String identifier, String startTimeString,
+            String endTimeString, String offsetKey, String format, String maxRowsString) {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        StudyIdentifier studyId = session.getStudyIdentifier();
+
+        DateTime startTime = getDateTimeOrDefault(startTimeString, null);
+        DateTime endTime = getDateTimeOrDefault(endTimeString, null);
+        boolean csv = ReportStreams.isCsv(format);
+        int maxRows = ReportStreams.parseMaxRows(maxRowsString);
+
+        Account account = accountDao.getAccount(AccountId.forId(studyId.getIdentifier(), userId));
+        if (account == null) {
+            throw new EntityNotFoundException(Account.class);
+        }
+        final String healthCode = account.getHealthCode();
+        ReportStreams.PageReader reader = (pageOffsetKey, pageSize) -> reportService.getParticipantReportV4(studyId,
+                identifier, healthCode, startTime, endTime, pageOffsetKey, pageSize);
+        ForwardCursorPagedResourceList<ReportData> firstPage = ReportStreams.readFirstPage(reader, offsetKey, maxRows);
+
+        final String requestId = getRequestId();
+        final RequestContext context = BridgeUtils.getRequestContext();
+        final String description = "participant report " + identifier + " for request " + requestId;
+        Chunks<String> chunks = new StringChunks() {
+            @Override
+            public void onReady(final Chunks.Out<String> out) {
+                ReportStreams.writeReport(out, requestId, description, context, reader, csv, firstPage, maxRows);
+            }
+        };
+        return ok(chunks).as(ReportStreams.getContentType(csv));
+    }
+
     /**
      * Report participant data can be saved by developers or by worker processes. The JSON for these must 
      * include a healthCode field. This is validated when constructing the DataReportKey.
@@ -189,6 +250,7 @@ public class ParticipantReportController extends BaseController {
         
         reportService.saveParticipantReport(session.getStudyIdentifier(), identifier, 
                 account.getHealthCode(), reportData);
+        reportIndexCache.reportSaved(session.getStudyIdentifier(), ReportType.PARTICIPANT, identifier);
         
         return createdResult("Report data saved.");
     }
@@ -211,10 +273,39 @@ public class ParticipantReportController extends BaseController {
         
         reportService.saveParticipantReport(session.getStudyIdentifier(), identifier, 
                 healthCode, reportData);
+        reportIndexCache.reportSaved(session.getStudyIdentifier(), ReportType.PARTICIPANT, identifier);
         
         return createdResult("Report data saved.");
     }
     
+    /**
+     * Worker API to save many records of one participant report, for backfills. The body is a JSON array of report 
+     * records, each with the health code of its participant. The records are saved with batch writes.
+     */
+    public Result saveParticipantReportsForWorker(String identifier) throws Exception {
+        UserSession session = getAuthenticatedSession(WORKER);
+        
+        JsonNode node = parseJson(request(), JsonNode.class);
+        if (!node.isArray()) {
+            throw new BadRequestException("Report data must be a JSON array.");
+        }
+        Map<String, List<ReportData>> reportDataByHealthCode = new LinkedHashMap<>();
+        for (JsonNode recordNode : node) {
+            if (!recordNode.has("healthCode")) {
+                throw new BadRequestException("A health code is required to save report data.");
+            }
+            String healthCode = recordNode.get("healthCode").asText();
+            ReportData reportData = MAPPER.treeToValue(recordNode, ReportData.class);
+            reportDataByHealthCode.computeIfAbsent(healthCode, key -> new ArrayList<>()).add(reportData);
+        }
+        
+        int count = reportBatchService.saveParticipantReports(session.getStudyIdentifier(), identifier,
+                reportDataByHealthCode);
+        reportIndexCache.reportSaved(session.getStudyIdentifier(), ReportType.PARTICIPANT, identifier);
+        
+        return createdResult("Saved " + count + " report records.");
+    }
+    
     /**
      * Developers and workers can delete participant report data (though worker accounts are unlikely 
      * to know the user ID for records). This deletes all reports for all users. This is not 
@@ -249,6 +340,7 @@ public class ParticipantReportController extends BaseController {
         UserSession session = getAuthenticatedSession(ADMIN);
         
         reportService.deleteParticipantReportIndex(session.getStudyIdentifier(), identifier);
+        reportIndexCache.reload(session.getStudyIdentifier(), ReportType.PARTICIPANT);
         
         return okResult("Report index deleted.");
     }
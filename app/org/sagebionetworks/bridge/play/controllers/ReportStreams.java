@@ -0,0 +1,177 @@
+package org.sagebionetworks.bridge.play.controllers;
+
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MINIMUM_PAGE_SIZE;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.mvc.Results.Chunks;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.ResourceList;
+import org.sagebionetworks.bridge.models.reports.ReportData;
+
+/**
+ * Writes report data as a chunked download, for reading long date ranges without paging by hand. The report is read
+ * a page at a time and each page is written as it's read, so the server holds at most one page in memory.
+ *
+ * In NDJSON format, each record is written as a JSON object on its own line, and after each page except the last a
+ * cursor line of the form {"offsetKey":"...","type":"ReportStreamCursor"} is written. In CSV format, the columns are
+ * date, data (the record's data as JSON) and offsetKey, which is only filled in on the last row of each page. Either
+ * way, a client that loses its connection, or reaches the row budget, passes the last cursor it received as the
+ * offsetKey to resume after the rows it already has. The first page is read before the response starts, and the
+ * stream ends with a line that says whether it finished or failed (see {@link #writeReport}).
+ */
+final class ReportStreams {
+    private static final Logger LOG = LoggerFactory.getLogger(ReportStreams.class);
+
+    private static final ObjectMapper MAPPER = BridgeObjectMapper.get();
+
+    static final String CSV_MIME_TYPE = "text/csv";
+    static final String FORMAT_CSV = "csv";
+    static final String FORMAT_NDJSON = "ndjson";
+    static final String CSV_HEADER = "date,data,offsetKey\n";
+
+    /** Date column of the last row of a CSV stream that ended because of an error. */
+    static final String CSV_ERROR_DATE = "error";
+
+    /** Type of the cursor line written after each page of a streamed report. */
+    static final String STREAM_CURSOR_TYPE = "ReportStreamCursor";
+
+    /** Rows written when the caller doesn't give a row budget, and the largest budget a caller can ask for. */
+    static final int DEFAULT_MAX_ROWS = 10000;
+    static final int MAX_ROWS = 100000;
+
+    /** Reads one page of a report. */
+    @FunctionalInterface
+    interface PageReader {
+        ForwardCursorPagedResourceList<ReportData> read(String offsetKey, int pageSize);
+    }
+
+    private ReportStreams() {
+    }
+
+    /** Returns true if the format parameter asks for CSV. The default format is NDJSON. */
+    static boolean isCsv(String format) {
+        if (format == null || FORMAT_NDJSON.equalsIgnoreCase(format)) {
+            return false;
+        }
+        if (FORMAT_CSV.equalsIgnoreCase(format)) {
+            return true;
+        }
+        throw new BadRequestException("format must be " + FORMAT_NDJSON + " or " + FORMAT_CSV);
+    }
+
+    static String getContentType(boolean csv) {
+        return csv ? CSV_MIME_TYPE : BaseController.NDJSON_MIME_TYPE;
+    }
+
+    static int parseMaxRows(String maxRowsString) {
+        int maxRows = BridgeUtils.getIntOrDefault(maxRowsString, DEFAULT_MAX_ROWS);
+        if (maxRows < API_MINIMUM_PAGE_SIZE || maxRows > MAX_ROWS) {
+            throw new BadRequestException("maxRows must be from " + API_MINIMUM_PAGE_SIZE + "-" + MAX_ROWS);
+        }
+        return maxRows;
+    }
+
+    /**
+     * Reads the first page of the report, sized to the row budget. Callers read it on the request thread before
+     * responding, so a bad offset key or time range, or a failed read, is returned as an error status instead of
+     * ending a stream that has already started.
+     */
+    static ForwardCursorPagedResourceList<ReportData> readFirstPage(PageReader reader, String offsetKey,
+            int maxRows) {
+        return reader.read(offsetKey, pageSize(maxRows));
+    }
+
+    /**
+     * Writes the report to the chunked output, starting with the first page, until the report ends or the row
+     * budget is reached. Pages are sized to the rows remaining in the budget, but can't be smaller than the minimum
+     * page size, so the last page can take the stream a few rows over the budget. Later pages are read with the
+     * request context of the request thread.
+     *
+     * The response status has already been sent by the time this runs, so the stream ends with a status line (see
+     * {@link BaseController#streamStatusLine}) in NDJSON format. In CSV format, a stream that fails ends with a row
+     * whose date is "error" and whose data is the error message; a CSV stream without that row is complete.
+     */
+    static void writeReport(Chunks.Out<String> out, String requestId, String description, RequestContext context,
+            PageReader reader, boolean csv, ForwardCursorPagedResourceList<ReportData> firstPage, int maxRows) {
+        boolean succeeded = false;
+        try {
+            if (csv) {
+                out.write(CSV_HEADER);
+            }
+            ForwardCursorPagedResourceList<ReportData> page = firstPage;
+            int remaining = maxRows;
+            while (true) {
+                final String offsetKey = page.getNextPageOffsetKey();
+                remaining -= page.getItems().size();
+
+                String chunk = csv ? toCsvChunk(page.getItems(), offsetKey) : toNdjsonChunk(page.getItems(), offsetKey);
+                if (!chunk.isEmpty()) {
+                    out.write(chunk);
+                }
+                if (offsetKey == null || remaining <= 0) {
+                    break;
+                }
+                final int pageSize = pageSize(remaining);
+                page = BaseController.withRequestContext(context, () -> reader.read(offsetKey, pageSize)).call();
+            }
+            succeeded = true;
+        } catch (Exception ex) {
+            LOG.error("Error streaming " + description, ex);
+        } finally {
+            try {
+                if (!csv) {
+                    out.write(BaseController.streamStatusLine(requestId, succeeded));
+                } else if (!succeeded) {
+                    out.write(CSV_ERROR_DATE + "," +
+                            StringEscapeUtils.escapeCsv(BaseController.streamErrorMessage(requestId)) + ",\n");
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static int pageSize(int remaining) {
+        return Math.max(API_MINIMUM_PAGE_SIZE, Math.min(remaining, API_MAXIMUM_PAGE_SIZE));
+    }
+
+    private static String toNdjsonChunk(List<ReportData> items, String offsetKey) throws Exception {
+        StringBuilder chunk = new StringBuilder();
+        for (ReportData reportData : items) {
+            chunk.append(MAPPER.writeValueAsString(reportData)).append('\n');
+        }
+        if (offsetKey != null) {
+            ObjectNode cursor = MAPPER.createObjectNode();
+            cursor.put(ResourceList.OFFSET_KEY, offsetKey);
+            cursor.put("type", STREAM_CURSOR_TYPE);
+            chunk.append(MAPPER.writeValueAsString(cursor)).append('\n');
+        }
+        return chunk.toString();
+    }
+
+    private static String toCsvChunk(List<ReportData> items, String offsetKey) throws Exception {
+        StringBuilder chunk = new StringBuilder();
+        for (int i = 0; i < items.size(); i++) {
+            ReportData reportData = items.get(i);
+            chunk.append(StringEscapeUtils.escapeCsv(reportData.getDate())).append(',');
+            chunk.append(StringEscapeUtils.escapeCsv(MAPPER.writeValueAsString(reportData.getData()))).append(',');
+            if (i == items.size() - 1 && offsetKey != null) {
+                chunk.append(StringEscapeUtils.escapeCsv(offsetKey));
+            }
+            chunk.append('\n');
+        }
+        return chunk.toString();
+    }
+}
@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.play.controllers;
 
 import static org.sagebionetworks.bridge.BridgeUtils.getDateTimeOrDefault;
 import static org.sagebionetworks.bridge.BridgeUtils.getIntOrDefault;
+import static org.sagebionetworks.bridge.Roles.WORKER;
 import static org.sagebionetworks.bridge.models.ResourceList.OFFSET_BY;
 
 import java.util.ArrayList;
@@ -22,8 +23,11 @@ import org.sagebionetworks.bridge.models.ResourceList;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.schedules.ActivityType;
 import org.sagebionetworks.bridge.models.schedules.ScheduleContext;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationRequest;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationResult;
 import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
 import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.services.ScheduleEvaluationService;
 import org.sagebionetworks.bridge.services.ScheduledActivityService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -33,6 +37,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import play.mvc.BodyParser;
 import play.mvc.Result;
 
 @Controller
@@ -42,12 +47,22 @@ public class ScheduledActivityController extends BaseController {
     private static final String MISSING_TIMESTAMP_ERROR = "startsOn and endsOn are both required and must be ISO 8601 timestamps.";
     private static final String AMBIGUOUS_TIMEZONE_ERROR = "startsOn and endsOn must be in the same time zone.";
 
+    /** Largest schedule evaluation request body, big enough for the most participants a request can have. */
+    static final int MAX_EVALUATION_REQUEST_BYTES = 32 * 1024 * 1024;
+
     private ScheduledActivityService scheduledActivityService;
 
+    private ScheduleEvaluationService scheduleEvaluationService;
+
     @Autowired
     public void setScheduledActivityService(ScheduledActivityService scheduledActivityService) {
         this.scheduledActivityService = scheduledActivityService;
     }
+
+    @Autowired
+    public void setScheduleEvaluationService(ScheduleEvaluationService scheduleEvaluationService) {
+        this.scheduleEvaluationService = scheduleEvaluationService;
+    }
     
     @Deprecated
     public Result getTasks(String untilString, String offset, String daysAhead) throws Exception {
@@ -131,6 +146,20 @@ public class ScheduledActivityController extends BaseController {
         return okResult(ScheduledActivity.SCHEDULED_ACTIVITY_WRITER, results);
     }
 
+    /**
+     * Worker API to evaluate the schedules of many participants of a study at once. Participants are grouped by
+     * schedule signature, and each group is returned with the activities its participants are scheduled for.
+     */
+    @BodyParser.Of(value = BodyParser.Json.class, maxLength = MAX_EVALUATION_REQUEST_BYTES)
+    public Result evaluateSchedulesForWorker(String studyId) throws Exception {
+        getAuthenticatedSession(WORKER);
+        Study study = studyService.getStudy(studyId);
+        
+        ScheduleEvaluationRequest request = parseJson(request(), ScheduleEvaluationRequest.class);
+        ScheduleEvaluationResult result = scheduleEvaluationService.evaluateSchedules(study, request);
+        return okResult(ScheduledActivity.SCHEDULED_ACTIVITY_WRITER, result);
+    }
+
     public Result updateScheduledActivities() throws Exception {
         UserSession session = getAuthenticatedAndConsentedSession();
 
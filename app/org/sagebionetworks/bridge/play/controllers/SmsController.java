@@ -10,6 +10,7 @@ import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.sms.SmsMessage;
 import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.services.BulkSmsService;
 import org.sagebionetworks.bridge.services.ParticipantService;
 import org.sagebionetworks.bridge.services.SmsService;
 
@@ -20,6 +21,7 @@ import org.sagebionetworks.bridge.services.SmsService;
 public class SmsController extends BaseController {
     private ParticipantService participantService;
     private SmsService smsService;
+    private BulkSmsService bulkSmsService;
 
     /** Participant service, used to get a phone number for an account. */
     @Autowired
@@ -33,6 +35,12 @@ public class SmsController extends BaseController {
         this.smsService = smsService;
     }
 
+    /** Bulk SMS service, for dispatch metrics. */
+    @Autowired
+    public final void setBulkSmsService(BulkSmsService bulkSmsService) {
+        this.bulkSmsService = bulkSmsService;
+    }
+
     /** Returns the most recent message sent to the phone number of the given user. Used by integration tests. */
     public Result getMostRecentMessage(String userId) {
         UserSession session = getAuthenticatedSession(Roles.ADMIN);
@@ -48,4 +56,10 @@ public class SmsController extends BaseController {
         SmsMessage message = smsService.getMostRecentMessage(participant.getPhone().getNumber());
         return okResult(message);
     }
+
+    /** Returns this server's bulk SMS dispatch metrics (counts, queue depth, provider latency and throughput). */
+    public Result getDispatchMetrics() {
+        getAuthenticatedSession(Roles.ADMIN);
+        return okResult(bulkSmsService.getMetrics());
+    }
 }
@@ -13,6 +13,7 @@ import org.sagebionetworks.bridge.models.subpopulations.StudyConsentForm;
 import org.sagebionetworks.bridge.models.subpopulations.StudyConsentView;
 import org.sagebionetworks.bridge.models.subpopulations.Subpopulation;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+import org.sagebionetworks.bridge.services.ConsentStatusCache;
 import org.sagebionetworks.bridge.services.StudyConsentService;
 import org.sagebionetworks.bridge.services.SubpopulationService;
 
@@ -28,6 +29,8 @@ public class StudyConsentController extends BaseController {
     private StudyConsentService studyConsentService;
     
     private SubpopulationService subpopService;
+    
+    private ConsentStatusCache consentStatusCache;
 
     @Autowired
     final void setStudyConsentService(StudyConsentService studyConsentService) {
@@ -39,6 +42,11 @@ public class StudyConsentController extends BaseController {
         this.subpopService = subpopService;
     }
 
+    @Autowired
+    final void setConsentStatusCache(ConsentStatusCache consentStatusCache) {
+        this.consentStatusCache = consentStatusCache;
+    }
+
     // V1 API: consents directly associated to a study
     
     @Deprecated
@@ -152,6 +160,8 @@ public class StudyConsentController extends BaseController {
 
         long timestamp = DateUtils.convertToMillisFromEpoch(createdOn);
         studyConsentService.publishConsent(study, subpop, timestamp);
+        // Statuses record whether the most recently published consent was signed.
+        consentStatusCache.subpopulationsChanged(study.getStudyIdentifier());
         return okResult("Consent document set as active.");
     }
     
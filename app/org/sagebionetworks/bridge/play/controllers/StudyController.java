@@ -1,5 +1,6 @@
 package org.sagebionetworks.bridge.play.controllers;
 
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
 import static org.sagebionetworks.bridge.Roles.ADMIN;
 import static org.sagebionetworks.bridge.Roles.DEVELOPER;
 import static org.sagebionetworks.bridge.Roles.RESEARCHER;
@@ -13,9 +14,13 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import play.libs.Json;
@@ -46,6 +51,13 @@ import org.sagebionetworks.bridge.services.UploadService;
 
 @Controller
 public class StudyController extends BaseController {
+    private static final Logger LOG = LoggerFactory.getLogger(StudyController.class);
+
+    /** Type of the cursor line written after each page of a streamed upload list. */
+    static final String STREAM_CURSOR_TYPE = "UploadStreamCursor";
+
+    /** Base writer for partial study responses. Partial writers are cached per base writer, so this is shared. */
+    private static final ObjectWriter STUDY_WRITER = MAPPER.writer();
 
     private final Comparator<Study> STUDY_COMPARATOR = new Comparator<Study>() {
         public int compare(Study study1, Study study2) {
@@ -77,11 +89,12 @@ public class StudyController extends BaseController {
         this.uploadService = uploadService;
     }
 
-    public Result getCurrentStudy() throws Exception {
+    public Result getCurrentStudy(String fieldsString) throws Exception {
         UserSession session = getAuthenticatedSession(DEVELOPER, RESEARCHER, ADMIN);
+        Set<String> fields = PartialResponseWriters.parseFields(fieldsString);
         Study study = studyService.getStudy(session.getStudyIdentifier());
 
-        return okResult(study);
+        return okResult(PartialResponseWriters.forFields(STUDY_WRITER, fields), study);
     }
 
     public Result updateStudyForDeveloper() throws Exception {
@@ -260,4 +273,85 @@ public class StudyController extends BaseController {
 
         return okResult(uploads);
     }
+
+    /** Streams all uploads in the caller's study between the given times. See {@link #streamUploadsForStudy}. */
+    public Result streamUploads(String startTimeString, String endTimeString, String offsetKey) {
+        UserSession session = getAuthenticatedSession(ADMIN);
+        return streamUploadsInternal(session.getStudyIdentifier(), startTimeString, endTimeString, offsetKey);
+    }
+
+    /**
+     * Streams all uploads in the given study between the given times as newline-delimited JSON in a chunked
+     * response. Uploads are read from the study index a page at a time and written as each page is read, so the
+     * server holds at most one page in memory. After each page except the last, a cursor line of the form
+     * {"offsetKey":"...","type":"UploadStreamCursor"} is written; a client that loses its connection can pass the
+     * last cursor it received as the offsetKey to resume after the uploads it has already seen. The stream ends with
+     * a status line saying whether all the uploads were written.
+     */
+    public Result streamUploadsForStudy(String studyIdString, String startTimeString, String endTimeString,
+            String offsetKey) throws EntityNotFoundException {
+        getAuthenticatedSession(WORKER);
+        return streamUploadsInternal(new StudyIdentifierImpl(studyIdString), startTimeString, endTimeString,
+                offsetKey);
+    }
+
+    // The first page is read on the request thread, so an invalid time range or offset key, or an error reading the
+    // index, gets the usual error response instead of an empty stream.
+    private Result streamUploadsInternal(StudyIdentifier studyId, String startTimeString, String endTimeString,
+            String offsetKey) {
+        DateTime startTime = BridgeUtils.getDateTimeOrDefault(startTimeString, null);
+        DateTime endTime = BridgeUtils.getDateTimeOrDefault(endTimeString, null);
+
+        final String requestId = getRequestId();
+        final ForwardCursorPagedResourceList<UploadView> firstPage = uploadService.getStudyUploads(studyId,
+                startTime, endTime, API_MAXIMUM_PAGE_SIZE, offsetKey);
+        Chunks<String> chunks = new StringChunks() {
+            @Override
+            public void onReady(final Chunks.Out<String> out) {
+                writeUploads(out, requestId, studyId, startTime, endTime, firstPage);
+            }
+        };
+        return ok(chunks).as(NDJSON_MIME_TYPE);
+    }
+
+    // Writes the first page, then reads and writes the rest a page at a time. The response status has already been
+    // sent by the time this runs, so an error is logged and reported in the final status line. Package-scoped for
+    // unit tests.
+    void writeUploads(Chunks.Out<String> out, String requestId, StudyIdentifier studyId, DateTime startTime,
+            DateTime endTime, ForwardCursorPagedResourceList<UploadView> firstPage) {
+        boolean succeeded = false;
+        try {
+            ForwardCursorPagedResourceList<UploadView> page = firstPage;
+            while (true) {
+                String offsetKey = page.getNextPageOffsetKey();
+
+                StringBuilder chunk = new StringBuilder();
+                for (UploadView upload : page.getItems()) {
+                    chunk.append(MAPPER.writeValueAsString(upload)).append('\n');
+                }
+                if (offsetKey != null) {
+                    ObjectNode cursor = MAPPER.createObjectNode();
+                    cursor.put(ResourceList.OFFSET_KEY, offsetKey);
+                    cursor.put("type", STREAM_CURSOR_TYPE);
+                    chunk.append(MAPPER.writeValueAsString(cursor)).append('\n');
+                }
+                if (chunk.length() > 0) {
+                    out.write(chunk.toString());
+                }
+                if (offsetKey == null) {
+                    break;
+                }
+                page = uploadService.getStudyUploads(studyId, startTime, endTime, API_MAXIMUM_PAGE_SIZE, offsetKey);
+            }
+            succeeded = true;
+        } catch (Exception ex) {
+            LOG.error("Error streaming uploads for study " + studyId.getIdentifier() + ", request " + requestId, ex);
+        } finally {
+            try {
+                out.write(streamStatusLine(requestId, succeeded));
+            } finally {
+                out.close();
+            }
+        }
+    }
 }
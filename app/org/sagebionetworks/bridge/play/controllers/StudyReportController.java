@@ -6,14 +6,28 @@ import static org.sagebionetworks.bridge.BridgeUtils.getLocalDateOrDefault;
 import static org.sagebionetworks.bridge.BridgeUtils.getDateTimeOrDefault;
 import static org.sagebionetworks.bridge.BridgeUtils.getIntOrDefault;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.annotation.Resource;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
 import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.ViewCache;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.DateRangeResourceList;
 import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
@@ -22,10 +36,14 @@ import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.reports.ReportData;
 import org.sagebionetworks.bridge.models.reports.ReportDataKey;
 import org.sagebionetworks.bridge.models.reports.ReportIndex;
+import org.sagebionetworks.bridge.models.reports.PublicReportView;
 import org.sagebionetworks.bridge.models.reports.ReportType;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.services.ReportBatchService;
+import org.sagebionetworks.bridge.services.ReportIndexCache;
 import org.sagebionetworks.bridge.services.ReportService;
+import org.sagebionetworks.bridge.time.DateUtils;
 
 import play.mvc.Result;
 
@@ -41,13 +59,47 @@ import play.mvc.Result;
 @Controller
 public class StudyReportController extends BaseController {
     
+    static final TypeReference<List<ReportData>> REPORT_DATA_LIST_TYPE_REF = new TypeReference<List<ReportData>>() {};
+    
+    /**
+     * How long a CDN or browser may reuse a public report response. This is kept short because, unlike the server's 
+     * own cache, downstream caches aren't cleared when the report changes.
+     */
+    static final int PUBLIC_REPORT_MAX_AGE_SECONDS = 60;
+    
+    static final String PUBLIC_REPORT_CACHE_CONTROL = "public, max-age=" + PUBLIC_REPORT_MAX_AGE_SECONDS;
+    
+    static final DateTimeFormatter HTTP_DATE_FORMATTER = DateTimeFormat
+            .forPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'").withZoneUTC().withLocale(Locale.US);
+    
     @Autowired
     ReportService reportService;
     
+    @Autowired
+    ReportBatchService reportBatchService;
+    
+    @Autowired
+    ReportIndexCache reportIndexCache;
+    
+    private ViewCache viewCache;
+    
     final void setReportService(ReportService reportService) {
         this.reportService = reportService;
     }
     
+    final void setReportBatchService(ReportBatchService reportBatchService) {
+        this.reportBatchService = reportBatchService;
+    }
+    
+    final void setReportIndexCache(ReportIndexCache reportIndexCache) {
+        this.reportIndexCache = reportIndexCache;
+    }
+    
+    @Resource(name = "genericViewCache")
+    final void setViewCache(ViewCache viewCache) {
+        this.viewCache = viewCache;
+    }
+    
     /**
      * Get a list of the identifiers used for reports in this study. For backwards compatibility this method 
      * takes an argument and can return participants, but there is now a separate endpoint for that.
@@ -56,7 +108,8 @@ public class StudyReportController extends BaseController {
         UserSession session = getAuthenticatedSession();
         ReportType reportType = ("participant".equals(type)) ? ReportType.PARTICIPANT : ReportType.STUDY;
         
-        ReportTypeResourceList<? extends ReportIndex> indices = reportService.getReportIndices(session.getStudyIdentifier(), reportType);
+        ReportTypeResourceList<? extends ReportIndex> indices = reportIndexCache.getReportIndices(
+                session.getStudyIdentifier(), reportType);
         return okResult(indices);
     }
     
@@ -80,21 +133,18 @@ public class StudyReportController extends BaseController {
      * Get a study report *if* it is marked public, as this call does not require the user to be authenticated.
      */
     public Result getPublicStudyReport(String studyIdString, String identifier, String startDateString,
-            String endDateString) {
+            String endDateString) throws Exception {
         StudyIdentifier studyId = new StudyIdentifierImpl(studyIdString);
 
-        verifyIndexIsPublic(studyId, identifier);
-        // We do not want to inherit a user's session information, if a session token is being 
-        // passed to this method.
-        BridgeUtils.setRequestContext(RequestContext.NULL_INSTANCE);
-
         LocalDate startDate = getLocalDateOrDefault(startDateString, null);
         LocalDate endDate = getLocalDateOrDefault(endDateString, null);
         
-        DateRangeResourceList<? extends ReportData> results = reportService.getStudyReport(
-                studyId, identifier, startDate, endDate);
+        // Missing dates default relative to today, so those requests can't share a cached view.
+        CacheKey cacheKey = (startDate == null || endDate == null) ? null : CacheKey.viewKey(PublicReportView.class,
+                studyId.getIdentifier(), identifier, "v3", startDate.toString(), endDate.toString());
         
-        return okResult(results);
+        return publicReportResult(studyId, identifier, cacheKey, () -> reportService.getStudyReport(
+                studyId, identifier, startDate, endDate));
     }
     
     /**
@@ -115,26 +165,56 @@ public class StudyReportController extends BaseController {
         return okResult(results);
     }
     
+    /**
+     * Streams a study report between the given times as NDJSON or CSV, for reading long ranges without paging. 
+     * Reads stop at the row budget (maxRows); the last cursor in the stream resumes the download. See 
+     * {@link ReportStreams} for the format.
+     */
+    public Result streamStudyReport(String identifier, String startTimeString, String endTimeString, String offsetKey,
+            String format, String maxRowsString) {
+        UserSession session = getAuthenticatedSession();
+        StudyIdentifier studyId = session.getStudyIdentifier();
+        
+        DateTime startTime = getDateTimeOrDefault(startTimeString, null);
+        DateTime endTime = getDateTimeOrDefault(endTimeString, null);
+        boolean csv = ReportStreams.isCsv(format);
+        int maxRows = ReportStreams.parseMaxRows(maxRowsString);
+        
+        ReportStreams.PageReader reader = (pageOffsetKey, pageSize) -> reportService.getStudyReportV4(studyId,
+                identifier, startTime, endTime, pageOffsetKey, pageSize);
+        ForwardCursorPagedResourceList<ReportData> firstPage = ReportStreams.readFirstPage(reader, offsetKey, maxRows);
+        
+        final String requestId = getRequestId();
+        final RequestContext context = BridgeUtils.getRequestContext();
+        final String description = "study report " + identifier + " for study " + studyId.getIdentifier() + 
+                ", request " + requestId;
+        Chunks<String> chunks = new StringChunks() {
+            @Override
+            public void onReady(final Chunks.Out<String> out) {
+                ReportStreams.writeReport(out, requestId, description, context, reader, csv, firstPage, maxRows);
+            }
+        };
+        return ok(chunks).as(ReportStreams.getContentType(csv));
+    }
+    
     /**
      * Get a study report *if* it is marked public, as this call does not require the user to be authenticated.
      */
     public Result getPublicStudyReportV4(String studyIdString, String identifier, String startTimeString,
-            String endTimeString, String offsetKey, String pageSizeString) {
+            String endTimeString, String offsetKey, String pageSizeString) throws Exception {
         StudyIdentifier studyId = new StudyIdentifierImpl(studyIdString);
 
-        verifyIndexIsPublic(studyId, identifier);
-        // We do not want to inherit a user's session information, if a session token is being 
-        // passed to this method.
-        BridgeUtils.setRequestContext(RequestContext.NULL_INSTANCE);
-
         DateTime startTime = getDateTimeOrDefault(startTimeString, null);
         DateTime endTime = getDateTimeOrDefault(endTimeString, null);
         int pageSize = getIntOrDefault(pageSizeString, BridgeConstants.API_DEFAULT_PAGE_SIZE);
         
-        ForwardCursorPagedResourceList<ReportData> results = reportService.getStudyReportV4(studyId, identifier,
-                startTime, endTime, offsetKey, pageSize);
+        // Missing times default relative to now, so those requests can't share a cached view.
+        CacheKey cacheKey = (startTime == null || endTime == null) ? null : CacheKey.viewKey(PublicReportView.class,
+                studyId.getIdentifier(), identifier, "v4", startTime.toString(), endTime.toString(),
+                Objects.toString(offsetKey, ""), Integer.toString(pageSize));
         
-        return okResult(results);
+        return publicReportResult(studyId, identifier, cacheKey, () -> reportService.getStudyReportV4(studyId,
+                identifier, startTime, endTime, offsetKey, pageSize));
     }    
     
     /**
@@ -147,6 +227,8 @@ public class StudyReportController extends BaseController {
         reportData.setKey(null); // set in service, but just so no future use depends on it
         
         reportService.saveStudyReport(session.getStudyIdentifier(), identifier, reportData);
+        reportIndexCache.reportSaved(session.getStudyIdentifier(), ReportType.STUDY, identifier);
+        removePublicReportViews(session.getStudyIdentifier(), identifier);
         
         return createdResult("Report data saved.");
     }
@@ -162,10 +244,33 @@ public class StudyReportController extends BaseController {
 
         StudyIdentifier studyId = new StudyIdentifierImpl(studyIdString);
         reportService.saveStudyReport(studyId, identifier, reportData);
+        reportIndexCache.reportSaved(studyId, ReportType.STUDY, identifier);
+        removePublicReportViews(studyId, identifier);
 
         return createdResult("Report data saved.");
     }
     
+    /**
+     * Worker API to save many records of one study report, for backfills. The body is a JSON array of report 
+     * records. The records are saved with batch writes.
+     */
+    public Result saveStudyReportsForWorker(String studyIdString, String identifier) throws Exception {
+        getAuthenticatedSession(WORKER);
+        
+        JsonNode node = parseJson(request(), JsonNode.class);
+        if (!node.isArray()) {
+            throw new BadRequestException("Report data must be a JSON array.");
+        }
+        List<ReportData> reportDataList = MAPPER.convertValue(node, REPORT_DATA_LIST_TYPE_REF);
+        
+        StudyIdentifier studyId = new StudyIdentifierImpl(studyIdString);
+        int count = reportBatchService.saveStudyReports(studyId, identifier, reportDataList);
+        reportIndexCache.reportSaved(studyId, ReportType.STUDY, identifier);
+        removePublicReportViews(studyId, identifier);
+        
+        return createdResult("Saved " + count + " report records.");
+    }
+    
     /**
      * Developers and workers can delete study report data. This is not performant for large data sets and 
      * should only be done during testing.
@@ -174,6 +279,8 @@ public class StudyReportController extends BaseController {
         UserSession session = getAuthenticatedSession(DEVELOPER, WORKER);
         
         reportService.deleteStudyReport(session.getStudyIdentifier(), identifier);
+        reportIndexCache.reload(session.getStudyIdentifier(), ReportType.STUDY);
+        removePublicReportViews(session.getStudyIdentifier(), identifier);
         
         return okResult("Report deleted.");
     }
@@ -185,6 +292,7 @@ public class StudyReportController extends BaseController {
         UserSession session = getAuthenticatedSession(DEVELOPER, WORKER);
         
         reportService.deleteStudyReportRecord(session.getStudyIdentifier(), identifier, dateString);
+        removePublicReportViews(session.getStudyIdentifier(), identifier);
         
         return okResult("Report record deleted.");
     }
@@ -219,10 +327,78 @@ public class StudyReportController extends BaseController {
         index.setIdentifier(identifier);
         
         reportService.updateReportIndex(session.getStudyIdentifier(), ReportType.STUDY, index);
+        reportIndexCache.reload(session.getStudyIdentifier(), ReportType.STUDY);
+        // The report may no longer be public.
+        removePublicReportViews(session.getStudyIdentifier(), identifier);
         
         return okResult("Report index updated.");
     }
 
+    /**
+     * Public reports are polled by dashboards, so pages are kept in the view cache until the report changes, and the 
+     * response can be cached by a CDN for a short while. The index is only checked when a page is read from the 
+     * database; when an index is updated, the cached pages of its report are removed. A null cache key means the
+     * request can't be cached, and its page is read from the database every time.
+     */
+    private Result publicReportResult(StudyIdentifier studyId, String identifier, CacheKey cacheKey,
+            Supplier<?> resultsSupplier) throws Exception {
+        PublicReportView view;
+        if (cacheKey == null) {
+            view = loadPublicReportView(studyId, identifier, resultsSupplier);
+        } else {
+            String json = viewCache.getView(cacheKey, () -> {
+                PublicReportView loadedView = loadPublicReportView(studyId, identifier, resultsSupplier);
+                // Keep track of the report's cached pages, so they can all be deleted when it changes
+                cacheProvider.addCacheKeyToSet(publicReportViewsKey(studyId, identifier), cacheKey.toString());
+                return loadedView;
+            });
+            view = MAPPER.readValue(json, PublicReportView.class);
+        }
+        // HTTP dates have a resolution of seconds.
+        DateTime lastModified = view.getCachedOn().withMillisOfSecond(0);
+        
+        response().setHeader(CACHE_CONTROL, PUBLIC_REPORT_CACHE_CONTROL);
+        response().setHeader(LAST_MODIFIED, HTTP_DATE_FORMATTER.print(lastModified));
+        
+        DateTime ifModifiedSince = parseHttpDate(request().getHeader(IF_MODIFIED_SINCE));
+        if (ifModifiedSince != null && !lastModified.isAfter(ifModifiedSince)) {
+            return status(NOT_MODIFIED);
+        }
+        return ok(MAPPER.writeValueAsString(view.getResults())).as(BridgeConstants.JSON_MIME_TYPE);
+    }
+    
+    private PublicReportView loadPublicReportView(StudyIdentifier studyId, String identifier,
+            Supplier<?> resultsSupplier) {
+        verifyIndexIsPublic(studyId, identifier);
+        // We do not want to inherit a user's session information, if a session token is being 
+        // passed to this method.
+        BridgeUtils.setRequestContext(RequestContext.NULL_INSTANCE);
+        
+        return new PublicReportView(DateUtils.getCurrentDateTime(), MAPPER.valueToTree(resultsSupplier.get()));
+    }
+    
+    private void removePublicReportViews(StudyIdentifier studyId, String identifier) {
+        cacheProvider.removeSetOfCacheKeys(publicReportViewsKey(studyId, identifier));
+    }
+    
+    private static CacheKey publicReportViewsKey(StudyIdentifier studyId, String identifier) {
+        return CacheKey.viewKey(PublicReportView.class, studyId.getIdentifier(), identifier, "keys");
+    }
+    
+    // Clients and CDNs send back the Last-Modified value they were given; anything unparseable is ignored.
+    private static DateTime parseHttpDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return HTTP_DATE_FORMATTER.parseDateTime(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    // Read from DynamoDB rather than the index listing, which other servers may hold for a while after the report is
+    // made private. This only runs when a page isn't in the view cache, and updating an index removes the pages.
     private void verifyIndexIsPublic(final StudyIdentifier studyId, final String identifier) {
         ReportDataKey key = new ReportDataKey.Builder()
                 .withIdentifier(identifier)
@@ -15,6 +15,7 @@ import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.subpopulations.Subpopulation;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+import org.sagebionetworks.bridge.services.ConsentStatusCache;
 import org.sagebionetworks.bridge.services.SubpopulationService;
 
 import play.mvc.Result;
@@ -24,10 +25,17 @@ public class SubpopulationController extends BaseController {
     
     private SubpopulationService subpopService;
     
+    private ConsentStatusCache consentStatusCache;
+    
     @Autowired
     public final void setSubpopulationService(SubpopulationService subpopService) {
         this.subpopService = subpopService;
     }
+    
+    @Autowired
+    final void setConsentStatusCache(ConsentStatusCache consentStatusCache) {
+        this.consentStatusCache = consentStatusCache;
+    }
 
     public Result getAllSubpopulations(String includeDeleted) throws Exception {
         UserSession session = getAuthenticatedSession(DEVELOPER);
@@ -43,6 +51,7 @@ public class SubpopulationController extends BaseController {
         
         Subpopulation subpop = parseJson(request(), Subpopulation.class);
         subpop = subpopService.createSubpopulation(study, subpop);
+        consentStatusCache.subpopulationsChanged(study.getStudyIdentifier());
         
         return createdResult(new GuidVersionHolder(subpop.getGuidString(), subpop.getVersion()));
     }
@@ -54,6 +63,7 @@ public class SubpopulationController extends BaseController {
         subpop.setGuidString(guid);
         
         subpop = subpopService.updateSubpopulation(study, subpop);
+        consentStatusCache.subpopulationsChanged(study.getStudyIdentifier());
         
         return okResult(new GuidVersionHolder(subpop.getGuidString(), subpop.getVersion()));
     }
@@ -75,7 +85,14 @@ public class SubpopulationController extends BaseController {
         } else {
             subpopService.deleteSubpopulation(session.getStudyIdentifier(), subpopGuid);
         }
+        consentStatusCache.subpopulationsChanged(session.getStudyIdentifier());
         return okResult("Subpopulation has been deleted.");
     }
+    
+    /** Returns this server's consent status cache use. */
+    public Result getConsentStatusCacheMetrics() {
+        getAuthenticatedSession(ADMIN);
+        return okResult(consentStatusCache.getMetrics());
+    }
 
 }
@@ -0,0 +1,47 @@
+package org.sagebionetworks.bridge.play.controllers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+/**
+ * Compact forms of surveys and upload schemas for listings, where the caller asks for <code>summary=true</code>.
+ * Listing UIs only show names, identifiers and dates, so a summary keeps those properties (and "type") and drops
+ * survey elements, schema field definitions and everything else. Each summary is written by the same writer as the
+ * full object, so it can't expose a property the full object hides.
+ */
+final class SummaryProjections {
+    static final Set<String> SURVEY_SUMMARY_FIELDS = ImmutableSet.of("guid", "createdOn", "modifiedOn", "version",
+            "name", "identifier", "published", "deleted", "schemaRevision", "type");
+
+    static final Set<String> SCHEMA_SUMMARY_FIELDS = ImmutableSet.of("schemaId", "revision", "name", "schemaType",
+            "moduleId", "moduleVersion", "published", "deleted", "version", "surveyGuid", "surveyCreatedOn",
+            "type");
+
+    private SummaryProjections() {
+    }
+
+    /** True if the summary query parameter asks for summaries. The default is the full objects. */
+    static boolean isSummary(String summaryString) {
+        return Boolean.valueOf(summaryString);
+    }
+
+    /** Writes the items with the writer, and keeps only the summary fields of each. */
+    static List<JsonNode> toSummaries(ObjectWriter writer, List<?> items, Set<String> summaryFields)
+            throws IOException {
+        JsonNode itemsNode = BridgeObjectMapper.get().readTree(writer.writeValueAsString(items));
+        ImmutableList.Builder<JsonNode> summaries = ImmutableList.builder();
+        for (JsonNode itemNode : itemsNode) {
+            summaries.add(((ObjectNode) itemNode).retain(summaryFields));
+        }
+        return summaries.build();
+    }
+}
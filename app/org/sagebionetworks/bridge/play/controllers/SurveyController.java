@@ -6,12 +6,14 @@ import static org.sagebionetworks.bridge.Roles.DEVELOPER;
 import static org.sagebionetworks.bridge.Roles.RESEARCHER;
 import static org.sagebionetworks.bridge.Roles.WORKER;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.annotation.Resource;
 
 import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.cache.ViewCache;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.cache.CacheKey;
 import org.sagebionetworks.bridge.time.DateUtils;
@@ -21,7 +23,10 @@ import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.services.SurveyBatchService;
+import org.sagebionetworks.bridge.services.SurveyCacheWarmer;
 import org.sagebionetworks.bridge.services.SurveyService;
+import org.sagebionetworks.bridge.services.WorkerSurveyCache;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -29,43 +34,64 @@ import org.springframework.stereotype.Controller;
 import play.mvc.BodyParser;
 import play.mvc.Result;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Supplier;
 
 @Controller
 public class SurveyController extends BaseController {
 
     public static final String MOSTRECENT_KEY = "mostrecent";
-    public static final String PUBLISHED_KEY = "published";
+    public static final String PUBLISHED_KEY = SurveyCacheWarmer.PUBLISHED_KEY;
 
     private SurveyService surveyService;
     
     private ViewCache viewCache;
+    
+    private SurveyCacheWarmer surveyCacheWarmer;
+    
+    private WorkerSurveyCache workerSurveyCache;
+    
+    private SurveyBatchService surveyBatchService;
 
     @Autowired
     public void setSurveyService(SurveyService surveyService) {
         this.surveyService = surveyService;
     }
+    @Autowired
+    public void setSurveyCacheWarmer(SurveyCacheWarmer surveyCacheWarmer) {
+        this.surveyCacheWarmer = surveyCacheWarmer;
+    }
+    @Autowired
+    public void setWorkerSurveyCache(WorkerSurveyCache workerSurveyCache) {
+        this.workerSurveyCache = workerSurveyCache;
+    }
+    @Autowired
+    public void setSurveyBatchService(SurveyBatchService surveyBatchService) {
+        this.surveyBatchService = surveyBatchService;
+    }
+    
     @Resource(name = "genericViewCache")
     public void setViewCache(ViewCache viewCache) {
         this.viewCache = viewCache;
     }
     
-    public Result getAllSurveysMostRecentVersion(String includeDeletedString) throws Exception {
+    public Result getAllSurveysMostRecentVersion(String includeDeletedString, String summaryString) throws Exception {
         UserSession session = getAuthenticatedSession(DEVELOPER, RESEARCHER);
         StudyIdentifier studyId = session.getStudyIdentifier();
 
         List<Survey> surveys = surveyService.getAllSurveysMostRecentVersion(studyId,
                 Boolean.valueOf(includeDeletedString));
-        return okResult(surveys);
+        return surveyListResult(surveys, summaryString);
     }
     
-    public Result getAllSurveysMostRecentlyPublishedVersion(String includeDeletedString) throws Exception {
+    public Result getAllSurveysMostRecentlyPublishedVersion(String includeDeletedString, String summaryString)
+            throws Exception {
         UserSession session = getAuthenticatedSession(DEVELOPER);
         StudyIdentifier studyId = session.getStudyIdentifier();
 
         List<Survey> surveys = surveyService.getAllSurveysMostRecentlyPublishedVersion(studyId,
                 Boolean.valueOf(includeDeletedString));
-        return okResult(surveys);
+        return surveyListResult(surveys, summaryString);
     }
 
     /**
@@ -108,7 +134,8 @@ public class SurveyController extends BaseController {
      * surveys for any study.
      * </p>
      * <p>
-     * Bridge Exporter only calls this API for surveys it hasn't seen before, so we should be okay to not cache this.
+     * Every Bridge Exporter node asks for the same survey versions at the start of each run, so published versions
+     * are cached in memory. See {@link WorkerSurveyCache}.
      * </p>
      *
      * @param surveyGuid
@@ -119,9 +146,34 @@ public class SurveyController extends BaseController {
      */
     private Result getSurveyForWorker(String surveyGuid, String createdOnString) {
         long createdOn = DateUtils.convertToMillisFromEpoch(createdOnString);
-        GuidCreatedOnVersionHolder keys = new GuidCreatedOnVersionHolderImpl(surveyGuid, createdOn);
-        Survey survey = surveyService.getSurvey(null, keys, true, true);
-        return okResult(survey);
+        String json = workerSurveyCache.getSurveyJson(surveyGuid, createdOn);
+        return ok(json).as(JSON_MIME_TYPE);
+    }
+
+    /**
+     * Get many survey versions in one call, such as all the surveys referenced by a schedule. The request body is a
+     * JSON array of objects with the guid and createdOn of each survey version. Workers can get surveys of any study,
+     * other callers only get surveys of their own study. See {@link SurveyBatchService}.
+     */
+    public Result getSurveys() throws Exception {
+        UserSession session = getSessionEitherConsentedOrInRole(WORKER, DEVELOPER);
+        StudyIdentifier studyId = session.isInRole(Roles.WORKER) ? null : session.getStudyIdentifier();
+        
+        JsonNode node = parseJson(request(), JsonNode.class);
+        if (!node.isArray()) {
+            throw new BadRequestException("Surveys must be provided as a list of guid and createdOn");
+        }
+        List<GuidCreatedOnVersionHolder> keysList = new ArrayList<>();
+        for (JsonNode keysNode : node) {
+            String surveyGuid = keysNode.path("guid").textValue();
+            String createdOnString = keysNode.path("createdOn").textValue();
+            if (surveyGuid == null || createdOnString == null) {
+                throw new BadRequestException("Each survey requires a guid and createdOn");
+            }
+            long createdOn = DateUtils.convertToMillisFromEpoch(createdOnString);
+            keysList.add(new GuidCreatedOnVersionHolderImpl(surveyGuid, createdOn));
+        }
+        return okResult(surveyBatchService.getSurveys(studyId, keysList));
     }
 
     public Result getSurveyForUser(String surveyGuid, String createdOnString) throws Exception {
@@ -176,6 +228,7 @@ public class SurveyController extends BaseController {
         } else {
             surveyService.deleteSurvey(studyId, survey);
         }
+        workerSurveyCache.removeSurvey(surveyGuid, createdOn);
         expireCache(surveyGuid, createdOnString, studyId);
         return okResult("Survey deleted.");
     }
@@ -241,10 +294,27 @@ public class SurveyController extends BaseController {
         
         Survey survey = surveyService.publishSurvey(studyId, keys, Boolean.parseBoolean(newSchemaRev));
         expireCache(surveyGuid, createdOnString, studyId);
+        // Participants are about to ask for the newly published version, so load it into the cache now.
+        surveyCacheWarmer.warmSurvey(studyId, survey.getGuid(), survey.getCreatedOn());
         
         return okResult(new GuidCreatedOnVersionHolderImpl(survey));
     }
     
+    /** Returns this server's survey cache warming progress. */
+    public Result getCacheWarmingMetrics() {
+        getAuthenticatedSession(ADMIN);
+        return okResult(surveyCacheWarmer.getMetrics());
+    }
+    
+    // Writes the surveys in full, or only their summaries. See SummaryProjections.
+    private Result surveyListResult(List<Survey> surveys, String summaryString) throws Exception {
+        if (SummaryProjections.isSummary(summaryString)) {
+            return okResult(SummaryProjections.toSummaries(MAPPER.writer(), surveys,
+                    SummaryProjections.SURVEY_SUMMARY_FIELDS));
+        }
+        return okResult(surveys);
+    }
+    
     private Result getCachedSurveyInternal(String surveyGuid, String createdOnString, UserSession session) {
         long createdOn = DateUtils.convertToMillisFromEpoch(createdOnString);
         GuidCreatedOnVersionHolder keys = new GuidCreatedOnVersionHolderImpl(surveyGuid, createdOn);
@@ -1,9 +1,13 @@
 package org.sagebionetworks.bridge.play.controllers;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.dao.HealthCodeDao;
+import org.sagebionetworks.bridge.dao.RecordUploadIdDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
@@ -19,13 +23,14 @@ import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadSession;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
 import org.sagebionetworks.bridge.models.upload.UploadView;
-import org.sagebionetworks.bridge.services.HealthDataService;
 import org.sagebionetworks.bridge.services.UploadService;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableSet;
 
 import play.mvc.BodyParser;
 import play.mvc.Result;
@@ -33,27 +38,32 @@ import play.mvc.Result;
 @Controller
 public class UploadController extends BaseController {
 
+    private static final TypeReference<List<String>> RECORD_ID_LIST_TYPE_REF = new TypeReference<List<String>>() {};
+
+    /** Maximum number of record IDs that can be resolved in a single call. */
+    static final int MAX_RECORD_IDS = 500;
+
     private UploadService uploadService;
     
-    private HealthDataService healthDataService;
-    
     private HealthCodeDao healthCodeDao;
+    
+    private RecordUploadIdDao recordUploadIdDao;
 
     @Autowired
     final void setUploadService(UploadService uploadService) {
         this.uploadService = uploadService;
     }
     
-    @Autowired
-    final void setHealthDataService(HealthDataService healthDataService) {
-        this.healthDataService = healthDataService;
-    }
-
     @Autowired
     final void setHealthCodeDao(HealthCodeDao healthCodeDao) {
         this.healthCodeDao = healthCodeDao;
     }
     
+    @Autowired
+    final void setRecordUploadIdDao(RecordUploadIdDao recordUploadIdDao) {
+        this.recordUploadIdDao = recordUploadIdDao;
+    }
+    
     /** Gets validation status and messages for the given upload ID. */
     public Result getValidationStatus(String uploadId) throws IOException {
         UserSession session = getAuthenticatedAndConsentedSession();
@@ -166,15 +176,33 @@ public class UploadController extends BaseController {
         if (uploadId.startsWith("recordId:")) {
             String recordId = uploadId.split(":")[1];
 
-            // This service does not throw an exception if the record is not found
-            HealthDataRecord record = healthDataService.getRecordById(recordId);
-            if (record == null) {
+            // Only the upload ID is read from the record, not the full record.
+            uploadId = recordUploadIdDao.getUploadId(recordId);
+            if (uploadId == null) {
                 throw new EntityNotFoundException(HealthDataRecord.class);
             }
-            uploadId = record.getUploadId();
         }
         UploadView uploadView = uploadService.getUploadView(uploadId);
 
         return okResult(uploadView);
     }
+    
+    /**
+     * Resolves a list of record IDs to their upload IDs in a single call. Returns a map of record ID to upload ID.
+     * Records that don't exist (or don't have an upload) are omitted from the map.
+     */
+    public Result getUploadIdsForRecordIds() {
+        getAuthenticatedSession(Roles.ADMIN, Roles.WORKER);
+
+        List<String> recordIds = MAPPER.convertValue(parseJson(request(), JsonNode.class), RECORD_ID_LIST_TYPE_REF);
+        if (recordIds == null || recordIds.isEmpty()) {
+            throw new BadRequestException("Record IDs must be provided");
+        }
+        if (recordIds.size() > MAX_RECORD_IDS) {
+            throw new BadRequestException("Cannot resolve more than " + MAX_RECORD_IDS + " record IDs at a time");
+        }
+        Map<String, String> uploadIds = recordUploadIdDao.getUploadIds(ImmutableSet.copyOf(recordIds));
+        
+        return okResult(uploadIds);
+    }
 }
@@ -19,12 +19,14 @@ import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.services.UploadSchemaCache;
 import org.sagebionetworks.bridge.services.UploadSchemaService;
 
 /** Play controller for the /researcher/v1/uploadSchema APIs */
 @Controller
 public class UploadSchemaController extends BaseController {
     private UploadSchemaService uploadSchemaService;
+    private UploadSchemaCache uploadSchemaCache;
 
     /** Service handler for Upload Schema APIs. This is configured by Spring. */
     @Autowired
@@ -32,6 +34,12 @@ public class UploadSchemaController extends BaseController {
         this.uploadSchemaService = uploadSchemaService;
     }
 
+    /** Cache of schema revisions, for the schema read APIs. This is configured by Spring. */
+    @Autowired
+    public void setUploadSchemaCache(UploadSchemaCache uploadSchemaCache) {
+        this.uploadSchemaCache = uploadSchemaCache;
+    }
+
     /**
      * Service handler for creating a new schema revision, using V4 API semantics. See
      * {@link org.sagebionetworks.bridge.dao.UploadSchemaDao#createSchemaRevisionV4}
@@ -44,6 +52,7 @@ public class UploadSchemaController extends BaseController {
 
         UploadSchema uploadSchema = parseJson(request(), UploadSchema.class);
         UploadSchema createdSchema = uploadSchemaService.createSchemaRevisionV4(studyId, uploadSchema);
+        uploadSchemaCache.schemaChanged(studyId, createdSchema.getSchemaId());
         return createdResult(UploadSchema.PUBLIC_SCHEMA_WRITER, createdSchema);
     }
 
@@ -60,6 +69,7 @@ public class UploadSchemaController extends BaseController {
         
         UploadSchema uploadSchema = parseJson(request(), UploadSchema.class);
         UploadSchema createdSchema = uploadSchemaService.createOrUpdateUploadSchema(studyId, uploadSchema);
+        uploadSchemaCache.schemaChanged(studyId, createdSchema.getSchemaId());
         return okResult(UploadSchema.PUBLIC_SCHEMA_WRITER, createdSchema);
     }
 
@@ -71,6 +81,7 @@ public class UploadSchemaController extends BaseController {
         } else {
             uploadSchemaService.deleteUploadSchemaById(session.getStudyIdentifier(), schemaId);    
         }
+        uploadSchemaCache.schemaChanged(session.getStudyIdentifier(), schemaId);
         return okResult("Schemas have been deleted.");
     }
     
@@ -82,6 +93,7 @@ public class UploadSchemaController extends BaseController {
         } else {
             uploadSchemaService.deleteUploadSchemaByIdAndRevision(session.getStudyIdentifier(), schemaId, revision);
         }
+        uploadSchemaCache.schemaChanged(session.getStudyIdentifier(), schemaId);
         return okResult("Schema revision has been deleted.");
     }
 
@@ -98,7 +110,7 @@ public class UploadSchemaController extends BaseController {
         UserSession session = getAuthenticatedSession(DEVELOPER);
         StudyIdentifier studyId = session.getStudyIdentifier();
         
-        UploadSchema uploadSchema = uploadSchemaService.getUploadSchema(studyId, schemaId);
+        UploadSchema uploadSchema = uploadSchemaCache.getLatestUploadSchema(studyId, schemaId).getSchema();
         return okResult(UploadSchema.PUBLIC_SCHEMA_WRITER, uploadSchema);
     }
     
@@ -109,17 +121,18 @@ public class UploadSchemaController extends BaseController {
      *         schema ID to fetch
      * @param includeDeleted
      *         "true" if logically deleted items should be included in results, they are excluded otherwise
+     * @param summary
+     *         "true" if only the summary of each revision should be returned, without its field definitions
      * @return Play result with an array of all revisions of the fetched schema in JSON format
      */
-    public Result getUploadSchemaAllRevisions(String schemaId, String includeDeleted)
+    public Result getUploadSchemaAllRevisions(String schemaId, String includeDeleted, String summary)
             throws JsonProcessingException, IOException {
         UserSession session = getAuthenticatedSession(DEVELOPER);
         StudyIdentifier studyId = session.getStudyIdentifier();
         
         List<UploadSchema> uploadSchemas = uploadSchemaService.getUploadSchemaAllRevisions(studyId, schemaId,
                 Boolean.valueOf(includeDeleted));
-        ResourceList<UploadSchema> uploadSchemaResourceList = new ResourceList<>(uploadSchemas);
-        return okResult(UploadSchema.PUBLIC_SCHEMA_WRITER, uploadSchemaResourceList);
+        return schemaListResult(uploadSchemas, summary);
     }
 
     /**
@@ -136,7 +149,7 @@ public class UploadSchemaController extends BaseController {
         UserSession session = getAuthenticatedSession(DEVELOPER, WORKER);
         StudyIdentifier studyId = session.getStudyIdentifier();
 
-        UploadSchema uploadSchema = uploadSchemaService.getUploadSchemaByIdAndRev(studyId, schemaId, rev);
+        UploadSchema uploadSchema = uploadSchemaCache.getUploadSchemaByIdAndRev(studyId, schemaId, rev).getSchema();
         return okResult(UploadSchema.PUBLIC_SCHEMA_WRITER, uploadSchema);
     }
 
@@ -153,24 +166,24 @@ public class UploadSchemaController extends BaseController {
      */
     public Result getUploadSchemaByStudyAndSchemaAndRev(String studyId, String schemaId, int revision) {
         getAuthenticatedSession(WORKER);
-        UploadSchema uploadSchema = uploadSchemaService.getUploadSchemaByIdAndRev(new StudyIdentifierImpl(studyId),
-                schemaId, revision);
+        UploadSchema uploadSchema = uploadSchemaCache.getUploadSchemaByIdAndRev(new StudyIdentifierImpl(studyId),
+                schemaId, revision).getSchema();
         return okResult(uploadSchema);
     }
 
     /**
      * Play controller for GET /v3/uploadschemas. This API fetches the most recent revision of all upload 
-     * schemas for the current study. 
+     * schemas for the current study. If summary is "true", only the summary of each schema is returned, without its
+     * field definitions.
      * 
      * @return Play result with list of schemas for this study
      */
-    public Result getUploadSchemasForStudy(String includeDeleted) throws Exception {
+    public Result getUploadSchemasForStudy(String includeDeleted, String summary) throws Exception {
         UserSession session = getAuthenticatedSession(DEVELOPER, RESEARCHER);
         StudyIdentifier studyId = session.getStudyIdentifier();
 
         List<UploadSchema> schemaList = uploadSchemaService.getUploadSchemasForStudy(studyId, Boolean.valueOf(includeDeleted));
-        ResourceList<UploadSchema> schemaResourceList = new ResourceList<>(schemaList);
-        return okResult(UploadSchema.PUBLIC_SCHEMA_WRITER, schemaResourceList);
+        return schemaListResult(schemaList, summary);
     }
 
     /**
@@ -190,6 +203,16 @@ public class UploadSchemaController extends BaseController {
         UploadSchema uploadSchema = parseJson(request(), UploadSchema.class);
         UploadSchema updatedSchema = uploadSchemaService.updateSchemaRevisionV4(studyId, schemaId, revision,
                 uploadSchema);
+        uploadSchemaCache.schemaChanged(studyId, schemaId);
         return okResult(UploadSchema.PUBLIC_SCHEMA_WRITER, updatedSchema);
     }
+
+    // Writes the schemas in full, or only their summaries. See SummaryProjections.
+    private Result schemaListResult(List<UploadSchema> schemaList, String summary) throws IOException {
+        if (SummaryProjections.isSummary(summary)) {
+            return okResult(SummaryProjections.toSummaries(UploadSchema.PUBLIC_SCHEMA_WRITER, schemaList,
+                    SummaryProjections.SCHEMA_SUMMARY_FIELDS));
+        }
+        return okResult(UploadSchema.PUBLIC_SCHEMA_WRITER, new ResourceList<>(schemaList));
+    }
 }
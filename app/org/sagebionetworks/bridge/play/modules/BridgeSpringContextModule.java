@@ -8,8 +8,10 @@ import com.amazonaws.services.dynamodbv2.model.TableDescription;
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.config.Environment;
 import org.sagebionetworks.bridge.dynamodb.AnnotationBasedTableCreator;
 import org.sagebionetworks.bridge.dynamodb.DynamoInitializer;
+import org.sagebionetworks.bridge.services.SurveyCacheWarmer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactory;
@@ -38,6 +40,7 @@ public abstract class BridgeSpringContextModule extends AbstractModule {
         ConfigurableApplicationContext appContext = loadAppContext();
         loadDynamo(appContext);
         bindControllers(appContext);
+        warmCaches(appContext);
     }
 
     private void loadDynamo(ConfigurableApplicationContext appContext) {
@@ -49,6 +52,14 @@ public abstract class BridgeSpringContextModule extends AbstractModule {
         LOG.info("DynamoDB tables loaded.");
     }
 
+    // Local servers (and unit tests) start with an empty cache, and don't read every study's surveys on startup.
+    private void warmCaches(ConfigurableApplicationContext appContext) {
+        if (BridgeConfigFactory.getConfig().getEnvironment() != Environment.LOCAL) {
+            appContext.getBean(SurveyCacheWarmer.class).warmPublishedSurveys();
+            LOG.info("Survey cache warming started.");
+        }
+    }
+
     private ConfigurableApplicationContext loadAppContext() {
         final ConfigurableApplicationContext bridgeAppContext =
                 new ClassPathXmlApplicationContext(getSpringXmlFilename());
@@ -0,0 +1,224 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Resource;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.commons.lang3.text.StrSubstitutor;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.RequestContexts;
+import org.sagebionetworks.bridge.dao.SmsMessageBatchDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.BatchItemResult;
+import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
+import org.sagebionetworks.bridge.models.sms.BulkSmsResult;
+import org.sagebionetworks.bridge.models.sms.SmsDispatchMetrics;
+import org.sagebionetworks.bridge.models.sms.SmsMessage;
+import org.sagebionetworks.bridge.models.sms.SmsType;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.sms.SmsProvider;
+import org.sagebionetworks.bridge.time.DateUtils;
+
+/**
+ * Sends one SMS message to many participants of a study. Sends run in parallel on the SMS dispatch executor, whose
+ * work queue is bounded: when it's full, the remaining messages of the batch are rejected (status 503) rather than
+ * queued without limit. Sends are rate limited twice: each study has its own token-bucket limiter per provider, so
+ * one study's campaign can't use up the whole sending rate, and every send also takes a token from the provider's
+ * limiter, so many studies sending at once can't exceed the provider's rate. Sent messages are logged with one batch
+ * write per dispatch.
+ *
+ * The request waits for every send, so batches are limited to MAX_BATCH_SIZE users, which takes at most a few seconds
+ * at the study's rate. Larger campaigns are sent as several requests.
+ */
+@Component
+public class BulkSmsService {
+    private static final Logger LOG = LoggerFactory.getLogger(BulkSmsService.class);
+
+    /** At SENDS_PER_SECOND_PER_STUDY, a full batch takes about five seconds. */
+    static final int MAX_BATCH_SIZE = 100;
+    static final double SENDS_PER_SECOND_PER_STUDY = 20.0;
+    /**
+     * Sends per second across all studies. The limiters are per server, so this is the provider's account rate divided
+     * by the number of servers.
+     */
+    static final double SENDS_PER_SECOND_PER_PROVIDER = 50.0;
+    static final String QUEUE_FULL_MESSAGE = "SMS dispatch queue is full, try again later";
+
+    private final Map<String, RateLimiter> rateLimiterMap = new ConcurrentHashMap<>();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong sendNanos = new AtomicLong();
+    private final DateTime startedOn = DateUtils.getCurrentDateTime();
+
+    private ParticipantService participantService;
+    private SmsProvider smsProvider;
+    private SmsMessageBatchDao smsMessageBatchDao;
+    private ExecutorService dispatchExecutorService;
+    private double sendsPerSecondPerStudy = SENDS_PER_SECOND_PER_STUDY;
+    private RateLimiter providerRateLimiter = RateLimiter.create(SENDS_PER_SECOND_PER_PROVIDER);
+
+    @Autowired
+    final void setParticipantService(ParticipantService participantService) {
+        this.participantService = participantService;
+    }
+
+    @Resource(name = "smsProvider")
+    final void setSmsProvider(SmsProvider smsProvider) {
+        this.smsProvider = smsProvider;
+    }
+
+    @Autowired
+    final void setSmsMessageBatchDao(SmsMessageBatchDao smsMessageBatchDao) {
+        this.smsMessageBatchDao = smsMessageBatchDao;
+    }
+
+    @Resource(name = "smsDispatchExecutorService")
+    final void setDispatchExecutorService(ExecutorService dispatchExecutorService) {
+        this.dispatchExecutorService = dispatchExecutorService;
+    }
+
+    // Package-scoped for unit tests.
+    final void setSendsPerSecondPerStudy(double sendsPerSecondPerStudy) {
+        this.sendsPerSecondPerStudy = sendsPerSecondPerStudy;
+    }
+
+    // Package-scoped for unit tests.
+    final void setProviderRateLimiter(RateLimiter providerRateLimiter) {
+        this.providerRateLimiter = providerRateLimiter;
+    }
+
+    /**
+     * Sends the message to each of the users, and returns one result per user. A user listed more than once is sent
+     * one message. Users without a verified phone number fail individually; they don't fail the batch.
+     */
+    public BulkSmsResult sendSmsMessages(Study study, List<String> userIdList, String message) {
+        checkNotNull(study);
+        checkNotNull(userIdList);
+        if (userIdList.isEmpty()) {
+            throw new BadRequestException("User IDs must be provided");
+        }
+        if (isBlank(message)) {
+            throw new BadRequestException("Message must be provided");
+        }
+        List<String> userIds = new ArrayList<>(new LinkedHashSet<>(userIdList));
+        if (userIds.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("Cannot send more than " + MAX_BATCH_SIZE + " SMS messages at a time");
+        }
+
+        long startNanos = System.nanoTime();
+        String resolvedMessage = resolveTemplate(study, message);
+        RateLimiter studyRateLimiter = rateLimiterMap.computeIfAbsent(study.getIdentifier() + ":" +
+                smsProvider.getName(), key -> RateLimiter.create(sendsPerSecondPerStudy));
+
+        // Participant reads check the caller's substudies, so the sends run with the caller's request context.
+        List<Future<SmsMessage>> futureList = new ArrayList<>();
+        for (String userId : userIds) {
+            try {
+                futureList.add(dispatchExecutorService.submit(RequestContexts.withRequestContext(
+                        () -> sendSmsMessage(study, userId, resolvedMessage, studyRateLimiter))));
+            } catch (RejectedExecutionException ex) {
+                futureList.add(null);
+            }
+        }
+
+        List<BatchItemResult<Void>> itemList = new ArrayList<>();
+        List<SmsMessage> messageLogList = new ArrayList<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            String userId = userIds.get(i);
+            Future<SmsMessage> future = futureList.get(i);
+            if (future == null) {
+                rejectedCount.incrementAndGet();
+                itemList.add(BatchItemResult.failed(userId, 503, QUEUE_FULL_MESSAGE));
+                continue;
+            }
+            try {
+                messageLogList.add(future.get());
+                sentCount.incrementAndGet();
+                itemList.add(BatchItemResult.succeeded(userId, null));
+            } catch (ExecutionException ex) {
+                failedCount.incrementAndGet();
+                itemList.add(BatchItemResult.failed(userId, ex.getCause()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                futureList.stream().filter(Objects::nonNull).forEach(f -> f.cancel(true));
+                throw new BridgeServiceException("Interrupted while sending SMS messages");
+            }
+        }
+
+        smsMessageBatchDao.logMessages(messageLogList);
+
+        int sent = messageLogList.size();
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        LOG.info("Sent " + sent + " of " + userIds.size() + " SMS messages for study " + study.getIdentifier() +
+                " in " + elapsedMillis + " ms");
+        return new BulkSmsResult(sent, userIds.size() - sent, elapsedMillis, itemList);
+    }
+
+    /** Dispatch metrics for this server. */
+    public SmsDispatchMetrics getMetrics() {
+        int queuedCount = (dispatchExecutorService instanceof ThreadPoolExecutor) ?
+                ((ThreadPoolExecutor) dispatchExecutorService).getQueue().size() : 0;
+        long sent = sentCount.get();
+        double averageSendMillis = (sent == 0) ? 0.0 : sendNanos.get() / 1_000_000.0 / sent;
+        return new SmsDispatchMetrics(smsProvider.getName(), startedOn, DateUtils.getCurrentDateTime(), sent, failedCount.get(),
+                rejectedCount.get(), queuedCount, averageSendMillis);
+    }
+
+    // Sends to one user and returns the message log, for the batch write.
+    private SmsMessage sendSmsMessage(Study study, String userId, String message, RateLimiter studyRateLimiter) {
+        StudyParticipant participant = participantService.getParticipant(study, userId, false);
+        if (participant.getPhone() == null || !Boolean.TRUE.equals(participant.getPhoneVerified())) {
+            throw new BadRequestException("Participant does not have a verified phone number");
+        }
+        String phoneNumber = participant.getPhone().getNumber();
+
+        studyRateLimiter.acquire();
+        providerRateLimiter.acquire();
+        long sendStartNanos = System.nanoTime();
+        String messageId = smsProvider.sendSms(phoneNumber, message, study.getShortName());
+        sendNanos.addAndGet(System.nanoTime() - sendStartNanos);
+
+        SmsMessage messageLog = SmsMessage.create();
+        messageLog.setPhoneNumber(phoneNumber);
+        messageLog.setSentOn(DateUtils.getCurrentMillisFromEpoch());
+        messageLog.setHealthCode(participant.getHealthCode());
+        messageLog.setMessageId(messageId);
+        messageLog.setMessageBody(message);
+        messageLog.setSmsType(SmsType.PROMOTIONAL);
+        return messageLog;
+    }
+
+    // Study template variables are the same for every recipient, so they're resolved once per batch.
+    static String resolveTemplate(Study study, String message) {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("studyName", study.getName());
+        variables.put("studyShortName", study.getShortName());
+        variables.put("studyId", study.getIdentifier());
+        variables.put("sponsorName", study.getSponsorName());
+        variables.put("supportEmail", study.getSupportEmail());
+        return StrSubstitutor.replace(message, variables);
+    }
+}
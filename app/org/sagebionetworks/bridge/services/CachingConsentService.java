@@ -0,0 +1,69 @@
+package org.sagebionetworks.bridge.services;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.models.CriteriaContext;
+import org.sagebionetworks.bridge.models.accounts.ConsentStatus;
+import org.sagebionetworks.bridge.models.accounts.SharingScope;
+import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
+import org.sagebionetworks.bridge.models.accounts.Withdrawal;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.models.subpopulations.ConsentSignature;
+import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+
+/**
+ * The consent service, with each user's consent statuses kept in a {@link ConsentStatusCache}. This is the primary
+ * ConsentService bean, so sign-in, session refreshes and the consent APIs all read statuses through the cache, and
+ * every signature or withdrawal through the service stamps the account's cached statuses as out of date.
+ */
+@Primary
+@Component
+public class CachingConsentService extends ConsentService {
+    private ConsentStatusCache consentStatusCache;
+
+    @Autowired
+    final void setConsentStatusCache(ConsentStatusCache consentStatusCache) {
+        this.consentStatusCache = consentStatusCache;
+    }
+
+    @Override
+    public Map<SubpopulationGuid, ConsentStatus> getConsentStatuses(CriteriaContext context) {
+        return consentStatusCache.getConsentStatuses(context, () -> super.getConsentStatuses(context));
+    }
+
+    // Signatures can be saved before a later step fails (sending the signed consent, for example), so the stamp is
+    // replaced whether or not the change succeeds.
+
+    @Override
+    public void consentToResearch(Study study, SubpopulationGuid subpopGuid, StudyParticipant participant,
+            ConsentSignature consentSignature, SharingScope sharingScope, boolean sendEmail) {
+        try {
+            super.consentToResearch(study, subpopGuid, participant, consentSignature, sharingScope, sendEmail);
+        } finally {
+            consentStatusCache.signaturesChanged(study.getStudyIdentifier(), participant.getHealthCode());
+        }
+    }
+
+    @Override
+    public void withdrawConsent(Study study, SubpopulationGuid subpopGuid, StudyParticipant participant,
+            CriteriaContext context, Withdrawal withdrawal, long withdrewOn) {
+        try {
+            super.withdrawConsent(study, subpopGuid, participant, context, withdrawal, withdrewOn);
+        } finally {
+            consentStatusCache.signaturesChanged(study.getStudyIdentifier(), participant.getHealthCode());
+        }
+    }
+
+    @Override
+    public void withdrawFromStudy(Study study, StudyParticipant participant, Withdrawal withdrawal, long withdrewOn) {
+        try {
+            super.withdrawFromStudy(study, participant, withdrawal, withdrewOn);
+        } finally {
+            consentStatusCache.signaturesChanged(study.getStudyIdentifier(), participant.getHealthCode());
+        }
+    }
+}
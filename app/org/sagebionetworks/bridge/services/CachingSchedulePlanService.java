@@ -0,0 +1,63 @@
+package org.sagebionetworks.bridge.services;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.models.ClientInfo;
+import org.sagebionetworks.bridge.models.schedules.SchedulePlan;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+
+/**
+ * The schedule plan service, with each study's plans kept in a {@link SchedulePlanCache}. This is the primary
+ * SchedulePlanService bean, so activity scheduling and the schedule plan APIs both read plans through the cache, and
+ * every change to a plan through the service drops the study's cached plans. Plans are loaded for the unknown client,
+ * which gets every plan, and shared by all clients; each plan's strategy matches the caller's app version when a
+ * schedule is picked from it.
+ */
+@Primary
+@Component
+public class CachingSchedulePlanService extends SchedulePlanService {
+    private SchedulePlanCache schedulePlanCache;
+
+    @Autowired
+    final void setSchedulePlanCache(SchedulePlanCache schedulePlanCache) {
+        this.schedulePlanCache = schedulePlanCache;
+    }
+
+    @Override
+    public List<SchedulePlan> getSchedulePlans(ClientInfo clientInfo, StudyIdentifier studyId,
+            boolean includeDeleted) {
+        return schedulePlanCache.getSchedulePlans(studyId, includeDeleted,
+                () -> super.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, studyId, includeDeleted));
+    }
+
+    @Override
+    public SchedulePlan createSchedulePlan(Study study, SchedulePlan plan) {
+        SchedulePlan savedPlan = super.createSchedulePlan(study, plan);
+        schedulePlanCache.plansChanged(study.getStudyIdentifier());
+        return savedPlan;
+    }
+
+    @Override
+    public SchedulePlan updateSchedulePlan(Study study, SchedulePlan plan) {
+        SchedulePlan savedPlan = super.updateSchedulePlan(study, plan);
+        schedulePlanCache.plansChanged(study.getStudyIdentifier());
+        return savedPlan;
+    }
+
+    @Override
+    public void deleteSchedulePlan(StudyIdentifier studyId, String guid) {
+        super.deleteSchedulePlan(studyId, guid);
+        schedulePlanCache.plansChanged(studyId);
+    }
+
+    @Override
+    public void deleteSchedulePlanPermanently(StudyIdentifier studyId, String guid) {
+        super.deleteSchedulePlanPermanently(studyId, guid);
+        schedulePlanCache.plansChanged(studyId);
+    }
+}
@@ -0,0 +1,205 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.models.ClientInfo;
+import org.sagebionetworks.bridge.models.CriteriaContext;
+import org.sagebionetworks.bridge.models.accounts.ConsentStatus;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.subpopulations.ConsentSignature;
+import org.sagebionetworks.bridge.models.subpopulations.ConsentStatusCacheMetrics;
+import org.sagebionetworks.bridge.models.subpopulations.Subpopulation;
+import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+import org.sagebionetworks.bridge.time.DateUtils;
+
+/**
+ * Caches the consent statuses of each user in memory on each server. Computing them loads the study's subpopulations,
+ * matches the user against each subpopulation's criteria and checks the account's signatures, and that happens on
+ * every sign-in, session refresh and consent change, while the result only changes when a subpopulation or one of
+ * the user's signatures does.
+ *
+ * Statuses are cached by the parts of the criteria context they depend on, and stamped with two version stamps kept
+ * in Redis: one for the study's subpopulations, and one for the account's signatures. A change to either, on any
+ * server, replaces the stamp, and cached statuses with an old stamp are computed again. Both stamps are read with one
+ * MGET, so a lookup costs one round trip to Redis. The CacheProvider has no multi-key read, so the stamps are read
+ * and written through the Jedis pool directly. The stamps are read before the statuses are computed, so statuses
+ * computed while a change is being made are stamped as out of date.
+ * Changes that aren't made through the consent service or the subpopulation APIs aren't stamped, so statuses also
+ * expire.
+ */
+@Component
+public class ConsentStatusCache {
+    /** How long a server keeps a user's statuses. */
+    static final int EXPIRE_SECONDS = 5 * 60;
+
+    static final int MAX_SIZE = 10000;
+
+    /** How long a stamp is kept in the shared cache. A missing stamp is replaced, so any expiration is safe. */
+    static final int STAMP_EXPIRE_SECONDS = 24 * 60 * 60;
+
+    private static final String STAMP_KEY_PART = "stamp";
+
+    private final Cache<StatusKey, StampedStatuses> cache = CacheBuilder.newBuilder()
+            .expireAfterWrite(EXPIRE_SECONDS, TimeUnit.SECONDS).maximumSize(MAX_SIZE).build();
+
+    private final AtomicLong computedCount = new AtomicLong();
+    private final AtomicLong avoidedCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final DateTime startedOn = DateUtils.getCurrentDateTime();
+
+    private JedisPool jedisPool;
+
+    @Autowired
+    final void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    /**
+     * Get the consent statuses for this context, calling the loader if they aren't cached or are out of date.
+     * Statuses can only be stamped for a known account, so they're always computed for a context without a health
+     * code. The returned map can't be modified.
+     */
+    public Map<SubpopulationGuid, ConsentStatus> getConsentStatuses(CriteriaContext context,
+            Supplier<Map<SubpopulationGuid, ConsentStatus>> loader) {
+        checkNotNull(context);
+        checkNotNull(loader);
+
+        if (context.getStudyIdentifier() == null || context.getHealthCode() == null) {
+            computedCount.incrementAndGet();
+            return loader.get();
+        }
+        String studyId = context.getStudyIdentifier().getIdentifier();
+        CacheKey subpopulationsKey = subpopulationsKey(studyId);
+        CacheKey signaturesKey = signaturesKey(studyId, context.getHealthCode());
+        List<String> stamps;
+        try (Jedis jedis = jedisPool.getResource()) {
+            stamps = jedis.mget(subpopulationsKey.toString(), signaturesKey.toString());
+        }
+        String subpopulationStamp = (stamps.get(0) != null) ? stamps.get(0) : replaceStamp(subpopulationsKey);
+        String signatureStamp = (stamps.get(1) != null) ? stamps.get(1) : replaceStamp(signaturesKey);
+
+        StatusKey key = new StatusKey(context);
+        StampedStatuses cached = cache.getIfPresent(key);
+        if (cached != null) {
+            if (cached.subpopulationStamp.equals(subpopulationStamp) && cached.signatureStamp.equals(signatureStamp)) {
+                avoidedCount.incrementAndGet();
+                return cached.statuses;
+            }
+            staleCount.incrementAndGet();
+        }
+        computedCount.incrementAndGet();
+        Map<SubpopulationGuid, ConsentStatus> statuses = ImmutableMap.copyOf(loader.get());
+        cache.put(key, new StampedStatuses(subpopulationStamp, signatureStamp, statuses));
+        return statuses;
+    }
+
+    /** Call after a subpopulation of the study is created, updated or deleted, or one of its consents is published. */
+    public void subpopulationsChanged(StudyIdentifier studyId) {
+        checkNotNull(studyId);
+
+        replaceStamp(subpopulationsKey(studyId.getIdentifier()));
+    }
+
+    /** Call after the account signs or withdraws a consent. */
+    public void signaturesChanged(StudyIdentifier studyId, String healthCode) {
+        checkNotNull(studyId);
+
+        if (healthCode != null) {
+            replaceStamp(signaturesKey(studyId.getIdentifier(), healthCode));
+        }
+    }
+
+    /** Cache use on this server. */
+    public ConsentStatusCacheMetrics getMetrics() {
+        return new ConsentStatusCacheMetrics(startedOn, DateUtils.getCurrentDateTime(), computedCount.get(),
+                avoidedCount.get(), staleCount.get());
+    }
+
+    // Stamps are never reused, so statuses stamped before a change can't match any stamp written after it.
+    private String replaceStamp(CacheKey stampKey) {
+        String stamp = BridgeUtils.generateGuid();
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.setex(stampKey.toString(), STAMP_EXPIRE_SECONDS, stamp);
+        }
+        return stamp;
+    }
+
+    private static CacheKey subpopulationsKey(String studyId) {
+        return CacheKey.viewKey(Subpopulation.class, STAMP_KEY_PART, studyId);
+    }
+
+    private static CacheKey signaturesKey(String studyId, String healthCode) {
+        return CacheKey.viewKey(ConsentSignature.class, STAMP_KEY_PART, healthCode, studyId);
+    }
+
+    private static final class StampedStatuses {
+        private final String subpopulationStamp;
+        private final String signatureStamp;
+        private final Map<SubpopulationGuid, ConsentStatus> statuses;
+
+        StampedStatuses(String subpopulationStamp, String signatureStamp,
+                Map<SubpopulationGuid, ConsentStatus> statuses) {
+            this.subpopulationStamp = subpopulationStamp;
+            this.signatureStamp = signatureStamp;
+            this.statuses = statuses;
+        }
+    }
+
+    // The parts of the context that subpopulation criteria and signatures depend on. The user ID and IP address
+    // don't change the statuses of an account, so they're left out.
+    private static final class StatusKey {
+        private final String studyId;
+        private final String healthCode;
+        private final ClientInfo clientInfo;
+        private final List<String> languages;
+        private final Set<String> dataGroups;
+        private final Set<String> substudyIds;
+
+        StatusKey(CriteriaContext context) {
+            this.studyId = context.getStudyIdentifier().getIdentifier();
+            this.healthCode = context.getHealthCode();
+            this.clientInfo = context.getClientInfo();
+            this.languages = context.getLanguages();
+            this.dataGroups = context.getUserDataGroups();
+            this.substudyIds = context.getUserSubstudyIds();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(studyId, healthCode, clientInfo, languages, dataGroups, substudyIds);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            StatusKey other = (StatusKey) obj;
+            return Objects.equals(studyId, other.studyId) && Objects.equals(healthCode, other.healthCode)
+                    && Objects.equals(clientInfo, other.clientInfo) && Objects.equals(languages, other.languages)
+                    && Objects.equals(dataGroups, other.dataGroups) && Objects.equals(substudyIds, other.substudyIds);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Resource;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.dao.DistributedLockDao;
+import org.sagebionetworks.bridge.dao.ParticipantRosterDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.SegmentMember;
+import org.sagebionetworks.bridge.models.notifications.NotificationFanOutJob;
+import org.sagebionetworks.bridge.models.notifications.NotificationFanOutRequest;
+import org.sagebionetworks.bridge.models.notifications.NotificationMessage;
+import org.sagebionetworks.bridge.models.notifications.NotificationProtocol;
+import org.sagebionetworks.bridge.models.notifications.NotificationRegistration;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.time.DateUtils;
+
+/**
+ * Sends a push notification to every participant in a segment of a study, in the background. The segment is read
+ * with keyset pagination, one page at a time, by a coordinator on the fan-out job executor. The participants of a page
+ * are notified in parallel, in windows of PUBLISH_PARALLELISM, on the fan-out's publish executor, since waiting on
+ * the rate limiter blocks the thread. Each participant's push registrations are read once and published to directly,
+ * and all fan-out publishes of this server go through one rate limiter, so concurrent fan-outs can't exceed the SNS
+ * publish rate between them. The job records each participant it notifies, so a failed job can be resumed without
+ * notifying them again.
+ *
+ * A caller limited to some substudies can only notify accounts in those substudies, and can only see jobs limited to
+ * them.
+ *
+ * Jobs, including their resume position, are kept in Redis for JOB_EXPIRE_SECONDS after they were last saved, so
+ * status requests and resumes can go to any server. Progress is saved after each window. A job whose server goes
+ * down stays RUNNING until it expires.
+ */
+@Component
+public class NotificationFanOutService {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationFanOutService.class);
+
+    static final int JOB_EXPIRE_SECONDS = 24 * 60 * 60;
+    static final int LOCK_EXPIRE_SECONDS = 60;
+    static final int PAGE_SIZE = 200;
+    static final int PUBLISH_PARALLELISM = 10;
+    static final double PUBLISHES_PER_SECOND = 100.0;
+
+    private ParticipantRosterDao participantRosterDao;
+    private NotificationsService notificationsService;
+    private AmazonSNSClient snsClient;
+    private CacheProvider cacheProvider;
+    private DistributedLockDao lockDao;
+    private ExecutorService jobExecutorService;
+    private ExecutorService publishExecutorService;
+    private RateLimiter publishRateLimiter = RateLimiter.create(PUBLISHES_PER_SECOND);
+
+    @Autowired
+    final void setParticipantRosterDao(ParticipantRosterDao participantRosterDao) {
+        this.participantRosterDao = participantRosterDao;
+    }
+
+    @Autowired
+    final void setNotificationsService(NotificationsService notificationsService) {
+        this.notificationsService = notificationsService;
+    }
+
+    @Resource(name = "snsClient")
+    final void setSnsClient(AmazonSNSClient snsClient) {
+        this.snsClient = snsClient;
+    }
+
+    @Autowired
+    final void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
+
+    @Autowired
+    final void setLockDao(DistributedLockDao lockDao) {
+        this.lockDao = lockDao;
+    }
+
+    /** Runs one coordinating task per job. */
+    @Resource(name = "notificationFanOutJobExecutorService")
+    final void setJobExecutorService(ExecutorService jobExecutorService) {
+        this.jobExecutorService = jobExecutorService;
+    }
+
+    /** Notifies the participants of each page in parallel. */
+    @Resource(name = "notificationFanOutExecutorService")
+    final void setPublishExecutorService(ExecutorService publishExecutorService) {
+        this.publishExecutorService = publishExecutorService;
+    }
+
+    // Package-scoped for unit tests.
+    final void setPublishRateLimiter(RateLimiter publishRateLimiter) {
+        this.publishRateLimiter = publishRateLimiter;
+    }
+
+    /**
+     * Starts sending the notification to the segment and returns the job, in the PENDING state. If the caller is
+     * limited to some substudies, the segment is limited to those of them in the request (or all of them, if the
+     * request doesn't name any), and a request for none of them is rejected.
+     */
+    public NotificationFanOutJob startFanOut(StudyIdentifier studyId, NotificationFanOutRequest request) {
+        checkNotNull(studyId);
+        checkNotNull(request);
+
+        NotificationMessage message = request.getMessage();
+        if (message == null || isBlank(message.getSubject()) || isBlank(message.getMessage())) {
+            throw new BadRequestException("Notification fan-out requires a message with a subject and message");
+        }
+        Set<String> substudyIds = request.getSubstudyIds();
+        Set<String> callerSubstudies = BridgeUtils.getRequestContext().getCallerSubstudies();
+        if (!callerSubstudies.isEmpty()) {
+            substudyIds = substudyIds.isEmpty() ? callerSubstudies : Sets.intersection(substudyIds, callerSubstudies);
+            if (substudyIds.isEmpty()) {
+                throw new BadRequestException("Notification fan-out must include at least one of the caller's " +
+                        "substudies");
+            }
+        }
+
+        NotificationFanOutJob job = new NotificationFanOutJob(BridgeUtils.generateGuid(), studyId.getIdentifier(),
+                ImmutableSet.copyOf(substudyIds), request, DateUtils.getCurrentDateTime());
+        saveJob(job);
+        // The fan-out works on its own copy of the job, read back from the job store, so the job returned here
+        // isn't changed while the caller is writing it out.
+        String jobId = job.getJobId();
+        jobExecutorService.execute(() -> runFanOut(loadJob(jobId)));
+        return job;
+    }
+
+    /**
+     * Gets the job, which must belong to the given study. A caller limited to some substudies can only get jobs
+     * limited to those substudies.
+     */
+    public NotificationFanOutJob getJob(StudyIdentifier studyId, String jobId) {
+        checkNotNull(studyId);
+
+        NotificationFanOutJob job = (jobId == null) ? null : loadJob(jobId);
+        if (job == null || !job.getStudyId().equals(studyId.getIdentifier()) || !isVisibleToCaller(job)) {
+            throw new EntityNotFoundException(NotificationFanOutJob.class);
+        }
+        return job;
+    }
+
+    /** Resumes a failed job, skipping the participants it already notified. */
+    public NotificationFanOutJob resumeFanOut(StudyIdentifier studyId, String jobId) {
+        // Resume requests can go to any server, so the check and the move to RUNNING happen under a lock, and a
+        // second resume request can't start the job twice.
+        NotificationFanOutJob job;
+        String lockId = lockDao.acquireLock(NotificationFanOutJob.class, jobId, LOCK_EXPIRE_SECONDS);
+        try {
+            job = getJob(studyId, jobId);
+            if (job.getStatus() != NotificationFanOutJob.Status.FAILED) {
+                throw new BadRequestException("Notification fan-out " + jobId + " can't be resumed (status is " +
+                        job.getStatus() + ")");
+            }
+            job.markRunning();
+            saveJob(job);
+        } finally {
+            lockDao.releaseLock(NotificationFanOutJob.class, jobId, lockId);
+        }
+        jobExecutorService.execute(() -> runFanOut(loadJob(jobId)));
+        return job;
+    }
+
+    // Package-scoped for unit tests.
+    void runFanOut(NotificationFanOutJob job) {
+        job.markRunning();
+        saveJob(job);
+
+        NotificationFanOutRequest request = job.getRequest();
+        List<Future<?>> futureList = new ArrayList<>();
+        try {
+            List<SegmentMember> page;
+            do {
+                page = participantRosterDao.getSegmentPage(job.getStudyId(), request.getAllOfGroups(),
+                        request.getNoneOfGroups(), job.getSubstudyIds(), job.getAfterCreatedOn(),
+                        job.getAfterId(), PAGE_SIZE);
+                for (List<SegmentMember> window : Lists.partition(page, PUBLISH_PARALLELISM)) {
+                    futureList.clear();
+                    for (SegmentMember member : window) {
+                        if (!job.isNotified(member.getId())) {
+                            futureList.add(publishExecutorService.submit(() -> notifyMember(job, member)));
+                        }
+                    }
+                    for (Future<?> future : futureList) {
+                        future.get();
+                    }
+                    // Every participant of the window is done, so the job can move past them. Saving here is
+                    // what lets another server resume the job from this point.
+                    SegmentMember lastMember = window.get(window.size() - 1);
+                    job.markNotifiedThrough(lastMember.getCreatedOn(), lastMember.getId());
+                    saveJob(job);
+                }
+            } while (page.size() == PAGE_SIZE);
+
+            job.markSucceeded(DateUtils.getCurrentDateTime());
+        } catch (Exception ex) {
+            futureList.forEach(future -> future.cancel(true));
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = (ex instanceof ExecutionException && ex.getCause() != null) ? ex.getCause() : ex;
+            LOG.error("Notification fan-out " + job.getJobId() + " for study " + job.getStudyId() + " failed", cause);
+            job.markFailed(DateUtils.getCurrentDateTime(), "Notification fan-out failed: " + cause.getMessage());
+        }
+        saveJob(job);
+    }
+
+    // Publishes to the participant's push registrations, which are read once, here. A failed publish only counts
+    // against its platform; an error reading the registrations fails the job, since it's likely to affect every
+    // participant.
+    private void notifyMember(NotificationFanOutJob job, SegmentMember member) {
+        List<NotificationRegistration> registrationList = new ArrayList<>();
+        for (NotificationRegistration registration : notificationsService.listRegistrations(member.getHealthCode())) {
+            if (registration.getProtocol() == NotificationProtocol.APPLICATION) {
+                registrationList.add(registration);
+            }
+        }
+        if (registrationList.isEmpty()) {
+            job.incrementUnregisteredParticipantCount();
+        } else {
+            publishRateLimiter.acquire(registrationList.size());
+            NotificationMessage message = job.getRequest().getMessage();
+            for (NotificationRegistration registration : registrationList) {
+                job.recordPublish(registration.getOsName(), publish(job, registration, message));
+            }
+        }
+        job.incrementParticipantCount();
+        job.markNotified(member.getId());
+    }
+
+    // Same request as the notifications service sends to each of a participant's registrations.
+    private boolean publish(NotificationFanOutJob job, NotificationRegistration registration,
+            NotificationMessage message) {
+        PublishRequest request = new PublishRequest().withTargetArn(registration.getEndpoint())
+                .withSubject(message.getSubject()).withMessage(message.getMessage());
+        try {
+            snsClient.publish(request);
+            return true;
+        } catch (AmazonServiceException ex) {
+            LOG.warn("Notification fan-out " + job.getJobId() + " could not publish to registration " +
+                    registration.getGuid() + ": " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean isVisibleToCaller(NotificationFanOutJob job) {
+        Set<String> callerSubstudies = BridgeUtils.getRequestContext().getCallerSubstudies();
+        return callerSubstudies.isEmpty() || (!job.getSubstudyIds().isEmpty()
+                && callerSubstudies.containsAll(job.getSubstudyIds()));
+    }
+
+    private void saveJob(NotificationFanOutJob job) {
+        try {
+            cacheProvider.setObject(jobKey(job.getJobId()),
+                    NotificationFanOutJob.STORED_JOB_WRITER.writeValueAsString(job), JOB_EXPIRE_SECONDS);
+        } catch (JsonProcessingException ex) {
+            throw new BridgeServiceException(ex.getMessage());
+        }
+    }
+
+    private NotificationFanOutJob loadJob(String jobId) {
+        String json = cacheProvider.getObject(jobKey(jobId), String.class);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return BridgeObjectMapper.get().readValue(json, NotificationFanOutJob.class);
+        } catch (IOException ex) {
+            throw new BridgeServiceException(ex.getMessage());
+        }
+    }
+
+    private static CacheKey jobKey(String jobId) {
+        return CacheKey.viewKey(NotificationFanOutJob.class, jobId);
+    }
+}
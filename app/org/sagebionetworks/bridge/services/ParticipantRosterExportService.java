@@ -0,0 +1,337 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Resource;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.Joiner;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.dao.ParticipantRosterDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.file.LocalFileStore;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.ParticipantRosterEntry;
+import org.sagebionetworks.bridge.models.accounts.RosterExportJob;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.time.DateUtils;
+
+/**
+ * Exports a study's participant roster to a gzipped CSV or NDJSON file in the background. The roster is split into
+ * key ranges with about the same number of accounts, which are read in parallel with keyset pagination, one page at a
+ * time, and each range is streamed into its own gzip part file. When all ranges are done, the parts are concatenated
+ * (in key order) behind the header into the final file; a sequence of gzip members is itself a valid gzip file, so
+ * this needs no re-compression. The final file is uploaded to S3, and the local files are deleted. Neither the request
+ * thread nor the export threads ever hold more than one page of the roster.
+ *
+ * Jobs are kept in Redis and files in S3, so any server can report on a job and hand out its download URL. Jobs
+ * expire from Redis after JOB_EXPIRE_SECONDS; the roster export bucket's lifecycle rule removes old files. A job whose
+ * server stops while it's running stays RUNNING until it expires, and has to be started again.
+ *
+ * Partitions are read on export threads, which have no request context, so the substudies of the caller who started
+ * the job are kept with the job and passed to each roster read.
+ */
+@Component
+public class ParticipantRosterExportService {
+    private static final Logger LOG = LoggerFactory.getLogger(ParticipantRosterExportService.class);
+
+    static final String CSV_HEADER = "id,createdOn,firstName,lastName,email,phone,externalId,status";
+    static final String EXPORT_BUCKET_PROPERTY = "roster.export.bucket";
+    static final int JOB_EXPIRE_SECONDS = 24 * 60 * 60;
+    static final int PAGE_SIZE = 500;
+    static final int PARTITION_COUNT = 4;
+    static final int PROGRESS_SAVE_SECONDS = 5;
+    static final int URL_EXPIRE_MINUTES = 60;
+
+    private static final Joiner CSV_JOINER = Joiner.on(',').useForNull("");
+    private static final ObjectWriter ENTRY_WRITER = BridgeObjectMapper.get().writer();
+
+    private ParticipantRosterDao participantRosterDao;
+    private LocalFileStore localFileStore;
+    private CacheProvider cacheProvider;
+    private AmazonS3Client s3Client;
+    private BridgeConfig bridgeConfig;
+    private ExecutorService jobExecutorService;
+    private ExecutorService partitionExecutorService;
+
+    @Autowired
+    final void setParticipantRosterDao(ParticipantRosterDao participantRosterDao) {
+        this.participantRosterDao = participantRosterDao;
+    }
+
+    /** Holds the part files and the final file while the export is written. */
+    @Autowired
+    final void setLocalFileStore(LocalFileStore localFileStore) {
+        this.localFileStore = localFileStore;
+    }
+
+    /** Job store. */
+    @Autowired
+    final void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
+
+    @Resource(name = "s3Client")
+    final void setS3Client(AmazonS3Client s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    @Autowired
+    final void setBridgeConfig(BridgeConfig bridgeConfig) {
+        this.bridgeConfig = bridgeConfig;
+    }
+
+    /**
+     * Runs one coordinating task per job. This is a small dedicated pool, so a coordinator, which waits for its whole
+     * export, doesn't hold a thread of the shared async executor. Jobs beyond the pool size wait in the PENDING state.
+     */
+    @Resource(name = "rosterExportJobExecutorService")
+    final void setJobExecutorService(ExecutorService jobExecutorService) {
+        this.jobExecutorService = jobExecutorService;
+    }
+
+    /**
+     * Reads and writes the partitions of each job. This is separate from the job executor so that coordinating tasks
+     * waiting on their partitions can't starve the partitions of threads.
+     */
+    @Resource(name = "rosterExportExecutorService")
+    final void setPartitionExecutorService(ExecutorService partitionExecutorService) {
+        this.partitionExecutorService = partitionExecutorService;
+    }
+
+    /**
+     * Starts exporting the study's roster and returns the job, in the PENDING state. If the caller is limited to some
+     * substudies, only accounts in at least one of them are exported.
+     */
+    public RosterExportJob startExport(StudyIdentifier studyId, RosterExportJob.Format format) {
+        checkNotNull(studyId);
+        checkNotNull(format);
+
+        RosterExportJob job = new RosterExportJob(BridgeUtils.generateGuid(), studyId.getIdentifier(),
+                BridgeUtils.getRequestContext().getCallerSubstudies(), format, DateUtils.getCurrentDateTime());
+        saveJob(job);
+        // The export works on its own copy of the job, read back from the job store, so the job returned here
+        // isn't changed while the caller is writing it out.
+        String jobId = job.getJobId();
+        jobExecutorService.execute(() -> runExport(loadJob(jobId)));
+        return job;
+    }
+
+    /**
+     * Gets the job, which must belong to the given study. A caller limited to some substudies can only get jobs
+     * limited to those substudies. If the job has succeeded, it has a presigned URL to download the file from.
+     */
+    public RosterExportJob getJob(StudyIdentifier studyId, String jobId) {
+        checkNotNull(studyId);
+
+        RosterExportJob job = (jobId == null) ? null : loadJob(jobId);
+        if (job == null || !job.getStudyId().equals(studyId.getIdentifier()) || !isVisibleToCaller(job)) {
+            throw new EntityNotFoundException(RosterExportJob.class);
+        }
+        if (job.getStatus() == RosterExportJob.Status.SUCCEEDED) {
+            DateTime expiresOn = DateUtils.getCurrentDateTime().plusMinutes(URL_EXPIRE_MINUTES);
+            job.setUrl(s3Client.generatePresignedUrl(getBucket(), job.getFileName(), expiresOn.toDate(),
+                    HttpMethod.GET).toString());
+        }
+        return job;
+    }
+
+    /** Gets the presigned download URL of a job that has succeeded. */
+    public String getExportUrl(StudyIdentifier studyId, String jobId) {
+        RosterExportJob job = getJob(studyId, jobId);
+        if (job.getStatus() != RosterExportJob.Status.SUCCEEDED) {
+            throw new BadRequestException("Roster export " + jobId + " has not succeeded (status is " +
+                    job.getStatus() + ")");
+        }
+        return job.getUrl();
+    }
+
+    // Package-scoped for unit tests.
+    void runExport(RosterExportJob job) {
+        job.markRunning();
+        saveJob(job);
+
+        List<String> partFileNameList = new ArrayList<>();
+        List<Future<?>> futureList = new ArrayList<>();
+        try {
+            AtomicLong rowCount = new AtomicLong();
+            List<ParticipantRosterEntry> boundaryList = participantRosterDao.getPartitionBoundaries(
+                    job.getStudyId(), job.getSubstudyIds(), PARTITION_COUNT);
+            for (int i = 0; i <= boundaryList.size(); i++) {
+                ParticipantRosterEntry after = (i == 0) ? null : boundaryList.get(i - 1);
+                ParticipantRosterEntry until = (i == boundaryList.size()) ? null : boundaryList.get(i);
+                String partFileName = job.getFileName() + ".part" + i;
+                partFileNameList.add(partFileName);
+                futureList.add(partitionExecutorService.submit(() -> {
+                    writePartition(job, after, until, partFileName, rowCount);
+                    return null;
+                }));
+            }
+
+            // Save progress now and then, so status reads from any server see the row count go up.
+            for (Future<?> future : futureList) {
+                while (true) {
+                    try {
+                        future.get(PROGRESS_SAVE_SECONDS, TimeUnit.SECONDS);
+                        break;
+                    } catch (TimeoutException ex) {
+                        job.setRowCount(rowCount.get());
+                        saveJob(job);
+                    }
+                }
+            }
+
+            // Write the header (CSV only), then append the parts in key order.
+            try (OutputStream out = localFileStore.openForWrite(job.getFileName())) {
+                if (job.getFormat() == RosterExportJob.Format.CSV) {
+                    try (Writer writer = newGzipWriter(out)) {
+                        writer.write(CSV_HEADER);
+                        writer.write('\n');
+                    }
+                } else {
+                    // An empty gzip member, so the file is valid even when the roster is empty.
+                    newGzipWriter(out).close();
+                }
+            }
+            for (String partFileName : partFileNameList) {
+                try (InputStream in = localFileStore.openForRead(partFileName);
+                        OutputStream out = localFileStore.openForAppend(job.getFileName())) {
+                    ByteStreams.copy(in, out);
+                }
+            }
+
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType("application/gzip");
+            metadata.setContentDisposition("attachment; filename=\"roster-" + job.getJobId() + "." +
+                    job.getFormat().getFileExtension() + ".gz\"");
+            s3Client.putObject(new PutObjectRequest(getBucket(), job.getFileName(),
+                    localFileStore.getFile(job.getFileName())).withMetadata(metadata));
+
+            job.setRowCount(rowCount.get());
+            job.markSucceeded(DateUtils.getCurrentDateTime());
+        } catch (Exception ex) {
+            futureList.forEach(future -> future.cancel(true));
+            Throwable cause = (ex instanceof ExecutionException && ex.getCause() != null) ? ex.getCause() : ex;
+            LOG.error("Roster export " + job.getJobId() + " for study " + job.getStudyId() + " failed", cause);
+            job.markFailed(DateUtils.getCurrentDateTime(), "Roster export failed: " + cause.getMessage());
+        } finally {
+            partFileNameList.forEach(localFileStore::delete);
+            localFileStore.delete(job.getFileName());
+        }
+        saveJob(job);
+    }
+
+    private void writePartition(RosterExportJob job, ParticipantRosterEntry after, ParticipantRosterEntry until,
+            String partFileName, AtomicLong rowCount) throws IOException, InterruptedException {
+        try (Writer writer = newGzipWriter(localFileStore.openForWrite(partFileName))) {
+            DateTime afterCreatedOn = (after == null) ? null : after.getCreatedOn();
+            String afterId = (after == null) ? null : after.getId();
+            DateTime untilCreatedOn = (until == null) ? null : until.getCreatedOn();
+            String untilId = (until == null) ? null : until.getId();
+            List<ParticipantRosterEntry> page;
+            do {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Roster export " + job.getJobId() + " was cancelled");
+                }
+                page = participantRosterDao.getRosterPage(job.getStudyId(), job.getSubstudyIds(), afterCreatedOn,
+                        afterId, untilCreatedOn, untilId, PAGE_SIZE);
+                for (ParticipantRosterEntry entry : page) {
+                    writer.write(job.getFormat() == RosterExportJob.Format.CSV ? toCsvLine(entry) :
+                            ENTRY_WRITER.writeValueAsString(entry));
+                    writer.write('\n');
+                }
+                if (!page.isEmpty()) {
+                    ParticipantRosterEntry lastEntry = page.get(page.size() - 1);
+                    afterCreatedOn = lastEntry.getCreatedOn();
+                    afterId = lastEntry.getId();
+                    rowCount.addAndGet(page.size());
+                }
+            } while (page.size() == PAGE_SIZE);
+        }
+    }
+
+    static String toCsvLine(ParticipantRosterEntry entry) {
+        return CSV_JOINER.join(escape(entry.getId()), entry.getCreatedOn(), escape(entry.getFirstName()),
+                escape(entry.getLastName()), escape(entry.getEmail()), escape(entry.getPhone()),
+                escape(entry.getExternalId()), entry.getStatus());
+    }
+
+    private static String escape(String value) {
+        return (value == null) ? null : StringEscapeUtils.escapeCsv(value);
+    }
+
+    private static Writer newGzipWriter(OutputStream out) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8));
+    }
+
+    private static boolean isVisibleToCaller(RosterExportJob job) {
+        Set<String> callerSubstudies = BridgeUtils.getRequestContext().getCallerSubstudies();
+        return callerSubstudies.isEmpty() || (!job.getSubstudyIds().isEmpty()
+                && callerSubstudies.containsAll(job.getSubstudyIds()));
+    }
+
+    private void saveJob(RosterExportJob job) {
+        try {
+            cacheProvider.setObject(jobKey(job.getJobId()), RosterExportJob.STORED_JOB_WRITER.writeValueAsString(job),
+                    JOB_EXPIRE_SECONDS);
+        } catch (JsonProcessingException ex) {
+            throw new BridgeServiceException(ex.getMessage());
+        }
+    }
+
+    private RosterExportJob loadJob(String jobId) {
+        String json = cacheProvider.getObject(jobKey(jobId), String.class);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return BridgeObjectMapper.get().readValue(json, RosterExportJob.class);
+        } catch (IOException ex) {
+            throw new BridgeServiceException(ex.getMessage());
+        }
+    }
+
+    private static CacheKey jobKey(String jobId) {
+        return CacheKey.viewKey(RosterExportJob.class, jobId);
+    }
+
+    private String getBucket() {
+        return bridgeConfig.getProperty(EXPORT_BUCKET_PROPERTY);
+    }
+}
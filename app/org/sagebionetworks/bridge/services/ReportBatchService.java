@@ -0,0 +1,123 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.dao.ReportBatchDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.models.reports.ReportData;
+import org.sagebionetworks.bridge.models.reports.ReportDataKey;
+import org.sagebionetworks.bridge.models.reports.ReportIndex;
+import org.sagebionetworks.bridge.models.reports.ReportType;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.validators.ReportDataKeyValidator;
+import org.sagebionetworks.bridge.validators.ReportDataValidator;
+import org.sagebionetworks.bridge.validators.Validate;
+
+/**
+ * Saves many report records of one report in a single call, for workers backfilling reports. Records are grouped by
+ * report key, written with batch writes, and the report's index is checked once per call instead of once per record.
+ * Within a call, a later record for the same key and date replaces an earlier one, as it would with individual saves.
+ */
+@Component
+public class ReportBatchService {
+    /** Maximum number of report records in one call. */
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private ReportBatchDao reportBatchDao;
+
+    @Autowired
+    final void setReportBatchDao(ReportBatchDao reportBatchDao) {
+        this.reportBatchDao = reportBatchDao;
+    }
+
+    /** Saves the records of a study report, and returns the number of records saved. */
+    public int saveStudyReports(StudyIdentifier studyId, String identifier, List<ReportData> reportDataList) {
+        checkNotNull(studyId);
+        checkNotNull(reportDataList);
+        checkBatchSize(reportDataList.size());
+
+        ReportDataKey key = makeKey(studyId, ReportType.STUDY, identifier, null);
+        List<ReportData> keyedList = keyRecords(key, reportDataList);
+
+        reportBatchDao.saveReportData(keyedList);
+        reportBatchDao.addIndicesIfMissing(ImmutableList.of(makeIndex(key)));
+        return keyedList.size();
+    }
+
+    /**
+     * Saves the records of a participant report for many participants, given as lists of records by health code,
+     * and returns the number of records saved.
+     */
+    public int saveParticipantReports(StudyIdentifier studyId, String identifier,
+            Map<String, List<ReportData>> reportDataByHealthCode) {
+        checkNotNull(studyId);
+        checkNotNull(reportDataByHealthCode);
+        checkBatchSize(reportDataByHealthCode.values().stream().mapToInt(List::size).sum());
+
+        List<ReportData> keyedList = new ArrayList<>();
+        ReportDataKey key = null;
+        for (Map.Entry<String, List<ReportData>> entry : reportDataByHealthCode.entrySet()) {
+            key = makeKey(studyId, ReportType.PARTICIPANT, identifier, entry.getKey());
+            keyedList.addAll(keyRecords(key, entry.getValue()));
+        }
+
+        reportBatchDao.saveReportData(keyedList);
+        // Participant reports share one index per identifier, whatever the health code.
+        reportBatchDao.addIndicesIfMissing(ImmutableList.of(makeIndex(key)));
+        return keyedList.size();
+    }
+
+    private static void checkBatchSize(int size) {
+        if (size == 0) {
+            throw new BadRequestException("Report data must be provided");
+        }
+        if (size > MAX_BATCH_SIZE) {
+            throw new BadRequestException("Cannot save more than " + MAX_BATCH_SIZE + " report records at a time");
+        }
+    }
+
+    // Keys and records are validated with the same validators as individual saves through ReportService.
+    private static ReportDataKey makeKey(StudyIdentifier studyId, ReportType reportType, String identifier,
+            String healthCode) {
+        ReportDataKey key = new ReportDataKey.Builder().withStudyIdentifier(studyId).withReportType(reportType)
+                .withIdentifier(identifier).withHealthCode(healthCode).build();
+        Validate.entityThrowingException(ReportDataKeyValidator.INSTANCE, key);
+        return key;
+    }
+
+    // Sets the key on each record, keeping only the last record for each date.
+    private static List<ReportData> keyRecords(ReportDataKey key, List<ReportData> reportDataList) {
+        Map<String, ReportData> recordsByDate = new LinkedHashMap<>();
+        for (ReportData reportData : reportDataList) {
+            if (reportData == null) {
+                throw new BadRequestException("Report records cannot be null");
+            }
+            reportData.setKey(key.getKeyString());
+            Validate.entityThrowingException(ReportDataValidator.INSTANCE, reportData);
+            recordsByDate.put(reportData.getDate(), reportData);
+        }
+        return new ArrayList<>(recordsByDate.values());
+    }
+
+    private static ReportIndex makeIndex(ReportDataKey key) {
+        ReportIndex index = ReportIndex.create();
+        index.setKey(key.getIndexKeyString());
+        index.setIdentifier(key.getIdentifier());
+        Set<String> callerSubstudies = BridgeUtils.getRequestContext().getCallerSubstudies();
+        if (!callerSubstudies.isEmpty()) {
+            index.setSubstudyIds(callerSubstudies);
+        }
+        return index;
+    }
+}
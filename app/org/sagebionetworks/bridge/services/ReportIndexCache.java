@@ -0,0 +1,123 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.ViewCache;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.ReportTypeResourceList;
+import org.sagebionetworks.bridge.models.reports.ReportIndex;
+import org.sagebionetworks.bridge.models.reports.ReportType;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+
+/**
+ * Caches the report indices of a study, by report type. Listings are held in the shared view cache, and for a short
+ * time in memory on each server, so listing indices doesn't scan DynamoDB on every request. Indices only change when
+ * a report is first saved, when an index is updated, or when a report is deleted, and the report APIs call this cache
+ * at those times to reload the listing. Other servers can return the old listing for up to LOCAL_EXPIRE_SECONDS, so
+ * access checks (such as whether a report is public) read the index itself instead.
+ */
+@Component
+public class ReportIndexCache {
+    /**
+     * How long a server keeps its own copy of a listing. Other servers' copies aren't cleared when an index changes,
+     * so this is the longest a server can return a stale listing.
+     */
+    static final int LOCAL_EXPIRE_SECONDS = 30;
+
+    static final int LOCAL_MAX_SIZE = 1000;
+
+    private static final TypeReference<ReportTypeResourceList<ReportIndex>> INDEX_LIST_TYPE_REF =
+            new TypeReference<ReportTypeResourceList<ReportIndex>>() {};
+
+    private final Cache<String, ReportTypeResourceList<ReportIndex>> localCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(LOCAL_EXPIRE_SECONDS, TimeUnit.SECONDS).maximumSize(LOCAL_MAX_SIZE).build();
+
+    private ReportService reportService;
+
+    private ViewCache viewCache;
+
+    @Autowired
+    final void setReportService(ReportService reportService) {
+        this.reportService = reportService;
+    }
+
+    @Resource(name = "genericViewCache")
+    final void setViewCache(ViewCache viewCache) {
+        this.viewCache = viewCache;
+    }
+
+    /** Get the indices of all reports of this type in the study. */
+    public ReportTypeResourceList<ReportIndex> getReportIndices(StudyIdentifier studyId, ReportType reportType) {
+        checkNotNull(studyId);
+        checkNotNull(reportType);
+
+        CacheKey cacheKey = indicesKey(studyId, reportType);
+        ReportTypeResourceList<ReportIndex> indices = localCache.getIfPresent(cacheKey.toString());
+        if (indices == null) {
+            String json = viewCache.getView(cacheKey, () -> reportService.getReportIndices(studyId, reportType));
+            try {
+                indices = BridgeObjectMapper.get().readValue(json, INDEX_LIST_TYPE_REF);
+            } catch (IOException e) {
+                throw new BridgeServiceException(e.getMessage());
+            }
+            localCache.put(cacheKey.toString(), indices);
+        }
+        return indices;
+    }
+
+    /**
+     * Get the index of a report from the study's listing, or null if there is no such report. Indices in the
+     * listing are in their API form and don't include their keys.
+     */
+    public ReportIndex getReportIndex(StudyIdentifier studyId, ReportType reportType, String identifier) {
+        checkNotNull(identifier);
+
+        for (ReportIndex index : getReportIndices(studyId, reportType).getItems()) {
+            if (identifier.equals(index.getIdentifier())) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Call after report data is saved. Saving a record only creates an index the first time, so the listing is
+     * reloaded only when the report isn't already in it.
+     */
+    public void reportSaved(StudyIdentifier studyId, ReportType reportType, String identifier) {
+        if (getReportIndex(studyId, reportType, identifier) == null) {
+            reload(studyId, reportType);
+        }
+    }
+
+    /**
+     * Call after an index has been changed or removed. The listing is read from DynamoDB and written to the cache
+     * right away, so the next request doesn't have to load it.
+     */
+    public void reload(StudyIdentifier studyId, ReportType reportType) {
+        checkNotNull(studyId);
+        checkNotNull(reportType);
+
+        CacheKey cacheKey = indicesKey(studyId, reportType);
+        viewCache.removeView(cacheKey);
+        localCache.invalidate(cacheKey.toString());
+        getReportIndices(studyId, reportType);
+    }
+
+    private static CacheKey indicesKey(StudyIdentifier studyId, ReportType reportType) {
+        return CacheKey.viewKey(ReportIndex.class, studyId.getIdentifier(), reportType.name());
+    }
+}
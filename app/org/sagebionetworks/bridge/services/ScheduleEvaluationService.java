@@ -0,0 +1,298 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Resource;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.ClientInfo;
+import org.sagebionetworks.bridge.models.CriteriaMatcher;
+import org.sagebionetworks.bridge.models.schedules.ABTestScheduleStrategy;
+import org.sagebionetworks.bridge.models.schedules.CriteriaScheduleStrategy;
+import org.sagebionetworks.bridge.models.schedules.Schedule;
+import org.sagebionetworks.bridge.models.schedules.ScheduleContext;
+import org.sagebionetworks.bridge.models.schedules.ScheduleCriteria;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationGroup;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationParticipant;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationRequest;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationResult;
+import org.sagebionetworks.bridge.models.schedules.SchedulePlan;
+import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+
+/**
+ * Evaluates the schedule plans of a study for many participants at once, for workers that precompute or audit
+ * schedules. Participants who share a signature (data groups, substudies, time zone and enrollment date) get the same
+ * activities, so the plans are evaluated once per signature, in parallel on the schedule evaluation executor, and
+ * the activities are returned with the users that share them. A/B test plans assign participants to schedules by
+ * health code, so if the study has any, the schedules a participant is assigned to are part of the signature too.
+ *
+ * This evaluates what the plans generate from enrollment, as the scheduler would for a new participant. It doesn't
+ * read the activities already persisted for each participant, or activity events other than enrollment. Enrollment
+ * is taken as the start of the enrollment date in the participant's time zone, so activities scheduled at times of
+ * day are the same as the participant would get, but activities without times are placed at the start of the day,
+ * rather than at the time the participant enrolled. Activities are evaluated for an unknown client, so plans are not
+ * filtered by app version. The schedule criteria of criteria-based plans are compiled once per request, and shared by
+ * all of the evaluations.
+ */
+@Component
+public class ScheduleEvaluationService {
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleEvaluationService.class);
+
+    static final int MAX_PARTICIPANTS = 100000;
+    static final int MAX_WINDOW_DAYS = 31;
+
+    /** Activity event that schedules without an event ID are scheduled from. */
+    static final String ENROLLMENT_EVENT = "enrollment";
+
+    private SchedulePlanService schedulePlanService;
+    private ExecutorService evaluationExecutorService;
+
+    @Autowired
+    final void setSchedulePlanService(SchedulePlanService schedulePlanService) {
+        this.schedulePlanService = schedulePlanService;
+    }
+
+    @Resource(name = "scheduleEvaluationExecutorService")
+    final void setEvaluationExecutorService(ExecutorService evaluationExecutorService) {
+        this.evaluationExecutorService = evaluationExecutorService;
+    }
+
+    /** Evaluates the study's schedule plans for each of the participants, and returns the activities by signature. */
+    public ScheduleEvaluationResult evaluateSchedules(Study study, ScheduleEvaluationRequest request) {
+        checkNotNull(study);
+        checkNotNull(request);
+
+        DateTime startsOn = request.getStartsOn();
+        DateTime endsOn = request.getEndsOn();
+        List<ScheduleEvaluationParticipant> participantList = request.getParticipants();
+        if (startsOn == null || endsOn == null) {
+            throw new BadRequestException("startsOn and endsOn are both required");
+        }
+        if (!endsOn.isAfter(startsOn)) {
+            throw new BadRequestException("endsOn must be after startsOn");
+        }
+        if (Days.daysBetween(startsOn, endsOn).getDays() > MAX_WINDOW_DAYS) {
+            throw new BadRequestException("Cannot evaluate schedules for more than " + MAX_WINDOW_DAYS + " days");
+        }
+        if (participantList.isEmpty()) {
+            throw new BadRequestException("Participants must be provided");
+        }
+        if (participantList.size() > MAX_PARTICIPANTS) {
+            throw new BadRequestException("Cannot evaluate schedules for more than " + MAX_PARTICIPANTS +
+                    " participants at a time");
+        }
+
+        long startNanos = System.nanoTime();
+        StudyIdentifier studyId = study.getStudyIdentifier();
+        List<SchedulePlan> plans = schedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, studyId, false);
+        List<SchedulePlan> abTestPlans = new ArrayList<>();
+        Map<SchedulePlan, CriteriaMatcher<ScheduleCriteria>> criteriaMatchers = new IdentityHashMap<>();
+        for (SchedulePlan plan : plans) {
+            if (plan.getStrategy() instanceof ABTestScheduleStrategy) {
+                abTestPlans.add(plan);
+            } else if (plan.getStrategy() instanceof CriteriaScheduleStrategy) {
+                criteriaMatchers.put(plan, CriteriaMatcher.compile(
+                        ((CriteriaScheduleStrategy) plan.getStrategy()).getScheduleCriteria(),
+                        ScheduleCriteria::getCriteria));
+            }
+        }
+
+        Map<Signature, Members> membersBySignature = new LinkedHashMap<>();
+        for (ScheduleEvaluationParticipant participant : participantList) {
+            Signature signature = getSignature(studyId, abTestPlans, participant);
+            membersBySignature.computeIfAbsent(signature, key -> new Members(participant.getHealthCode()))
+                    .userIdList.add(participant.getUserId());
+        }
+
+        List<Future<List<ScheduledActivity>>> futureList = new ArrayList<>();
+        for (Map.Entry<Signature, Members> entry : membersBySignature.entrySet()) {
+            futureList.add(evaluationExecutorService.submit(() -> evaluate(studyId, plans, criteriaMatchers,
+                    entry.getKey(), entry.getValue().healthCode, startsOn, endsOn)));
+        }
+
+        List<ScheduleEvaluationGroup> groupList = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<Signature, Members> entry : membersBySignature.entrySet()) {
+            Signature signature = entry.getKey();
+            List<ScheduledActivity> activityList = getResult(futureList, futureList.get(i++));
+            groupList.add(new ScheduleEvaluationGroup(signature.dataGroups, signature.substudyIds,
+                    signature.timeZone.getID(), signature.enrollmentDate, entry.getValue().userIdList,
+                    activityList));
+        }
+
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        LOG.info("Evaluated schedules of " + participantList.size() + " participants in " + groupList.size() +
+                " groups for study " + study.getIdentifier() + " in " + elapsedMillis + " ms");
+        return new ScheduleEvaluationResult(participantList.size(), elapsedMillis, groupList);
+    }
+
+    private static Signature getSignature(StudyIdentifier studyId, List<SchedulePlan> abTestPlans,
+            ScheduleEvaluationParticipant participant) {
+        if (isBlank(participant.getUserId())) {
+            throw new BadRequestException("Participants must have a userId");
+        }
+        if (participant.getEnrolledOn() == null) {
+            throw new BadRequestException("Participant " + participant.getUserId() + " must have an enrolledOn");
+        }
+        if (isBlank(participant.getTimeZone())) {
+            throw new BadRequestException("Participant " + participant.getUserId() + " must have a timeZone");
+        }
+        DateTimeZone timeZone;
+        try {
+            timeZone = DateTimeZone.forID(participant.getTimeZone());
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Participant " + participant.getUserId() + " has an invalid timeZone");
+        }
+
+        List<Schedule> abTestSchedules = ImmutableList.of();
+        if (!abTestPlans.isEmpty()) {
+            if (isBlank(participant.getHealthCode())) {
+                throw new BadRequestException("Participant " + participant.getUserId() +
+                        " must have a healthCode, because the study has A/B test schedule plans");
+            }
+            ScheduleContext context = new ScheduleContext.Builder()
+                    .withStudyIdentifier(studyId)
+                    .withClientInfo(ClientInfo.UNKNOWN_CLIENT)
+                    .withHealthCode(participant.getHealthCode())
+                    .withUserDataGroups(participant.getDataGroups())
+                    .withUserSubstudyIds(participant.getSubstudyIds()).build();
+            List<Schedule> scheduleList = new ArrayList<>();
+            for (SchedulePlan plan : abTestPlans) {
+                scheduleList.add(plan.getStrategy().getScheduleForUser(plan, context));
+            }
+            abTestSchedules = scheduleList;
+        }
+        return new Signature(participant.getDataGroups(), participant.getSubstudyIds(), timeZone,
+                participant.getEnrolledOn().withZone(timeZone).toLocalDate(), abTestSchedules);
+    }
+
+    // Runs on the evaluation executor. The plans and matchers are shared by all of the evaluations, and are only read.
+    private static List<ScheduledActivity> evaluate(StudyIdentifier studyId, List<SchedulePlan> plans,
+            Map<SchedulePlan, CriteriaMatcher<ScheduleCriteria>> criteriaMatchers, Signature signature,
+            String healthCode, DateTime startsOn, DateTime endsOn) {
+        DateTime enrolledOn = signature.enrollmentDate.toDateTimeAtStartOfDay(signature.timeZone);
+        ScheduleContext context = new ScheduleContext.Builder()
+                .withStudyIdentifier(studyId)
+                .withClientInfo(ClientInfo.UNKNOWN_CLIENT)
+                .withHealthCode(healthCode)
+                .withUserDataGroups(signature.dataGroups)
+                .withUserSubstudyIds(signature.substudyIds)
+                .withInitialTimeZone(signature.timeZone)
+                .withAccountCreatedOn(enrolledOn)
+                .withStartsOn(startsOn.withZone(signature.timeZone))
+                .withEndsOn(endsOn.withZone(signature.timeZone))
+                .withEvents(ImmutableMap.of(ENROLLMENT_EVENT, enrolledOn)).build();
+
+        List<ScheduledActivity> activityList = new ArrayList<>();
+        for (SchedulePlan plan : plans) {
+            Schedule schedule;
+            CriteriaMatcher<ScheduleCriteria> matcher = criteriaMatchers.get(plan);
+            if (matcher != null) {
+                // A criteria-based plan gives the user the schedule of its first matching criteria.
+                ScheduleCriteria scheduleCriteria = matcher.getFirstMatch(context.getCriteriaContext());
+                schedule = (scheduleCriteria == null) ? null : scheduleCriteria.getSchedule();
+            } else {
+                schedule = plan.getStrategy().getScheduleForUser(plan, context);
+            }
+            if (schedule != null) {
+                activityList.addAll(schedule.getScheduler().getScheduledActivities(plan, context));
+            }
+        }
+        // The activities are shared by every user in the group, so they don't carry the health code they were
+        // evaluated with.
+        for (ScheduledActivity activity : activityList) {
+            activity.setHealthCode(null);
+        }
+        activityList.sort(ScheduledActivity.SCHEDULED_ACTIVITY_COMPARATOR);
+        return activityList;
+    }
+
+    private static List<ScheduledActivity> getResult(List<Future<List<ScheduledActivity>>> futureList,
+            Future<List<ScheduledActivity>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            futureList.forEach(f -> f.cancel(true));
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new BridgeServiceException(ex.getCause().getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            futureList.forEach(f -> f.cancel(true));
+            throw new BridgeServiceException("Interrupted while evaluating schedules");
+        }
+    }
+
+    private static final class Members {
+        private final String healthCode;
+        private final List<String> userIdList = new ArrayList<>();
+
+        Members(String healthCode) {
+            this.healthCode = healthCode;
+        }
+    }
+
+    private static final class Signature {
+        private final Set<String> dataGroups;
+        private final Set<String> substudyIds;
+        private final DateTimeZone timeZone;
+        private final LocalDate enrollmentDate;
+        private final List<Schedule> abTestSchedules;
+
+        Signature(Set<String> dataGroups, Set<String> substudyIds, DateTimeZone timeZone, LocalDate enrollmentDate,
+                List<Schedule> abTestSchedules) {
+            this.dataGroups = dataGroups;
+            this.substudyIds = substudyIds;
+            this.timeZone = timeZone;
+            this.enrollmentDate = enrollmentDate;
+            this.abTestSchedules = abTestSchedules;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dataGroups, substudyIds, timeZone, enrollmentDate, abTestSchedules);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Signature other = (Signature) obj;
+            return Objects.equals(dataGroups, other.dataGroups) && Objects.equals(substudyIds, other.substudyIds)
+                    && Objects.equals(timeZone, other.timeZone)
+                    && Objects.equals(enrollmentDate, other.enrollmentDate)
+                    && Objects.equals(abTestSchedules, other.abTestSchedules);
+        }
+    }
+}
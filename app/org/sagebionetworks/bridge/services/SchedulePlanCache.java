@@ -0,0 +1,67 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.models.schedules.SchedulePlan;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+
+/**
+ * Caches the schedule plans of each study in memory on each server. Every request for scheduled activities, and every
+ * schedule plan listing, loads all of the study's plans and deserializes their strategies, while plans change only
+ * when a developer edits them.
+ *
+ * Each study's full list of plans is cached, once with and once without deleted plans. The list doesn't depend on
+ * the client: a plan's strategy matches the client's app version and the rest of the schedule context when the
+ * caller picks a schedule from it, on every request. Creating, updating or deleting a plan drops the study's cached
+ * lists on this server. Other servers aren't told, so lists also expire, to bound how long another server can
+ * schedule from an edited plan.
+ */
+@Component
+public class SchedulePlanCache {
+    /** How long a server keeps a study's plans. */
+    static final int EXPIRE_SECONDS = 60;
+
+    static final int MAX_SIZE = 1000;
+
+    private final Cache<String, List<SchedulePlan>> cache = CacheBuilder.newBuilder()
+            .expireAfterWrite(EXPIRE_SECONDS, TimeUnit.SECONDS).maximumSize(MAX_SIZE).build();
+
+    /**
+     * Get all of the study's plans, calling the loader if they aren't cached. The returned list can't be modified,
+     * and the plans in it are shared with other callers, so they must not be modified either.
+     */
+    public List<SchedulePlan> getSchedulePlans(StudyIdentifier studyId, boolean includeDeleted,
+            Supplier<List<SchedulePlan>> loader) {
+        checkNotNull(studyId);
+        checkNotNull(loader);
+
+        String key = cacheKey(studyId, includeDeleted);
+        List<SchedulePlan> plans = cache.getIfPresent(key);
+        if (plans == null) {
+            plans = ImmutableList.copyOf(loader.get());
+            cache.put(key, plans);
+        }
+        return plans;
+    }
+
+    /** Drops the cached plan lists for the study, after one of its plans is created, updated or deleted. */
+    public void plansChanged(StudyIdentifier studyId) {
+        checkNotNull(studyId);
+
+        cache.invalidate(cacheKey(studyId, false));
+        cache.invalidate(cacheKey(studyId, true));
+    }
+
+    private static String cacheKey(StudyIdentifier studyId, boolean includeDeleted) {
+        return studyId.getIdentifier() + ":" + includeDeleted;
+    }
+}
@@ -0,0 +1,157 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Resource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.cache.ViewCache;
+import org.sagebionetworks.bridge.dao.SurveyBatchDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.BatchItemResult;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+
+/**
+ * Gets many survey versions in one call, such as all the surveys referenced by a schedule. Versions already in the
+ * cache are returned from it, and the rest are read with one batch read and added to the cache, so later single and
+ * batch reads of them are hits too. Study callers use the same view cache keys as single survey reads; workers, who
+ * read across studies, use the worker survey cache.
+ */
+@Component
+public class SurveyBatchService {
+    /** Maximum number of survey versions in one call. */
+    static final int MAX_BATCH_SIZE = 100;
+
+    static final String NOT_FOUND_MESSAGE = "Survey not found.";
+
+    private SurveyBatchDao surveyBatchDao;
+    private CacheProvider cacheProvider;
+    private ViewCache viewCache;
+    private WorkerSurveyCache workerSurveyCache;
+
+    @Autowired
+    final void setSurveyBatchDao(SurveyBatchDao surveyBatchDao) {
+        this.surveyBatchDao = surveyBatchDao;
+    }
+
+    @Autowired
+    final void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
+
+    @Resource(name = "genericViewCache")
+    final void setViewCache(ViewCache viewCache) {
+        this.viewCache = viewCache;
+    }
+
+    @Autowired
+    final void setWorkerSurveyCache(WorkerSurveyCache workerSurveyCache) {
+        this.workerSurveyCache = workerSurveyCache;
+    }
+
+    /**
+     * Gets the survey versions, with their elements, in request order. Each result is keyed by survey GUID and
+     * createdOn (guid:createdOn), and holds either the survey as JSON or a 404 for a version that doesn't exist (or,
+     * for study callers, that belongs to another study). Duplicate versions are returned once.
+     *
+     * @param studyId
+     *         the caller's study, or null for workers, who can read the surveys of any study
+     * @param keysList
+     *         survey versions to get
+     */
+    public List<BatchItemResult<JsonNode>> getSurveys(StudyIdentifier studyId,
+            List<GuidCreatedOnVersionHolder> keysList) {
+        checkNotNull(keysList);
+
+        // Keep the first occurrence of each version, in request order.
+        Map<String, GuidCreatedOnVersionHolder> keysByItemKey = new LinkedHashMap<>();
+        for (GuidCreatedOnVersionHolder keys : keysList) {
+            if (keys == null || isBlank(keys.getGuid())) {
+                throw new BadRequestException("Each survey requires a guid and createdOn");
+            }
+            keysByItemKey.putIfAbsent(itemKey(keys.getGuid(), keys.getCreatedOn()), keys);
+        }
+        if (keysByItemKey.isEmpty()) {
+            throw new BadRequestException("Surveys must be provided");
+        }
+        if (keysByItemKey.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("Cannot get more than " + MAX_BATCH_SIZE + " surveys at a time");
+        }
+
+        Map<String, String> jsonByItemKey = new LinkedHashMap<>();
+        List<GuidCreatedOnVersionHolder> missList = new ArrayList<>();
+        for (Map.Entry<String, GuidCreatedOnVersionHolder> entry : keysByItemKey.entrySet()) {
+            GuidCreatedOnVersionHolder keys = entry.getValue();
+            String json = (studyId == null) ?
+                    workerSurveyCache.getCachedSurveyJson(keys.getGuid(), keys.getCreatedOn()) :
+                    cacheProvider.getObject(viewKey(studyId, keys.getGuid(), keys.getCreatedOn()), String.class);
+            if (json != null) {
+                jsonByItemKey.put(entry.getKey(), json);
+            } else {
+                missList.add(keys);
+            }
+        }
+
+        if (!missList.isEmpty()) {
+            for (Survey survey : surveyBatchDao.getSurveys(missList)) {
+                String itemKey = itemKey(survey.getGuid(), survey.getCreatedOn());
+                if (studyId == null) {
+                    jsonByItemKey.put(itemKey, workerSurveyCache.cacheSurvey(survey));
+                } else if (studyId.getIdentifier().equals(survey.getStudyIdentifier())) {
+                    jsonByItemKey.put(itemKey, viewCache.getView(
+                            viewKey(studyId, survey.getGuid(), survey.getCreatedOn()), () -> survey));
+                }
+            }
+        }
+
+        List<BatchItemResult<JsonNode>> resultList = new ArrayList<>();
+        for (String itemKey : keysByItemKey.keySet()) {
+            String json = jsonByItemKey.get(itemKey);
+            if (json == null) {
+                resultList.add(BatchItemResult.failed(itemKey, 404, NOT_FOUND_MESSAGE));
+            } else {
+                resultList.add(BatchItemResult.succeeded(itemKey, readTree(json)));
+            }
+        }
+        return resultList;
+    }
+
+    // Surveys are cached under createdOn in the ISO form clients get from the API, as SurveyController does.
+    private CacheKey viewKey(StudyIdentifier studyId, String surveyGuid, long createdOn) {
+        return viewCache.getCacheKey(Survey.class, surveyGuid, createdOnString(createdOn), studyId.getIdentifier());
+    }
+
+    private static String itemKey(String surveyGuid, long createdOn) {
+        return surveyGuid + ":" + createdOnString(createdOn);
+    }
+
+    private static String createdOnString(long createdOn) {
+        return new DateTime(createdOn, DateTimeZone.UTC).toString();
+    }
+
+    private static JsonNode readTree(String json) {
+        try {
+            return BridgeObjectMapper.get().readTree(json);
+        } catch (IOException e) {
+            throw new BridgeServiceException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Resource;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.cache.ViewCache;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.surveys.SurveyCacheWarmingMetrics;
+import org.sagebionetworks.bridge.time.DateUtils;
+
+/**
+ * Loads published surveys into the view cache before participants ask for them, so the first participants after a
+ * deploy or a publish don't pay for loading the survey and all of its elements. A survey is cached under the keys
+ * SurveyController reads: its version (createdOn, in the ISO form clients get from the API) and its most recently
+ * published version.
+ *
+ * Warming runs on its own small thread pool, so it can't crowd out request threads or hit DynamoDB with more than a
+ * few survey loads at a time. Failures are logged and counted; the first request for that survey then loads it.
+ */
+@Component
+public class SurveyCacheWarmer {
+    private static final Logger LOG = LoggerFactory.getLogger(SurveyCacheWarmer.class);
+
+    /** View cache key part for the most recently published version of a survey. */
+    public static final String PUBLISHED_KEY = "published";
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong warmedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final DateTime startedOn = DateUtils.getCurrentDateTime();
+
+    private StudyService studyService;
+    private SurveyService surveyService;
+    private ViewCache viewCache;
+    private ExecutorService warmingExecutorService;
+
+    @Autowired
+    final void setStudyService(StudyService studyService) {
+        this.studyService = studyService;
+    }
+
+    @Autowired
+    final void setSurveyService(SurveyService surveyService) {
+        this.surveyService = surveyService;
+    }
+
+    @Resource(name = "genericViewCache")
+    final void setViewCache(ViewCache viewCache) {
+        this.viewCache = viewCache;
+    }
+
+    @Resource(name = "surveyCacheWarmingExecutorService")
+    final void setWarmingExecutorService(ExecutorService warmingExecutorService) {
+        this.warmingExecutorService = warmingExecutorService;
+    }
+
+    /**
+     * Queues every published survey of every active study to be warmed, and returns right away. Called once at
+     * startup.
+     */
+    public void warmPublishedSurveys() {
+        warmingExecutorService.execute(() -> {
+            try {
+                int studyCount = 0;
+                for (Study study : studyService.getStudies()) {
+                    if (!study.isActive()) {
+                        continue;
+                    }
+                    List<Survey> surveyList = surveyService.getAllSurveysMostRecentlyPublishedVersion(
+                            study.getStudyIdentifier(), false);
+                    for (Survey survey : surveyList) {
+                        warmSurvey(study.getStudyIdentifier(), survey.getGuid(), survey.getCreatedOn());
+                    }
+                    studyCount++;
+                }
+                LOG.info("Queued " + queuedCount.get() + " published surveys in " + studyCount +
+                        " studies for cache warming");
+            } catch (RuntimeException ex) {
+                LOG.error("Could not list published surveys for cache warming", ex);
+            }
+        });
+    }
+
+    /** Queues a survey version, just published, to be warmed, and returns right away. */
+    public void warmSurvey(StudyIdentifier studyId, String surveyGuid, long createdOn) {
+        checkNotNull(studyId);
+        checkNotNull(surveyGuid);
+
+        queuedCount.incrementAndGet();
+        warmingExecutorService.execute(() -> {
+            try {
+                GuidCreatedOnVersionHolder keys = new GuidCreatedOnVersionHolderImpl(surveyGuid, createdOn);
+                String createdOnString = new DateTime(createdOn, DateTimeZone.UTC).toString();
+                viewCache.getView(viewCache.getCacheKey(Survey.class, surveyGuid, createdOnString,
+                        studyId.getIdentifier()), () -> surveyService.getSurvey(studyId, keys, true, true));
+                viewCache.getView(viewCache.getCacheKey(Survey.class, surveyGuid, PUBLISHED_KEY,
+                        studyId.getIdentifier()), () -> surveyService.getSurveyMostRecentlyPublishedVersion(
+                                studyId, surveyGuid, true));
+                warmedCount.incrementAndGet();
+            } catch (RuntimeException ex) {
+                failedCount.incrementAndGet();
+                LOG.warn("Could not warm cache for survey " + surveyGuid + " in study " + studyId.getIdentifier(),
+                        ex);
+            }
+        });
+    }
+
+    /** Warming progress for this server. */
+    public SurveyCacheWarmingMetrics getMetrics() {
+        return new SurveyCacheWarmingMetrics(startedOn, DateUtils.getCurrentDateTime(), queuedCount.get(),
+                warmedCount.get(), failedCount.get());
+    }
+}
@@ -0,0 +1,157 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.upload.CompiledUploadSchema;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+
+/**
+ * Caches upload schema revisions in memory on each server, with their field definitions keyed by name. Workers ask
+ * for a schema revision for every record they process, and the same few revisions are asked for over and over.
+ *
+ * Revisions are cached by study, schema ID and revision, and served from memory without any call to the shared
+ * cache. The latest revision of each schema is cached separately, and is the only lookup that checks the shared cache:
+ * a new revision can be created on any server, so the cached latest revision is stamped with a version stamp for its
+ * schema. The schema APIs call {@link #schemaChanged} when a schema is created, updated or deleted, which replaces the
+ * stamp, and latest revisions cached on any server with an old stamp are read again. The stamp is read before the
+ * revision, so a revision read while the schema is being changed is stamped as out of date.
+ *
+ * Revisions can also be updated in place and deleted, so serving a specific revision from memory isn't safe across
+ * servers. Instead, schemaChanged drops the schema's revisions cached on the server that made the change, and
+ * revisions cached on other servers are read again when they expire, so they can be out of date for up to
+ * {@link #REVISION_EXPIRE_MINUTES}. Changes that aren't made through the schema APIs are also only picked up when
+ * revisions expire.
+ */
+@Component
+public class UploadSchemaCache {
+    /** How long a server keeps the latest revision of a schema. */
+    static final int LATEST_EXPIRE_SECONDS = 30;
+
+    /**
+     * How long a server keeps a specific revision of a schema. This bounds how long a server can serve a revision that
+     * was updated in place or deleted on another server.
+     */
+    static final int REVISION_EXPIRE_MINUTES = 10;
+
+    static final int MAX_SIZE = 2000;
+
+    /** How long a stamp is kept in the shared cache. A missing stamp is replaced, so any expiration is safe. */
+    static final int STAMP_EXPIRE_SECONDS = 24 * 60 * 60;
+
+    static final String LATEST_KEY = "latest";
+
+    private static final String STAMP_KEY_PART = "stamp";
+
+    private final Cache<String, CompiledUploadSchema> revisionCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(REVISION_EXPIRE_MINUTES, TimeUnit.MINUTES).maximumSize(MAX_SIZE).build();
+
+    private final Cache<String, StampedSchema> latestCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(LATEST_EXPIRE_SECONDS, TimeUnit.SECONDS).maximumSize(MAX_SIZE).build();
+
+    private CacheProvider cacheProvider;
+
+    private UploadSchemaService uploadSchemaService;
+
+    @Autowired
+    public final void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
+
+    @Autowired
+    public final void setUploadSchemaService(UploadSchemaService uploadSchemaService) {
+        this.uploadSchemaService = uploadSchemaService;
+    }
+
+    /** Get the schema revision. Throws EntityNotFoundException if it doesn't exist. */
+    public CompiledUploadSchema getUploadSchemaByIdAndRev(StudyIdentifier studyId, String schemaId, int revision) {
+        checkNotNull(studyId);
+        checkNotNull(schemaId);
+
+        String key = cacheKey(studyId, schemaId, Integer.toString(revision));
+        CompiledUploadSchema cached = revisionCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        CompiledUploadSchema schema = new CompiledUploadSchema(uploadSchemaService.getUploadSchemaByIdAndRev(studyId,
+                schemaId, revision));
+        revisionCache.put(key, schema);
+        return schema;
+    }
+
+    /** Get the latest revision of the schema. Throws EntityNotFoundException if the schema doesn't exist. */
+    public CompiledUploadSchema getLatestUploadSchema(StudyIdentifier studyId, String schemaId) {
+        checkNotNull(studyId);
+        checkNotNull(schemaId);
+
+        String stamp = getStamp(studyId, schemaId);
+        String key = cacheKey(studyId, schemaId, LATEST_KEY);
+        StampedSchema cached = latestCache.getIfPresent(key);
+        if (cached != null && cached.stamp.equals(stamp)) {
+            return cached.schema;
+        }
+        UploadSchema uploadSchema = uploadSchemaService.getUploadSchema(studyId, schemaId);
+        StampedSchema stamped = new StampedSchema(stamp, new CompiledUploadSchema(uploadSchema));
+        latestCache.put(key, stamped);
+        revisionCache.put(cacheKey(studyId, schemaId, Integer.toString(uploadSchema.getRevision())), stamped.schema);
+        return stamped.schema;
+    }
+
+    /**
+     * Stamps the cached latest revision of the schema, on every server, as out of date, and drops the revisions of the
+     * schema cached on this server. Call after the schema is created, updated or deleted.
+     */
+    public void schemaChanged(StudyIdentifier studyId, String schemaId) {
+        checkNotNull(studyId);
+        checkNotNull(schemaId);
+
+        replaceStamp(stampKey(studyId, schemaId));
+        String keyPrefix = cacheKey(studyId, schemaId, "");
+        revisionCache.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+        latestCache.invalidate(cacheKey(studyId, schemaId, LATEST_KEY));
+    }
+
+    private String getStamp(StudyIdentifier studyId, String schemaId) {
+        CacheKey stampKey = stampKey(studyId, schemaId);
+        String stamp = cacheProvider.getObject(stampKey, String.class);
+        if (stamp == null) {
+            stamp = replaceStamp(stampKey);
+        }
+        return stamp;
+    }
+
+    // Stamps are never reused, so revisions stamped before a change can't match any stamp written after it.
+    private String replaceStamp(CacheKey stampKey) {
+        String stamp = BridgeUtils.generateGuid();
+        cacheProvider.setObject(stampKey, stamp, STAMP_EXPIRE_SECONDS);
+        return stamp;
+    }
+
+    private static CacheKey stampKey(StudyIdentifier studyId, String schemaId) {
+        return CacheKey.viewKey(UploadSchema.class, STAMP_KEY_PART, schemaId, studyId.getIdentifier());
+    }
+
+    private static String cacheKey(StudyIdentifier studyId, String schemaId, String revision) {
+        return studyId.getIdentifier() + ":" + schemaId + ":" + revision;
+    }
+
+    private static final class StampedSchema {
+        private final String stamp;
+        private final CompiledUploadSchema schema;
+
+        StampedSchema(String stamp, CompiledUploadSchema schema) {
+            this.stamp = stamp;
+            this.schema = schema;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+
+/**
+ * Caches surveys fetched by workers, across all studies. Each Bridge Exporter node asks for the same survey versions
+ * at the start of every run, and a survey version can't be changed once it's published, so published versions are
+ * held in memory. Versions that aren't published can still be edited, and are loaded from DynamoDB every time.
+ *
+ * A published version can still be deleted, which changes its deleted flag or removes it. The server that handles
+ * the delete drops its copy; other servers aren't told, so versions also expire, to bound how long another server
+ * can serve a deleted version.
+ */
+@Component
+public class WorkerSurveyCache {
+    /** Survey versions held on each server. The least recently used versions are dropped first. */
+    static final int MAX_SIZE = 500;
+
+    /** How long a server keeps a survey version. */
+    static final int EXPIRE_MINUTES = 10;
+
+    private final Cache<String, String> cache = CacheBuilder.newBuilder()
+            .expireAfterWrite(EXPIRE_MINUTES, TimeUnit.MINUTES).maximumSize(MAX_SIZE).build();
+
+    private SurveyService surveyService;
+
+    @Autowired
+    final void setSurveyService(SurveyService surveyService) {
+        this.surveyService = surveyService;
+    }
+
+    /** Get the survey version, with its elements, as JSON. */
+    public String getSurveyJson(String surveyGuid, long createdOn) {
+        checkNotNull(surveyGuid);
+
+        String json = getCachedSurveyJson(surveyGuid, createdOn);
+        if (json == null) {
+            GuidCreatedOnVersionHolder keys = new GuidCreatedOnVersionHolderImpl(surveyGuid, createdOn);
+            json = cacheSurvey(surveyService.getSurvey(null, keys, true, true));
+        }
+        return json;
+    }
+
+    /** Get the survey version as JSON if it's cached, or null if it isn't. */
+    public String getCachedSurveyJson(String surveyGuid, long createdOn) {
+        checkNotNull(surveyGuid);
+        return cache.getIfPresent(cacheKey(surveyGuid, createdOn));
+    }
+
+    /**
+     * Caches the survey version, with its elements, if it's published, and returns it as JSON. For callers that load
+     * surveys themselves.
+     */
+    public String cacheSurvey(Survey survey) {
+        String json;
+        try {
+            json = BridgeObjectMapper.get().writeValueAsString(survey);
+        } catch (JsonProcessingException e) {
+            throw new BridgeServiceException(e.getMessage());
+        }
+        if (survey != null && survey.isPublished()) {
+            cache.put(cacheKey(survey.getGuid(), survey.getCreatedOn()), json);
+        }
+        return json;
+    }
+
+    /** Drop the survey version, when it's deleted, logically or physically. */
+    public void removeSurvey(String surveyGuid, long createdOn) {
+        checkNotNull(surveyGuid);
+        cache.invalidate(cacheKey(surveyGuid, createdOn));
+    }
+
+    private static String cacheKey(String surveyGuid, long createdOn) {
+        return surveyGuid + ":" + createdOn;
+    }
+}
@@ -0,0 +1,87 @@
+package org.sagebionetworks.bridge.sms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+
+/**
+ * Provider that records messages in memory instead of sending them, for local development and tests. Set the
+ * sms.provider config property to "fake" to use it. An optional latency simulates the provider round trip, so
+ * dispatch throughput can be measured offline.
+ */
+public class FakeSmsProvider implements SmsProvider {
+    static final String NAME = "fake";
+
+    /** A message recorded by the fake provider. */
+    public static final class SentSms {
+        private final String messageId;
+        private final String phoneNumber;
+        private final String message;
+        private final String senderId;
+
+        SentSms(String messageId, String phoneNumber, String message, String senderId) {
+            this.messageId = messageId;
+            this.phoneNumber = phoneNumber;
+            this.message = message;
+            this.senderId = senderId;
+        }
+
+        public String getMessageId() {
+            return messageId;
+        }
+
+        public String getPhoneNumber() {
+            return phoneNumber;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getSenderId() {
+            return senderId;
+        }
+    }
+
+    private final Queue<SentSms> sentMessages = new ConcurrentLinkedQueue<>();
+    private volatile long latencyMillis;
+
+    /** Time each send takes. Defaults to zero. */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String sendSms(String phoneNumber, String message, String senderId) {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while sending SMS", ex);
+            }
+        }
+        String messageId = "fake-" + BridgeUtils.generateGuid();
+        sentMessages.add(new SentSms(messageId, phoneNumber, message, senderId));
+        return messageId;
+    }
+
+    /** Messages sent so far, in the order they were sent. */
+    public List<SentSms> getSentMessages() {
+        return new ArrayList<>(sentMessages);
+    }
+
+    public void clear() {
+        sentMessages.clear();
+    }
+}
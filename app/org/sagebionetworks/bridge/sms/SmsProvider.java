@@ -0,0 +1,23 @@
+package org.sagebionetworks.bridge.sms;
+
+/**
+ * Sends SMS messages. Implementations must be thread-safe, since bulk dispatch sends from several threads at once.
+ */
+public interface SmsProvider {
+
+    /** Name of the provider, used to label metrics and rate limits. */
+    String getName();
+
+    /**
+     * Sends one message.
+     *
+     * @param phoneNumber
+     *         destination, in E.164 format
+     * @param message
+     *         message body, with template variables already resolved
+     * @param senderId
+     *         sender ID shown to recipients where carriers support it; may be null
+     * @return the provider's ID for the message
+     */
+    String sendSms(String phoneNumber, String message, String senderId);
+}
@@ -0,0 +1,49 @@
+package org.sagebionetworks.bridge.sms;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sns.model.MessageAttributeValue;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+
+/** Sends SMS messages directly to phone numbers through SNS. */
+public class SnsSmsProvider implements SmsProvider {
+    static final String NAME = "sns";
+    static final String SENDER_ID_ATTR = "AWS.SNS.SMS.SenderID";
+    static final String SMS_TYPE_ATTR = "AWS.SNS.SMS.SMSType";
+    static final String SMS_TYPE_PROMOTIONAL = "Promotional";
+    static final String STRING_DATA_TYPE = "String";
+
+    private final AmazonSNSClient snsClient;
+
+    public SnsSmsProvider(AmazonSNSClient snsClient) {
+        this.snsClient = checkNotNull(snsClient);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String sendSms(String phoneNumber, String message, String senderId) {
+        Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        attributes.put(SMS_TYPE_ATTR, new MessageAttributeValue().withDataType(STRING_DATA_TYPE)
+                .withStringValue(SMS_TYPE_PROMOTIONAL));
+        if (isNotBlank(senderId)) {
+            attributes.put(SENDER_ID_ATTR, new MessageAttributeValue().withDataType(STRING_DATA_TYPE)
+                    .withStringValue(senderId));
+        }
+
+        PublishResult result = snsClient.publish(new PublishRequest().withPhoneNumber(phoneNumber)
+                .withMessage(message).withMessageAttributes(attributes));
+        return result.getMessageId();
+    }
+}
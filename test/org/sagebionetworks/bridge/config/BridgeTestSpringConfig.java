@@ -1,6 +1,10 @@
 package org.sagebionetworks.bridge.config;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
 
 import org.sagebionetworks.bridge.TestUserAdminHelper;
 import org.sagebionetworks.bridge.redis.InMemoryJedisOps;
@@ -8,6 +12,7 @@ import org.sagebionetworks.bridge.redis.JedisOps;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ImportResource;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
 /**
@@ -26,8 +31,14 @@ public class BridgeTestSpringConfig {
     @Bean(name = "jedisPool")
     public JedisPool jedisPool() {
         // Since we don't connect to a real host, pass in "localhost" as a dummy hostname
-        // This is only used by CacheAdminService, the test of which is fully mocked. Just use a Mockito mock.
-        return mock(JedisPool.class);
+        // This is used by CacheAdminService, the test of which is fully mocked, and by ConsentStatusCache, which reads
+        // its stamps with MGET. Reads find nothing, so consent statuses are always computed in these tests.
+        JedisPool jedisPool = mock(JedisPool.class);
+        Jedis jedis = mock(Jedis.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+        when(jedis.mget(any())).thenAnswer(invocation -> Arrays.asList(
+                new String[invocation.getArguments().length]));
+        return jedisPool;
     }
 
     @Bean(name = "testUserAdminHelper")
@@ -0,0 +1,124 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DynamoHealthDataRecordPageDaoTest {
+    private static final String HEALTH_CODE = "test-health-code";
+    private static final DateTime CREATED_ON_START = DateTime.parse("2017-05-19T00:00:00.000Z");
+    private static final DateTime CREATED_ON_END = DateTime.parse("2017-05-20T00:00:00.000Z");
+
+    @Mock
+    private DynamoDBMapper mapper;
+
+    @Mock
+    private QueryResultPage<DynamoHealthDataRecord> resultPage;
+
+    private DynamoHealthDataRecordPageDao dao;
+
+    @Before
+    public void before() {
+        dao = new DynamoHealthDataRecordPageDao();
+        dao.setMapper(mapper);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getFirstPage() {
+        DynamoHealthDataRecord record = new DynamoHealthDataRecord();
+        record.setId("record-1");
+        when(resultPage.getResults()).thenReturn(ImmutableList.of(record));
+        when(resultPage.getLastEvaluatedKey()).thenReturn(ImmutableMap.of(
+                "healthCode", new AttributeValue(HEALTH_CODE),
+                "createdOn", new AttributeValue().withN("1495152000000"),
+                "id", new AttributeValue("record-1")));
+        when(mapper.queryPage(eq(DynamoHealthDataRecord.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(resultPage);
+
+        ForwardCursorPagedResourceList<HealthDataRecord> page = dao.getRecordsByHealthCodeCreatedOn(HEALTH_CODE,
+                CREATED_ON_START, CREATED_ON_END, null, 50);
+        assertEquals(1, page.getItems().size());
+        assertEquals("record-1", page.getItems().get(0).getId());
+        assertEquals("1495152000000:record-1", page.getNextPageOffsetKey());
+
+        ArgumentCaptor<DynamoDBQueryExpression> queryCaptor = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        verify(mapper).queryPage(eq(DynamoHealthDataRecord.class), queryCaptor.capture());
+
+        DynamoDBQueryExpression<DynamoHealthDataRecord> query = queryCaptor.getValue();
+        assertEquals(DynamoHealthDataRecordPageDao.INDEX_NAME, query.getIndexName());
+        assertEquals(HEALTH_CODE, query.getHashKeyValues().getHealthCode());
+        assertEquals(Integer.valueOf(50), query.getLimit());
+        assertNull(query.getExclusiveStartKey());
+
+        Condition condition = query.getRangeKeyConditions().get("createdOn");
+        assertEquals(ComparisonOperator.BETWEEN.toString(), condition.getComparisonOperator());
+        assertEquals(String.valueOf(CREATED_ON_START.getMillis()), condition.getAttributeValueList().get(0).getN());
+        assertEquals(String.valueOf(CREATED_ON_END.getMillis()), condition.getAttributeValueList().get(1).getN());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getLastPageWithOffsetKey() {
+        when(resultPage.getResults()).thenReturn(ImmutableList.of());
+        when(mapper.queryPage(eq(DynamoHealthDataRecord.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(resultPage);
+
+        ForwardCursorPagedResourceList<HealthDataRecord> page = dao.getRecordsByHealthCodeCreatedOn(HEALTH_CODE,
+                CREATED_ON_START, CREATED_ON_END, "1495152000000:record-1", 50);
+        assertEquals(0, page.getItems().size());
+        assertNull(page.getNextPageOffsetKey());
+
+        ArgumentCaptor<DynamoDBQueryExpression> queryCaptor = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        verify(mapper).queryPage(eq(DynamoHealthDataRecord.class), queryCaptor.capture());
+
+        Map<String, AttributeValue> startKey = queryCaptor.getValue().getExclusiveStartKey();
+        assertEquals(HEALTH_CODE, startKey.get("healthCode").getS());
+        assertEquals("1495152000000", startKey.get("createdOn").getN());
+        assertEquals("record-1", startKey.get("id").getS());
+    }
+
+    @Test
+    public void offsetKeyRoundTrip() {
+        Map<String, AttributeValue> key = DynamoHealthDataRecordPageDao.decodeOffsetKey(HEALTH_CODE,
+                "1495152000000:record:with:colons");
+        assertEquals("record:with:colons", key.get("id").getS());
+        assertEquals("1495152000000:record:with:colons", DynamoHealthDataRecordPageDao.encodeOffsetKey(key));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void offsetKeyWithoutRecordId() {
+        DynamoHealthDataRecordPageDao.decodeOffsetKey(HEALTH_CODE, "1495152000000");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void offsetKeyWithBadTimestamp() {
+        DynamoHealthDataRecordPageDao.decodeOffsetKey(HEALTH_CODE, "not-a-time:record-1");
+    }
+}
@@ -0,0 +1,152 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DynamoRecordUploadIdDaoTest {
+    private static final String TABLE_NAME = "local-test-HealthDataRecord3";
+
+    @Mock
+    private AmazonDynamoDB ddbClient;
+
+    @Mock
+    private DynamoDBMapper mapper;
+
+    private DynamoRecordUploadIdDao dao;
+
+    @Before
+    public void before() {
+        when(mapper.generateCreateTableRequest(DynamoHealthDataRecord.class))
+                .thenReturn(new CreateTableRequest().withTableName(TABLE_NAME));
+
+        dao = new DynamoRecordUploadIdDao();
+        dao.setDdbClient(ddbClient);
+        dao.setMapper(mapper);
+        dao.unprocessedKeysDelayMillis = 0;
+    }
+
+    @Test
+    public void getUploadIdProjectsUploadId() {
+        when(ddbClient.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult()
+                .withItem(ImmutableMap.of("uploadId", new AttributeValue("upload-id"))));
+
+        assertEquals("upload-id", dao.getUploadId("record-id"));
+
+        ArgumentCaptor<GetItemRequest> requestCaptor = ArgumentCaptor.forClass(GetItemRequest.class);
+        verify(ddbClient).getItem(requestCaptor.capture());
+        GetItemRequest request = requestCaptor.getValue();
+        assertEquals(TABLE_NAME, request.getTableName());
+        assertEquals("record-id", request.getKey().get("id").getS());
+        assertEquals("uploadId", request.getProjectionExpression());
+    }
+
+    @Test
+    public void getUploadIdRecordMissing() {
+        when(ddbClient.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult());
+        assertNull(dao.getUploadId("record-id"));
+    }
+
+    @Test
+    public void getUploadIdRecordWithoutUpload() {
+        when(ddbClient.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult()
+                .withItem(ImmutableMap.of()));
+        assertNull(dao.getUploadId("record-id"));
+    }
+
+    @Test
+    public void getUploadIdsRetriesUnprocessedKeys() {
+        Map<String, KeysAndAttributes> unprocessed = ImmutableMap.of(TABLE_NAME, new KeysAndAttributes()
+                .withKeys(ImmutableList.of(ImmutableMap.of("id", new AttributeValue("record-2")))));
+        when(ddbClient.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(
+                new BatchGetItemResult().withResponses(ImmutableMap.of(TABLE_NAME,
+                        ImmutableList.of(item("record-1", "upload-1")))).withUnprocessedKeys(unprocessed),
+                new BatchGetItemResult().withResponses(ImmutableMap.of(TABLE_NAME,
+                        ImmutableList.of(ImmutableMap.of("id", new AttributeValue("record-2"))))));
+
+        Map<String, String> uploadIds = dao.getUploadIds(ImmutableSet.of("record-1", "record-2"));
+        assertEquals(ImmutableMap.of("record-1", "upload-1"), uploadIds);
+
+        ArgumentCaptor<BatchGetItemRequest> requestCaptor = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        verify(ddbClient, times(2)).batchGetItem(requestCaptor.capture());
+        KeysAndAttributes keys = requestCaptor.getAllValues().get(0).getRequestItems().get(TABLE_NAME);
+        assertEquals(2, keys.getKeys().size());
+        assertEquals("id,uploadId", keys.getProjectionExpression());
+    }
+
+    @Test
+    public void getUploadIdsPartitionsBatches() {
+        when(ddbClient.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(new BatchGetItemResult()
+                .withResponses(ImmutableMap.of()));
+
+        ImmutableSet.Builder<String> recordIds = ImmutableSet.builder();
+        for (int i = 0; i < DynamoRecordUploadIdDao.BATCH_GET_SIZE + 1; i++) {
+            recordIds.add("record-" + i);
+        }
+        assertTrue(dao.getUploadIds(recordIds.build()).isEmpty());
+
+        verify(ddbClient, times(2)).batchGetItem(any(BatchGetItemRequest.class));
+    }
+
+    @Test(expected = BridgeServiceException.class)
+    public void getUploadIdsGivesUpWhenThrottled() {
+        Map<String, KeysAndAttributes> unprocessed = ImmutableMap.of(TABLE_NAME, new KeysAndAttributes()
+                .withKeys(ImmutableList.of(ImmutableMap.of("id", new AttributeValue("record-1")))));
+        when(ddbClient.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(new BatchGetItemResult()
+                .withResponses(ImmutableMap.of()).withUnprocessedKeys(unprocessed));
+
+        dao.getUploadIds(ImmutableSet.of("record-1"));
+    }
+
+    @Test
+    public void retryDelayIsJitteredExponentialBackoff() {
+        dao.unprocessedKeysDelayMillis = 50;
+        for (int retryCount = 0; retryCount < DynamoRecordUploadIdDao.MAX_UNPROCESSED_RETRIES; retryCount++) {
+            long maxDelayMillis = 50L << retryCount;
+            for (int i = 0; i < 100; i++) {
+                long delayMillis = dao.getRetryDelayMillis(retryCount);
+                assertTrue(delayMillis >= 0 && delayMillis <= maxDelayMillis);
+            }
+        }
+    }
+
+    @Test
+    public void getUploadIdsEmptySet() {
+        Set<String> recordIds = ImmutableSet.of();
+        assertTrue(dao.getUploadIds(recordIds).isEmpty());
+        verify(ddbClient, times(0)).batchGetItem(any(BatchGetItemRequest.class));
+    }
+
+    private static Map<String, AttributeValue> item(String recordId, String uploadId) {
+        return ImmutableMap.of("id", new AttributeValue(recordId), "uploadId", new AttributeValue(uploadId));
+    }
+}
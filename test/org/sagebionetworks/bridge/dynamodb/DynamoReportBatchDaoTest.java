@@ -0,0 +1,96 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.reports.ReportData;
+import org.sagebionetworks.bridge.models.reports.ReportIndex;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DynamoReportBatchDaoTest {
+    @Mock
+    private DynamoDBMapper mockReportDataMapper;
+
+    @Mock
+    private DynamoDBMapper mockReportIndexMapper;
+
+    private DynamoReportBatchDao dao;
+
+    @Before
+    public void before() {
+        dao = new DynamoReportBatchDao();
+        dao.setReportDataMapper(mockReportDataMapper);
+        dao.setReportIndexMapper(mockReportIndexMapper);
+    }
+
+    @Test
+    public void saveReportData() {
+        List<ReportData> reportDataList = ImmutableList.of(ReportData.create(), ReportData.create());
+        when(mockReportDataMapper.batchSave(reportDataList)).thenReturn(ImmutableList.of());
+
+        dao.saveReportData(reportDataList);
+
+        verify(mockReportDataMapper).batchSave(reportDataList);
+    }
+
+    @Test
+    public void saveReportDataEmptyList() {
+        dao.saveReportData(ImmutableList.of());
+
+        verify(mockReportDataMapper, never()).batchSave(any(List.class));
+    }
+
+    @Test(expected = BridgeServiceException.class)
+    public void saveReportDataFailedBatch() {
+        List<ReportData> reportDataList = ImmutableList.of(ReportData.create());
+        FailedBatch failedBatch = new FailedBatch();
+        failedBatch.setUnprocessedItems(ImmutableMap.of("ReportData", ImmutableList.of(new WriteRequest())));
+        failedBatch.setException(new RuntimeException());
+        when(mockReportDataMapper.batchSave(reportDataList)).thenReturn(ImmutableList.of(failedBatch));
+
+        dao.saveReportData(reportDataList);
+    }
+
+    @Test
+    public void addIndicesIfMissing() {
+        ReportIndex existingIndex = ReportIndex.create();
+        existingIndex.setIdentifier("existing");
+        ReportIndex missingIndex = ReportIndex.create();
+        missingIndex.setIdentifier("missing");
+        when(mockReportIndexMapper.load(existingIndex)).thenReturn(existingIndex);
+
+        dao.addIndicesIfMissing(ImmutableList.of(existingIndex, missingIndex));
+
+        verify(mockReportIndexMapper, never()).save(existingIndex, DynamoReportBatchDao.DOES_NOT_EXIST_EXPRESSION);
+        verify(mockReportIndexMapper).save(missingIndex, DynamoReportBatchDao.DOES_NOT_EXIST_EXPRESSION);
+    }
+
+    @Test
+    public void addIndicesIfMissingCreatedConcurrently() {
+        ReportIndex index = ReportIndex.create();
+        index.setIdentifier("missing");
+        doThrow(new ConditionalCheckFailedException("exists")).when(mockReportIndexMapper).save(index,
+                DynamoReportBatchDao.DOES_NOT_EXIST_EXPRESSION);
+
+        // Doesn't throw.
+        dao.addIndicesIfMissing(ImmutableList.of(index));
+    }
+}
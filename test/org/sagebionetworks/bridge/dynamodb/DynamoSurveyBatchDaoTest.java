@@ -0,0 +1,115 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DynamoSurveyBatchDaoTest {
+    private static final String SURVEY_GUID = "survey-guid";
+    private static final long CREATED_ON = 1525168800000L;
+
+    @Mock
+    private DynamoDBMapper mockSurveyMapper;
+
+    @Mock
+    private DynamoDBMapper mockSurveyElementMapper;
+
+    @Mock
+    private QueryResultPage<DynamoSurveyElement> mockFirstPage;
+
+    @Mock
+    private QueryResultPage<DynamoSurveyElement> mockSecondPage;
+
+    private DynamoSurveyBatchDao dao;
+
+    @Before
+    public void before() {
+        dao = new DynamoSurveyBatchDao();
+        dao.setSurveyMapper(mockSurveyMapper);
+        dao.setSurveyElementMapper(mockSurveyElementMapper);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getSurveys() {
+        DynamoSurvey survey = new DynamoSurvey();
+        survey.setGuid(SURVEY_GUID);
+        survey.setCreatedOn(CREATED_ON);
+        when(mockSurveyMapper.batchLoad(any(List.class))).thenReturn(ImmutableMap.of("Survey",
+                ImmutableList.of(survey)));
+
+        // Elements span two pages.
+        when(mockFirstPage.getResults()).thenReturn(ImmutableList.of(makeElement(0)));
+        when(mockFirstPage.getLastEvaluatedKey()).thenReturn(ImmutableMap.of("order",
+                new AttributeValue().withN("0")));
+        when(mockSecondPage.getResults()).thenReturn(ImmutableList.of(makeElement(1)));
+        when(mockSurveyElementMapper.queryPage(eq(DynamoSurveyElement.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(mockFirstPage, mockSecondPage);
+
+        List<GuidCreatedOnVersionHolder> keysList = ImmutableList.of(
+                new GuidCreatedOnVersionHolderImpl(SURVEY_GUID, CREATED_ON),
+                new GuidCreatedOnVersionHolderImpl("missing-guid", CREATED_ON));
+        List<Survey> surveyList = dao.getSurveys(keysList);
+
+        assertEquals(1, surveyList.size());
+        assertEquals(SURVEY_GUID, surveyList.get(0).getGuid());
+        assertEquals(2, surveyList.get(0).getElements().size());
+        assertEquals("element-0", surveyList.get(0).getElements().get(0).getIdentifier());
+        assertEquals("element-1", surveyList.get(0).getElements().get(1).getIdentifier());
+
+        ArgumentCaptor<List> hashKeyCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mockSurveyMapper).batchLoad(hashKeyCaptor.capture());
+        List<DynamoSurvey> hashKeyList = hashKeyCaptor.getValue();
+        assertEquals(2, hashKeyList.size());
+        assertEquals(SURVEY_GUID, hashKeyList.get(0).getGuid());
+        assertEquals(CREATED_ON, hashKeyList.get(0).getCreatedOn());
+        assertEquals("missing-guid", hashKeyList.get(1).getGuid());
+
+        verify(mockSurveyElementMapper, times(2)).queryPage(eq(DynamoSurveyElement.class),
+                any(DynamoDBQueryExpression.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getSurveysEmptyList() {
+        assertTrue(dao.getSurveys(ImmutableList.of()).isEmpty());
+
+        verify(mockSurveyMapper, never()).batchLoad(any(List.class));
+    }
+
+    private static DynamoSurveyElement makeElement(int order) {
+        DynamoSurveyElement element = new DynamoSurveyElement();
+        element.setSurveyKeyComponents(SURVEY_GUID, CREATED_ON);
+        element.setOrder(order);
+        element.setIdentifier("element-" + order);
+        element.setType("SurveyInfoScreen");
+        element.setData(JsonNodeFactory.instance.objectNode());
+        return element;
+    }
+}
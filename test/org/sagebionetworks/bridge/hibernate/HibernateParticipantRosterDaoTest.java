@@ -0,0 +1,311 @@
+package org.sagebionetworks.bridge.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.models.AccountSummarySearch;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.accounts.AccountStatus;
+import org.sagebionetworks.bridge.models.accounts.AccountSummary;
+import org.sagebionetworks.bridge.models.accounts.ParticipantRosterEntry;
+import org.sagebionetworks.bridge.models.accounts.SegmentMember;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HibernateParticipantRosterDaoTest {
+    private static final String STUDY_ID = TestConstants.TEST_STUDY_IDENTIFIER;
+    private static final DateTime CREATED_ON = DateTime.parse("2018-01-01T00:00:00.000Z");
+
+    @Mock
+    private SessionFactory mockSessionFactory;
+
+    @Mock
+    private Session mockSession;
+
+    @Mock
+    private Query<Object[]> mockQuery;
+
+    @Mock
+    private Query<Long> mockCountQuery;
+
+    private HibernateParticipantRosterDao dao;
+
+    @Before
+    public void before() {
+        dao = new HibernateParticipantRosterDao();
+        dao.setSessionFactory(mockSessionFactory);
+    }
+
+    @After
+    public void after() {
+        BridgeUtils.setRequestContext(RequestContext.NULL_INSTANCE);
+    }
+
+    @Test
+    public void searchAccountSummariesFirstPage() {
+        mockQuery();
+        when(mockQuery.list()).thenReturn(ImmutableList.of(makeRow("id-1"), makeRow("id-2"), makeRow("id-3")),
+                ImmutableList.<Object[]>of(new Object[] { "id-1", "substudyA", "ext-1" },
+                        new Object[] { "id-2", "substudyB", null }));
+        AccountSummarySearch search = new AccountSummarySearch.Builder().withEmailFilter("@example.com")
+                .withLanguage("en").withAllOfGroups(ImmutableSet.of("group1"))
+                .withNoneOfGroups(ImmutableSet.of("group2")).withStartTime(CREATED_ON).withPageSize(2).build();
+
+        ForwardCursorPagedResourceList<AccountSummary> page = dao.searchAccountSummaries(STUDY_ID, search, null);
+
+        // The extra row tells the DAO there's another page, but isn't returned.
+        assertEquals(2, page.getItems().size());
+        AccountSummary summary1 = page.getItems().get(0);
+        assertEquals("id-1", summary1.getId());
+        assertEquals("id-1@example.com", summary1.getEmail());
+        assertEquals(STUDY_ID, summary1.getStudyIdentifier().getIdentifier());
+        assertEquals(ImmutableSet.of("substudyA"), summary1.getSubstudyIds());
+        assertEquals(ImmutableMap.of("substudyA", "ext-1"), summary1.getExternalIds());
+        AccountSummary summary2 = page.getItems().get(1);
+        assertEquals(ImmutableSet.of("substudyB"), summary2.getSubstudyIds());
+        assertTrue(summary2.getExternalIds().isEmpty());
+        assertEquals(HibernateParticipantRosterDao.encodeOffsetKey(CREATED_ON, "id-2"), page.getNextPageOffsetKey());
+
+        ArgumentCaptor<String> hqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockSession, times(2)).createQuery(hqlCaptor.capture(), eq(Object[].class));
+        assertEquals(HibernateParticipantRosterDao.PAGE_QUERY_PREFIX
+                + HibernateParticipantRosterDao.EMAIL_FILTER_CLAUSE
+                + HibernateParticipantRosterDao.LANGUAGE_CLAUSE
+                + String.format(HibernateParticipantRosterDao.ALL_OF_GROUP_CLAUSE, 0)
+                + String.format(HibernateParticipantRosterDao.NONE_OF_GROUP_CLAUSE, 0)
+                + HibernateParticipantRosterDao.CREATED_ON_START_CLAUSE
+                + HibernateParticipantRosterDao.ORDER_BY_CLAUSE, hqlCaptor.getAllValues().get(0));
+        assertEquals(HibernateParticipantRosterDao.ACCOUNT_SUBSTUDY_QUERY, hqlCaptor.getAllValues().get(1));
+
+        verify(mockQuery).setParameter("studyId", STUDY_ID);
+        verify(mockQuery).setParameter("emailFilter", "%@example.com%");
+        verify(mockQuery).setParameter("language", "en");
+        verify(mockQuery).setParameter("allOfGroup0", "group1");
+        verify(mockQuery).setParameter("noneOfGroup0", "group2");
+        verify(mockQuery).setParameter("createdOnStart", CREATED_ON);
+        verify(mockQuery).setParameterList("accountIds", ImmutableList.of("id-1", "id-2"));
+        verify(mockQuery).setMaxResults(3);
+        verify(mockSession, times(2)).close();
+    }
+
+    @Test
+    public void searchAccountSummariesLastPageWithOffsetKey() {
+        mockQuery();
+        when(mockQuery.list()).thenReturn(ImmutableList.of(makeRow("id-3")), ImmutableList.of());
+        String offsetKey = HibernateParticipantRosterDao.encodeOffsetKey(CREATED_ON, "id-2");
+        AccountSummarySearch search = new AccountSummarySearch.Builder().withPageSize(2).build();
+
+        ForwardCursorPagedResourceList<AccountSummary> page = dao.searchAccountSummaries(STUDY_ID, search,
+                offsetKey);
+        assertEquals(1, page.getItems().size());
+        assertTrue(page.getItems().get(0).getSubstudyIds().isEmpty());
+        assertNull(page.getNextPageOffsetKey());
+
+        ArgumentCaptor<String> hqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockSession, times(2)).createQuery(hqlCaptor.capture(), eq(Object[].class));
+        assertEquals(HibernateParticipantRosterDao.PAGE_QUERY_PREFIX + HibernateParticipantRosterDao.KEYSET_CLAUSE
+                + HibernateParticipantRosterDao.ORDER_BY_CLAUSE, hqlCaptor.getAllValues().get(0));
+
+        verify(mockQuery).setParameter("afterCreatedOn", new DateTime(CREATED_ON.getMillis(), DateTimeZone.UTC));
+        verify(mockQuery).setParameter("afterId", "id-2");
+    }
+
+    @Test
+    public void searchAccountSummariesEmptyPageSkipsSubstudyQuery() {
+        mockQuery();
+        when(mockQuery.list()).thenReturn(ImmutableList.of());
+
+        ForwardCursorPagedResourceList<AccountSummary> page = dao.searchAccountSummaries(STUDY_ID,
+                new AccountSummarySearch.Builder().withPageSize(2).build(), null);
+        assertTrue(page.getItems().isEmpty());
+        verify(mockSession, never()).createQuery(HibernateParticipantRosterDao.ACCOUNT_SUBSTUDY_QUERY,
+                Object[].class);
+    }
+
+    @Test
+    public void searchAccountSummariesLimitedToCallerSubstudies() {
+        BridgeUtils.setRequestContext(new RequestContext.Builder()
+                .withCallerSubstudies(ImmutableSet.of("substudyA")).build());
+        mockQuery();
+        when(mockQuery.list()).thenReturn(ImmutableList.of(makeRow("id-1")),
+                ImmutableList.<Object[]>of(new Object[] { "id-1", "substudyA", "ext-A" },
+                        new Object[] { "id-1", "substudyB", "ext-B" }));
+
+        ForwardCursorPagedResourceList<AccountSummary> page = dao.searchAccountSummaries(STUDY_ID,
+                new AccountSummarySearch.Builder().withPageSize(2).build(), null);
+
+        // The caller only sees the account's membership in their own substudies.
+        assertEquals(ImmutableSet.of("substudyA"), page.getItems().get(0).getSubstudyIds());
+        assertEquals(ImmutableMap.of("substudyA", "ext-A"), page.getItems().get(0).getExternalIds());
+
+        ArgumentCaptor<String> hqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockSession, times(2)).createQuery(hqlCaptor.capture(), eq(Object[].class));
+        assertEquals(HibernateParticipantRosterDao.PAGE_QUERY_PREFIX + HibernateParticipantRosterDao.SUBSTUDY_CLAUSE
+                + HibernateParticipantRosterDao.ORDER_BY_CLAUSE, hqlCaptor.getAllValues().get(0));
+        verify(mockQuery).setParameterList("substudyIds", ImmutableSet.of("substudyA"));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void searchAccountSummariesInvalidOffsetKey() {
+        dao.searchAccountSummaries(STUDY_ID, new AccountSummarySearch.Builder().withPageSize(2).build(),
+                "not-an-offset-key");
+    }
+
+    @Test
+    public void getRosterPageEndsAtUntilKeyWithSubstudies() {
+        mockQuery();
+        when(mockQuery.list()).thenReturn(ImmutableList.of());
+
+        List<ParticipantRosterEntry> entryList = dao.getRosterPage(STUDY_ID, ImmutableSet.of("substudyA"),
+                CREATED_ON, "id-1", CREATED_ON, "id-9", 500);
+        assertEquals(0, entryList.size());
+
+        ArgumentCaptor<String> hqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockSession).createQuery(hqlCaptor.capture(), eq(Object[].class));
+        assertEquals(HibernateParticipantRosterDao.PAGE_QUERY_PREFIX
+                + HibernateParticipantRosterDao.KEYSET_END_CLAUSE
+                + HibernateParticipantRosterDao.SUBSTUDY_CLAUSE
+                + HibernateParticipantRosterDao.KEYSET_CLAUSE
+                + HibernateParticipantRosterDao.ORDER_BY_CLAUSE, hqlCaptor.getValue());
+        verify(mockQuery).setParameter("untilCreatedOn", CREATED_ON);
+        verify(mockQuery).setParameter("untilId", "id-9");
+        verify(mockQuery).setParameter("afterId", "id-1");
+        verify(mockQuery).setParameterList("substudyIds", ImmutableSet.of("substudyA"));
+        verify(mockQuery).setMaxResults(500);
+    }
+
+    @Test
+    public void getRosterPageWithoutKeys() {
+        mockQuery();
+        when(mockQuery.list()).thenReturn(ImmutableList.of());
+
+        dao.getRosterPage(STUDY_ID, ImmutableSet.of(), null, null, null, null, 500);
+
+        ArgumentCaptor<String> hqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockSession).createQuery(hqlCaptor.capture(), eq(Object[].class));
+        assertEquals(HibernateParticipantRosterDao.PAGE_QUERY_PREFIX
+                + HibernateParticipantRosterDao.ORDER_BY_CLAUSE, hqlCaptor.getValue());
+        verify(mockQuery, never()).setParameter(eq("afterId"), any());
+        verify(mockQuery, never()).setParameter(eq("untilId"), any());
+    }
+
+    @Test
+    public void getPartitionBoundariesSplitsByRowCount() {
+        mockQuery();
+        when(mockSession.createQuery(anyString(), eq(Long.class))).thenReturn(mockCountQuery);
+        when(mockCountQuery.uniqueResult()).thenReturn(10L);
+        when(mockQuery.list()).thenReturn(ImmutableList.<Object[]>of(makeRow("id-2")),
+                ImmutableList.<Object[]>of(makeRow("id-4")), ImmutableList.<Object[]>of(makeRow("id-7")));
+
+        List<ParticipantRosterEntry> boundaryList = dao.getPartitionBoundaries(STUDY_ID,
+                ImmutableSet.of("substudyA"), 4);
+        assertEquals(ImmutableList.of("id-2", "id-4", "id-7"), boundaryList.stream()
+                .map(ParticipantRosterEntry::getId).collect(Collectors.toList()));
+
+        // 10 rows in 4 partitions end at rows 1, 4 and 6 (zero-based), and the last partition runs to the end.
+        InOrder inOrder = inOrder(mockQuery);
+        inOrder.verify(mockQuery).setFirstResult(1);
+        inOrder.verify(mockQuery).setFirstResult(4);
+        inOrder.verify(mockQuery).setFirstResult(6);
+
+        verify(mockSession).createQuery(HibernateParticipantRosterDao.COUNT_QUERY_PREFIX
+                + HibernateParticipantRosterDao.SUBSTUDY_CLAUSE, Long.class);
+        verify(mockSession, times(3)).createQuery(HibernateParticipantRosterDao.PAGE_QUERY_PREFIX
+                + HibernateParticipantRosterDao.SUBSTUDY_CLAUSE
+                + HibernateParticipantRosterDao.ORDER_BY_CLAUSE, Object[].class);
+        verify(mockCountQuery).setParameterList("substudyIds", ImmutableSet.of("substudyA"));
+        verify(mockQuery, times(3)).setMaxResults(1);
+        verify(mockSession).close();
+    }
+
+    @Test
+    public void getPartitionBoundariesOfSmallRoster() {
+        when(mockSessionFactory.openSession()).thenReturn(mockSession);
+        when(mockSession.createQuery(anyString(), eq(Long.class))).thenReturn(mockCountQuery);
+        when(mockCountQuery.uniqueResult()).thenReturn(0L);
+
+        // An empty roster has one partition, so no boundaries.
+        assertTrue(dao.getPartitionBoundaries(STUDY_ID, ImmutableSet.of(), 4).isEmpty());
+        verify(mockSession, never()).createQuery(anyString(), eq(Object[].class));
+    }
+
+    @Test
+    public void getSegmentPage() {
+        mockQuery();
+        when(mockQuery.list()).thenReturn(ImmutableList.<Object[]>of(new Object[] { "id-1", CREATED_ON,
+                "healthCode-1" }));
+
+        List<SegmentMember> memberList = dao.getSegmentPage(STUDY_ID, ImmutableSet.of("group1", "group2"),
+                ImmutableSet.of("group3"), ImmutableSet.of("substudyA"), CREATED_ON, "id-0", 100);
+        assertEquals(1, memberList.size());
+        assertEquals("id-1", memberList.get(0).getId());
+        assertEquals("healthCode-1", memberList.get(0).getHealthCode());
+
+        ArgumentCaptor<String> hqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockSession).createQuery(hqlCaptor.capture(), eq(Object[].class));
+        assertEquals(HibernateParticipantRosterDao.SEGMENT_QUERY_PREFIX
+                + String.format(HibernateParticipantRosterDao.ALL_OF_GROUP_CLAUSE, 0)
+                + String.format(HibernateParticipantRosterDao.ALL_OF_GROUP_CLAUSE, 1)
+                + String.format(HibernateParticipantRosterDao.NONE_OF_GROUP_CLAUSE, 0)
+                + HibernateParticipantRosterDao.SUBSTUDY_CLAUSE
+                + HibernateParticipantRosterDao.KEYSET_CLAUSE
+                + HibernateParticipantRosterDao.ORDER_BY_CLAUSE, hqlCaptor.getValue());
+
+        verify(mockQuery).setParameter("disabledStatus", AccountStatus.DISABLED);
+        verify(mockQuery).setParameter("allOfGroup0", "group1");
+        verify(mockQuery).setParameter("allOfGroup1", "group2");
+        verify(mockQuery).setParameter("noneOfGroup0", "group3");
+        verify(mockQuery).setParameterList("substudyIds", ImmutableSet.of("substudyA"));
+        verify(mockQuery).setParameter("afterId", "id-0");
+        verify(mockQuery).setMaxResults(100);
+    }
+
+    @Test
+    public void offsetKeyRoundTrip() {
+        String[] parts = HibernateParticipantRosterDao.decodeOffsetKey(
+                HibernateParticipantRosterDao.encodeOffsetKey(CREATED_ON, "id:with:colons"));
+        assertEquals(String.valueOf(CREATED_ON.getMillis()), parts[0]);
+        assertEquals("id:with:colons", parts[1]);
+    }
+
+    private void mockQuery() {
+        when(mockSessionFactory.openSession()).thenReturn(mockSession);
+        when(mockSession.createQuery(anyString(), eq(Object[].class))).thenReturn(mockQuery);
+    }
+
+    private static Object[] makeRow(String id) {
+        return new Object[] { id, CREATED_ON, null, null, id + "@example.com", null, null, AccountStatus.ENABLED };
+    }
+}
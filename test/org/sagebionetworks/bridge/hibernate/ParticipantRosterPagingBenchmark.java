@@ -0,0 +1,162 @@
+package org.sagebionetworks.bridge.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.models.AccountSummarySearch;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.accounts.AccountStatus;
+import org.sagebionetworks.bridge.models.accounts.AccountSummary;
+import org.sagebionetworks.bridge.models.accounts.ParticipantRosterEntry;
+
+/**
+ * Compares offset paging with keyset paging of the account table at depth. This seeds a throwaway study with
+ * roster.benchmark.accounts accounts (1,000,000 if the property is set without a value) in the MySQL database of the
+ * test config, so point that config at a local MySQL-compatible database before running it, for example:
+ *
+ * <pre>sbt -Droster.benchmark.accounts=1000000 "testOnly *ParticipantRosterPagingBenchmark"</pre>
+ *
+ * It's skipped unless the property is set. Keyset pages only stay flat if the Accounts table has an index on
+ * (studyId, createdOn, id); the timings for the deepest pages show whether it does.
+ */
+@ContextConfiguration("classpath:test-context.xml")
+@RunWith(SpringJUnit4ClassRunner.class)
+public class ParticipantRosterPagingBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(ParticipantRosterPagingBenchmark.class);
+
+    private static final String ACCOUNT_COUNT_PROPERTY = "roster.benchmark.accounts";
+    private static final int DEFAULT_ACCOUNT_COUNT = 1_000_000;
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 100;
+    private static final double[] DEPTHS = { 0.0, 0.1, 0.5, 0.9, 0.999 };
+
+    private static final String OFFSET_QUERY = "SELECT acct.id FROM HibernateAccount AS acct "
+            + "WHERE acct.studyId = :studyId ORDER BY acct.createdOn, acct.id";
+    private static final String DELETE_QUERY = "DELETE FROM HibernateAccount WHERE studyId = :studyId";
+
+    @Resource
+    private SessionFactory sessionFactory;
+
+    @Resource
+    private HibernateParticipantRosterDao rosterDao;
+
+    private String studyId;
+    private int accountCount;
+
+    @Before
+    public void before() {
+        String accountCountString = System.getProperty(ACCOUNT_COUNT_PROPERTY);
+        assumeTrue(accountCountString != null);
+        accountCount = accountCountString.isEmpty() ? DEFAULT_ACCOUNT_COUNT : Integer.parseInt(accountCountString);
+
+        studyId = "roster-benchmark-" + BridgeUtils.generateGuid().substring(0, 8);
+        seedAccounts();
+    }
+
+    @After
+    public void after() {
+        if (studyId != null) {
+            try (Session session = sessionFactory.openSession()) {
+                Transaction transaction = session.beginTransaction();
+                session.createQuery(DELETE_QUERY).setParameter("studyId", studyId).executeUpdate();
+                transaction.commit();
+            }
+        }
+    }
+
+    @Test
+    public void compareOffsetAndKeysetPaging() {
+        for (double depth : DEPTHS) {
+            int offset = (int) (accountCount * depth);
+
+            long offsetStartNanos = System.nanoTime();
+            List<String> offsetPage = getOffsetPage(offset);
+            long offsetMillis = (System.nanoTime() - offsetStartNanos) / 1_000_000;
+
+            // The keyset page starts after the last row before the offset, which is what a client walking the
+            // pages would have as its offset key.
+            ParticipantRosterEntry previousEntry = (offset == 0) ? null : getEntryAt(offset - 1);
+            String offsetKey = (previousEntry == null) ? null :
+                    HibernateParticipantRosterDao.encodeOffsetKey(previousEntry.getCreatedOn(),
+                            previousEntry.getId());
+
+            long keysetStartNanos = System.nanoTime();
+            ForwardCursorPagedResourceList<AccountSummary> keysetPage = rosterDao.searchAccountSummaries(studyId,
+                    new AccountSummarySearch.Builder().withPageSize(PAGE_SIZE).build(), offsetKey);
+            long keysetMillis = (System.nanoTime() - keysetStartNanos) / 1_000_000;
+
+            assertEquals(offsetPage.get(0), keysetPage.getItems().get(0).getId());
+            LOG.info(String.format("Roster page at offset %d of %d: offset paging %d ms, keyset paging %d ms",
+                    offset, accountCount, offsetMillis, keysetMillis));
+        }
+    }
+
+    private List<String> getOffsetPage(int offset) {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createQuery(OFFSET_QUERY, String.class).setParameter("studyId", studyId)
+                    .setFirstResult(offset).setMaxResults(PAGE_SIZE).list();
+        }
+    }
+
+    private ParticipantRosterEntry getEntryAt(int offset) {
+        try (Session session = sessionFactory.openSession()) {
+            Object[] row = session.createQuery(HibernateParticipantRosterDao.PAGE_QUERY_PREFIX
+                    + HibernateParticipantRosterDao.ORDER_BY_CLAUSE, Object[].class).setParameter("studyId", studyId)
+                    .setFirstResult(offset).setMaxResults(1).uniqueResult();
+            return HibernateParticipantRosterDao.toEntry(row);
+        }
+    }
+
+    // Accounts are created one second apart, with every tenth account sharing its createdOn with the one before it,
+    // so the benchmark exercises the id tie-breaker.
+    private void seedAccounts() {
+        long startMillis = DateTime.now(DateTimeZone.UTC).minusYears(1).getMillis();
+        long seedStartNanos = System.nanoTime();
+        try (Session session = sessionFactory.openSession()) {
+            session.setJdbcBatchSize(INSERT_BATCH_SIZE);
+            Transaction transaction = session.beginTransaction();
+            for (int i = 0; i < accountCount; i++) {
+                DateTime createdOn = new DateTime(startMillis + (i - i / 10) * 1000L, DateTimeZone.UTC);
+
+                HibernateAccount account = new HibernateAccount();
+                account.setId(BridgeUtils.generateGuid());
+                account.setStudyId(studyId);
+                account.setEmail("bridge-testing+roster" + i + "@sagebase.org");
+                account.setHealthCode(BridgeUtils.generateGuid());
+                account.setCreatedOn(createdOn);
+                account.setModifiedOn(createdOn);
+                account.setStatus(AccountStatus.ENABLED);
+                session.save(account);
+
+                if ((i + 1) % INSERT_BATCH_SIZE == 0) {
+                    session.flush();
+                    session.clear();
+                    transaction.commit();
+                    transaction = session.beginTransaction();
+                }
+            }
+            transaction.commit();
+        }
+        LOG.info("Seeded " + accountCount + " accounts in " + (System.nanoTime() - seedStartNanos) / 1_000_000 +
+                " ms");
+    }
+}
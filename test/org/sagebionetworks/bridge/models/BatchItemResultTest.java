@@ -0,0 +1,36 @@
+package org.sagebionetworks.bridge.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
+
+public class BatchItemResultTest {
+
+    @Test
+    public void failedWithBridgeExceptionKeepsStatusAndMessage() {
+        EntityNotFoundException ex = new EntityNotFoundException(StudyParticipant.class);
+        BatchItemResult<String> result = BatchItemResult.failed("key", ex);
+
+        assertEquals("key", result.getKey());
+        assertEquals(404, result.getStatusCode());
+        assertEquals(ex.getMessage(), result.getMessage());
+        assertNull(result.getItem());
+        assertFalse(result.isSucceeded());
+    }
+
+    @Test
+    public void failedWithOtherExceptionHidesMessage() {
+        BatchItemResult<String> result = BatchItemResult.failed("key",
+                new IllegalStateException("Connection to db-host-3:5432 refused"));
+
+        assertEquals("key", result.getKey());
+        assertEquals(500, result.getStatusCode());
+        assertEquals(BatchItemResult.INTERNAL_ERROR_MESSAGE, result.getMessage());
+        assertFalse(result.isSucceeded());
+    }
+}
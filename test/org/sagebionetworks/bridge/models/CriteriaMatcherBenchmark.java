@@ -0,0 +1,113 @@
+package org.sagebionetworks.bridge.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares matching contexts against hundreds of criteria one criteria at a time with CriteriaUtils, as the app
+ * config, subpopulation and schedule plan code does, with matching them with a compiled CriteriaMatcher. This builds
+ * criteria.benchmark.count criteria (500 if the property is set without a value) over 40 data groups and 10
+ * substudies, and matches 100,000 contexts, after a warm-up round, for example:
+ *
+ * <pre>sbt -Dcriteria.benchmark.count=500 "testOnly *CriteriaMatcherBenchmark"</pre>
+ *
+ * It's skipped unless the property is set.
+ */
+public class CriteriaMatcherBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(CriteriaMatcherBenchmark.class);
+
+    private static final String CRITERIA_COUNT_PROPERTY = "criteria.benchmark.count";
+    private static final int DEFAULT_CRITERIA_COUNT = 500;
+    private static final int CONTEXT_COUNT = 100000;
+    private static final int DATA_GROUP_COUNT = 40;
+    private static final int SUBSTUDY_COUNT = 10;
+
+    private List<Criteria> criteriaList;
+    private List<CriteriaContext> contextList;
+
+    @Before
+    public void before() {
+        String criteriaCountString = System.getProperty(CRITERIA_COUNT_PROPERTY);
+        assumeTrue(criteriaCountString != null);
+        int criteriaCount = criteriaCountString.isEmpty() ? DEFAULT_CRITERIA_COUNT :
+                Integer.parseInt(criteriaCountString);
+
+        Random random = new Random(0);
+        criteriaList = new ArrayList<>(criteriaCount);
+        for (int i = 0; i < criteriaCount; i++) {
+            Criteria criteria = Criteria.create();
+            criteria.setAllOfGroups(ImmutableSet.of("group" + random.nextInt(DATA_GROUP_COUNT)));
+            criteria.setNoneOfGroups(ImmutableSet.of("group" + random.nextInt(DATA_GROUP_COUNT),
+                    "group" + random.nextInt(DATA_GROUP_COUNT)));
+            criteria.setAllOfSubstudyIds(ImmutableSet.of("substudy" + random.nextInt(SUBSTUDY_COUNT)));
+            criteria.setMinAppVersion(OperatingSystem.IOS, random.nextInt(10));
+            criteriaList.add(criteria);
+        }
+
+        ClientInfo clientInfo = ClientInfo.fromUserAgentCache("App/10 (iPhone 6; iPhone OS/9.1) BridgeSDK/4");
+        contextList = new ArrayList<>(CONTEXT_COUNT);
+        for (int i = 0; i < CONTEXT_COUNT; i++) {
+            ImmutableSet.Builder<String> dataGroups = ImmutableSet.builder();
+            for (int j = 0; j < 5; j++) {
+                dataGroups.add("group" + random.nextInt(DATA_GROUP_COUNT));
+            }
+            contextList.add(new CriteriaContext.Builder()
+                    .withStudyIdentifier(TEST_STUDY)
+                    .withUserDataGroups(dataGroups.build())
+                    .withUserSubstudyIds(ImmutableSet.of("substudy" + random.nextInt(SUBSTUDY_COUNT)))
+                    .withClientInfo(clientInfo)
+                    .withLanguages(ImmutableList.of("en")).build());
+        }
+    }
+
+    @Test
+    public void compareCriteriaUtilsAndCompiledMatcher() {
+        CriteriaMatcher<Criteria> matcher = CriteriaMatcher.compile(criteriaList, criteria -> criteria);
+        matchWithCriteriaUtils();
+        matchWithMatcher(matcher);
+
+        long utilsStartNanos = System.nanoTime();
+        long utilsMatchCount = matchWithCriteriaUtils();
+        long utilsMillis = (System.nanoTime() - utilsStartNanos) / 1_000_000;
+
+        long matcherStartNanos = System.nanoTime();
+        long matcherMatchCount = matchWithMatcher(matcher);
+        long matcherMillis = (System.nanoTime() - matcherStartNanos) / 1_000_000;
+
+        assertEquals(utilsMatchCount, matcherMatchCount);
+        LOG.info(String.format("Matched %d contexts against %d criteria: CriteriaUtils %d ms, compiled %d ms",
+                contextList.size(), criteriaList.size(), utilsMillis, matcherMillis));
+    }
+
+    private long matchWithCriteriaUtils() {
+        long matchCount = 0;
+        for (CriteriaContext context : contextList) {
+            for (Criteria criteria : criteriaList) {
+                if (CriteriaUtils.matchCriteria(context, criteria)) {
+                    matchCount++;
+                }
+            }
+        }
+        return matchCount;
+    }
+
+    private long matchWithMatcher(CriteriaMatcher<Criteria> matcher) {
+        long matchCount = 0;
+        for (CriteriaContext context : contextList) {
+            matchCount += matcher.getMatches(context).size();
+        }
+        return matchCount;
+    }
+}
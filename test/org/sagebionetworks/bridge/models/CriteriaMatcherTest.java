@@ -0,0 +1,186 @@
+package org.sagebionetworks.bridge.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+public class CriteriaMatcherTest {
+    private static final ClientInfo IOS_CLIENT = ClientInfo.fromUserAgentCache(
+            "App/10 (iPhone 6; iPhone OS/9.1) BridgeSDK/4");
+    private static final ClientInfo ANDROID_CLIENT = ClientInfo.fromUserAgentCache(
+            "App/10 (Nexus 5; Android/6.0) BridgeSDK/4");
+
+    @Test
+    public void matchesDataGroups() {
+        Criteria criteria = Criteria.create();
+        criteria.setAllOfGroups(ImmutableSet.of("a", "b"));
+        criteria.setNoneOfGroups(ImmutableSet.of("c"));
+        CriteriaMatcher<Criteria> matcher = CriteriaMatcher.compile(ImmutableList.of(criteria), c -> c);
+
+        assertEquals(1, matcher.getMatches(makeContext(ImmutableSet.of("a", "b"), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())).size());
+        // Data groups none of the criteria name are ignored.
+        assertEquals(1, matcher.getMatches(makeContext(ImmutableSet.of("a", "b", "d"), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())).size());
+        assertEquals(0, matcher.getMatches(makeContext(ImmutableSet.of("a"), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())).size());
+        assertEquals(0, matcher.getMatches(makeContext(ImmutableSet.of("a", "b", "c"), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())).size());
+    }
+
+    @Test
+    public void matchesSubstudies() {
+        Criteria criteria = Criteria.create();
+        criteria.setAllOfSubstudyIds(ImmutableSet.of("substudyA"));
+        criteria.setNoneOfSubstudyIds(ImmutableSet.of("substudyB"));
+        CriteriaMatcher<Criteria> matcher = CriteriaMatcher.compile(ImmutableList.of(criteria), c -> c);
+
+        assertEquals(criteria, matcher.getFirstMatch(makeContext(ImmutableSet.of(), ImmutableSet.of("substudyA"),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())));
+        assertNull(matcher.getFirstMatch(makeContext(ImmutableSet.of(), ImmutableSet.of("substudyA", "substudyB"),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())));
+    }
+
+    @Test
+    public void matchesAppVersionForClientOperatingSystem() {
+        Criteria criteria = Criteria.create();
+        criteria.setMinAppVersion(OperatingSystem.IOS, 11);
+        CriteriaMatcher<Criteria> matcher = CriteriaMatcher.compile(ImmutableList.of(criteria), c -> c);
+
+        assertNull(matcher.getFirstMatch(makeContext(ImmutableSet.of(), ImmutableSet.of(), IOS_CLIENT,
+                ImmutableList.of())));
+        // The range is only for iOS, and a client without an app version matches any range.
+        assertEquals(criteria, matcher.getFirstMatch(makeContext(ImmutableSet.of(), ImmutableSet.of(),
+                ANDROID_CLIENT, ImmutableList.of())));
+        assertEquals(criteria, matcher.getFirstMatch(makeContext(ImmutableSet.of(), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())));
+    }
+
+    @Test
+    public void matchesLanguage() {
+        Criteria criteria = Criteria.create();
+        criteria.setLanguage("fr");
+        CriteriaMatcher<Criteria> matcher = CriteriaMatcher.compile(ImmutableList.of(criteria), c -> c);
+
+        assertEquals(criteria, matcher.getFirstMatch(makeContext(ImmutableSet.of(), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of("fr", "en"))));
+        assertNull(matcher.getFirstMatch(makeContext(ImmutableSet.of(), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of("en"))));
+        assertNull(matcher.getFirstMatch(makeContext(ImmutableSet.of(), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())));
+    }
+
+    @Test
+    public void matchesOnlyPrimaryLanguage() {
+        Criteria criteria = Criteria.create();
+        criteria.setLanguage("fr");
+        CriteriaMatcher<Criteria> matcher = CriteriaMatcher.compile(ImmutableList.of(criteria), c -> c);
+
+        assertNull(matcher.getFirstMatch(makeContext(ImmutableSet.of(), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of("en", "fr"))));
+    }
+
+    @Test
+    public void getMatchesKeepsOrderAndNullCriteriaMatchesAll() {
+        Criteria groupCriteria = Criteria.create();
+        groupCriteria.setAllOfGroups(ImmutableSet.of("a"));
+        List<String> items = ImmutableList.of("first", "second", "third");
+        CriteriaMatcher<String> matcher = CriteriaMatcher.compile(items,
+                item -> item.equals("second") ? groupCriteria : null);
+
+        assertEquals(items, matcher.getMatches(makeContext(ImmutableSet.of("a"), ImmutableSet.of(),
+                ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())));
+        assertEquals(ImmutableList.of("first", "third"), matcher.getMatches(makeContext(ImmutableSet.of(),
+                ImmutableSet.of(), ClientInfo.UNKNOWN_CLIENT, ImmutableList.of())));
+    }
+
+    @Test
+    public void matchesOverManyWords() {
+        // More IDs than fit in one word of the bit sets.
+        List<Criteria> criteriaList = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Criteria criteria = Criteria.create();
+            criteria.setAllOfGroups(ImmutableSet.of("group" + i));
+            criteriaList.add(criteria);
+        }
+        CriteriaMatcher<Criteria> matcher = CriteriaMatcher.compile(criteriaList, c -> c);
+
+        List<Criteria> matches = matcher.getMatches(makeContext(ImmutableSet.of("group3", "group130"),
+                ImmutableSet.of(), ClientInfo.UNKNOWN_CLIENT, ImmutableList.of()));
+        assertEquals(ImmutableList.of(criteriaList.get(3), criteriaList.get(130)), matches);
+    }
+
+    @Test
+    public void matchesLikeCriteriaUtils() {
+        Random random = new Random(0);
+        List<Criteria> criteriaList = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            criteriaList.add(makeRandomCriteria(random));
+        }
+        CriteriaMatcher<Criteria> matcher = CriteriaMatcher.compile(criteriaList, c -> c);
+
+        List<ClientInfo> clients = ImmutableList.of(IOS_CLIENT, ANDROID_CLIENT, ClientInfo.UNKNOWN_CLIENT);
+        List<List<String>> languageLists = ImmutableList.of(ImmutableList.of("en"), ImmutableList.of("fr", "en"),
+                ImmutableList.of("en", "fr"));
+        for (int i = 0; i < 500; i++) {
+            CriteriaContext context = makeContext(randomIds(random, "group", 3), randomIds(random, "substudy", 2),
+                    clients.get(random.nextInt(clients.size())),
+                    languageLists.get(random.nextInt(languageLists.size())));
+
+            List<Criteria> expected = new ArrayList<>();
+            for (Criteria criteria : criteriaList) {
+                if (CriteriaUtils.matchCriteria(context, criteria)) {
+                    expected.add(criteria);
+                }
+            }
+            assertEquals(expected, matcher.getMatches(context));
+        }
+    }
+
+    private static Criteria makeRandomCriteria(Random random) {
+        Criteria criteria = Criteria.create();
+        criteria.setAllOfGroups(randomIds(random, "group", 2));
+        criteria.setNoneOfGroups(randomIds(random, "group", 1));
+        criteria.setAllOfSubstudyIds(randomIds(random, "substudy", 1));
+        criteria.setNoneOfSubstudyIds(randomIds(random, "substudy", 1));
+        if (random.nextBoolean()) {
+            criteria.setMinAppVersion(OperatingSystem.IOS, random.nextInt(20));
+        }
+        if (random.nextBoolean()) {
+            criteria.setMaxAppVersion(OperatingSystem.ANDROID, random.nextInt(20));
+        }
+        if (random.nextInt(4) == 0) {
+            criteria.setLanguage("fr");
+        }
+        return criteria;
+    }
+
+    // Up to maxCount IDs, from a small pool so the criteria and contexts overlap.
+    private static Set<String> randomIds(Random random, String prefix, int maxCount) {
+        ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        int count = random.nextInt(maxCount + 1);
+        for (int i = 0; i < count; i++) {
+            builder.add(prefix + random.nextInt(6));
+        }
+        return builder.build();
+    }
+
+    private static CriteriaContext makeContext(Set<String> dataGroups, Set<String> substudyIds,
+            ClientInfo clientInfo, List<String> languages) {
+        return new CriteriaContext.Builder()
+                .withStudyIdentifier(TEST_STUDY)
+                .withUserDataGroups(dataGroups)
+                .withUserSubstudyIds(substudyIds)
+                .withClientInfo(clientInfo)
+                .withLanguages(languages).build();
+    }
+}
@@ -1,7 +1,9 @@
 package org.sagebionetworks.bridge.play.controllers;
 
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.junit.AfterClass;
@@ -17,8 +19,11 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.TestUtils;
 import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.dao.HealthDataRecordPageDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.DateTimeRangeResourceList;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.Metrics;
 import org.sagebionetworks.bridge.models.RequestInfo;
 import org.sagebionetworks.bridge.models.ResourceList;
@@ -33,12 +38,16 @@ import org.sagebionetworks.bridge.services.ParticipantService;
 import org.sagebionetworks.bridge.services.StudyService;
 
 import play.mvc.Result;
+import play.mvc.Results.Chunks;
 import play.test.Helpers;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -93,6 +102,12 @@ public class HealthDataControllerTest {
     @Mock
     private Metrics metrics;
 
+    @Mock
+    private HealthDataRecordPageDao healthDataRecordPageDao;
+
+    @Mock
+    private Chunks.Out<String> chunksOut;
+
     @BeforeClass
     public static void mockNow() {
         DateTimeUtils.setCurrentMillisFixed(MOCK_NOW_MILLIS);
@@ -111,6 +126,9 @@ public class HealthDataControllerTest {
         controller.setHealthDataService(healthDataService);
         controller.setParticipantService(participantService);
         controller.setStudyService(studyService);
+        controller.setBulkRequestExecutorService(MoreExecutors.newDirectExecutorService());
+        controller.exportStatusThrottleDelayMillis = 0;
+        controller.setHealthDataRecordPageDao(healthDataRecordPageDao);
 
         // mock Metrics
         doReturn(metrics).when(controller).getMetrics();
@@ -164,6 +182,106 @@ public class HealthDataControllerTest {
         assertNull(recordList.get(1).getHealthCode());
     }
 
+    @Test
+    public void getRecordsByCreatedOnV4() throws Exception {
+        HealthDataRecord record = HealthDataRecord.create();
+        record.setId(TEST_RECORD_ID);
+        record.setHealthCode(HEALTH_CODE);
+        ForwardCursorPagedResourceList<HealthDataRecord> page = new ForwardCursorPagedResourceList<>(
+                ImmutableList.of(record), "next-key");
+        when(healthDataRecordPageDao.getRecordsByHealthCodeCreatedOn(HEALTH_CODE, CREATED_ON, CREATED_ON_END,
+                "offset-key", 20)).thenReturn(page);
+
+        Result result = controller.getRecordsByCreatedOnV4(CREATED_ON_STR, CREATED_ON_END_STR, "offset-key", "20");
+        TestUtils.assertResult(result, 200);
+
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals("next-key", node.get("nextPageOffsetKey").textValue());
+        JsonNode recordNode = node.get("items").get(0);
+        assertEquals(TEST_RECORD_ID, recordNode.get("id").textValue());
+        assertNull(recordNode.get("healthCode"));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordsByCreatedOnV4RequiresRange() throws Exception {
+        controller.getRecordsByCreatedOnV4(CREATED_ON_STR, null, null, null);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordsByCreatedOnV4RejectsInvertedRange() throws Exception {
+        controller.getRecordsByCreatedOnV4(CREATED_ON_END_STR, CREATED_ON_STR, null, null);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordsByCreatedOnV4RejectsPageSizeTooLarge() throws Exception {
+        controller.getRecordsByCreatedOnV4(CREATED_ON_STR, CREATED_ON_END_STR, null, "1000");
+    }
+
+    @Test
+    public void streamRecordsByCreatedOnReadsFirstPageBeforeResponding() throws Exception {
+        TestUtils.mockPlay().mock();
+        when(healthDataRecordPageDao.getRecordsByHealthCodeCreatedOn(HEALTH_CODE, CREATED_ON, CREATED_ON_END, null,
+                HealthDataController.STREAM_PAGE_SIZE)).thenThrow(new BadRequestException("bad range"));
+
+        // The error is thrown from the request thread, so it gets the usual error response instead of a 200.
+        try {
+            controller.streamRecordsByCreatedOn(CREATED_ON_STR, CREATED_ON_END_STR);
+            fail("expected exception");
+        } catch (BadRequestException ex) {
+            assertEquals("bad range", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void writeRecordsStreamsEachPage() throws Exception {
+        HealthDataRecord record1 = HealthDataRecord.create();
+        record1.setId(TEST_RECORD_ID + "1");
+        record1.setHealthCode(HEALTH_CODE);
+        HealthDataRecord record2 = HealthDataRecord.create();
+        record2.setId(TEST_RECORD_ID + "2");
+        record2.setHealthCode(HEALTH_CODE);
+
+        when(healthDataRecordPageDao.getRecordsByHealthCodeCreatedOn(HEALTH_CODE, CREATED_ON, CREATED_ON_END,
+                "page2", HealthDataController.STREAM_PAGE_SIZE)).thenReturn(new ForwardCursorPagedResourceList<>(
+                        ImmutableList.of(record2), null));
+
+        controller.writeRecords(chunksOut, "request-id", HEALTH_CODE, CREATED_ON, CREATED_ON_END,
+                new ForwardCursorPagedResourceList<>(ImmutableList.of(record1), "page2"));
+
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(chunksOut, times(3)).write(chunkCaptor.capture());
+        verify(chunksOut).close();
+
+        List<String> chunkList = chunkCaptor.getAllValues();
+        JsonNode recordNode1 = BridgeObjectMapper.get().readTree(chunkList.get(0).trim());
+        assertEquals(TEST_RECORD_ID + "1", recordNode1.get("id").textValue());
+        assertNull(recordNode1.get("healthCode"));
+        JsonNode recordNode2 = BridgeObjectMapper.get().readTree(chunkList.get(1).trim());
+        assertEquals(TEST_RECORD_ID + "2", recordNode2.get("id").textValue());
+        JsonNode statusNode = BridgeObjectMapper.get().readTree(chunkList.get(2).trim());
+        assertEquals(BaseController.STREAM_STATUS_TYPE, statusNode.get("type").textValue());
+        assertEquals(BaseController.STREAM_STATUS_COMPLETE, statusNode.get("status").textValue());
+    }
+
+    @Test
+    public void writeRecordsEndsWithErrorLine() throws Exception {
+        HealthDataRecord record = HealthDataRecord.create();
+        record.setId(TEST_RECORD_ID);
+        when(healthDataRecordPageDao.getRecordsByHealthCodeCreatedOn(any(), any(), any(), any(), anyInt()))
+                .thenThrow(new RuntimeException("DynamoDB is down"));
+
+        controller.writeRecords(chunksOut, "request-id", HEALTH_CODE, CREATED_ON, CREATED_ON_END,
+                new ForwardCursorPagedResourceList<>(ImmutableList.of(record), "page2"));
+
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(chunksOut, times(2)).write(chunkCaptor.capture());
+        verify(chunksOut).close();
+
+        JsonNode statusNode = BridgeObjectMapper.get().readTree(chunkCaptor.getAllValues().get(1).trim());
+        assertEquals(BaseController.STREAM_STATUS_ERROR, statusNode.get("status").textValue());
+        assertTrue(statusNode.get("message").textValue().contains("request-id"));
+    }
+
     @Test
     public void submitHealthData() throws Exception {
         // mock request JSON
@@ -222,6 +340,68 @@ public class HealthDataControllerTest {
         assertEquals(MOCK_NOW_MILLIS, requestInfo.getUploadedOn().getMillis());
     }
 
+    @Test
+    public void submitHealthDataBulk() throws Exception {
+        String submissionJson = "{\n" +
+                "   \"appVersion\":\"" + APP_VERSION + "\",\n" +
+                "   \"createdOn\":\"" + CREATED_ON_STR + "\",\n" +
+                "   \"phoneInfo\":\"" + PHONE_INFO + "\",\n" +
+                "   \"schemaId\":\"" + SCHEMA_ID + "\",\n" +
+                "   \"schemaRevision\":" + SCHEMA_REV + ",\n" +
+                "   \"data\":{\"foo\":\"foo-value\"}\n" +
+                "}";
+        TestUtils.mockPlay().withJsonBody("[" + submissionJson + "," + submissionJson + "]").mock();
+
+        // First submission succeeds, second fails validation.
+        HealthDataRecord svcRecord = HealthDataRecord.create();
+        svcRecord.setId(TEST_RECORD_ID);
+        svcRecord.setHealthCode(HEALTH_CODE);
+        when(healthDataService.submitHealthData(any(), any(), any())).thenReturn(svcRecord)
+                .thenThrow(new BadRequestException("Bad submission"));
+
+        Result result = controller.submitHealthDataBulk();
+        TestUtils.assertResult(result, 200);
+
+        JsonNode items = TestUtils.getJson(result).get("items");
+        assertEquals(2, items.size());
+
+        assertEquals("0", items.get(0).get("key").textValue());
+        assertEquals(200, items.get(0).get("statusCode").intValue());
+        assertEquals(TEST_RECORD_ID, items.get(0).get("item").get("id").textValue());
+        assertNull(items.get(0).get("item").get("healthCode"));
+
+        assertEquals("1", items.get(1).get("key").textValue());
+        assertEquals(400, items.get(1).get("statusCode").intValue());
+        assertEquals("Bad submission", items.get(1).get("message").textValue());
+        assertNull(items.get(1).get("item"));
+
+        verify(healthDataService, times(2)).submitHealthData(eq(TestConstants.TEST_STUDY), same(PARTICIPANT),
+                any());
+
+        // Metrics and request info are written once for the whole batch.
+        verify(metrics).setRecordId(TEST_RECORD_ID);
+        verify(cacheProvider, times(1)).updateRequestInfo(any());
+    }
+
+    @Test
+    public void submitHealthDataBulkAllFailed() throws Exception {
+        TestUtils.mockPlay().withJsonBody("[{\"schemaId\":\"" + SCHEMA_ID + "\"}]").mock();
+        when(healthDataService.submitHealthData(any(), any(), any()))
+                .thenThrow(new BadRequestException("Bad submission"));
+
+        Result result = controller.submitHealthDataBulk();
+        TestUtils.assertResult(result, 200);
+
+        verify(metrics, never()).setRecordId(any());
+        verify(cacheProvider, never()).updateRequestInfo(any());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void submitHealthDataBulkEmptyList() throws Exception {
+        TestUtils.mockPlay().withJsonBody("[]").mock();
+        controller.submitHealthDataBulk();
+    }
+
     @Test
     public void submitHealthDataForParticipant() throws Exception {
         // mock request JSON
@@ -296,5 +476,176 @@ public class HealthDataControllerTest {
         RecordExportStatusRequest capturedRequest = requestArgumentCaptor.getValue();
         assertEquals(TEST_RECORD_ID, capturedRequest.getRecordIds().get(0));
         assertEquals(TEST_STATUS, capturedRequest.getSynapseExporterStatus());
+
+        // Small requests return the same result as large ones.
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals(TEST_RECORD_ID, node.get("updatedRecordIds").get(0).textValue());
+        assertEquals(0, node.get("failedRecords").size());
+    }
+
+    @Test
+    public void updateRecordsStatusBatchesLargeRequests() throws Exception {
+        List<String> recordIds = makeRecordIds(60);
+        TestUtils.mockPlay().withJsonBody(makeStatusJson(recordIds)).mock();
+
+        List<List<String>> batches = new ArrayList<>();
+        when(healthDataService.updateRecordsWithExporterStatus(any())).thenAnswer(invocation -> {
+            RecordExportStatusRequest request = invocation.getArgument(0);
+            assertEquals(TEST_STATUS, request.getSynapseExporterStatus());
+            batches.add(request.getRecordIds());
+            return request.getRecordIds();
+        });
+
+        Result result = controller.updateRecordsStatus();
+        TestUtils.assertResult(result, 200, "Update exporter status to: " + recordIds + " complete.");
+
+        assertEquals(3, batches.size());
+        assertEquals(HealthDataController.EXPORT_STATUS_BATCH_SIZE, batches.get(0).size());
+        assertEquals(HealthDataController.EXPORT_STATUS_BATCH_SIZE, batches.get(1).size());
+        assertEquals(10, batches.get(2).size());
+    }
+
+    @Test
+    public void updateRecordsStatusReturnsPartialFailures() throws Exception {
+        List<String> recordIds = makeRecordIds(60);
+        TestUtils.mockPlay().withJsonBody(makeStatusJson(recordIds)).mock();
+
+        // The second batch fails.
+        when(healthDataService.updateRecordsWithExporterStatus(any())).thenAnswer(invocation -> {
+            RecordExportStatusRequest request = invocation.getArgument(0);
+            if (request.getRecordIds().contains("record-30")) {
+                throw new BadRequestException("Bad batch");
+            }
+            return request.getRecordIds();
+        });
+
+        Result result = controller.updateRecordsStatus();
+        TestUtils.assertResult(result, 200);
+
+        JsonNode node = TestUtils.getJson(result);
+        JsonNode updated = node.get("updatedRecordIds");
+        assertEquals(35, updated.size());
+        assertEquals("record-0", updated.get(0).textValue());
+        assertEquals("record-50", updated.get(25).textValue());
+
+        JsonNode failed = node.get("failedRecords");
+        assertEquals(25, failed.size());
+        assertEquals("record-25", failed.get(0).get("key").textValue());
+        assertEquals(400, failed.get(0).get("statusCode").intValue());
+        assertEquals("Bad batch", failed.get(0).get("message").textValue());
+    }
+
+    @Test
+    public void updateRecordsStatusRetriesThrottledBatches() throws Exception {
+        TestUtils.mockPlay().withJsonBody(TEST_STATUS_JSON).mock();
+
+        when(healthDataService.updateRecordsWithExporterStatus(any()))
+                .thenThrow(new ProvisionedThroughputExceededException("throttled"))
+                .thenReturn(ImmutableList.of(TEST_RECORD_ID));
+
+        Result result = controller.updateRecordsStatus();
+        TestUtils.assertResult(result, 200, "Update exporter status to: " + ImmutableList.of(TEST_RECORD_ID) +
+                " complete.");
+        verify(healthDataService, times(2)).updateRecordsWithExporterStatus(any());
+    }
+
+    @Test
+    public void updateRecordsStatusGivesUpAfterMaxThrottleRetries() throws Exception {
+        TestUtils.mockPlay().withJsonBody(TEST_STATUS_JSON).mock();
+
+        when(healthDataService.updateRecordsWithExporterStatus(any()))
+                .thenThrow(new ProvisionedThroughputExceededException("throttled"));
+
+        Result result = controller.updateRecordsStatus();
+        TestUtils.assertResult(result, 200);
+        verify(healthDataService, times(HealthDataController.EXPORT_STATUS_MAX_THROTTLE_RETRIES + 1))
+                .updateRecordsWithExporterStatus(any());
+
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals(0, node.get("updatedRecordIds").size());
+        JsonNode failed = node.get("failedRecords");
+        assertEquals(1, failed.size());
+        assertEquals(TEST_RECORD_ID, failed.get(0).get("key").textValue());
+        assertEquals(503, failed.get(0).get("statusCode").intValue());
+        assertEquals(HealthDataController.THROTTLED_MESSAGE, failed.get(0).get("message").textValue());
+    }
+
+    @Test
+    public void updateRecordsStatusRequiresExporterStatus() throws Exception {
+        TestUtils.mockPlay().withJsonBody("{\"recordIds\":[\"record-to-update\"]}").mock();
+
+        try {
+            controller.updateRecordsStatus();
+            fail("expected exception");
+        } catch (BadRequestException ex) {
+            assertEquals("synapseExporterStatus must be provided", ex.getMessage());
+        }
+        verify(healthDataService, never()).updateRecordsWithExporterStatus(any());
+    }
+
+    @Test
+    public void updateRecordsStatusRequiresRecordIds() throws Exception {
+        TestUtils.mockPlay().withJsonBody("{\"synapseExporterStatus\":\"SUCCEEDED\"}").mock();
+
+        try {
+            controller.updateRecordsStatus();
+            fail("expected exception");
+        } catch (BadRequestException ex) {
+            assertEquals("recordIds must be provided", ex.getMessage());
+        }
+        verify(healthDataService, never()).updateRecordsWithExporterStatus(any());
+    }
+
+    @Test
+    public void updateRecordsStatusChunksVeryLargeRequests() throws Exception {
+        List<String> recordIds = makeRecordIds(1001);
+        TestUtils.mockPlay().withJsonBody(makeStatusJson(recordIds)).mock();
+
+        when(healthDataService.updateRecordsWithExporterStatus(any())).thenAnswer(invocation -> {
+            RecordExportStatusRequest request = invocation.getArgument(0);
+            return request.getRecordIds();
+        });
+
+        Result result = controller.updateRecordsStatus();
+        TestUtils.assertResult(result, 200, "Update exporter status to: " + recordIds + " complete.");
+        verify(healthDataService, times(41)).updateRecordsWithExporterStatus(any());
+    }
+
+    @Test
+    public void updateRecordsStatusListsFailedRecordsInRequestOrder() throws Exception {
+        List<String> recordIds = makeRecordIds(50);
+        TestUtils.mockPlay().withJsonBody(makeStatusJson(recordIds)).mock();
+
+        // The first batch is throttled until it gives up, so it finishes after the second batch fails.
+        when(healthDataService.updateRecordsWithExporterStatus(any())).thenAnswer(invocation -> {
+            RecordExportStatusRequest request = invocation.getArgument(0);
+            if (request.getRecordIds().contains("record-0")) {
+                throw new ProvisionedThroughputExceededException("throttled");
+            }
+            throw new BadRequestException("Bad batch");
+        });
+
+        Result result = controller.updateRecordsStatus();
+        TestUtils.assertResult(result, 200);
+
+        JsonNode failed = TestUtils.getJson(result).get("failedRecords");
+        assertEquals(50, failed.size());
+        assertEquals("record-0", failed.get(0).get("key").textValue());
+        assertEquals(503, failed.get(0).get("statusCode").intValue());
+        assertEquals("record-25", failed.get(25).get("key").textValue());
+        assertEquals(400, failed.get(25).get("statusCode").intValue());
+    }
+
+    private static List<String> makeRecordIds(int count) {
+        List<String> recordIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            recordIds.add("record-" + i);
+        }
+        return recordIds;
+    }
+
+    private static String makeStatusJson(List<String> recordIds) throws Exception {
+        return "{\"recordIds\":" + BridgeObjectMapper.get().writeValueAsString(recordIds) +
+                ",\"synapseExporterStatus\":\"SUCCEEDED\"}";
     }
 }
@@ -0,0 +1,118 @@
+package org.sagebionetworks.bridge.play.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+public class PartialResponseWritersTest {
+    private static final ObjectWriter SECRET_HIDING_WRITER = new BridgeObjectMapper().writer(
+            new SimpleFilterProvider().addFilter("filter", SimpleBeanPropertyFilter.serializeAllExcept("secret")));
+
+    @Test
+    public void parseFields() {
+        assertEquals(ImmutableSet.of("firstName", "id"), PartialResponseWriters.parseFields(" id, firstName,,"));
+        assertNull(PartialResponseWriters.parseFields(null));
+        assertNull(PartialResponseWriters.parseFields(" "));
+        assertNull(PartialResponseWriters.parseFields(",,"));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void parseFieldsTooMany() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i <= PartialResponseWriters.MAX_FIELD_COUNT; i++) {
+            builder.append("field").append(i).append(',');
+        }
+        PartialResponseWriters.parseFields(builder.toString());
+    }
+
+    @Test
+    public void includesField() {
+        assertTrue(PartialResponseWriters.includesField(null, "consentHistories"));
+        assertTrue(PartialResponseWriters.includesField(ImmutableSet.of("consentHistories"), "consentHistories"));
+        assertFalse(PartialResponseWriters.includesField(ImmutableSet.of("id"), "consentHistories"));
+    }
+
+    @Test
+    public void noFieldsReturnsBaseWriter() {
+        assertSame(SECRET_HIDING_WRITER, PartialResponseWriters.forFields(SECRET_HIDING_WRITER, null));
+    }
+
+    @Test
+    public void writersAreCachedPerFieldSet() {
+        Set<String> fields = PartialResponseWriters.parseFields("name,child");
+        ObjectWriter writer = PartialResponseWriters.forFields(SECRET_HIDING_WRITER, fields);
+
+        assertSame(writer, PartialResponseWriters.forFields(SECRET_HIDING_WRITER,
+                PartialResponseWriters.parseFields("child,name")));
+    }
+
+    @Test
+    public void writesOnlyRequestedRootFields() throws Exception {
+        ObjectWriter writer = PartialResponseWriters.forFields(SECRET_HIDING_WRITER,
+                PartialResponseWriters.parseFields("name,child"));
+
+        JsonNode node = BridgeObjectMapper.get().readTree(writer.writeValueAsString(new TestParent()));
+        assertEquals("parent", node.get("name").textValue());
+        assertEquals("TestParent", node.get("type").textValue());
+        assertFalse(node.has("count"));
+
+        // Nested objects are written in full.
+        JsonNode childNode = node.get("child");
+        assertEquals("child", childNode.get("name").textValue());
+        assertEquals(2, childNode.get("count").intValue());
+    }
+
+    @Test
+    public void cannotRequestFieldHiddenByBaseWriter() throws Exception {
+        ObjectWriter writer = PartialResponseWriters.forFields(SECRET_HIDING_WRITER,
+                PartialResponseWriters.parseFields("name,secret"));
+
+        JsonNode node = BridgeObjectMapper.get().readTree(writer.writeValueAsString(new TestParent()));
+        assertEquals("parent", node.get("name").textValue());
+        assertFalse(node.has("secret"));
+    }
+
+    @JsonFilter("filter")
+    public static class TestParent {
+        public String getName() {
+            return "parent";
+        }
+        public int getCount() {
+            return 1;
+        }
+        public String getSecret() {
+            return "secret";
+        }
+        public TestChild getChild() {
+            return new TestChild();
+        }
+        public String getType() {
+            return "TestParent";
+        }
+    }
+
+    @JsonFilter("filter")
+    public static class TestChild {
+        public String getName() {
+            return "child";
+        }
+        public int getCount() {
+            return 2;
+        }
+    }
+}
@@ -7,8 +7,12 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.BridgeConstants.API_DEFAULT_PAGE_SIZE;
@@ -30,6 +34,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
@@ -44,6 +49,7 @@ import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import play.mvc.Result;
+import play.mvc.Results.Chunks;
 import play.test.Helpers;
 
 import org.sagebionetworks.bridge.BridgeConstants;
@@ -53,6 +59,7 @@ import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.TestUtils;
 import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.dao.ParticipantRosterDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoActivityEvent;
 import org.sagebionetworks.bridge.dynamodb.DynamoScheduledActivity;
 import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
@@ -66,12 +73,14 @@ import org.sagebionetworks.bridge.models.ClientInfo;
 import org.sagebionetworks.bridge.models.CriteriaContext;
 import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.PagedResourceList;
+import org.sagebionetworks.bridge.models.ReportTypeResourceList;
 import org.sagebionetworks.bridge.models.RequestInfo;
 import org.sagebionetworks.bridge.models.ResourceList;
 import org.sagebionetworks.bridge.models.accounts.AccountStatus;
 import org.sagebionetworks.bridge.models.accounts.AccountSummary;
 import org.sagebionetworks.bridge.models.accounts.IdentifierHolder;
 import org.sagebionetworks.bridge.models.accounts.IdentifierUpdate;
+import org.sagebionetworks.bridge.models.accounts.RosterExportJob;
 import org.sagebionetworks.bridge.models.accounts.SharingScope;
 import org.sagebionetworks.bridge.models.accounts.SignIn;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
@@ -79,10 +88,16 @@ import org.sagebionetworks.bridge.models.accounts.UserConsentHistory;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.accounts.Withdrawal;
 import org.sagebionetworks.bridge.models.activities.ActivityEvent;
+import org.sagebionetworks.bridge.models.notifications.NotificationFanOutJob;
+import org.sagebionetworks.bridge.models.notifications.NotificationFanOutRequest;
 import org.sagebionetworks.bridge.models.notifications.NotificationMessage;
 import org.sagebionetworks.bridge.models.notifications.NotificationRegistration;
+import org.sagebionetworks.bridge.models.reports.ReportIndex;
+import org.sagebionetworks.bridge.models.reports.ReportType;
 import org.sagebionetworks.bridge.models.schedules.ActivityType;
 import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
+import org.sagebionetworks.bridge.models.sms.BulkSmsRequest;
+import org.sagebionetworks.bridge.models.sms.BulkSmsResult;
 import org.sagebionetworks.bridge.models.studies.SmsTemplate;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
@@ -90,9 +105,13 @@ import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
 import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.services.AuthenticationService;
 import org.sagebionetworks.bridge.services.AuthenticationService.ChannelType;
+import org.sagebionetworks.bridge.services.BulkSmsService;
 import org.sagebionetworks.bridge.services.ConsentService;
+import org.sagebionetworks.bridge.services.NotificationFanOutService;
 import org.sagebionetworks.bridge.services.NotificationTopicService;
+import org.sagebionetworks.bridge.services.ParticipantRosterExportService;
 import org.sagebionetworks.bridge.services.ParticipantService;
+import org.sagebionetworks.bridge.services.ReportService;
 import org.sagebionetworks.bridge.services.SessionUpdateService;
 import org.sagebionetworks.bridge.services.StudyService;
 import org.sagebionetworks.bridge.services.UserAdminService;
@@ -163,6 +182,24 @@ public class ParticipantControllerTest {
     @Mock
     private UserAdminService userAdminService;
     
+    @Mock
+    private ParticipantRosterExportService mockRosterExportService;
+    
+    @Mock
+    private ParticipantRosterDao mockRosterDao;
+    
+    @Mock
+    private Chunks.Out<String> mockChunksOut;
+    
+    @Mock
+    private NotificationFanOutService mockFanOutService;
+    
+    @Mock
+    private BulkSmsService mockBulkSmsService;
+    
+    @Mock
+    private ReportService mockReportService;
+    
     @Captor
     private ArgumentCaptor<StudyParticipant> participantCaptor;
     
@@ -240,6 +277,13 @@ public class ParticipantControllerTest {
         controller.setAuthenticationService(authService);
         controller.setCacheProvider(mockCacheProvider);
         controller.setUserAdminService(userAdminService);
+        controller.setParticipantRosterExportService(mockRosterExportService);
+        controller.setParticipantRosterDao(mockRosterDao);
+        controller.setBulkRequestExecutorService(MoreExecutors.newDirectExecutorService());
+        controller.setNotificationFanOutService(mockFanOutService);
+        controller.setBulkSmsService(mockBulkSmsService);
+        controller.setReportService(mockReportService);
+        controller.setWorkerViewExecutorService(MoreExecutors.newDirectExecutorService());
 
         SessionUpdateService sessionUpdateService = new SessionUpdateService();
         sessionUpdateService.setCacheProvider(mockCacheProvider);
@@ -329,7 +373,7 @@ public class ParticipantControllerTest {
         
         when(mockParticipantService.getParticipant(study, ID, true)).thenReturn(studyParticipant);
         
-        Result result = controller.getParticipant(ID, true);
+        Result result = controller.getParticipant(ID, true, null);
         TestUtils.assertResult(result, 200);
         
         // StudyParticipant will encrypt the healthCode when you ask for it, so validate the
@@ -342,13 +386,60 @@ public class ParticipantControllerTest {
         verify(mockParticipantService).getParticipant(study, ID, true);
     }
     
+    @Test
+    public void getParticipantWithFields() throws Exception {
+        study.setHealthCodeExportEnabled(false);
+        StudyParticipant studyParticipant = new StudyParticipant.Builder().withId(ID).withFirstName("Test")
+                .withLastName("Last").withHealthCode("healthCode").build();
+        when(mockParticipantService.getParticipant(study, ID, false)).thenReturn(studyParticipant);
+        
+        Result result = controller.getParticipant(ID, true, "id,firstName,healthCode");
+        TestUtils.assertResult(result, 200);
+        
+        // Consent histories weren't requested, so they aren't loaded.
+        verify(mockParticipantService).getParticipant(study, ID, false);
+        
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals(ID, node.get("id").textValue());
+        assertEquals("Test", node.get("firstName").textValue());
+        assertFalse(node.has("lastName"));
+        // Health code export is off, so requesting it doesn't expose it.
+        assertFalse(node.has("healthCode"));
+    }
+    
+    @Test
+    public void getParticipantWithConsentHistoriesField() throws Exception {
+        when(mockParticipantService.getParticipant(study, ID, true)).thenReturn(participant);
+        
+        controller.getParticipant(ID, true, "consentHistories");
+        
+        verify(mockParticipantService).getParticipant(study, ID, true);
+    }
+    
+    @Test
+    public void getSelfParticipantWithFields() throws Exception {
+        TestUtils.mockPlay().withMockResponse().mock();
+        
+        StudyParticipant studyParticipant = new StudyParticipant.Builder().withId(ID).withFirstName("Test")
+                .withLastName("Last").build();
+        when(mockParticipantService.getSelfParticipant(eq(study), any(), eq(false))).thenReturn(studyParticipant);
+        
+        Result result = controller.getSelfParticipant(true, "firstName");
+        assertResult(result, 200);
+        
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals("Test", node.get("firstName").textValue());
+        assertFalse(node.has("id"));
+        assertFalse(node.has("lastName"));
+    }
+    
     @Test
     public void getParticipantWithNoHealthCode() throws Exception {
         study.setHealthCodeExportEnabled(false);
         StudyParticipant studyParticipant = new StudyParticipant.Builder().withFirstName("Test").withHealthCode("healthCode").build();
         when(mockParticipantService.getParticipant(study, ID, true)).thenReturn(studyParticipant);
         
-        Result result = controller.getParticipant(ID, true);
+        Result result = controller.getParticipant(ID, true, null);
         TestUtils.assertResult(result, 200);
         
         String json = Helpers.contentAsString(result);
@@ -523,7 +614,7 @@ public class ParticipantControllerTest {
         
         when(mockParticipantService.getSelfParticipant(eq(study), any(), eq(false))).thenReturn(studyParticipant);
 
-        Result result = controller.getSelfParticipant(false);
+        Result result = controller.getSelfParticipant(false, null);
         assertResult(result, 200);
         
         verify(mockParticipantService).getSelfParticipant(eq(study), contextCaptor.capture(), eq(false));
@@ -564,7 +655,7 @@ public class ParticipantControllerTest {
         
         when(mockParticipantService.getSelfParticipant(eq(study), any(), eq(true))).thenReturn(studyParticipant);
 
-        Result result = controller.getSelfParticipant(true);
+        Result result = controller.getSelfParticipant(true, null);
         assertResult(result, 200);
         
         verify(mockParticipantService).getSelfParticipant(eq(study), any(), eq(true));
@@ -969,6 +1060,59 @@ public class ParticipantControllerTest {
         assertResult(result, 202, "Message has been sent to external notification service. Some registrations returned errors: 123, 456.");
     }
 
+    @Test
+    public void startNotificationFanOut() throws Exception {
+        NotificationFanOutRequest request = new NotificationFanOutRequest(TestUtils.getNotificationMessage(),
+                ImmutableSet.of("group1"), null, null);
+        TestUtils.mockPlay().withBody(request).mock();
+        NotificationFanOutJob job = new NotificationFanOutJob("job-id", TestConstants.TEST_STUDY_IDENTIFIER,
+                ImmutableSet.of("substudyA"), request, DateTime.now());
+        when(mockFanOutService.startFanOut(eq(TestConstants.TEST_STUDY), any())).thenReturn(job);
+        
+        Result result = controller.startNotificationFanOut();
+        assertEquals(202, result.status());
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals("job-id", node.get("jobId").textValue());
+        assertNull(node.get("request"));
+        assertNull(node.get("substudyIds"));
+        
+        ArgumentCaptor<NotificationFanOutRequest> requestCaptor = ArgumentCaptor
+                .forClass(NotificationFanOutRequest.class);
+        verify(mockFanOutService).startFanOut(eq(TestConstants.TEST_STUDY), requestCaptor.capture());
+        assertEquals(ImmutableSet.of("group1"), requestCaptor.getValue().getAllOfGroups());
+        assertEquals("a subject", requestCaptor.getValue().getMessage().getSubject());
+    }
+    
+    @Test
+    public void resumeNotificationFanOut() throws Exception {
+        NotificationFanOutJob job = new NotificationFanOutJob("job-id", TestConstants.TEST_STUDY_IDENTIFIER,
+                ImmutableSet.of(), new NotificationFanOutRequest(TestUtils.getNotificationMessage(), null, null, null),
+                DateTime.now());
+        when(mockFanOutService.resumeFanOut(TestConstants.TEST_STUDY, "job-id")).thenReturn(job);
+        
+        Result result = controller.resumeNotificationFanOut("job-id");
+        assertEquals(202, result.status());
+    }
+    
+    @Test
+    public void getNotificationFanOut() throws Exception {
+        NotificationFanOutJob job = new NotificationFanOutJob("job-id", TestConstants.TEST_STUDY_IDENTIFIER,
+                ImmutableSet.of(), new NotificationFanOutRequest(TestUtils.getNotificationMessage(), null, null, null),
+                DateTime.now());
+        job.markNotifiedThrough(DateTime.now(), "participant-id");
+        when(mockFanOutService.getJob(TestConstants.TEST_STUDY, "job-id")).thenReturn(job);
+        
+        Result result = controller.getNotificationFanOut("job-id");
+        assertEquals(200, result.status());
+        
+        // The job's resume position is only kept in the job store.
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals("job-id", node.get("jobId").textValue());
+        assertNull(node.get("studyId"));
+        assertNull(node.get("afterId"));
+        assertNull(node.get("notifiedIds"));
+    }
+    
     @SuppressWarnings("deprecation")
     @Test(expected = UnauthorizedException.class)
     public void getParticipantsForWorkerOnly() throws Exception {
@@ -1176,7 +1320,7 @@ public class ParticipantControllerTest {
         StudyParticipant studyParticipant = new StudyParticipant.Builder().withFirstName("Test").build();
         when(mockParticipantService.getParticipant(study, ID, false)).thenReturn(studyParticipant);
         
-        controller.getParticipant(ID, false);
+        controller.getParticipant(ID, false, null);
         
         verify(mockParticipantService).getParticipant(study, ID, false);
     }
@@ -1270,6 +1414,76 @@ public class ParticipantControllerTest {
         assertFalse(retrieved.getItems().isEmpty());
     }
     
+    @Test
+    public void getParticipantViewForWorker() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().copyOf(session.getParticipant())
+                .withRoles(Sets.newHashSet(Roles.WORKER)).build());
+        
+        StudyParticipant viewed = new StudyParticipant.Builder().withId(ID).withHealthCode("healthCode").build();
+        when(mockParticipantService.getParticipant(study, ID, true)).thenReturn(viewed);
+        
+        DynamoActivityEvent anEvent = new DynamoActivityEvent();
+        anEvent.setEventId("event-id");
+        when(mockParticipantService.getActivityEvents(study, ID)).thenReturn(Lists.newArrayList(anEvent));
+        
+        ForwardCursorPagedResourceList<ScheduledActivity> cursor = 
+                new ForwardCursorPagedResourceList<>(Lists.newArrayList(ScheduledActivity.create()), null);
+        when(mockParticipantService.getActivityHistory(study, ID, ActivityType.SURVEY, "referentGuid", null, null,
+                null, 20)).thenReturn(cursor);
+        
+        ReportIndex index = ReportIndex.create();
+        index.setIdentifier("report-id");
+        ReportTypeResourceList<? extends ReportIndex> indices = new ReportTypeResourceList<>(
+                Lists.newArrayList(index)).withRequestParam(ResourceList.REPORT_TYPE, ReportType.PARTICIPANT);
+        doReturn(indices).when(mockReportService).getReportIndices(TestConstants.TEST_STUDY, ReportType.PARTICIPANT);
+        
+        Result result = controller.getParticipantViewForWorker(TestConstants.TEST_STUDY_IDENTIFIER, ID, true,
+                "surveys", "referentGuid", "20");
+        assertResult(result, 200);
+        
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals("WorkerParticipantView", node.get("type").textValue());
+        assertEquals("healthCode", node.get("participant").get("healthCode").textValue());
+        assertEquals("event-id", node.get("activityEvents").get("items").get(0).get("eventId").textValue());
+        assertEquals(1, node.get("activityHistory").get("items").size());
+        assertEquals("report-id", node.get("reportIndices").get("items").get(0).get("identifier").textValue());
+    }
+    
+    @Test
+    public void getParticipantViewForWorkerWithoutHistory() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().copyOf(session.getParticipant())
+                .withRoles(Sets.newHashSet(Roles.WORKER)).build());
+        when(mockParticipantService.getParticipant(study, ID, false)).thenReturn(participant);
+        doReturn(new ReportTypeResourceList<>(ImmutableList.of())).when(mockReportService)
+                .getReportIndices(TestConstants.TEST_STUDY, ReportType.PARTICIPANT);
+        
+        Result result = controller.getParticipantViewForWorker(TestConstants.TEST_STUDY_IDENTIFIER, ID, false, null,
+                null, null);
+        
+        JsonNode node = TestUtils.getJson(result);
+        assertFalse(node.has("activityHistory"));
+        verify(mockParticipantService, never()).getActivityHistory(any(), any(), any(ActivityType.class), any(),
+                any(), any(), any(), any(Integer.class));
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getParticipantViewForWorkerRequiresReferentWithActivityType() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().copyOf(session.getParticipant())
+                .withRoles(Sets.newHashSet(Roles.WORKER)).build());
+        
+        controller.getParticipantViewForWorker(TestConstants.TEST_STUDY_IDENTIFIER, ID, false, "surveys", null, null);
+    }
+    
+    @Test(expected = EntityNotFoundException.class)
+    public void getParticipantViewForWorkerParticipantNotFound() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().copyOf(session.getParticipant())
+                .withRoles(Sets.newHashSet(Roles.WORKER)).build());
+        when(mockParticipantService.getParticipant(study, ID, false))
+                .thenThrow(new EntityNotFoundException(StudyParticipant.class));
+        
+        controller.getParticipantViewForWorker(TestConstants.TEST_STUDY_IDENTIFIER, ID, false, null, null, null);
+    }
+    
     @Test
     public void deleteTestUserWorks() {
         participant = new StudyParticipant.Builder().copyOf(participant).withDataGroups(Sets.newHashSet("test_user"))
@@ -1377,6 +1591,268 @@ public class ParticipantControllerTest {
         return search;
     }
     
+    @Test
+    public void getParticipantsV4() throws Exception {
+        DateTime startTime = DateTime.parse("2018-01-01T00:00:00.000Z");
+        DateTime endTime = DateTime.parse("2018-02-01T00:00:00.000Z");
+        ForwardCursorPagedResourceList<AccountSummary> page = new ForwardCursorPagedResourceList<>(
+                ImmutableList.of(SUMMARY), "next-key");
+        when(mockRosterDao.searchAccountSummaries(eq(TestConstants.TEST_STUDY_IDENTIFIER), any(),
+                eq("offset-key"))).thenReturn(page);
+        
+        Result result = controller.getParticipantsV4("offset-key", "50", "email", "phone", startTime.toString(),
+                endTime.toString());
+        assertEquals(200, result.status());
+        
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals("next-key", node.get("nextPageOffsetKey").textValue());
+        assertEquals("id", node.get("items").get(0).get("id").textValue());
+        assertEquals("externalId", node.get("items").get(0).get("externalIds").get("substudyA").textValue());
+        
+        ArgumentCaptor<AccountSummarySearch> searchCaptor = ArgumentCaptor.forClass(AccountSummarySearch.class);
+        verify(mockRosterDao).searchAccountSummaries(eq(TestConstants.TEST_STUDY_IDENTIFIER),
+                searchCaptor.capture(), eq("offset-key"));
+        AccountSummarySearch search = searchCaptor.getValue();
+        assertEquals(50, search.getPageSize());
+        assertEquals("email", search.getEmailFilter());
+        assertEquals("phone", search.getPhoneFilter());
+        assertEquals(startTime.toString(), search.getStartTime().toString());
+        assertEquals(endTime.toString(), search.getEndTime().toString());
+    }
+    
+    @Test
+    public void getParticipantsForWorkerV4() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().copyOf(participant)
+                .withRoles(ImmutableSet.of(Roles.WORKER)).build());
+        when(mockRosterDao.searchAccountSummaries(eq(TestConstants.TEST_STUDY_IDENTIFIER), any(), isNull()))
+                .thenReturn(new ForwardCursorPagedResourceList<>(ImmutableList.of(), null));
+        
+        Result result = controller.getParticipantsForWorkerV4(TestConstants.TEST_STUDY_IDENTIFIER, null, null, null,
+                null, null, null);
+        assertEquals(200, result.status());
+        
+        ArgumentCaptor<AccountSummarySearch> searchCaptor = ArgumentCaptor.forClass(AccountSummarySearch.class);
+        verify(mockRosterDao).searchAccountSummaries(eq(TestConstants.TEST_STUDY_IDENTIFIER),
+                searchCaptor.capture(), isNull());
+        assertEquals(API_DEFAULT_PAGE_SIZE, searchCaptor.getValue().getPageSize());
+    }
+    
+    @Test
+    public void searchForAccountSummariesV4() throws Exception {
+        AccountSummarySearch search = setAccountSummarySearch();
+        when(mockRosterDao.searchAccountSummaries(eq(TestConstants.TEST_STUDY_IDENTIFIER), any(),
+                eq("offset-key"))).thenReturn(new ForwardCursorPagedResourceList<>(ImmutableList.of(SUMMARY),
+                        null));
+        
+        Result result = controller.searchForAccountSummariesV4("offset-key");
+        assertEquals(200, result.status());
+        
+        // The search body carries the same filters as the offset-paged search.
+        ArgumentCaptor<AccountSummarySearch> searchCaptor = ArgumentCaptor.forClass(AccountSummarySearch.class);
+        verify(mockRosterDao).searchAccountSummaries(eq(TestConstants.TEST_STUDY_IDENTIFIER),
+                searchCaptor.capture(), eq("offset-key"));
+        AccountSummarySearch captured = searchCaptor.getValue();
+        assertEquals(search.getPageSize(), captured.getPageSize());
+        assertEquals(search.getLanguage(), captured.getLanguage());
+        assertEquals(search.getAllOfGroups(), captured.getAllOfGroups());
+        assertEquals(search.getNoneOfGroups(), captured.getNoneOfGroups());
+        assertEquals(search.getStartTime().toString(), captured.getStartTime().toString());
+        assertEquals(search.getEndTime().toString(), captured.getEndTime().toString());
+    }
+    
+    @Test
+    public void searchForAccountSummariesForWorkerV4() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().copyOf(participant)
+                .withRoles(ImmutableSet.of(Roles.WORKER)).build());
+        setAccountSummarySearch();
+        when(mockRosterDao.searchAccountSummaries(eq(TestConstants.TEST_STUDY_IDENTIFIER), any(), isNull()))
+                .thenReturn(new ForwardCursorPagedResourceList<>(ImmutableList.of(), null));
+        
+        Result result = controller.searchForAccountSummariesForWorkerV4(TestConstants.TEST_STUDY_IDENTIFIER, null);
+        assertEquals(200, result.status());
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getParticipantsV4PageSizeTooLarge() throws Exception {
+        controller.getParticipantsV4(null, String.valueOf(API_MAXIMUM_PAGE_SIZE + 1), null, null, null, null);
+    }
+    
+    @Test
+    public void writeParticipantsInRequestOrder() throws Exception {
+        StudyParticipant participant1 = new StudyParticipant.Builder().withId("user1").withHealthCode("healthCode1")
+                .build();
+        StudyParticipant participant3 = new StudyParticipant.Builder().withId("user3").withHealthCode("healthCode3")
+                .build();
+        when(mockParticipantService.getParticipant(study, "user1", false)).thenReturn(participant1);
+        when(mockParticipantService.getParticipant(study, "user2", false))
+                .thenThrow(new EntityNotFoundException(StudyParticipant.class));
+        when(mockParticipantService.getParticipant(study, "user3", false)).thenReturn(participant3);
+        
+        controller.writeParticipants(mockChunksOut, "request-id", RequestContext.NULL_INSTANCE, study,
+                ImmutableList.of("user1", "user2", "user3"), false);
+        
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(2)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+        
+        String[] lines = chunkCaptor.getAllValues().get(0).split("\n");
+        assertEquals(3, lines.length);
+        
+        JsonNode node1 = MAPPER.readTree(lines[0]);
+        assertEquals("user1", node1.get("key").textValue());
+        assertEquals("healthCode1", node1.get("item").get("healthCode").textValue());
+        
+        JsonNode node2 = MAPPER.readTree(lines[1]);
+        assertEquals("user2", node2.get("key").textValue());
+        assertEquals(404, node2.get("statusCode").intValue());
+        assertNull(node2.get("item"));
+        
+        assertEquals("user3", MAPPER.readTree(lines[2]).get("key").textValue());
+        
+        assertEquals(BaseController.streamStatusLine("request-id", true), chunkCaptor.getAllValues().get(1));
+    }
+    
+    @Test
+    public void writeParticipantsOneChunkPerWindow() throws Exception {
+        List<String> userIdList = Lists.newArrayList();
+        for (int i = 0; i < ParticipantController.BULK_PARTICIPANT_WINDOW_SIZE + 1; i++) {
+            userIdList.add("user" + i);
+        }
+        when(mockParticipantService.getParticipant(eq(study), any(), eq(true)))
+                .thenReturn(new StudyParticipant.Builder().withId(ID).build());
+        
+        controller.writeParticipants(mockChunksOut, "request-id", RequestContext.NULL_INSTANCE, study, userIdList,
+                true);
+        
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(3)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+        
+        assertEquals(BaseController.streamStatusLine("request-id", true), chunkCaptor.getAllValues().get(2));
+    }
+    
+    @Test
+    public void writeParticipantsEndsWithErrorStatusOnError() throws Exception {
+        doThrow(new RuntimeException("connection reset")).doNothing().when(mockChunksOut).write(any());
+        when(mockParticipantService.getParticipant(study, "user1", true))
+                .thenReturn(new StudyParticipant.Builder().withId("user1").build());
+        
+        controller.writeParticipants(mockChunksOut, "request-id", RequestContext.NULL_INSTANCE, study,
+                ImmutableList.of("user1"), true);
+        
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(2)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+        
+        JsonNode status = MAPPER.readTree(chunkCaptor.getAllValues().get(1));
+        assertEquals(BaseController.STREAM_STATUS_ERROR, status.get("status").textValue());
+        assertEquals(BaseController.streamErrorMessage("request-id"), status.get("message").textValue());
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getParticipantsForWorkerBulkRequiresUserIds() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().copyOf(participant)
+                .withRoles(ImmutableSet.of(Roles.WORKER)).build());
+        TestUtils.mockPlay().withJsonBody("[]").mock();
+        
+        controller.getParticipantsForWorkerBulk(TestConstants.TEST_STUDY_IDENTIFIER, true);
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getParticipantsForWorkerBulkTooManyUserIds() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().copyOf(participant)
+                .withRoles(ImmutableSet.of(Roles.WORKER)).build());
+        List<String> userIdList = Lists.newArrayList();
+        for (int i = 0; i < ParticipantController.MAX_BULK_PARTICIPANTS + 1; i++) {
+            userIdList.add("user" + i);
+        }
+        TestUtils.mockPlay().withJsonBody(MAPPER.writeValueAsString(userIdList)).mock();
+        
+        controller.getParticipantsForWorkerBulk(TestConstants.TEST_STUDY_IDENTIFIER, true);
+    }
+    
+    @Test(expected = UnauthorizedException.class)
+    public void getParticipantsForWorkerBulkRequiresWorker() throws Exception {
+        controller.getParticipantsForWorkerBulk(TestConstants.TEST_STUDY_IDENTIFIER, true);
+    }
+    
+    @Test
+    public void sendSmsMessagesForWorker() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().copyOf(participant)
+                .withRoles(ImmutableSet.of(Roles.WORKER)).build());
+        TestUtils.mockPlay().withBody(new BulkSmsRequest(ImmutableList.of("user1", "user2"), "a message")).mock();
+        when(mockBulkSmsService.sendSmsMessages(study, ImmutableList.of("user1", "user2"), "a message"))
+                .thenReturn(new BulkSmsResult(2, 0, 10L, ImmutableList.of()));
+        
+        Result result = controller.sendSmsMessagesForWorker(TestConstants.TEST_STUDY_IDENTIFIER);
+        assertEquals(200, result.status());
+        assertEquals(2, TestUtils.getJson(result).get("sentCount").intValue());
+    }
+    
+    @Test
+    public void startRosterExport() throws Exception {
+        RosterExportJob job = new RosterExportJob("job-id", TestConstants.TEST_STUDY_IDENTIFIER, ImmutableSet.of(),
+                RosterExportJob.Format.NDJSON, DateTime.now());
+        when(mockRosterExportService.startExport(TestConstants.TEST_STUDY, RosterExportJob.Format.NDJSON))
+                .thenReturn(job);
+        
+        Result result = controller.startRosterExport("ndjson");
+        assertEquals(202, result.status());
+        
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals("job-id", node.get("jobId").textValue());
+        assertEquals("NDJSON", node.get("format").textValue());
+        assertEquals("PENDING", node.get("status").textValue());
+        assertNull(node.get("studyId"));
+        assertNull(node.get("substudyIds"));
+    }
+    
+    @Test
+    public void startRosterExportDefaultsToCsv() throws Exception {
+        RosterExportJob job = new RosterExportJob("job-id", TestConstants.TEST_STUDY_IDENTIFIER, ImmutableSet.of(),
+                RosterExportJob.Format.CSV, DateTime.now());
+        when(mockRosterExportService.startExport(TestConstants.TEST_STUDY, RosterExportJob.Format.CSV))
+                .thenReturn(job);
+        
+        Result result = controller.startRosterExport(null);
+        assertEquals(202, result.status());
+        verify(mockRosterExportService).startExport(TestConstants.TEST_STUDY, RosterExportJob.Format.CSV);
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void startRosterExportInvalidFormat() throws Exception {
+        controller.startRosterExport("xlsx");
+    }
+    
+    @Test
+    public void getRosterExport() throws Exception {
+        RosterExportJob job = new RosterExportJob("job-id", TestConstants.TEST_STUDY_IDENTIFIER, ImmutableSet.of(),
+                RosterExportJob.Format.CSV, DateTime.now());
+        job.setRowCount(42);
+        job.markSucceeded(DateTime.now());
+        job.setUrl("https://example.com/roster.csv.gz");
+        when(mockRosterExportService.getJob(TestConstants.TEST_STUDY, "job-id")).thenReturn(job);
+        
+        Result result = controller.getRosterExport("job-id");
+        assertEquals(200, result.status());
+        
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals("SUCCEEDED", node.get("status").textValue());
+        assertEquals(42, node.get("rowCount").longValue());
+        assertEquals("https://example.com/roster.csv.gz", node.get("url").textValue());
+        assertNull(node.get("studyId"));
+    }
+    
+    @Test
+    public void downloadRosterExportRedirectsToPresignedUrl() throws Exception {
+        when(mockRosterExportService.getExportUrl(TestConstants.TEST_STUDY, "job-id"))
+                .thenReturn("https://example.com/roster.csv.gz");
+        
+        Result result = controller.downloadRosterExport("job-id");
+        assertEquals(303, result.status());
+        assertEquals("https://example.com/roster.csv.gz", result.header("Location"));
+    }
+    
     private ForwardCursorPagedResourceList<ScheduledActivity> createActivityResultsV2(String offsetKey, int pageSize) {
         List<ScheduledActivity> list = Lists.newArrayList();
         
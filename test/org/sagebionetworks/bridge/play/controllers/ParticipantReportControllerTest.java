@@ -2,10 +2,12 @@ package org.sagebionetworks.bridge.play.controllers;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -49,6 +51,8 @@ import org.sagebionetworks.bridge.models.reports.ReportDataKey;
 import org.sagebionetworks.bridge.models.reports.ReportIndex;
 import org.sagebionetworks.bridge.models.reports.ReportType;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+import org.sagebionetworks.bridge.services.ReportBatchService;
+import org.sagebionetworks.bridge.services.ReportIndexCache;
 import org.sagebionetworks.bridge.services.ReportService;
 import org.sagebionetworks.bridge.services.StudyService;
 
@@ -94,6 +98,15 @@ public class ParticipantReportControllerTest {
     @Mock
     Account mockOtherAccount;
     
+    @Mock
+    ReportBatchService mockReportBatchService;
+    
+    @Mock
+    ReportIndexCache mockReportIndexCache;
+    
+    @Captor
+    ArgumentCaptor<Map<String, List<ReportData>>> reportDataMapCaptor;
+    
     @Captor
     ArgumentCaptor<ReportData> reportDataCaptor;
     
@@ -114,6 +127,8 @@ public class ParticipantReportControllerTest {
         
         controller = spy(new ParticipantReportController());
         controller.setReportService(mockReportService);
+        controller.setReportBatchService(mockReportBatchService);
+        controller.setReportIndexCache(mockReportIndexCache);
         controller.setStudyService(mockStudyService);
         controller.setAccountDao(mockAccountDao);
         
@@ -148,7 +163,7 @@ public class ParticipantReportControllerTest {
         index.setIdentifier("fofo");
         list = new ReportTypeResourceList<>(Lists.newArrayList(index))
                 .withRequestParam(ResourceList.REPORT_TYPE, ReportType.PARTICIPANT);
-        doReturn(list).when(mockReportService).getReportIndices(TEST_STUDY, ReportType.PARTICIPANT);
+        doReturn(list).when(mockReportIndexCache).getReportIndices(TEST_STUDY, ReportType.PARTICIPANT);
     }
     
     @Test
@@ -235,6 +250,15 @@ public class ParticipantReportControllerTest {
         assertReportDataPage(START_TIME, END_TIME, OFFSET_KEY, PAGE_SIZE_INT, page);
     }
 
+    @Test(expected = BadRequestException.class)
+    public void streamParticipantReportRejectsUnknownFormat() throws Exception {
+        TestUtils.mockPlay().mock();
+        session.setParticipant(new StudyParticipant.Builder().withRoles(Sets.newHashSet(Roles.RESEARCHER)).build());
+        
+        controller.streamParticipantReport(OTHER_PARTICIPANT_ID, REPORT_ID, START_TIME.toString(),
+                END_TIME.toString(), null, "xml", null);
+    }
+    
     @Test
     public void getParticipantReportForWorkerV4_DefaultParams() throws Exception {
         // Mock dependencies
@@ -385,6 +409,8 @@ public class ParticipantReportControllerTest {
         assertEquals("A", reportData.getData().get(0).asText());
         assertEquals("B", reportData.getData().get(1).asText());
         assertEquals("C", reportData.getData().get(2).asText());
+        
+        verify(mockReportIndexCache).reportSaved(TEST_STUDY, ReportType.PARTICIPANT, REPORT_ID);
     }
     
     @Test
@@ -400,6 +426,56 @@ public class ParticipantReportControllerTest {
         }
     }
     
+    @Test
+    public void saveParticipantReportsForWorker() throws Exception {
+        String json = TestUtils.createJson("[{'healthCode':'"+OTHER_PARTICIPANT_HEALTH_CODE+"','date':'2015-02-12','data':['A']},"+
+                "{'healthCode':'"+HEALTH_CODE+"','date':'2015-02-12','data':['B']},"+
+                "{'healthCode':'"+OTHER_PARTICIPANT_HEALTH_CODE+"','date':'2015-02-13','data':['C']}]");
+        TestUtils.mockPlay().withJsonBody(json).mock();
+        when(mockReportBatchService.saveParticipantReports(eq(TEST_STUDY), eq(REPORT_ID), any())).thenReturn(3);
+        
+        Result result = controller.saveParticipantReportsForWorker(REPORT_ID);
+        TestUtils.assertResult(result, 201, "Saved 3 report records.");
+        
+        verify(mockReportBatchService).saveParticipantReports(eq(TEST_STUDY), eq(REPORT_ID),
+                reportDataMapCaptor.capture());
+        Map<String, List<ReportData>> reportDataByHealthCode = reportDataMapCaptor.getValue();
+        assertEquals(2, reportDataByHealthCode.size());
+        List<ReportData> otherList = reportDataByHealthCode.get(OTHER_PARTICIPANT_HEALTH_CODE);
+        assertEquals(2, otherList.size());
+        assertEquals("2015-02-12", otherList.get(0).getDate());
+        assertEquals("C", otherList.get(1).getData().get(0).asText());
+        assertEquals("B", reportDataByHealthCode.get(HEALTH_CODE).get(0).getData().get(0).asText());
+        
+        verify(mockReportIndexCache).reportSaved(TEST_STUDY, ReportType.PARTICIPANT, REPORT_ID);
+    }
+    
+    @Test
+    public void saveParticipantReportsForWorkerRequiresArray() throws Exception {
+        String json = TestUtils.createJson("{'healthCode':'"+HEALTH_CODE+"','date':'2015-02-12','data':['A']}");
+        TestUtils.mockPlay().withJsonBody(json).mock();
+        try {
+            controller.saveParticipantReportsForWorker(REPORT_ID);
+            fail("Should have thrown exception");
+        } catch(BadRequestException e) {
+            assertEquals("Report data must be a JSON array.", e.getMessage());
+            verifyNoMoreInteractions(mockReportBatchService);
+        }
+    }
+    
+    @Test
+    public void saveParticipantReportsForWorkerRequiresHealthCode() throws Exception {
+        String json = TestUtils.createJson("[{'date':'2015-02-12','data':['A']}]");
+        TestUtils.mockPlay().withJsonBody(json).mock();
+        try {
+            controller.saveParticipantReportsForWorker(REPORT_ID);
+            fail("Should have thrown exception");
+        } catch(BadRequestException e) {
+            assertEquals("A health code is required to save report data.", e.getMessage());
+            verifyNoMoreInteractions(mockReportBatchService);
+        }
+    }
+    
     @Test
     public void getParticipantReportIndices() throws Exception {
         Result result = controller.listParticipantReportIndices();
@@ -412,7 +488,8 @@ public class ParticipantReportControllerTest {
         assertEquals("participant", results.getRequestParams().get("reportType"));
         assertEquals("fofo", results.getItems().get(0).getIdentifier());
         
-        verify(mockReportService).getReportIndices(TEST_STUDY, ReportType.PARTICIPANT);
+        verify(mockReportIndexCache).getReportIndices(TEST_STUDY, ReportType.PARTICIPANT);
+        verify(mockReportService, never()).getReportIndices(any(), any());
     }
     
     @Test
@@ -474,6 +551,7 @@ public class ParticipantReportControllerTest {
         TestUtils.assertResult(result, 200, "Report index deleted.");
         
         verify(mockReportService).deleteParticipantReportIndex(TEST_STUDY, REPORT_ID);
+        verify(mockReportIndexCache).reload(TEST_STUDY, ReportType.PARTICIPANT);
     }
     
     @Test(expected = UnauthorizedException.class)
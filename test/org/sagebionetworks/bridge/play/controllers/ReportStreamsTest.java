@@ -0,0 +1,236 @@
+package org.sagebionetworks.bridge.play.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MINIMUM_PAGE_SIZE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import play.mvc.Results.Chunks;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.reports.ReportData;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReportStreamsTest {
+    private static final String REQUEST_ID = "request-id";
+    private static final RequestContext CONTEXT = new RequestContext.Builder().withRequestId(REQUEST_ID).build();
+
+    @Mock
+    private Chunks.Out<String> mockChunksOut;
+
+    @Mock
+    private ReportStreams.PageReader mockReader;
+
+    @After
+    public void after() {
+        BridgeUtils.setRequestContext(null);
+    }
+
+    @Test
+    public void readFirstPageIsSizedToRowBudget() {
+        ForwardCursorPagedResourceList<ReportData> page = new ForwardCursorPagedResourceList<>(
+                makeReports("2018-01-01"), null);
+        when(mockReader.read("resume-key", API_MINIMUM_PAGE_SIZE)).thenReturn(page);
+
+        assertSame(page, ReportStreams.readFirstPage(mockReader, "resume-key", API_MINIMUM_PAGE_SIZE));
+    }
+
+    @Test
+    public void writeReportAsNdjson() throws Exception {
+        ForwardCursorPagedResourceList<ReportData> firstPage = new ForwardCursorPagedResourceList<>(
+                makeReports("2018-01-01", "2018-01-02"), "page-2-key");
+        when(mockReader.read("page-2-key", API_MAXIMUM_PAGE_SIZE)).thenReturn(
+                new ForwardCursorPagedResourceList<>(makeReports("2018-01-03"), null));
+
+        ReportStreams.writeReport(mockChunksOut, REQUEST_ID, "test report", CONTEXT, mockReader, false, firstPage,
+                ReportStreams.DEFAULT_MAX_ROWS);
+
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(3)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+
+        String[] page1Lines = chunkCaptor.getAllValues().get(0).split("\n");
+        assertEquals(3, page1Lines.length);
+        assertEquals("2018-01-01", BridgeObjectMapper.get().readTree(page1Lines[0]).get("date").textValue());
+        assertEquals("2018-01-02", BridgeObjectMapper.get().readTree(page1Lines[1]).get("date").textValue());
+        JsonNode cursor = BridgeObjectMapper.get().readTree(page1Lines[2]);
+        assertEquals("page-2-key", cursor.get("offsetKey").textValue());
+        assertEquals(ReportStreams.STREAM_CURSOR_TYPE, cursor.get("type").textValue());
+
+        // The last page has no cursor.
+        String[] page2Lines = chunkCaptor.getAllValues().get(1).split("\n");
+        assertEquals(1, page2Lines.length);
+        JsonNode record = BridgeObjectMapper.get().readTree(page2Lines[0]);
+        assertEquals("2018-01-03", record.get("date").textValue());
+        assertEquals("a,\"b\"", record.get("data").get("field").textValue());
+
+        assertEquals(BaseController.streamStatusLine(REQUEST_ID, true), chunkCaptor.getAllValues().get(2));
+    }
+
+    @Test
+    public void writeReportAsCsv() throws Exception {
+        ForwardCursorPagedResourceList<ReportData> firstPage = new ForwardCursorPagedResourceList<>(
+                makeReports("2018-01-01", "2018-01-02"), "page-2-key");
+        when(mockReader.read("page-2-key", API_MAXIMUM_PAGE_SIZE)).thenReturn(
+                new ForwardCursorPagedResourceList<>(makeReports("2018-01-03"), null));
+
+        ReportStreams.writeReport(mockChunksOut, REQUEST_ID, "test report", CONTEXT, mockReader, true, firstPage,
+                ReportStreams.DEFAULT_MAX_ROWS);
+
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(3)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+
+        List<String> chunks = chunkCaptor.getAllValues();
+        assertEquals(ReportStreams.CSV_HEADER, chunks.get(0));
+        // Only the last row of a page that has a next page carries the cursor.
+        assertEquals("2018-01-01,\"{\"\"field\"\":\"\"a,\\\"\"b\\\"\"\"\"}\",\n" +
+                "2018-01-02,\"{\"\"field\"\":\"\"a,\\\"\"b\\\"\"\"\"}\",page-2-key\n", chunks.get(1));
+        assertEquals("2018-01-03,\"{\"\"field\"\":\"\"a,\\\"\"b\\\"\"\"\"}\",\n", chunks.get(2));
+    }
+
+    @Test
+    public void writeReportStopsAtRowBudget() throws Exception {
+        int maxRows = API_MAXIMUM_PAGE_SIZE + API_MINIMUM_PAGE_SIZE;
+        ForwardCursorPagedResourceList<ReportData> firstPage = new ForwardCursorPagedResourceList<>(
+                makeReports(API_MAXIMUM_PAGE_SIZE), "page-2-key");
+        when(mockReader.read("page-2-key", API_MINIMUM_PAGE_SIZE)).thenReturn(new ForwardCursorPagedResourceList<>(
+                makeReports(API_MINIMUM_PAGE_SIZE), "page-3-key"));
+
+        ReportStreams.writeReport(mockChunksOut, REQUEST_ID, "test report", CONTEXT, mockReader, false, firstPage,
+                maxRows);
+
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(3)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+        verify(mockReader).read("page-2-key", API_MINIMUM_PAGE_SIZE);
+        verifyNoMoreInteractions(mockReader);
+
+        // The stream ends with the cursor to resume from, then the status.
+        String[] page2Lines = chunkCaptor.getAllValues().get(1).split("\n");
+        assertEquals(API_MINIMUM_PAGE_SIZE + 1, page2Lines.length);
+        JsonNode cursor = BridgeObjectMapper.get().readTree(page2Lines[API_MINIMUM_PAGE_SIZE]);
+        assertEquals("page-3-key", cursor.get("offsetKey").textValue());
+        assertEquals(BaseController.streamStatusLine(REQUEST_ID, true), chunkCaptor.getAllValues().get(2));
+    }
+
+    @Test
+    public void writeReportReadsWithRequestContext() {
+        ForwardCursorPagedResourceList<ReportData> firstPage = new ForwardCursorPagedResourceList<>(
+                makeReports("2018-01-01"), "page-2-key");
+        AtomicReference<RequestContext> readContext = new AtomicReference<>();
+        when(mockReader.read("page-2-key", API_MAXIMUM_PAGE_SIZE)).thenAnswer(invocation -> {
+            readContext.set(BridgeUtils.getRequestContext());
+            return new ForwardCursorPagedResourceList<>(makeReports("2018-01-02"), null);
+        });
+
+        ReportStreams.writeReport(mockChunksOut, REQUEST_ID, "test report", CONTEXT, mockReader, false, firstPage,
+                ReportStreams.DEFAULT_MAX_ROWS);
+
+        assertSame(CONTEXT, readContext.get());
+    }
+
+    @Test
+    public void writeReportAsNdjsonEndsWithErrorLine() {
+        ForwardCursorPagedResourceList<ReportData> firstPage = new ForwardCursorPagedResourceList<>(
+                makeReports("2018-01-01"), "page-2-key");
+        when(mockReader.read("page-2-key", API_MAXIMUM_PAGE_SIZE)).thenThrow(new BridgeServiceException("Error"));
+
+        ReportStreams.writeReport(mockChunksOut, REQUEST_ID, "test report", CONTEXT, mockReader, false, firstPage,
+                ReportStreams.DEFAULT_MAX_ROWS);
+
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(2)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+        assertEquals(BaseController.streamStatusLine(REQUEST_ID, false), chunkCaptor.getAllValues().get(1));
+    }
+
+    @Test
+    public void writeReportAsCsvEndsWithErrorRow() {
+        ForwardCursorPagedResourceList<ReportData> firstPage = new ForwardCursorPagedResourceList<>(
+                makeReports("2018-01-01"), "page-2-key");
+        when(mockReader.read("page-2-key", API_MAXIMUM_PAGE_SIZE)).thenThrow(new BridgeServiceException("Error"));
+
+        ReportStreams.writeReport(mockChunksOut, REQUEST_ID, "test report", CONTEXT, mockReader, true, firstPage,
+                ReportStreams.DEFAULT_MAX_ROWS);
+
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(3)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+        assertEquals(ReportStreams.CSV_ERROR_DATE + ",\"" + BaseController.streamErrorMessage(REQUEST_ID) + "\",\n",
+                chunkCaptor.getAllValues().get(2));
+    }
+
+    @Test
+    public void isCsv() {
+        assertFalse(ReportStreams.isCsv(null));
+        assertFalse(ReportStreams.isCsv("ndjson"));
+        assertTrue(ReportStreams.isCsv("csv"));
+        assertTrue(ReportStreams.isCsv("CSV"));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void isCsvRejectsUnknownFormat() {
+        ReportStreams.isCsv("xml");
+    }
+
+    @Test
+    public void parseMaxRows() {
+        assertEquals(ReportStreams.DEFAULT_MAX_ROWS, ReportStreams.parseMaxRows(null));
+        assertEquals(500, ReportStreams.parseMaxRows("500"));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void parseMaxRowsTooLarge() {
+        ReportStreams.parseMaxRows(Integer.toString(ReportStreams.MAX_ROWS + 1));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void parseMaxRowsTooSmall() {
+        ReportStreams.parseMaxRows("0");
+    }
+
+    private static List<ReportData> makeReports(String... dates) {
+        List<ReportData> reports = new ArrayList<>();
+        for (String date : dates) {
+            ReportData reportData = ReportData.create();
+            reportData.setLocalDate(LocalDate.parse(date));
+            reportData.setData(JsonNodeFactory.instance.objectNode().put("field", "a,\"b\""));
+            reports.add(reportData);
+        }
+        return reports;
+    }
+
+    private static List<ReportData> makeReports(int count) {
+        List<ReportData> reports = new ArrayList<>();
+        LocalDate date = LocalDate.parse("2018-01-01");
+        for (int i = 0; i < count; i++) {
+            reports.addAll(makeReports(date.plusDays(i).toString()));
+        }
+        return reports;
+    }
+}
@@ -34,6 +34,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.TestUtils;
 import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.config.BridgeConfig;
@@ -54,9 +55,13 @@ import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.schedules.ActivityType;
 import org.sagebionetworks.bridge.models.schedules.ScheduleContext;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationGroup;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationRequest;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationResult;
 import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.services.ScheduleEvaluationService;
 import org.sagebionetworks.bridge.services.ScheduledActivityService;
 import org.sagebionetworks.bridge.services.SessionUpdateService;
 import org.sagebionetworks.bridge.services.StudyService;
@@ -67,6 +72,8 @@ import play.test.Helpers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -103,6 +110,9 @@ public class ScheduledActivityControllerTest {
     @Mock
     ScheduledActivityService scheduledActivityService;
     
+    @Mock
+    ScheduleEvaluationService scheduleEvaluationService;
+    
     @Mock
     StudyService studyService;
     
@@ -139,6 +149,9 @@ public class ScheduledActivityControllerTest {
     @Captor
     private ArgumentCaptor<List<ScheduledActivity>> activitiesCaptor;
     
+    @Captor
+    private ArgumentCaptor<ScheduleEvaluationRequest> evaluationRequestCaptor;
+    
     private SessionUpdateService sessionUpdateService;
     
     UserSession session;
@@ -169,6 +182,7 @@ public class ScheduledActivityControllerTest {
 
         controller = spy(new ScheduledActivityController());
         controller.setScheduledActivityService(scheduledActivityService);
+        controller.setScheduleEvaluationService(scheduleEvaluationService);
         controller.setStudyService(studyService);
         controller.setCacheProvider(cacheProvider);
         controller.setAccountDao(accountDao);
@@ -560,6 +574,42 @@ public class ScheduledActivityControllerTest {
         controller.getScheduledActivitiesByDateRange(startsOn.toString(), endsOn.toString());
     }
     
+    @Test
+    public void evaluateSchedulesForWorker() throws Exception {
+        doReturn(session).when(controller).getAuthenticatedSession(Roles.WORKER);
+        when(studyService.getStudy("api")).thenReturn(STUDY);
+        TestUtils.mockPlay().withJsonBody(TestUtils.createJson("{'startsOn':'2018-03-01T00:00:00.000Z'," +
+                "'endsOn':'2018-03-08T00:00:00.000Z','participants':[{'userId':'user-1','healthCode':'healthCode'," +
+                "'dataGroups':['group1'],'timeZone':'-07:00','enrolledOn':'2018-03-01T09:30:00.000-07:00'}]}"))
+                .mock();
+        
+        DynamoScheduledActivity activity = new DynamoScheduledActivity();
+        activity.setActivity(TestUtils.getActivity3());
+        activity.setGuid("activity-guid");
+        activity.setSchedulePlanGuid("schedulePlanGuid");
+        ScheduleEvaluationGroup group = new ScheduleEvaluationGroup(ImmutableSet.of("group1"), ImmutableSet.of(),
+                "-07:00", DateTime.parse("2018-03-01").toLocalDate(), ImmutableList.of("user-1"),
+                ImmutableList.of(activity));
+        when(scheduleEvaluationService.evaluateSchedules(eq(STUDY), evaluationRequestCaptor.capture()))
+                .thenReturn(new ScheduleEvaluationResult(1, 5, ImmutableList.of(group)));
+        
+        Result result = controller.evaluateSchedulesForWorker("api");
+        TestUtils.assertResult(result, 200);
+        
+        ScheduleEvaluationRequest request = evaluationRequestCaptor.getValue();
+        assertEquals(DateTime.parse("2018-03-01T00:00:00.000Z").getMillis(), request.getStartsOn().getMillis());
+        assertEquals(1, request.getParticipants().size());
+        assertEquals("user-1", request.getParticipants().get(0).getUserId());
+        assertEquals("-07:00", request.getParticipants().get(0).getTimeZone());
+        assertEquals(ImmutableSet.of("group1"), request.getParticipants().get(0).getDataGroups());
+        
+        JsonNode node = BridgeObjectMapper.get().readTree(Helpers.contentAsString(result));
+        assertEquals(1, node.get("groupCount").intValue());
+        JsonNode groupNode = node.get("groups").get(0);
+        assertEquals("user-1", groupNode.get("userIds").get(0).textValue());
+        assertEquals("activity-guid", groupNode.get("activities").get(0).get("guid").textValue());
+    }
+    
     private ForwardCursorPagedResourceList<ScheduledActivity> createActivityResultsV2(int pageSize, String offsetKey) {
         List<ScheduledActivity> list = Lists.newArrayList();
         
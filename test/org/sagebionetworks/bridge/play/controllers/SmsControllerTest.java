@@ -6,6 +6,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import play.mvc.Result;
@@ -17,8 +19,10 @@ import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.models.accounts.Phone;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
+import org.sagebionetworks.bridge.models.sms.SmsDispatchMetrics;
 import org.sagebionetworks.bridge.models.sms.SmsMessage;
 import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.services.BulkSmsService;
 import org.sagebionetworks.bridge.services.ParticipantService;
 import org.sagebionetworks.bridge.services.SmsService;
 import org.sagebionetworks.bridge.services.StudyService;
@@ -43,6 +47,7 @@ public class SmsControllerTest {
     private SmsController controller;
     private ParticipantService mockParticipantService;
     private SmsService mockSmsService;
+    private BulkSmsService mockBulkSmsService;
 
     @Before
     public void before() {
@@ -53,11 +58,13 @@ public class SmsControllerTest {
         // Mock SMS service.
         mockParticipantService = mock(ParticipantService.class);
         mockSmsService = mock(SmsService.class);
+        mockBulkSmsService = mock(BulkSmsService.class);
 
         // Set up controller.
         controller = spy(new SmsController());
         controller.setParticipantService(mockParticipantService);
         controller.setSmsService(mockSmsService);
+        controller.setBulkSmsService(mockBulkSmsService);
         controller.setStudyService(mockStudyService);
 
         // Mock get session.
@@ -91,4 +98,18 @@ public class SmsControllerTest {
         SmsMessage controllerOutput = TestUtils.getResponsePayload(result, SmsMessage.class);
         assertEquals(MESSAGE_ID, controllerOutput.getMessageId());
     }
+
+    @Test
+    public void getDispatchMetrics() throws Exception {
+        DateTime startedOn = DateTime.parse("2018-01-01T00:00:00.000Z");
+        when(mockBulkSmsService.getMetrics()).thenReturn(new SmsDispatchMetrics("fake", startedOn,
+                startedOn.plusSeconds(10), 50, 1, 2, 3, 4.5));
+
+        Result result = controller.getDispatchMetrics();
+        assertEquals(200, result.status());
+
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals(50, node.get("sentCount").intValue());
+        assertEquals(5.0, node.get("sentPerSecond").doubleValue(), 0.001);
+    }
 }
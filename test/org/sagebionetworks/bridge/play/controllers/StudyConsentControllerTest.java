@@ -32,6 +32,7 @@ import org.sagebionetworks.bridge.models.subpopulations.StudyConsentForm;
 import org.sagebionetworks.bridge.models.subpopulations.StudyConsentView;
 import org.sagebionetworks.bridge.models.subpopulations.Subpopulation;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+import org.sagebionetworks.bridge.services.ConsentStatusCache;
 import org.sagebionetworks.bridge.services.StudyConsentService;
 import org.sagebionetworks.bridge.services.StudyService;
 import org.sagebionetworks.bridge.services.SubpopulationService;
@@ -64,6 +65,8 @@ public class StudyConsentControllerTest {
     private SubpopulationService subpopService;
     @Mock
     private Subpopulation subpopulation;
+    @Mock
+    private ConsentStatusCache consentStatusCache;
     
     private StudyConsentController controller;
     
@@ -77,6 +80,7 @@ public class StudyConsentControllerTest {
         controller.setStudyConsentService(studyConsentService);
         controller.setSubpopulationService(subpopService);
         controller.setStudyService(studyService);
+        controller.setConsentStatusCache(consentStatusCache);
         
         session = new UserSession();
         session.setStudyIdentifier(STUDY_ID);
@@ -169,6 +173,7 @@ public class StudyConsentControllerTest {
         assertResult(result, 200, "Consent document set as active.");
 
         verify(studyConsentService).publishConsent(STUDY, subpopulation, DateTime.parse(DATETIME_STRING).getMillis());
+        verify(consentStatusCache).subpopulationsChanged(STUDY.getStudyIdentifier());
     }
     
 }
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -38,6 +39,7 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import play.core.j.JavaResultExtractor;
 import play.mvc.Result;
+import play.mvc.Results.Chunks;
 import play.test.Helpers;
 
 import org.sagebionetworks.bridge.Roles;
@@ -64,7 +66,9 @@ import org.sagebionetworks.bridge.models.studies.StudyAndUsers;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.studies.SynapseProjectIdTeamIdHolder;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadView;
 import org.sagebionetworks.bridge.services.EmailVerificationService;
 import org.sagebionetworks.bridge.services.EmailVerificationStatus;
 import org.sagebionetworks.bridge.services.StudyEmailType;
@@ -109,6 +113,8 @@ public class StudyControllerTest {
     private UploadService mockUploadService;
     @Mock
     private BridgeConfig mockBridgeConfig;
+    @Mock
+    private Chunks.Out<String> mockChunksOut;
     
     private Study study;
     
@@ -421,6 +427,24 @@ public class StudyControllerTest {
         testRoleAccessToCurrentStudy(null);
     }
     
+    @Test
+    public void getCurrentStudyWithFields() throws Exception {
+        StudyParticipant participant = new StudyParticipant.Builder().withRoles(Sets.newHashSet(DEVELOPER)).build();
+        UserSession session = new UserSession(participant);
+        session.setAuthenticated(true);
+        session.setStudyIdentifier(studyId);
+        doReturn(session).when(controller).getSessionIfItExists();
+        
+        Result result = controller.getCurrentStudy("supportEmail,identifier");
+        TestUtils.assertResult(result, 200);
+        
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals(EMAIL_ADDRESS, node.get("supportEmail").textValue());
+        assertEquals(studyId.getIdentifier(), node.get("identifier").textValue());
+        assertFalse(node.has("synapseProjectId"));
+        assertFalse(node.has("active"));
+    }
+    
     @SuppressWarnings("deprecation")
     @Test
     public void canGetUploadsForStudy() throws Exception {
@@ -588,11 +612,92 @@ public class StudyControllerTest {
         session.setStudyIdentifier(studyId);
         doReturn(session).when(controller).getSessionIfItExists();
         
-        Result result = controller.getCurrentStudy();
+        Result result = controller.getCurrentStudy(null);
         TestUtils.assertResult(result, 200);
         
         Study study = BridgeObjectMapper.get().readValue(Helpers.contentAsString(result), Study.class);
         assertEquals(EMAIL_ADDRESS, study.getSupportEmail());        
     }
 
+
+    @Test(expected = BadRequestException.class)
+    public void streamUploadsForStudyWithBlankStudyId() throws Exception {
+        doReturn(mockSession).when(controller).getAuthenticatedSession(WORKER);
+
+        controller.streamUploadsForStudy(" ", null, null, null);
+    }
+
+    @Test
+    public void streamUploadsForStudyReadsFirstPageBeforeResponding() throws Exception {
+        doReturn(mockSession).when(controller).getAuthenticatedSession(WORKER);
+        when(mockUploadService.getStudyUploads(studyId, null, null, API_MAXIMUM_PAGE_SIZE, "bad-key"))
+                .thenThrow(new BadRequestException("Invalid offset key"));
+
+        // The error is thrown from the request thread, so it gets the usual error response instead of a 200.
+        try {
+            controller.streamUploadsForStudy(studyId.getIdentifier(), null, null, "bad-key");
+            fail("expected exception");
+        } catch (BadRequestException ex) {
+            assertEquals("Invalid offset key", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void writeUploadsWalksAllPages() throws Exception {
+        DateTime startTime = DateTime.parse("2010-01-01T00:00:00.000Z");
+        DateTime endTime = DateTime.parse("2010-01-02T00:00:00.000Z");
+
+        ForwardCursorPagedResourceList<UploadView> page1 = new ForwardCursorPagedResourceList<>(
+                ImmutableList.of(makeUploadView("upload-1"), makeUploadView("upload-2")), "page-2-key");
+        ForwardCursorPagedResourceList<UploadView> page2 = new ForwardCursorPagedResourceList<>(
+                ImmutableList.of(makeUploadView("upload-3")), null);
+        when(mockUploadService.getStudyUploads(studyId, startTime, endTime, API_MAXIMUM_PAGE_SIZE, "page-2-key"))
+                .thenReturn(page2);
+
+        controller.writeUploads(mockChunksOut, "request-id", studyId, startTime, endTime, page1);
+
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(3)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+
+        String[] page1Lines = chunkCaptor.getAllValues().get(0).split("\n");
+        assertEquals(3, page1Lines.length);
+        assertEquals("upload-1", BridgeObjectMapper.get().readTree(page1Lines[0]).get("uploadId").textValue());
+        assertEquals("upload-2", BridgeObjectMapper.get().readTree(page1Lines[1]).get("uploadId").textValue());
+        JsonNode cursor = BridgeObjectMapper.get().readTree(page1Lines[2]);
+        assertEquals("page-2-key", cursor.get("offsetKey").textValue());
+        assertEquals(StudyController.STREAM_CURSOR_TYPE, cursor.get("type").textValue());
+
+        // The last page has no cursor.
+        String[] page2Lines = chunkCaptor.getAllValues().get(1).split("\n");
+        assertEquals(1, page2Lines.length);
+        assertEquals("upload-3", BridgeObjectMapper.get().readTree(page2Lines[0]).get("uploadId").textValue());
+
+        JsonNode status = BridgeObjectMapper.get().readTree(chunkCaptor.getAllValues().get(2));
+        assertEquals(BaseController.STREAM_STATUS_COMPLETE, status.get("status").textValue());
+    }
+
+    @Test
+    public void writeUploadsEndsWithErrorLine() throws Exception {
+        ForwardCursorPagedResourceList<UploadView> page1 = new ForwardCursorPagedResourceList<>(
+                ImmutableList.of(makeUploadView("upload-1")), "page-2-key");
+        when(mockUploadService.getStudyUploads(studyId, null, null, API_MAXIMUM_PAGE_SIZE, "page-2-key"))
+                .thenThrow(new RuntimeException("DynamoDB is down"));
+
+        controller.writeUploads(mockChunksOut, "request-id", studyId, null, null, page1);
+
+        ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockChunksOut, times(2)).write(chunkCaptor.capture());
+        verify(mockChunksOut).close();
+
+        JsonNode status = BridgeObjectMapper.get().readTree(chunkCaptor.getAllValues().get(1));
+        assertEquals(BaseController.STREAM_STATUS_TYPE, status.get("type").textValue());
+        assertEquals(BaseController.STREAM_STATUS_ERROR, status.get("status").textValue());
+    }
+
+    private static UploadView makeUploadView(String uploadId) {
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(uploadId);
+        return new UploadView.Builder().withUpload(upload).build();
+    }
 }
@@ -3,10 +3,15 @@ package org.sagebionetworks.bridge.play.controllers;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
 import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY_IDENTIFIER;
 
@@ -14,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.LocalDate;
 import org.junit.After;
 import org.junit.Before;
@@ -24,28 +30,37 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.RequestContext;
 import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.cache.ViewCache;
 import org.sagebionetworks.bridge.dao.AccountDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.DateRangeResourceList;
 import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.ReportTypeResourceList;
 import org.sagebionetworks.bridge.models.ResourceList;
 import org.sagebionetworks.bridge.models.accounts.Account;
 import org.sagebionetworks.bridge.models.accounts.ConsentStatus;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
+import org.sagebionetworks.bridge.models.reports.PublicReportView;
 import org.sagebionetworks.bridge.models.reports.ReportData;
 import org.sagebionetworks.bridge.models.reports.ReportDataKey;
 import org.sagebionetworks.bridge.models.reports.ReportIndex;
 import org.sagebionetworks.bridge.models.reports.ReportType;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+import org.sagebionetworks.bridge.services.ReportBatchService;
+import org.sagebionetworks.bridge.services.ReportIndexCache;
 import org.sagebionetworks.bridge.services.ReportService;
 import org.sagebionetworks.bridge.services.StudyService;
 
@@ -57,6 +72,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import play.mvc.Http;
 import play.mvc.Result;
 import play.test.Helpers;
 
@@ -70,6 +86,16 @@ public class StudyReportControllerTest {
 
     private static final String HEALTH_CODE = "healthCode";
     
+    private static final CacheKey PUBLIC_REPORT_VIEWS_KEY = CacheKey.viewKey(PublicReportView.class,
+            TEST_STUDY_IDENTIFIER, REPORT_ID, "keys");
+    
+    private static final ReportDataKey PUBLIC_INDEX_KEY = new ReportDataKey.Builder().withIdentifier(REPORT_ID)
+            .withReportType(ReportType.STUDY).withStudyIdentifier(TEST_STUDY).build();
+    
+    private static final DateTime CACHED_ON = DateTime.parse("2018-04-05T16:20:30.123Z");
+    
+    private static final String CACHED_ON_HTTP_DATE = "Thu, 05 Apr 2018 16:20:30 GMT";
+    
     private static final LocalDate START_DATE = LocalDate.parse("2015-01-02");
     
     private static final LocalDate END_DATE = LocalDate.parse("2015-02-02");
@@ -98,6 +124,18 @@ public class StudyReportControllerTest {
     @Mock
     Account mockOtherAccount;
     
+    @Mock
+    ReportBatchService mockReportBatchService;
+    
+    @Mock
+    CacheProvider mockCacheProvider;
+    
+    @Mock
+    ReportIndexCache mockReportIndexCache;
+    
+    @Captor
+    ArgumentCaptor<List<ReportData>> reportDataListCaptor;
+    
     @Captor
     ArgumentCaptor<ReportData> reportDataCaptor;
     
@@ -117,6 +155,16 @@ public class StudyReportControllerTest {
         
         controller = spy(new StudyReportController());
         controller.setReportService(mockReportService);
+        controller.setReportBatchService(mockReportBatchService);
+        controller.setReportIndexCache(mockReportIndexCache);
+        controller.setCacheProvider(mockCacheProvider);
+        
+        // With a mock cache provider, the view cache never has a hit.
+        ViewCache viewCache = new ViewCache();
+        viewCache.setCacheProvider(mockCacheProvider);
+        viewCache.setObjectMapper(BridgeObjectMapper.get());
+        viewCache.setCachePeriod(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS);
+        controller.setViewCache(viewCache);
         controller.setStudyService(mockStudyService);
         controller.setAccountDao(mockAccountDao);
         
@@ -157,6 +205,7 @@ public class StudyReportControllerTest {
     @After
     public void after() {
         BridgeUtils.setRequestContext(RequestContext.NULL_INSTANCE);
+        DateTimeUtils.setCurrentMillisSystem();
     }
     
     @Test
@@ -232,6 +281,7 @@ public class StudyReportControllerTest {
                 
         Result result = controller.saveStudyReport(REPORT_ID);
         TestUtils.assertResult(result, 201, "Report data saved.");
+        verify(mockCacheProvider).removeSetOfCacheKeys(PUBLIC_REPORT_VIEWS_KEY);
         
         verify(mockReportService).saveStudyReport(eq(TEST_STUDY), eq(REPORT_ID), reportDataCaptor.capture());
         ReportData reportData = reportDataCaptor.getValue();
@@ -239,14 +289,47 @@ public class StudyReportControllerTest {
         assertNull(reportData.getKey());
         assertEquals("Last", reportData.getData().get("field1").asText());
         assertEquals("Name", reportData.getData().get("field2").asText());
+        
+        verify(mockReportIndexCache).reportSaved(TEST_STUDY, ReportType.STUDY, REPORT_ID);
     }
 
+    @Test
+    public void saveStudyReportsForWorker() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().withRoles(Sets.newHashSet(Roles.WORKER)).build());
+        String json = TestUtils.createJson("[{'date':'2015-02-12','data':{'field1':'A'}},"+
+                "{'date':'2015-02-13','data':{'field1':'B'}}]");
+        TestUtils.mockPlay().withJsonBody(json).mock();
+        when(mockReportBatchService.saveStudyReports(eq(TEST_STUDY), eq(REPORT_ID), any())).thenReturn(2);
+        
+        Result result = controller.saveStudyReportsForWorker(TEST_STUDY_IDENTIFIER, REPORT_ID);
+        TestUtils.assertResult(result, 201, "Saved 2 report records.");
+        
+        verify(mockReportBatchService).saveStudyReports(eq(TEST_STUDY), eq(REPORT_ID),
+                reportDataListCaptor.capture());
+        List<ReportData> reportDataList = reportDataListCaptor.getValue();
+        assertEquals(2, reportDataList.size());
+        assertEquals("2015-02-13", reportDataList.get(1).getDate());
+        assertEquals("B", reportDataList.get(1).getData().get("field1").asText());
+        verify(mockReportIndexCache).reportSaved(TEST_STUDY, ReportType.STUDY, REPORT_ID);
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void saveStudyReportsForWorkerRequiresArray() throws Exception {
+        session.setParticipant(new StudyParticipant.Builder().withRoles(Sets.newHashSet(Roles.WORKER)).build());
+        String json = TestUtils.createJson("{'date':'2015-02-12','data':{'field1':'A'}}");
+        TestUtils.mockPlay().withJsonBody(json).mock();
+        
+        controller.saveStudyReportsForWorker(TEST_STUDY_IDENTIFIER, REPORT_ID);
+    }
+    
     @Test
     public void deleteStudyReportData() throws Exception {
         Result result = controller.deleteStudyReport(REPORT_ID);
         TestUtils.assertResult(result, 200, "Report deleted.");
         
         verify(mockReportService).deleteStudyReport(session.getStudyIdentifier(), REPORT_ID);
+        verify(mockReportIndexCache).reload(TEST_STUDY, ReportType.STUDY);
+        verify(mockCacheProvider).removeSetOfCacheKeys(PUBLIC_REPORT_VIEWS_KEY);
     }
     
     @Test
@@ -257,6 +340,7 @@ public class StudyReportControllerTest {
         TestUtils.assertResult(result, 200, "Report record deleted.");
         
         verify(mockReportService).deleteStudyReportRecord(session.getStudyIdentifier(), REPORT_ID, "2014-05-10");
+        verify(mockCacheProvider).removeSetOfCacheKeys(PUBLIC_REPORT_VIEWS_KEY);
     }
     
     @Test(expected = UnauthorizedException.class)
@@ -280,17 +364,33 @@ public class StudyReportControllerTest {
         assertTrue(index.isPublic());
         assertEquals(REPORT_ID, index.getIdentifier());
         assertEquals("api:STUDY", index.getKey());
+        
+        verify(mockReportIndexCache).reload(TestConstants.TEST_STUDY, ReportType.STUDY);
     }
     
     @Test
-    public void canGetPublicStudyReport() throws Exception {
-        ReportDataKey key = new ReportDataKey.Builder().withStudyIdentifier(TEST_STUDY).withIdentifier(REPORT_ID)
-                .withReportType(ReportType.STUDY).build();
-        
+    public void listStudyReportIndices() throws Exception {
+        TestUtils.mockPlay().mock();
         ReportIndex index = ReportIndex.create();
-        index.setPublic(true);
         index.setIdentifier(REPORT_ID);
-        doReturn(index).when(mockReportService).getReportIndex(key);
+        ReportTypeResourceList<ReportIndex> list = new ReportTypeResourceList<>(Lists.newArrayList(index))
+                .withRequestParam(ResourceList.REPORT_TYPE, ReportType.STUDY);
+        doReturn(list).when(mockReportIndexCache).getReportIndices(TEST_STUDY, ReportType.STUDY);
+        
+        Result result = controller.listStudyReportIndices("study");
+        TestUtils.assertResult(result, 200);
+        
+        ReportTypeResourceList<ReportIndex> results = BridgeObjectMapper.get().readValue(
+                Helpers.contentAsString(result), new TypeReference<ReportTypeResourceList<ReportIndex>>() {});
+        assertEquals(1, results.getItems().size());
+        assertEquals(REPORT_ID, results.getItems().get(0).getIdentifier());
+        verify(mockReportService, never()).getReportIndices(any(), any());
+    }
+    
+    @Test
+    public void canGetPublicStudyReport() throws Exception {
+        TestUtils.mockPlay().withMockResponse().mock();
+        mockPublicIndex();
         
         doReturn(makeResults(START_DATE, END_DATE)).when(mockReportService).getStudyReport(session.getStudyIdentifier(),
                 REPORT_ID, START_DATE, END_DATE);
@@ -304,8 +404,98 @@ public class StudyReportControllerTest {
         assertEquals(2, reportData.getItems().size());
         
         assertEquals(RequestContext.NULL_INSTANCE, BridgeUtils.getRequestContext());
-        verify(mockReportService).getReportIndex(key);
+        verify(mockReportService).getReportIndex(PUBLIC_INDEX_KEY);
         verify(mockReportService).getStudyReport(TEST_STUDY, REPORT_ID, START_DATE, END_DATE);
+        verify(mockReportIndexCache, never()).getReportIndex(any(), any(), any());
+    }
+    
+    @Test
+    public void getPublicStudyReportSetsCacheHeaders() throws Exception {
+        Http.Response mockResponse = TestUtils.mockPlay().withMockResponse().mock();
+        DateTimeUtils.setCurrentMillisFixed(CACHED_ON.getMillis());
+        mockPublicIndex();
+        doReturn(makeResults(START_DATE, END_DATE)).when(mockReportService).getStudyReport(TEST_STUDY, REPORT_ID,
+                START_DATE, END_DATE);
+        
+        Result result = controller.getPublicStudyReport(TEST_STUDY_IDENTIFIER, REPORT_ID, START_DATE.toString(),
+                END_DATE.toString());
+        TestUtils.assertResult(result, 200);
+        
+        verify(mockResponse).setHeader("Cache-Control", StudyReportController.PUBLIC_REPORT_CACHE_CONTROL);
+        verify(mockResponse).setHeader("Last-Modified", CACHED_ON_HTTP_DATE);
+        
+        CacheKey cacheKey = CacheKey.viewKey(PublicReportView.class, TEST_STUDY_IDENTIFIER, REPORT_ID, "v3",
+                START_DATE.toString(), END_DATE.toString());
+        verify(mockCacheProvider).addCacheKeyToSet(PUBLIC_REPORT_VIEWS_KEY, cacheKey.toString());
+    }
+    
+    @Test
+    public void getPublicStudyReportWithoutDatesIsNotCached() throws Exception {
+        TestUtils.mockPlay().withMockResponse().mock();
+        ViewCache mockViewCache = mock(ViewCache.class);
+        controller.setViewCache(mockViewCache);
+        mockPublicIndex();
+        doReturn(makeResults(START_DATE, END_DATE)).when(mockReportService).getStudyReport(TEST_STUDY, REPORT_ID,
+                null, null);
+        
+        // The service picks the dates, relative to today, so the view can't be shared with later requests.
+        Result result = controller.getPublicStudyReport(TEST_STUDY_IDENTIFIER, REPORT_ID, null, null);
+        TestUtils.assertResult(result, 200);
+        
+        verify(mockReportService).getStudyReport(TEST_STUDY, REPORT_ID, null, null);
+        verify(mockViewCache, never()).getView(any(), any());
+        verify(mockCacheProvider, never()).addCacheKeyToSet(any(), any());
+    }
+    
+    @Test
+    public void getPublicStudyReportFromCache() throws Exception {
+        TestUtils.mockPlay().withMockResponse().mock();
+        ViewCache mockViewCache = mock(ViewCache.class);
+        controller.setViewCache(mockViewCache);
+        
+        CacheKey cacheKey = CacheKey.viewKey(PublicReportView.class, TEST_STUDY_IDENTIFIER, REPORT_ID, "v3",
+                START_DATE.toString(), END_DATE.toString());
+        String cachedJson = BridgeObjectMapper.get().writeValueAsString(new PublicReportView(CACHED_ON,
+                BridgeObjectMapper.get().valueToTree(makeResults(START_DATE, END_DATE))));
+        when(mockViewCache.getView(eq(cacheKey), any())).thenReturn(cachedJson);
+        
+        Result result = controller.getPublicStudyReport(TEST_STUDY_IDENTIFIER, REPORT_ID, START_DATE.toString(),
+                END_DATE.toString());
+        TestUtils.assertResult(result, 200);
+        
+        DateRangeResourceList<? extends ReportData> reportData = BridgeObjectMapper.get()
+                .readValue(Helpers.contentAsString(result), REPORT_REF);
+        assertEquals(2, reportData.getItems().size());
+        verifyNoMoreInteractions(mockReportService);
+    }
+    
+    @Test
+    public void getPublicStudyReportNotModified() throws Exception {
+        TestUtils.mockPlay().withHeader("If-Modified-Since", CACHED_ON_HTTP_DATE).withMockResponse().mock();
+        DateTimeUtils.setCurrentMillisFixed(CACHED_ON.getMillis());
+        mockPublicIndex();
+        doReturn(page).when(mockReportService).getStudyReportV4(TEST_STUDY, REPORT_ID, START_TIME, END_TIME,
+                OFFSET_KEY, Integer.parseInt(PAGE_SIZE));
+        
+        Result result = controller.getPublicStudyReportV4(TEST_STUDY_IDENTIFIER, REPORT_ID, START_TIME.toString(),
+                END_TIME.toString(), OFFSET_KEY, PAGE_SIZE);
+        assertEquals(304, result.status());
+    }
+    
+    @Test
+    public void updateStudyReportIndexRemovesPublicReportViews() throws Exception {
+        TestUtils.mockPlay().withJsonBody("{\"public\":false}").mock();
+        
+        controller.updateStudyReportIndex(REPORT_ID);
+        
+        verify(mockCacheProvider).removeSetOfCacheKeys(PUBLIC_REPORT_VIEWS_KEY);
+    }
+    
+    private void mockPublicIndex() {
+        ReportIndex index = ReportIndex.create();
+        index.setPublic(true);
+        index.setIdentifier(REPORT_ID);
+        doReturn(index).when(mockReportService).getReportIndex(PUBLIC_INDEX_KEY);
     }
     
     @Test(expected = EntityNotFoundException.class)
@@ -325,7 +515,7 @@ public class StudyReportControllerTest {
         index.setKey(key.getIndexKeyString());
         index.setIdentifier(REPORT_ID);
         
-        doReturn(index).when(mockReportService).getReportIndex(key);
+        doReturn(index).when(mockReportService).getReportIndex(PUBLIC_INDEX_KEY);
         
         controller.getPublicStudyReport(TEST_STUDY.getIdentifier(), REPORT_ID, START_DATE.toString(), END_DATE.toString());
     }
@@ -361,8 +551,27 @@ public class StudyReportControllerTest {
         assertEquals(END_TIME.toString(), page.getRequestParams().get(ResourceList.END_TIME));
     }
     
+    @Test(expected = BadRequestException.class)
+    public void streamStudyReportRejectsTooManyRows() throws Exception {
+        TestUtils.mockPlay().mock();
+        
+        controller.streamStudyReport(REPORT_ID, START_TIME.toString(), END_TIME.toString(), null, "csv",
+                Integer.toString(ReportStreams.MAX_ROWS + 1));
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void streamStudyReportReadsFirstPageBeforeResponding() throws Exception {
+        TestUtils.mockPlay().mock();
+        when(mockReportService.getStudyReportV4(TEST_STUDY, REPORT_ID, START_TIME, END_TIME, "bad-key",
+                BridgeConstants.API_MAXIMUM_PAGE_SIZE)).thenThrow(new BadRequestException("Invalid offset key"));
+        
+        // The error is thrown from the request thread, so it gets the usual error response instead of a 200.
+        controller.streamStudyReport(REPORT_ID, START_TIME.toString(), END_TIME.toString(), "bad-key", null, null);
+    }
+    
     @Test
     public void getPublicStudyReportV4() throws Exception {
+        TestUtils.mockPlay().withMockResponse().mock();
         ReportDataKey key = new ReportDataKey.Builder()
                 .withIdentifier(REPORT_ID)
                 .withReportType(ReportType.STUDY)
@@ -375,7 +584,7 @@ public class StudyReportControllerTest {
         
         doReturn(page).when(mockReportService).getStudyReportV4(TEST_STUDY, REPORT_ID, START_TIME,
                 END_TIME, OFFSET_KEY, Integer.parseInt(PAGE_SIZE));
-        doReturn(index).when(mockReportService).getReportIndex(key);
+        doReturn(index).when(mockReportService).getReportIndex(PUBLIC_INDEX_KEY);
         
         Result result = controller.getPublicStudyReportV4(TEST_STUDY.getIdentifier(), REPORT_ID, START_TIME.toString(),
                 END_TIME.toString(), OFFSET_KEY, PAGE_SIZE);
@@ -11,6 +11,7 @@ import static org.sagebionetworks.bridge.TestUtils.assertResult;
 
 import java.util.List;
 
+import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -33,8 +34,10 @@ import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.models.subpopulations.ConsentStatusCacheMetrics;
 import org.sagebionetworks.bridge.models.subpopulations.Subpopulation;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+import org.sagebionetworks.bridge.services.ConsentStatusCache;
 import org.sagebionetworks.bridge.services.StudyService;
 import org.sagebionetworks.bridge.services.SubpopulationService;
 
@@ -62,6 +65,9 @@ public class SubpopulationControllerTest {
     @Mock
     private StudyService studyService;
     
+    @Mock
+    private ConsentStatusCache consentStatusCache;
+    
     @Mock
     private Study study;
     
@@ -81,6 +87,7 @@ public class SubpopulationControllerTest {
         
         controller.setSubpopulationService(subpopService);
         controller.setStudyService(studyService);
+        controller.setConsentStatusCache(consentStatusCache);
         
         when(study.getStudyIdentifier()).thenReturn(STUDY_IDENTIFIER);
         doReturn(session).when(controller).getSessionIfItExists();
@@ -168,6 +175,7 @@ public class SubpopulationControllerTest {
         assertEquals((Integer)10, criteria.getMaxAppVersion(OperatingSystem.IOS));
         assertEquals(Sets.newHashSet("requiredGroup"), criteria.getAllOfGroups());
         assertEquals(Sets.newHashSet("prohibitedGroup"), criteria.getNoneOfGroups());
+        verify(consentStatusCache).subpopulationsChanged(STUDY_IDENTIFIER);
     }
     
     @Test
@@ -199,6 +207,7 @@ public class SubpopulationControllerTest {
         assertEquals((Integer)10, criteria.getMaxAppVersion(OperatingSystem.IOS));
         assertEquals(Sets.newHashSet("requiredGroup"), criteria.getAllOfGroups());
         assertEquals(Sets.newHashSet("prohibitedGroup"), criteria.getNoneOfGroups());
+        verify(consentStatusCache).subpopulationsChanged(STUDY_IDENTIFIER);
     }
     
     @Test
@@ -271,6 +280,32 @@ public class SubpopulationControllerTest {
         
         assertResult(result, 200, "Subpopulation has been deleted.");
         verify(subpopService).deleteSubpopulationPermanently(STUDY_IDENTIFIER, SUBPOP_GUID);
+        verify(consentStatusCache).subpopulationsChanged(STUDY_IDENTIFIER);
+    }
+    
+    @Test
+    public void getConsentStatusCacheMetrics() throws Exception {
+        participant = new StudyParticipant.Builder().withRoles(Sets.newHashSet(Roles.ADMIN)).build();
+        session = new UserSession(participant);
+        session.setStudyIdentifier(STUDY_IDENTIFIER);
+        session.setAuthenticated(true);
+        doReturn(session).when(controller).getSessionIfItExists();
+        TestUtils.mockPlay().mock();
+        DateTime now = DateTime.now();
+        when(consentStatusCache.getMetrics()).thenReturn(new ConsentStatusCacheMetrics(now, now, 4, 10, 1));
+        
+        Result result = controller.getConsentStatusCacheMetrics();
+        TestUtils.assertResult(result, 200);
+        
+        JsonNode node = BridgeObjectMapper.get().readTree(Helpers.contentAsString(result));
+        assertEquals(4, node.get("computedCount").intValue());
+        assertEquals(10, node.get("avoidedCount").intValue());
+        assertEquals(1, node.get("staleCount").intValue());
+    }
+    
+    @Test(expected = UnauthorizedException.class)
+    public void getConsentStatusCacheMetricsRequiresAdmin() throws Exception {
+        controller.getConsentStatusCacheMetrics();
     }
     
     @Test
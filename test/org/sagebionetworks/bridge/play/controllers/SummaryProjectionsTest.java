@@ -0,0 +1,41 @@
+package org.sagebionetworks.bridge.play.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+public class SummaryProjectionsTest {
+    @Test
+    public void isSummary() {
+        assertFalse(SummaryProjections.isSummary(null));
+        assertFalse(SummaryProjections.isSummary("false"));
+        assertTrue(SummaryProjections.isSummary("true"));
+    }
+
+    @Test
+    public void toSummaries() throws Exception {
+        List<?> items = ImmutableList.of(
+                ImmutableMap.of("name", "first", "type", "Thing", "elements", ImmutableList.of("a", "b")),
+                ImmutableMap.of("name", "second", "type", "Thing"));
+
+        List<JsonNode> summaries = SummaryProjections.toSummaries(BridgeObjectMapper.get().writer(), items,
+                ImmutableSet.of("name", "type"));
+
+        assertEquals(2, summaries.size());
+        assertEquals("first", summaries.get(0).get("name").textValue());
+        assertEquals("Thing", summaries.get(0).get("type").textValue());
+        assertNull(summaries.get(0).get("elements"));
+        assertEquals("second", summaries.get(1).get("name").textValue());
+    }
+}
@@ -1,6 +1,9 @@
 package org.sagebionetworks.bridge.play.controllers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyBoolean;
@@ -21,10 +24,12 @@ import static org.sagebionetworks.bridge.Roles.RESEARCHER;
 import static org.sagebionetworks.bridge.Roles.WORKER;
 import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
@@ -40,10 +45,12 @@ import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.cache.ViewCache;
 import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.ConsentRequiredException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.BatchItemResult;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
 import org.sagebionetworks.bridge.models.ResourceList;
@@ -55,10 +62,15 @@ import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
 import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.surveys.SurveyCacheWarmingMetrics;
 import org.sagebionetworks.bridge.models.surveys.TestSurvey;
 import org.sagebionetworks.bridge.services.StudyService;
+import org.sagebionetworks.bridge.services.SurveyBatchService;
+import org.sagebionetworks.bridge.services.SurveyCacheWarmer;
 import org.sagebionetworks.bridge.services.SurveyService;
+import org.sagebionetworks.bridge.services.WorkerSurveyCache;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -91,6 +103,12 @@ public class SurveyControllerTest {
     
     private ViewCache viewCache;
     
+    private SurveyCacheWarmer surveyCacheWarmer;
+    
+    private WorkerSurveyCache workerSurveyCache;
+    
+    private SurveyBatchService surveyBatchService;
+    
     private Map<CacheKey,String> cacheMap;
     
     private UserSession session;
@@ -141,6 +159,13 @@ public class SurveyControllerTest {
         controller.setSurveyService(service);
         controller.setViewCache(viewCache);
         controller.setStudyService(studyService);
+        
+        surveyCacheWarmer = mock(SurveyCacheWarmer.class);
+        controller.setSurveyCacheWarmer(surveyCacheWarmer);
+        workerSurveyCache = mock(WorkerSurveyCache.class);
+        controller.setWorkerSurveyCache(workerSurveyCache);
+        surveyBatchService = mock(SurveyBatchService.class);
+        controller.setSurveyBatchService(surveyBatchService);
         controller.setBridgeConfig(mock(BridgeConfig.class));
     }
     
@@ -187,7 +212,7 @@ public class SurveyControllerTest {
         doReturn(session).when(controller).getAuthenticatedSession(DEVELOPER, RESEARCHER);
         when(service.getAllSurveysMostRecentVersion(API_STUDY_ID, false)).thenReturn(getSurveys(3, false));
         
-        controller.getAllSurveysMostRecentVersion(null);
+        controller.getAllSurveysMostRecentVersion(null, null);
         
         verify(service).getAllSurveysMostRecentVersion(API_STUDY_ID, false);
         verifyNoMoreInteractions(service);
@@ -200,7 +225,7 @@ public class SurveyControllerTest {
         doReturn(session).when(controller).getAuthenticatedSession(DEVELOPER, RESEARCHER);
         when(service.getAllSurveysMostRecentVersion(API_STUDY_ID, false)).thenReturn(getSurveys(3, false));
         
-        controller.getAllSurveysMostRecentVersion("false");
+        controller.getAllSurveysMostRecentVersion("false", null);
         
         verify(service).getAllSurveysMostRecentVersion(API_STUDY_ID, false);
         verifyNoMoreInteractions(service);
@@ -213,12 +238,35 @@ public class SurveyControllerTest {
         doReturn(session).when(controller).getAuthenticatedSession(DEVELOPER, RESEARCHER);
         when(service.getAllSurveysMostRecentVersion(API_STUDY_ID, true)).thenReturn(getSurveys(3, false));
         
-        controller.getAllSurveysMostRecentVersion("true");
+        controller.getAllSurveysMostRecentVersion("true", null);
         
         verify(service).getAllSurveysMostRecentVersion(API_STUDY_ID, true);
         verifyNoMoreInteractions(service);
     }
     
+    @Test
+    public void getAllSurveysMostRecentVersionSummary() throws Exception {
+        setupContext(API_STUDY_ID, UNCONSENTED, DEVELOPER);
+        TestUtils.mockPlay().mock();
+        doReturn(session).when(controller).getAuthenticatedSession(DEVELOPER, RESEARCHER);
+        List<Survey> surveys = getSurveys(2, false);
+        when(service.getAllSurveysMostRecentVersion(API_STUDY_ID, false)).thenReturn(surveys);
+        
+        Result result = controller.getAllSurveysMostRecentVersion("false", "true");
+        TestUtils.assertResult(result, 200);
+        
+        JsonNode items = BridgeObjectMapper.get().readTree(Helpers.contentAsString(result)).get("items");
+        assertEquals(2, items.size());
+        JsonNode summary = items.get(0);
+        assertEquals(surveys.get(0).getGuid(), summary.get("guid").textValue());
+        assertEquals(surveys.get(0).getName(), summary.get("name").textValue());
+        assertNotNull(summary.get("createdOn"));
+        assertNull(summary.get("elements"));
+        for (Iterator<String> i = summary.fieldNames(); i.hasNext();) {
+            assertTrue(SummaryProjections.SURVEY_SUMMARY_FIELDS.contains(i.next()));
+        }
+    }
+    
     @Test
     public void getAllSurveysMostRecentlyPublishedVersionDoNotIncludeDeletedDefault() throws Exception {
         setupContext(API_STUDY_ID, UNCONSENTED, DEVELOPER);
@@ -226,7 +274,7 @@ public class SurveyControllerTest {
         doReturn(session).when(controller).getAuthenticatedSession(DEVELOPER);
         when(service.getAllSurveysMostRecentlyPublishedVersion(API_STUDY_ID, false)).thenReturn(getSurveys(2, false));
         
-        controller.getAllSurveysMostRecentlyPublishedVersion(null);
+        controller.getAllSurveysMostRecentlyPublishedVersion(null, null);
         
         verify(service).getAllSurveysMostRecentlyPublishedVersion(API_STUDY_ID, false);
         verifyNoMoreInteractions(service);
@@ -239,7 +287,7 @@ public class SurveyControllerTest {
         doReturn(session).when(controller).getAuthenticatedSession(DEVELOPER);
         when(service.getAllSurveysMostRecentlyPublishedVersion(API_STUDY_ID, false)).thenReturn(getSurveys(2, false));
         
-        controller.getAllSurveysMostRecentlyPublishedVersion("false");
+        controller.getAllSurveysMostRecentlyPublishedVersion("false", null);
         
         verify(service).getAllSurveysMostRecentlyPublishedVersion(API_STUDY_ID, false);
         verifyNoMoreInteractions(service);
@@ -252,7 +300,7 @@ public class SurveyControllerTest {
         doReturn(session).when(controller).getAuthenticatedSession(DEVELOPER);
         when(service.getAllSurveysMostRecentlyPublishedVersion(API_STUDY_ID, true)).thenReturn(getSurveys(2, false));
         
-        controller.getAllSurveysMostRecentlyPublishedVersion("true");
+        controller.getAllSurveysMostRecentlyPublishedVersion("true", null);
         
         verify(service).getAllSurveysMostRecentlyPublishedVersion(API_STUDY_ID, true);
         verifyNoMoreInteractions(service);
@@ -329,7 +377,8 @@ public class SurveyControllerTest {
         // make survey
         Survey survey = getSurvey(false);
         survey.setGuid("test-survey");
-        when(service.getSurvey(null, KEYS, true, true)).thenReturn(survey);
+        when(workerSurveyCache.getSurveyJson(SURVEY_GUID, CREATED_ON.getMillis()))
+                .thenReturn(BridgeObjectMapper.get().writeValueAsString(survey));
 
         // execute and validate
         Result result = controller.getSurvey(SURVEY_GUID, CREATED_ON.toString());
@@ -381,6 +430,7 @@ public class SurveyControllerTest {
         
         verify(service).getSurvey(TestConstants.TEST_STUDY, KEYS, false, false);
         verify(service).deleteSurvey(TestConstants.TEST_STUDY, survey);
+        verify(workerSurveyCache).removeSurvey(SURVEY_GUID, CREATED_ON.getMillis());
         verifyNoMoreInteractions(service);
     }
     
@@ -469,6 +519,7 @@ public class SurveyControllerTest {
         
         verify(service).getSurvey(TestConstants.TEST_STUDY, KEYS, true, true);
         verify(service).deleteSurveyPermanently(API_STUDY_ID, survey);
+        verify(workerSurveyCache).removeSurvey(SURVEY_GUID, CREATED_ON.getMillis());
         verifyNoMoreInteractions(service);
     }
     
@@ -590,6 +641,70 @@ public class SurveyControllerTest {
         
         verify(service).publishSurvey(TEST_STUDY, KEYS, false);
         verifyNoMoreInteractions(service);
+        verify(surveyCacheWarmer).warmSurvey(TEST_STUDY, survey.getGuid(), survey.getCreatedOn());
+    }
+    
+    @Test
+    public void getCacheWarmingMetrics() throws Exception {
+        setupContext(API_STUDY_ID, UNCONSENTED, ADMIN);
+        TestUtils.mockPlay().mock();
+        doReturn(session).when(controller).getAuthenticatedSession(ADMIN);
+        when(surveyCacheWarmer.getMetrics()).thenReturn(new SurveyCacheWarmingMetrics(CREATED_ON, CREATED_ON, 5,
+                3, 1));
+        
+        Result result = controller.getCacheWarmingMetrics();
+        TestUtils.assertResult(result, 200);
+        
+        JsonNode node = BridgeObjectMapper.get().readTree(Helpers.contentAsString(result));
+        assertEquals(5, node.get("queuedCount").intValue());
+        assertEquals(3, node.get("warmedCount").intValue());
+        assertEquals(1, node.get("failedCount").intValue());
+        assertEquals(1, node.get("remainingCount").intValue());
+    }
+    
+    @Test
+    public void getSurveysForWorker() throws Exception {
+        setupContext(TestConstants.TEST_STUDY, UNCONSENTED, WORKER);
+        TestUtils.mockPlay().withJsonBody(TestUtils.createJson("[{'guid':'" + SURVEY_GUID + "','createdOn':'" +
+                CREATED_ON.toString() + "'}]")).mock();
+        doReturn(session).when(controller).getSessionEitherConsentedOrInRole(WORKER, DEVELOPER);
+        JsonNode surveyNode = BridgeObjectMapper.get().valueToTree(getSurvey(false));
+        when(surveyBatchService.getSurveys(null, ImmutableList.of(KEYS))).thenReturn(ImmutableList.of(
+                BatchItemResult.succeeded("item-key", surveyNode)));
+        
+        Result result = controller.getSurveys();
+        TestUtils.assertResult(result, 200);
+        
+        JsonNode node = BridgeObjectMapper.get().readTree(Helpers.contentAsString(result));
+        assertEquals(1, node.get("items").size());
+        assertEquals("item-key", node.get("items").get(0).get("key").textValue());
+        assertEquals(200, node.get("items").get(0).get("statusCode").intValue());
+        assertEquals(surveyNode, node.get("items").get(0).get("item"));
+    }
+    
+    @Test
+    public void getSurveysForDeveloperIsScopedToStudy() throws Exception {
+        setupContext(API_STUDY_ID, UNCONSENTED, DEVELOPER);
+        TestUtils.mockPlay().withJsonBody(TestUtils.createJson("[{'guid':'" + SURVEY_GUID + "','createdOn':'" +
+                CREATED_ON.toString() + "'}]")).mock();
+        doReturn(session).when(controller).getSessionEitherConsentedOrInRole(WORKER, DEVELOPER);
+        when(surveyBatchService.getSurveys(API_STUDY_ID, ImmutableList.of(KEYS))).thenReturn(ImmutableList.of(
+                BatchItemResult.failed("item-key", 404, "Survey not found.")));
+        
+        Result result = controller.getSurveys();
+        TestUtils.assertResult(result, 200);
+        
+        JsonNode node = BridgeObjectMapper.get().readTree(Helpers.contentAsString(result));
+        assertEquals(404, node.get("items").get(0).get("statusCode").intValue());
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getSurveysRequiresGuidAndCreatedOn() throws Exception {
+        setupContext(API_STUDY_ID, UNCONSENTED, DEVELOPER);
+        TestUtils.mockPlay().withJsonBody(TestUtils.createJson("[{'guid':'" + SURVEY_GUID + "'}]")).mock();
+        doReturn(session).when(controller).getSessionEitherConsentedOrInRole(WORKER, DEVELOPER);
+        
+        controller.getSurveys();
     }
 
     @Test
@@ -15,8 +15,12 @@ import static org.sagebionetworks.bridge.Roles.ADMIN;
 import static org.sagebionetworks.bridge.Roles.WORKER;
 
 import java.net.URL;
+import java.util.Map;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import org.junit.Before;
 import org.junit.Test;
@@ -33,7 +37,9 @@ import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.TestUtils;
 import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.dao.HealthCodeDao;
+import org.sagebionetworks.bridge.dao.RecordUploadIdDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
@@ -49,7 +55,6 @@ import org.sagebionetworks.bridge.models.upload.UploadSession;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
 import org.sagebionetworks.bridge.models.upload.UploadView;
-import org.sagebionetworks.bridge.services.HealthDataService;
 import org.sagebionetworks.bridge.services.UploadService;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -66,7 +71,7 @@ public class UploadControllerTest {
     private UploadService uploadService;
     
     @Mock
-    private HealthDataService healthDataService;
+    private RecordUploadIdDao recordUploadIdDao;
     
     @Mock
     private HealthCodeDao healthCodeDao;
@@ -101,7 +106,7 @@ public class UploadControllerTest {
     public void before() {
         controller.setUploadService(uploadService);
         controller.setCacheProvider(cacheProvider);
-        controller.setHealthDataService(healthDataService);
+        controller.setRecordUploadIdDao(recordUploadIdDao);
         controller.setHealthCodeDao(healthCodeDao);
 
         // mock uploadService.getUpload()
@@ -335,7 +340,7 @@ public class UploadControllerTest {
         HealthDataRecord record = HealthDataRecord.create();
         record.setUploadId(UPLOAD_ID);
         record.setHealthCode(HEALTH_CODE);
-        when(healthDataService.getRecordById("record-id")).thenReturn(record);
+        when(recordUploadIdDao.getUploadId("record-id")).thenReturn(UPLOAD_ID);
         
         DynamoUpload2 upload = new DynamoUpload2();
         upload.setStudyId("researcher-study-id");
@@ -358,11 +363,53 @@ public class UploadControllerTest {
         TestUtils.mockPlay().mock();
         doReturn(researcherSession).when(controller).getAuthenticatedSession(ADMIN, WORKER);
         
-        when(healthDataService.getRecordById("record-id")).thenReturn(null);
+        when(recordUploadIdDao.getUploadId("record-id")).thenReturn(null);
 
         controller.getUpload("recordId:record-id");
     }
     
+    @Test
+    public void getUploadIdsForRecordIds() throws Exception {
+        TestUtils.mockPlay().withJsonBody("[\"record-1\",\"record-2\",\"record-1\"]").mock();
+        doReturn(researcherSession).when(controller).getAuthenticatedSession(ADMIN, WORKER);
+        
+        when(recordUploadIdDao.getUploadIds(ImmutableSet.of("record-1", "record-2")))
+                .thenReturn(ImmutableMap.of("record-1", "upload-1"));
+        
+        Result result = controller.getUploadIdsForRecordIds();
+        assertEquals(200, result.status());
+        
+        Map<String, String> uploadIds = TestUtils.getResponsePayload(result,
+                new TypeReference<Map<String, String>>() {});
+        assertEquals(ImmutableMap.of("record-1", "upload-1"), uploadIds);
+        
+        verify(uploadService, never()).getUploadView(any());
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getUploadIdsForRecordIdsEmptyList() throws Exception {
+        TestUtils.mockPlay().withJsonBody("[]").mock();
+        doReturn(researcherSession).when(controller).getAuthenticatedSession(ADMIN, WORKER);
+        
+        controller.getUploadIdsForRecordIds();
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getUploadIdsForRecordIdsTooMany() throws Exception {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i <= UploadController.MAX_RECORD_IDS; i++) {
+            sb.append(i > 0 ? "," : "").append("\"record-").append(i).append("\"");
+        }
+        TestUtils.mockPlay().withJsonBody(sb.append("]").toString()).mock();
+        doReturn(researcherSession).when(controller).getAuthenticatedSession(ADMIN, WORKER);
+        
+        try {
+            controller.getUploadIdsForRecordIds();
+        } finally {
+            verify(recordUploadIdDao, never()).getUploadIds(any());
+        }
+    }
+    
     private static void validateValidationStatus(Result result) throws Exception {
         TestUtils.assertResult(result, 200);
 
@@ -27,11 +27,13 @@ import play.test.Helpers;
 import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.services.UploadSchemaCache;
 import org.sagebionetworks.bridge.services.UploadSchemaService;
 
 public class UploadSchemaControllerTest {
@@ -212,7 +214,7 @@ public class UploadSchemaControllerTest {
 
         // setup, execute, and validate
         UploadSchemaController controller = setupControllerWithService(mockSvc, DEVELOPER, RESEARCHER);
-        Result result = controller.getUploadSchemasForStudy("false");
+        Result result = controller.getUploadSchemasForStudy("false", null);
         TestUtils.assertResult(result, 200);
 
         String resultJson = Helpers.contentAsString(result);
@@ -237,7 +239,7 @@ public class UploadSchemaControllerTest {
 
         // setup, execute, and validate
         UploadSchemaController controller = setupControllerWithService(mockSvc, DEVELOPER, RESEARCHER);
-        Result result = controller.getUploadSchemasForStudy("true");
+        Result result = controller.getUploadSchemasForStudy("true", null);
         TestUtils.assertResult(result, 200);
         
         verify(mockSvc).getUploadSchemasForStudy(TestConstants.TEST_STUDY, true);
@@ -252,12 +254,34 @@ public class UploadSchemaControllerTest {
 
         // setup, execute, and validate
         UploadSchemaController controller = setupControllerWithService(mockSvc, DEVELOPER, RESEARCHER);
-        Result result = controller.getUploadSchemasForStudy(null);
+        Result result = controller.getUploadSchemasForStudy(null, null);
         TestUtils.assertResult(result, 200);
         
         verify(mockSvc).getUploadSchemasForStudy(TestConstants.TEST_STUDY, false);
     }
     
+    @Test
+    public void getSchemasForStudySummary() throws Exception {
+        // mock UploadSchemaService
+        UploadSchemaService mockSvc = mock(UploadSchemaService.class);
+        when(mockSvc.getUploadSchemasForStudy(TestConstants.TEST_STUDY, false)).thenReturn(ImmutableList.of(
+                makeUploadSchemaForOutput()));
+
+        // setup, execute, and validate
+        UploadSchemaController controller = setupControllerWithService(mockSvc, DEVELOPER, RESEARCHER);
+        Result result = controller.getUploadSchemasForStudy("false", "true");
+        TestUtils.assertResult(result, 200);
+
+        JsonNode resultNode = BridgeObjectMapper.get().readTree(Helpers.contentAsString(result));
+        assertEquals("ResourceList", resultNode.get("type").textValue());
+        JsonNode summaryNode = resultNode.get("items").get(0);
+        assertEquals(TEST_SCHEMA_ID, summaryNode.get("schemaId").textValue());
+        assertEquals("Controller Test Schema", summaryNode.get("name").textValue());
+        assertEquals(3, summaryNode.get("revision").intValue());
+        assertNull(summaryNode.get("fieldDefinitions"));
+        assertNull(summaryNode.get("studyId"));
+    }
+    
     @Test
     public void getAllRevisionsOfASchemaExcludeDeleted() throws Exception {
         String schemaId = "controller-test-schema";
@@ -274,7 +298,7 @@ public class UploadSchemaControllerTest {
 
         // setup, execute, and validate
         UploadSchemaController controller = setupControllerWithService(mockSvc, DEVELOPER);
-        Result result = controller.getUploadSchemaAllRevisions(schemaId, "false");
+        Result result = controller.getUploadSchemaAllRevisions(schemaId, "false", null);
         TestUtils.assertResult(result, 200);
 
         String resultJson = Helpers.contentAsString(result);
@@ -312,7 +336,7 @@ public class UploadSchemaControllerTest {
 
         // setup, execute, and validate
         UploadSchemaController controller = setupControllerWithService(mockSvc, DEVELOPER);
-        Result result = controller.getUploadSchemaAllRevisions(schemaId, null);
+        Result result = controller.getUploadSchemaAllRevisions(schemaId, null, null);
         TestUtils.assertResult(result, 200);
 
         verify(mockSvc).getUploadSchemaAllRevisions(TestConstants.TEST_STUDY, schemaId, false);
@@ -328,7 +352,7 @@ public class UploadSchemaControllerTest {
 
         // setup, execute, and validate
         UploadSchemaController controller = setupControllerWithService(mockSvc, DEVELOPER);
-        Result result = controller.getUploadSchemaAllRevisions(schemaId, "true");
+        Result result = controller.getUploadSchemaAllRevisions(schemaId, "true", null);
         TestUtils.assertResult(result, 200);
 
         verify(mockSvc).getUploadSchemaAllRevisions(TestConstants.TEST_STUDY, schemaId, true);
@@ -362,6 +386,7 @@ public class UploadSchemaControllerTest {
         // spy controller
         UploadSchemaController controller = spy(new UploadSchemaController());
         controller.setUploadSchemaService(svc);
+        controller.setUploadSchemaCache(makeUploadSchemaCache(svc));
         doReturn(mockSession).when(controller).getAuthenticatedSession(role1, role2);
         return controller;
     }
@@ -378,6 +403,7 @@ public class UploadSchemaControllerTest {
         // spy controller
         UploadSchemaController controller = spy(new UploadSchemaController());
         controller.setUploadSchemaService(svc);
+        controller.setUploadSchemaCache(makeUploadSchemaCache(svc));
         doReturn(mockSession).when(controller).getAuthenticatedSession(role1, role2);
         return controller;
     }
@@ -394,11 +420,19 @@ public class UploadSchemaControllerTest {
         // spy controller
         UploadSchemaController controller = spy(new UploadSchemaController());
         controller.setUploadSchemaService(svc);
+        controller.setUploadSchemaCache(makeUploadSchemaCache(svc));
         controller.setBridgeConfig(mock(BridgeConfig.class));
         doReturn(mockSession).when(controller).getAuthenticatedSession(role1);
         return controller;
     }
 
+    private static UploadSchemaCache makeUploadSchemaCache(UploadSchemaService svc) {
+        UploadSchemaCache uploadSchemaCache = new UploadSchemaCache();
+        uploadSchemaCache.setCacheProvider(mock(CacheProvider.class));
+        uploadSchemaCache.setUploadSchemaService(svc);
+        return uploadSchemaCache;
+    }
+
     private static UploadSchema makeUploadSchemaForOutput() throws Exception {
         return makeUploadSchemaForOutput(3);
     }
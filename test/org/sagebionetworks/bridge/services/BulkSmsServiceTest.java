@@ -0,0 +1,173 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.dao.SmsMessageBatchDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.models.accounts.Phone;
+import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
+import org.sagebionetworks.bridge.models.sms.BulkSmsResult;
+import org.sagebionetworks.bridge.models.sms.SmsDispatchMetrics;
+import org.sagebionetworks.bridge.models.sms.SmsMessage;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.sms.FakeSmsProvider;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkSmsServiceTest {
+    private static final Phone PHONE = new Phone("+12065550123", "US");
+    private static final String MESSAGE = "Time for your ${studyShortName} survey";
+
+    @Mock
+    private ParticipantService mockParticipantService;
+
+    @Mock
+    private SmsMessageBatchDao mockBatchDao;
+
+    @Captor
+    private ArgumentCaptor<List<SmsMessage>> messageListCaptor;
+
+    private FakeSmsProvider smsProvider;
+    private Study study;
+    private BulkSmsService service;
+
+    @Before
+    public void before() {
+        study = Study.create();
+        study.setIdentifier(TestConstants.TEST_STUDY_IDENTIFIER);
+        study.setShortName("ShortName");
+
+        smsProvider = new FakeSmsProvider();
+
+        service = new BulkSmsService();
+        service.setParticipantService(mockParticipantService);
+        service.setSmsProvider(smsProvider);
+        service.setSmsMessageBatchDao(mockBatchDao);
+        service.setDispatchExecutorService(MoreExecutors.newDirectExecutorService());
+        service.setSendsPerSecondPerStudy(Double.MAX_VALUE);
+        service.setProviderRateLimiter(RateLimiter.create(Double.MAX_VALUE));
+    }
+
+    @Test
+    public void sendSmsMessages() {
+        mockParticipant(study, "user1", true);
+        mockParticipant(study, "user2", false);
+
+        BulkSmsResult result = service.sendSmsMessages(study, ImmutableList.of("user1", "user2"), MESSAGE);
+        assertEquals(1, result.getSentCount());
+        assertEquals(1, result.getFailedCount());
+        assertEquals("user1", result.getItems().get(0).getKey());
+        assertEquals(200, result.getItems().get(0).getStatusCode());
+        assertEquals("user2", result.getItems().get(1).getKey());
+        assertEquals(400, result.getItems().get(1).getStatusCode());
+
+        List<FakeSmsProvider.SentSms> sentList = smsProvider.getSentMessages();
+        assertEquals(1, sentList.size());
+        assertEquals(PHONE.getNumber(), sentList.get(0).getPhoneNumber());
+        assertEquals("Time for your ShortName survey", sentList.get(0).getMessage());
+        assertEquals("ShortName", sentList.get(0).getSenderId());
+
+        // One batch write for the whole dispatch.
+        verify(mockBatchDao).logMessages(messageListCaptor.capture());
+        List<SmsMessage> loggedList = messageListCaptor.getValue();
+        assertEquals(1, loggedList.size());
+        assertEquals("healthCode-user1", loggedList.get(0).getHealthCode());
+        assertEquals(sentList.get(0).getMessageId(), loggedList.get(0).getMessageId());
+
+        SmsDispatchMetrics metrics = service.getMetrics();
+        assertEquals("fake", metrics.getProvider());
+        assertEquals(1, metrics.getSentCount());
+        assertEquals(1, metrics.getFailedCount());
+        assertEquals(0, metrics.getRejectedCount());
+    }
+
+    @Test
+    public void sendSmsMessagesOncePerUser() {
+        mockParticipant(study, "user1", true);
+        mockParticipant(study, "user2", true);
+
+        BulkSmsResult result = service.sendSmsMessages(study, ImmutableList.of("user1", "user2", "user1"),
+                MESSAGE);
+        assertEquals(2, result.getSentCount());
+        assertEquals(2, result.getItems().size());
+        assertEquals("user1", result.getItems().get(0).getKey());
+        assertEquals("user2", result.getItems().get(1).getKey());
+        assertEquals(2, smsProvider.getSentMessages().size());
+    }
+
+    @Test
+    public void sendSmsMessagesAcquireProviderRateLimiterForEveryStudy() {
+        RateLimiter mockProviderRateLimiter = mock(RateLimiter.class);
+        service.setProviderRateLimiter(mockProviderRateLimiter);
+
+        Study otherStudy = Study.create();
+        otherStudy.setIdentifier("other-study");
+        otherStudy.setShortName("Other");
+        mockParticipant(study, "user1", true);
+        mockParticipant(otherStudy, "user2", true);
+
+        service.sendSmsMessages(study, ImmutableList.of("user1"), MESSAGE);
+        service.sendSmsMessages(otherStudy, ImmutableList.of("user2"), MESSAGE);
+
+        verify(mockProviderRateLimiter, times(2)).acquire();
+        assertEquals(2, smsProvider.getSentMessages().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void sendSmsMessagesQueueFull() {
+        ExecutorService mockExecutorService = mock(ExecutorService.class);
+        when(mockExecutorService.submit(any(Callable.class))).thenThrow(new RejectedExecutionException());
+        service.setDispatchExecutorService(mockExecutorService);
+
+        BulkSmsResult result = service.sendSmsMessages(study, ImmutableList.of("user1"), MESSAGE);
+        assertEquals(0, result.getSentCount());
+        assertEquals(503, result.getItems().get(0).getStatusCode());
+        assertEquals(BulkSmsService.QUEUE_FULL_MESSAGE, result.getItems().get(0).getMessage());
+        assertEquals(1, service.getMetrics().getRejectedCount());
+        assertTrue(smsProvider.getSentMessages().isEmpty());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void sendSmsMessagesTooMany() {
+        List<String> userIdList = new ArrayList<>();
+        for (int i = 0; i <= BulkSmsService.MAX_BATCH_SIZE; i++) {
+            userIdList.add("user" + i);
+        }
+        service.sendSmsMessages(study, userIdList, MESSAGE);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void sendSmsMessagesRequiresMessage() {
+        service.sendSmsMessages(study, ImmutableList.of("user1"), " ");
+    }
+
+    private void mockParticipant(Study study, String userId, boolean phoneVerified) {
+        when(mockParticipantService.getParticipant(study, userId, false)).thenReturn(new StudyParticipant.Builder()
+                .withId(userId).withHealthCode("healthCode-" + userId).withPhone(PHONE)
+                .withPhoneVerified(phoneVerified).build());
+    }
+}
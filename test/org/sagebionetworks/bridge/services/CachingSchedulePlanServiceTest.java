@@ -0,0 +1,73 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import javax.annotation.Resource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
+import org.sagebionetworks.bridge.models.schedules.SchedulePlan;
+import org.sagebionetworks.bridge.models.studies.Study;
+
+import com.google.common.collect.Sets;
+
+@ContextConfiguration("classpath:test-context.xml")
+@RunWith(SpringJUnit4ClassRunner.class)
+public class CachingSchedulePlanServiceTest {
+
+    @Resource
+    CachingSchedulePlanService schedulePlanService;
+
+    @Resource
+    SchedulePlanCache schedulePlanCache;
+
+    private SchedulePlanCache mockSchedulePlanCache;
+
+    private Study study;
+
+    @Before
+    public void before() {
+        study = new DynamoStudy();
+        study.setIdentifier("test-study");
+        study.setTaskIdentifiers(Sets.newHashSet("AAA", "BBB", "CCC"));
+
+        mockSchedulePlanCache = mock(SchedulePlanCache.class);
+        schedulePlanService.setSchedulePlanCache(mockSchedulePlanCache);
+    }
+
+    @After
+    public void after() {
+        schedulePlanService.setSchedulePlanCache(schedulePlanCache);
+    }
+
+    @Test
+    public void changesDropCachedPlans() {
+        SchedulePlan plan = TestUtils.getSimpleSchedulePlan(study);
+        plan.setGuid(null);
+        plan.setVersion(null);
+
+        SchedulePlan savedPlan = schedulePlanService.createSchedulePlan(study, plan);
+        try {
+            verify(mockSchedulePlanCache).plansChanged(study.getStudyIdentifier());
+
+            savedPlan.setLabel(savedPlan.getLabel() + " more");
+            savedPlan = schedulePlanService.updateSchedulePlan(study, savedPlan);
+            verify(mockSchedulePlanCache, times(2)).plansChanged(study.getStudyIdentifier());
+
+            schedulePlanService.deleteSchedulePlan(study.getStudyIdentifier(), savedPlan.getGuid());
+            verify(mockSchedulePlanCache, times(3)).plansChanged(study.getStudyIdentifier());
+        } finally {
+            schedulePlanService.deleteSchedulePlanPermanently(study.getStudyIdentifier(), savedPlan.getGuid());
+        }
+        verify(mockSchedulePlanCache, times(4)).plansChanged(study.getStudyIdentifier());
+    }
+}
@@ -0,0 +1,192 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import org.sagebionetworks.bridge.models.ClientInfo;
+import org.sagebionetworks.bridge.models.CriteriaContext;
+import org.sagebionetworks.bridge.models.accounts.ConsentStatus;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.models.subpopulations.ConsentStatusCacheMetrics;
+import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConsentStatusCacheTest {
+    private static final String HEALTH_CODE = "healthCode";
+    private static final StudyIdentifier OTHER_STUDY = new StudyIdentifierImpl("other-study");
+    private static final SubpopulationGuid SUBPOP_GUID = SubpopulationGuid.create("subpop-guid");
+    private static final Map<SubpopulationGuid, ConsentStatus> STATUSES = ImmutableMap.of(SUBPOP_GUID,
+            new ConsentStatus.Builder().withName("Name").withGuid(SUBPOP_GUID).withRequired(true).withConsented(true)
+                    .withSignedMostRecentConsent(true).build());
+
+    @Mock
+    private JedisPool mockJedisPool;
+
+    @Mock
+    private Jedis mockJedis;
+
+    @Mock
+    private Supplier<Map<SubpopulationGuid, ConsentStatus>> mockLoader;
+
+    // Stands in for Redis, so stamps written by one call are read by the next.
+    private Map<String, String> sharedCache;
+
+    private ConsentStatusCache cache;
+
+    @Before
+    public void before() {
+        sharedCache = new HashMap<>();
+        when(mockLoader.get()).thenReturn(STATUSES);
+
+        cache = new ConsentStatusCache();
+        cache.setJedisPool(mockJedisPool);
+    }
+
+    @Test
+    public void getConsentStatusesIsCached() {
+        mockRedis();
+        Map<SubpopulationGuid, ConsentStatus> statuses = cache.getConsentStatuses(makeContext(TEST_STUDY,
+                HEALTH_CODE, ImmutableSet.of("group1")), mockLoader);
+        assertEquals(STATUSES, statuses);
+
+        assertSame(statuses, cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE,
+                ImmutableSet.of("group1")), mockLoader));
+        verify(mockLoader).get();
+        assertMetrics(1, 1, 0);
+
+        // Both stamps are read in one round trip on each lookup, and written once when first missing.
+        verify(mockJedis, times(2)).mget(any());
+        verify(mockJedis, times(2)).setex(anyString(), anyInt(), anyString());
+    }
+
+    @Test
+    public void getConsentStatusesIsCachedPerContext() {
+        mockRedis();
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, ImmutableSet.of("group1")), mockLoader);
+        // Data groups can change which subpopulations apply.
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, ImmutableSet.of("group2")), mockLoader);
+        cache.getConsentStatuses(makeContext(TEST_STUDY, "otherHealthCode", ImmutableSet.of("group1")),
+                mockLoader);
+        cache.getConsentStatuses(makeContext(OTHER_STUDY, HEALTH_CODE, ImmutableSet.of("group1")), mockLoader);
+
+        verify(mockLoader, times(4)).get();
+        assertMetrics(4, 0, 0);
+    }
+
+    @Test
+    public void signaturesChangedRecomputesThatAccount() {
+        mockRedis();
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, null), mockLoader);
+        cache.getConsentStatuses(makeContext(TEST_STUDY, "otherHealthCode", null), mockLoader);
+
+        cache.signaturesChanged(TEST_STUDY, HEALTH_CODE);
+
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, null), mockLoader);
+        cache.getConsentStatuses(makeContext(TEST_STUDY, "otherHealthCode", null), mockLoader);
+        verify(mockLoader, times(3)).get();
+        assertMetrics(3, 1, 1);
+    }
+
+    @Test
+    public void subpopulationsChangedRecomputesThatStudy() {
+        mockRedis();
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, null), mockLoader);
+        cache.getConsentStatuses(makeContext(OTHER_STUDY, HEALTH_CODE, null), mockLoader);
+
+        cache.subpopulationsChanged(TEST_STUDY);
+
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, null), mockLoader);
+        cache.getConsentStatuses(makeContext(OTHER_STUDY, HEALTH_CODE, null), mockLoader);
+        verify(mockLoader, times(3)).get();
+        assertMetrics(3, 1, 1);
+    }
+
+    @Test
+    public void missingStampRecomputes() {
+        mockRedis();
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, null), mockLoader);
+
+        // Stamps that have expired from the shared cache are replaced, and don't match any cached statuses.
+        sharedCache.clear();
+
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, null), mockLoader);
+        verify(mockLoader, times(2)).get();
+        assertMetrics(2, 0, 1);
+    }
+
+    @Test
+    public void changeWhileComputingRecomputes() {
+        mockRedis();
+        // The account signs while its statuses are being computed, so the computed statuses may be out of date.
+        when(mockLoader.get()).thenAnswer(invocation -> {
+            cache.signaturesChanged(TEST_STUDY, HEALTH_CODE);
+            return STATUSES;
+        }).thenReturn(STATUSES);
+
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, null), mockLoader);
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, null), mockLoader);
+        cache.getConsentStatuses(makeContext(TEST_STUDY, HEALTH_CODE, null), mockLoader);
+
+        verify(mockLoader, times(2)).get();
+        assertMetrics(2, 1, 1);
+    }
+
+    @Test
+    public void contextWithoutHealthCodeIsNotCached() {
+        cache.getConsentStatuses(makeContext(TEST_STUDY, null, null), mockLoader);
+        cache.getConsentStatuses(makeContext(TEST_STUDY, null, null), mockLoader);
+
+        verify(mockLoader, times(2)).get();
+        assertMetrics(2, 0, 0);
+        verify(mockJedisPool, never()).getResource();
+    }
+
+    private void mockRedis() {
+        when(mockJedisPool.getResource()).thenReturn(mockJedis);
+        when(mockJedis.mget(any())).thenAnswer(invocation -> Arrays.stream(invocation.getArguments())
+                .map(sharedCache::get).collect(Collectors.toList()));
+        when(mockJedis.setex(anyString(), anyInt(), anyString()))
+                .thenAnswer(invocation -> sharedCache.put(invocation.getArgument(0), invocation.getArgument(2)));
+    }
+
+    private void assertMetrics(long computedCount, long avoidedCount, long staleCount) {
+        ConsentStatusCacheMetrics metrics = cache.getMetrics();
+        assertEquals(computedCount, metrics.getComputedCount());
+        assertEquals(avoidedCount, metrics.getAvoidedCount());
+        assertEquals(staleCount, metrics.getStaleCount());
+    }
+
+    private static CriteriaContext makeContext(StudyIdentifier studyId, String healthCode, Set<String> dataGroups) {
+        return new CriteriaContext.Builder()
+                .withStudyIdentifier(studyId)
+                .withHealthCode(healthCode)
+                .withUserDataGroups(dataGroups)
+                .withClientInfo(ClientInfo.UNKNOWN_CLIENT).build();
+    }
+}
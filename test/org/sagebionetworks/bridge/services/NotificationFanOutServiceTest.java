@@ -0,0 +1,341 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.dao.DistributedLockDao;
+import org.sagebionetworks.bridge.dao.ParticipantRosterDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.SegmentMember;
+import org.sagebionetworks.bridge.models.notifications.NotificationFanOutJob;
+import org.sagebionetworks.bridge.models.notifications.NotificationFanOutRequest;
+import org.sagebionetworks.bridge.models.notifications.NotificationProtocol;
+import org.sagebionetworks.bridge.models.notifications.NotificationRegistration;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationFanOutServiceTest {
+    private static final StudyIdentifier STUDY_ID = new StudyIdentifierImpl(TestConstants.TEST_STUDY_IDENTIFIER);
+    private static final DateTime CREATED_ON = DateTime.parse("2018-01-01T00:00:00.000Z");
+    private static final NotificationFanOutRequest REQUEST = new NotificationFanOutRequest(
+            TestUtils.getNotificationMessage(), ImmutableSet.of("group1"), null, ImmutableSet.of("substudyA"));
+
+    @Mock
+    private ParticipantRosterDao mockRosterDao;
+
+    @Mock
+    private NotificationsService mockNotificationsService;
+
+    @Mock
+    private AmazonSNSClient mockSnsClient;
+
+    @Mock
+    private CacheProvider mockCacheProvider;
+
+    @Mock
+    private DistributedLockDao mockLockDao;
+
+    private Map<String, String> jobStore;
+    private NotificationFanOutService service;
+
+    @Before
+    public void before() {
+        jobStore = new HashMap<>();
+        service = makeService();
+    }
+
+    @After
+    public void after() {
+        BridgeUtils.setRequestContext(RequestContext.NULL_INSTANCE);
+    }
+
+    @Test
+    public void fanOutCountsPerPlatform() {
+        mockJobStore();
+        mockPublish("androidGuidEndpoint");
+        when(mockRosterDao.getSegmentPage(TestConstants.TEST_STUDY_IDENTIFIER, REQUEST.getAllOfGroups(),
+                REQUEST.getNoneOfGroups(), REQUEST.getSubstudyIds(), null, null,
+                NotificationFanOutService.PAGE_SIZE)).thenReturn(ImmutableList.of(
+                        new SegmentMember("id1", CREATED_ON, "healthCode1"),
+                        new SegmentMember("id2", CREATED_ON, "healthCode2")));
+        when(mockNotificationsService.listRegistrations("healthCode1")).thenReturn(ImmutableList.of(
+                makeRegistration("iosGuid", "iPhone OS"), makeRegistration("androidGuid", "Android")));
+        when(mockNotificationsService.listRegistrations("healthCode2")).thenReturn(ImmutableList.of());
+
+        NotificationFanOutJob job = service.startFanOut(STUDY_ID, REQUEST);
+        assertEquals(NotificationFanOutJob.Status.PENDING, job.getStatus());
+
+        job = service.getJob(STUDY_ID, job.getJobId());
+        assertEquals(NotificationFanOutJob.Status.SUCCEEDED, job.getStatus());
+        assertEquals(2, job.getParticipantCount());
+        assertEquals(1, job.getUnregisteredParticipantCount());
+        assertEquals(1, job.getPlatformCounts().get("iPhone OS").getSucceeded());
+        assertEquals(0, job.getPlatformCounts().get("iPhone OS").getFailed());
+        assertEquals(1, job.getPlatformCounts().get("Android").getFailed());
+
+        // Each participant's registrations are read once, and published to directly.
+        verify(mockNotificationsService).listRegistrations("healthCode1");
+        verify(mockNotificationsService).listRegistrations("healthCode2");
+        verify(mockNotificationsService, never()).sendNotificationToUser(any(), any(), any());
+        ArgumentCaptor<PublishRequest> requestCaptor = ArgumentCaptor.forClass(PublishRequest.class);
+        verify(mockSnsClient, times(2)).publish(requestCaptor.capture());
+        PublishRequest request = requestCaptor.getAllValues().get(0);
+        assertEquals("iosGuidEndpoint", request.getTargetArn());
+        assertEquals(REQUEST.getMessage().getSubject(), request.getSubject());
+        assertEquals(REQUEST.getMessage().getMessage(), request.getMessage());
+    }
+
+    @Test
+    public void fanOutSkipsSmsRegistrations() {
+        mockJobStore();
+        NotificationRegistration smsRegistration = makeRegistration("smsGuid", null);
+        smsRegistration.setProtocol(NotificationProtocol.SMS);
+        when(mockRosterDao.getSegmentPage(any(), any(), any(), any(), any(), any(), anyInt())).thenReturn(
+                ImmutableList.of(new SegmentMember("id1", CREATED_ON, "healthCode1")));
+        when(mockNotificationsService.listRegistrations("healthCode1")).thenReturn(
+                ImmutableList.of(smsRegistration));
+
+        NotificationFanOutJob job = service.startFanOut(STUDY_ID, REQUEST);
+        job = service.getJob(STUDY_ID, job.getJobId());
+        assertEquals(1, job.getUnregisteredParticipantCount());
+        assertTrue(job.getPlatformCounts().isEmpty());
+        verify(mockSnsClient, never()).publish(any(PublishRequest.class));
+    }
+
+    @Test
+    public void failedFanOutResumesOnAnotherServer() {
+        mockJobStore();
+        mockLock();
+        List<SegmentMember> fullPage = ImmutableList.copyOf(Collections.nCopies(
+                NotificationFanOutService.PAGE_SIZE, new SegmentMember("id1", CREATED_ON, "healthCode1")));
+        when(mockRosterDao.getSegmentPage(any(), any(), any(), any(), isNull(), isNull(), anyInt()))
+                .thenReturn(fullPage);
+        when(mockRosterDao.getSegmentPage(any(), any(), any(), any(), eq(CREATED_ON), eq("id1"), anyInt()))
+                .thenThrow(new RuntimeException("connection lost"))
+                .thenReturn(ImmutableList.of());
+        when(mockNotificationsService.listRegistrations("healthCode1")).thenReturn(ImmutableList.of());
+
+        String jobId = service.startFanOut(STUDY_ID, REQUEST).getJobId();
+        NotificationFanOutJob job = service.getJob(STUDY_ID, jobId);
+        assertEquals(NotificationFanOutJob.Status.FAILED, job.getStatus());
+        assertTrue(job.getMessage().contains("connection lost"));
+
+        // Another server only shares the job store, which has the job's resume position.
+        NotificationFanOutService otherService = makeService();
+        NotificationFanOutJob resumed = otherService.resumeFanOut(STUDY_ID, jobId);
+        assertEquals(NotificationFanOutJob.Status.RUNNING, resumed.getStatus());
+
+        job = service.getJob(STUDY_ID, jobId);
+        assertEquals(NotificationFanOutJob.Status.SUCCEEDED, job.getStatus());
+        assertNull(job.getMessage());
+        // The first page isn't read again.
+        verify(mockRosterDao).getSegmentPage(any(), any(), any(), any(), isNull(), isNull(), anyInt());
+        verify(mockLockDao).releaseLock(NotificationFanOutJob.class, jobId, "lock-id");
+    }
+
+    @Test
+    public void resumeSkipsNotifiedParticipants() {
+        mockJobStore();
+        mockLock();
+        mockPublish(null);
+        when(mockRosterDao.getSegmentPage(any(), any(), any(), any(), isNull(), isNull(), anyInt()))
+                .thenReturn(ImmutableList.of(new SegmentMember("id1", CREATED_ON, "healthCode1"),
+                        new SegmentMember("id2", CREATED_ON, "healthCode2"),
+                        new SegmentMember("id3", CREATED_ON, "healthCode3")));
+        when(mockNotificationsService.listRegistrations("healthCode1")).thenReturn(
+                ImmutableList.of(makeRegistration("guid1", "iPhone OS")));
+        when(mockNotificationsService.listRegistrations("healthCode2"))
+                .thenThrow(new RuntimeException("throttled"))
+                .thenReturn(ImmutableList.of(makeRegistration("guid2", "iPhone OS")));
+        when(mockNotificationsService.listRegistrations("healthCode3")).thenReturn(
+                ImmutableList.of(makeRegistration("guid3", "iPhone OS")));
+
+        String jobId = service.startFanOut(STUDY_ID, REQUEST).getJobId();
+        assertEquals(NotificationFanOutJob.Status.FAILED, service.getJob(STUDY_ID, jobId).getStatus());
+
+        service.resumeFanOut(STUDY_ID, jobId);
+        NotificationFanOutJob job = service.getJob(STUDY_ID, jobId);
+        assertEquals(NotificationFanOutJob.Status.SUCCEEDED, job.getStatus());
+        assertEquals(3, job.getParticipantCount());
+        assertEquals(3, job.getPlatformCounts().get("iPhone OS").getSucceeded());
+
+        // Participants notified before the failure aren't notified again.
+        ArgumentCaptor<PublishRequest> requestCaptor = ArgumentCaptor.forClass(PublishRequest.class);
+        verify(mockSnsClient, times(3)).publish(requestCaptor.capture());
+        assertEquals(ImmutableSet.of("guid1Endpoint", "guid2Endpoint", "guid3Endpoint"), requestCaptor
+                .getAllValues().stream().map(PublishRequest::getTargetArn).collect(Collectors.toSet()));
+        verify(mockRosterDao, times(2)).getSegmentPage(any(), any(), any(), any(), isNull(), isNull(), anyInt());
+    }
+
+    @Test
+    public void fanOutLimitedToCallerSubstudies() {
+        mockJobStore();
+        BridgeUtils.setRequestContext(new RequestContext.Builder()
+                .withCallerSubstudies(ImmutableSet.of("substudyA", "substudyB")).build());
+
+        NotificationFanOutJob job = service.startFanOut(STUDY_ID, new NotificationFanOutRequest(
+                TestUtils.getNotificationMessage(), null, null, ImmutableSet.of("substudyA", "substudyC")));
+        assertEquals(ImmutableSet.of("substudyA"), job.getSubstudyIds());
+        verify(mockRosterDao).getSegmentPage(TestConstants.TEST_STUDY_IDENTIFIER, ImmutableSet.of(),
+                ImmutableSet.of(), ImmutableSet.of("substudyA"), null, null, NotificationFanOutService.PAGE_SIZE);
+
+        // A request without substudies is limited to all of the caller's substudies.
+        job = service.startFanOut(STUDY_ID, new NotificationFanOutRequest(TestUtils.getNotificationMessage(), null,
+                null, null));
+        assertEquals(ImmutableSet.of("substudyA", "substudyB"), job.getSubstudyIds());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void fanOutOutsideCallerSubstudies() {
+        BridgeUtils.setRequestContext(new RequestContext.Builder()
+                .withCallerSubstudies(ImmutableSet.of("substudyB")).build());
+
+        service.startFanOut(STUDY_ID, REQUEST);
+    }
+
+    @Test
+    public void publicJobLeavesOutScopeAndResumePosition() throws Exception {
+        mockJobStore();
+        NotificationFanOutJob job = service.startFanOut(STUDY_ID, REQUEST);
+
+        // The stored job keeps everything needed to resume it.
+        JsonNode storedNode = BridgeObjectMapper.get().readTree(jobStore.values().iterator().next());
+        assertEquals(TestConstants.TEST_STUDY_IDENTIFIER, storedNode.get("studyId").textValue());
+        assertTrue(storedNode.has("request"));
+
+        JsonNode publicNode = BridgeObjectMapper.get().readTree(
+                NotificationFanOutJob.PUBLIC_JOB_WRITER.writeValueAsString(service.getJob(STUDY_ID, job.getJobId())));
+        assertEquals(job.getJobId(), publicNode.get("jobId").textValue());
+        assertFalse(publicNode.has("studyId"));
+        assertFalse(publicNode.has("substudyIds"));
+        assertFalse(publicNode.has("request"));
+        assertFalse(publicNode.has("notifiedIds"));
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void getJobOfOtherSubstudyFromSubstudyCaller() {
+        mockJobStore();
+        NotificationFanOutJob job = service.startFanOut(STUDY_ID, REQUEST);
+
+        BridgeUtils.setRequestContext(new RequestContext.Builder()
+                .withCallerSubstudies(ImmutableSet.of("substudyB")).build());
+        service.getJob(STUDY_ID, job.getJobId());
+    }
+
+    @Test
+    public void resumeSucceededFanOut() {
+        mockJobStore();
+        mockLock();
+        NotificationFanOutJob job = service.startFanOut(STUDY_ID, REQUEST);
+        try {
+            service.resumeFanOut(STUDY_ID, job.getJobId());
+            throw new AssertionError("Expected BadRequestException");
+        } catch (BadRequestException ex) {
+            // expected
+        }
+        // The lock is released even though the resume was rejected.
+        verify(mockLockDao).releaseLock(NotificationFanOutJob.class, job.getJobId(), "lock-id");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void startFanOutRequiresMessage() {
+        service.startFanOut(STUDY_ID, new NotificationFanOutRequest(null, null, null, null));
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void getJobFromOtherStudy() {
+        mockJobStore();
+        NotificationFanOutJob job = service.startFanOut(STUDY_ID, REQUEST);
+        service.getJob(new StudyIdentifierImpl("other-study"), job.getJobId());
+    }
+
+    private NotificationFanOutService makeService() {
+        NotificationFanOutService newService = new NotificationFanOutService();
+        newService.setParticipantRosterDao(mockRosterDao);
+        newService.setNotificationsService(mockNotificationsService);
+        newService.setSnsClient(mockSnsClient);
+        newService.setCacheProvider(mockCacheProvider);
+        newService.setLockDao(mockLockDao);
+        newService.setJobExecutorService(MoreExecutors.newDirectExecutorService());
+        newService.setPublishExecutorService(MoreExecutors.newDirectExecutorService());
+        newService.setPublishRateLimiter(RateLimiter.create(Double.MAX_VALUE));
+        return newService;
+    }
+
+    // The job store is shared by every server, so it's a map behind the mock cache provider.
+    private void mockJobStore() {
+        when(mockCacheProvider.getObject(any(), eq(String.class)))
+                .thenAnswer(invocation -> jobStore.get(invocation.getArgument(0).toString()));
+        doAnswer(invocation -> jobStore.put(invocation.getArgument(0).toString(), invocation.getArgument(1)))
+                .when(mockCacheProvider).setObject(any(), anyString(), anyInt());
+    }
+
+    private void mockLock() {
+        when(mockLockDao.acquireLock(eq(NotificationFanOutJob.class), anyString(),
+                eq(NotificationFanOutService.LOCK_EXPIRE_SECONDS))).thenReturn("lock-id");
+    }
+
+    // Publishes to the failing endpoint (if any) throw, as SNS does for a disabled endpoint.
+    private void mockPublish(String failingEndpoint) {
+        when(mockSnsClient.publish(any(PublishRequest.class))).thenAnswer(invocation -> {
+            PublishRequest request = invocation.getArgument(0);
+            if (request.getTargetArn().equals(failingEndpoint)) {
+                throw new AmazonServiceException("Endpoint is disabled");
+            }
+            return new PublishResult();
+        });
+    }
+
+    private static NotificationRegistration makeRegistration(String guid, String osName) {
+        NotificationRegistration registration = TestUtils.getNotificationRegistration();
+        registration.setGuid(guid);
+        registration.setEndpoint(guid + "Endpoint");
+        registration.setOsName(osName);
+        registration.setProtocol(NotificationProtocol.APPLICATION);
+        return registration;
+    }
+}
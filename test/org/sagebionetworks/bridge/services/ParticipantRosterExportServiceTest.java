@@ -0,0 +1,363 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.dao.ParticipantRosterDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.file.LocalFileStore;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.AccountStatus;
+import org.sagebionetworks.bridge.models.accounts.ParticipantRosterEntry;
+import org.sagebionetworks.bridge.models.accounts.RosterExportJob;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ParticipantRosterExportServiceTest {
+    private static final String BUCKET = "roster-export-bucket";
+    private static final StudyIdentifier STUDY = new StudyIdentifierImpl(TestConstants.TEST_STUDY_IDENTIFIER);
+    private static final String STUDY_ID = TestConstants.TEST_STUDY_IDENTIFIER;
+    private static final DateTime CREATED_ON = DateTime.parse("2018-01-01T00:00:00.000Z");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Mock
+    private ParticipantRosterDao mockRosterDao;
+
+    @Mock
+    private CacheProvider mockCacheProvider;
+
+    @Mock
+    private AmazonS3Client mockS3Client;
+
+    @Mock
+    private BridgeConfig mockBridgeConfig;
+
+    private Map<String, String> jobStore;
+    private byte[] uploadedBytes;
+    private Path fileStoreDir;
+    private ParticipantRosterExportService service;
+
+    @Before
+    public void before() throws IOException {
+        fileStoreDir = tempFolder.newFolder().toPath();
+        LocalFileStore fileStore = new LocalFileStore();
+        fileStore.setRootDir(fileStoreDir);
+
+        // The job store is shared by every server, so it's a map behind the mock cache provider.
+        jobStore = new HashMap<>();
+        when(mockCacheProvider.getObject(any(), eq(String.class)))
+                .thenAnswer(invocation -> jobStore.get(invocation.getArgument(0).toString()));
+        doAnswer(invocation -> jobStore.put(invocation.getArgument(0).toString(), invocation.getArgument(1)))
+                .when(mockCacheProvider).setObject(any(), anyString(), anyInt());
+
+        service = new ParticipantRosterExportService();
+        service.setParticipantRosterDao(mockRosterDao);
+        service.setLocalFileStore(fileStore);
+        service.setCacheProvider(mockCacheProvider);
+        service.setS3Client(mockS3Client);
+        service.setBridgeConfig(mockBridgeConfig);
+        service.setJobExecutorService(MoreExecutors.newDirectExecutorService());
+        service.setPartitionExecutorService(MoreExecutors.newDirectExecutorService());
+    }
+
+    @After
+    public void after() {
+        BridgeUtils.setRequestContext(RequestContext.NULL_INSTANCE);
+    }
+
+    @Test
+    public void partitionsSplitAtRowCountBoundaries() throws Exception {
+        mockUpload();
+        ParticipantRosterEntry boundary1 = makeEntry("id-1");
+        ParticipantRosterEntry boundary2 = makeEntry("id-2");
+        when(mockRosterDao.getPartitionBoundaries(STUDY_ID, ImmutableSet.of(),
+                ParticipantRosterExportService.PARTITION_COUNT)).thenReturn(ImmutableList.of(boundary1, boundary2));
+        when(mockRosterDao.getRosterPage(eq(STUDY_ID), any(), any(), any(), any(), any(), anyInt()))
+                .thenReturn(ImmutableList.of());
+
+        service.startExport(STUDY, RosterExportJob.Format.CSV);
+
+        // Each partition starts after the previous boundary and ends at its own.
+        verify(mockRosterDao).getRosterPage(STUDY_ID, ImmutableSet.of(), null, null, CREATED_ON, "id-1",
+                ParticipantRosterExportService.PAGE_SIZE);
+        verify(mockRosterDao).getRosterPage(STUDY_ID, ImmutableSet.of(), CREATED_ON, "id-1", CREATED_ON, "id-2",
+                ParticipantRosterExportService.PAGE_SIZE);
+        verify(mockRosterDao).getRosterPage(STUDY_ID, ImmutableSet.of(), CREATED_ON, "id-2", null, null,
+                ParticipantRosterExportService.PAGE_SIZE);
+    }
+
+    @Test
+    public void exportCsv() throws Exception {
+        mockUpload();
+        mockPresignedUrl();
+        ParticipantRosterEntry entry1 = new ParticipantRosterEntry("id-1", CREATED_ON, "First", "Last, Jr.",
+                "one@example.com", null, "ext-1", AccountStatus.ENABLED);
+        ParticipantRosterEntry entry2 = new ParticipantRosterEntry("id-2", CREATED_ON, null, null, null,
+                "+12065550100", null, AccountStatus.UNVERIFIED);
+        when(mockRosterDao.getPartitionBoundaries(any(), any(), anyInt())).thenReturn(ImmutableList.of());
+        when(mockRosterDao.getRosterPage(eq(STUDY_ID), any(), isNull(), isNull(), isNull(), isNull(), anyInt()))
+                .thenReturn(ImmutableList.of(entry1, entry2));
+
+        RosterExportJob job = service.startExport(STUDY, RosterExportJob.Format.CSV);
+        assertEquals(RosterExportJob.Status.PENDING, job.getStatus());
+
+        job = service.getJob(STUDY, job.getJobId());
+        assertEquals(RosterExportJob.Status.SUCCEEDED, job.getStatus());
+        assertEquals(2, job.getRowCount());
+        assertEquals("https://" + BUCKET + "/" + job.getFileName(), job.getUrl());
+
+        assertEquals(ImmutableList.of(ParticipantRosterExportService.CSV_HEADER,
+                "id-1," + CREATED_ON + ",First,\"Last, Jr.\",one@example.com,,ext-1,ENABLED",
+                "id-2," + CREATED_ON + ",,,,+12065550100,,UNVERIFIED"), readUploadedLines());
+
+        // Nothing is left on the local disk.
+        try (Stream<Path> fileStream = Files.list(fileStoreDir)) {
+            assertEquals(0, fileStream.count());
+        }
+    }
+
+    @Test
+    public void exportNdjsonPagesWithKeyset() throws Exception {
+        mockUpload();
+        ParticipantRosterEntry entry1 = makeEntry("id-1");
+        ParticipantRosterEntry entry2 = makeEntry("id-2");
+        List<ParticipantRosterEntry> fullPage = ImmutableList.copyOf(
+                Collections.nCopies(ParticipantRosterExportService.PAGE_SIZE - 1, entry1));
+        List<ParticipantRosterEntry> firstPage = ImmutableList.<ParticipantRosterEntry>builder().addAll(fullPage)
+                .add(entry2).build();
+
+        when(mockRosterDao.getPartitionBoundaries(any(), any(), anyInt())).thenReturn(ImmutableList.of());
+        when(mockRosterDao.getRosterPage(eq(STUDY_ID), any(), isNull(), isNull(), isNull(), isNull(), anyInt()))
+                .thenReturn(firstPage);
+        // The second page starts after the last entry of the first page.
+        when(mockRosterDao.getRosterPage(eq(STUDY_ID), any(), eq(CREATED_ON), eq("id-2"), isNull(), isNull(),
+                anyInt())).thenReturn(ImmutableList.of(entry2));
+
+        RosterExportJob job = service.startExport(STUDY, RosterExportJob.Format.NDJSON);
+        mockPresignedUrl();
+        job = service.getJob(STUDY, job.getJobId());
+        assertEquals(RosterExportJob.Status.SUCCEEDED, job.getStatus());
+        assertEquals(ParticipantRosterExportService.PAGE_SIZE + 1, job.getRowCount());
+
+        List<String> lineList = readUploadedLines();
+        assertEquals(ParticipantRosterExportService.PAGE_SIZE + 1, lineList.size());
+        JsonNode lastNode = BridgeObjectMapper.get().readTree(lineList.get(lineList.size() - 1));
+        assertEquals("id-2", lastNode.get("id").textValue());
+    }
+
+    @Test
+    public void exportEmptyRoster() throws Exception {
+        mockUpload();
+        when(mockRosterDao.getPartitionBoundaries(any(), any(), anyInt())).thenReturn(ImmutableList.of());
+        when(mockRosterDao.getRosterPage(any(), any(), any(), any(), any(), any(), anyInt()))
+                .thenReturn(ImmutableList.of());
+
+        service.startExport(STUDY, RosterExportJob.Format.CSV);
+        assertEquals(ImmutableList.of(ParticipantRosterExportService.CSV_HEADER), readUploadedLines());
+    }
+
+    @Test
+    public void exportFailure() throws Exception {
+        when(mockRosterDao.getPartitionBoundaries(any(), any(), anyInt())).thenReturn(ImmutableList.of());
+        when(mockRosterDao.getRosterPage(any(), any(), any(), any(), any(), any(), anyInt()))
+                .thenThrow(new RuntimeException("connection lost"));
+
+        RosterExportJob job = service.startExport(STUDY, RosterExportJob.Format.CSV);
+        job = service.getJob(STUDY, job.getJobId());
+        assertEquals(RosterExportJob.Status.FAILED, job.getStatus());
+        assertTrue(job.getMessage().contains("connection lost"));
+        assertNull(job.getUrl());
+        verify(mockS3Client, never()).putObject(any(PutObjectRequest.class));
+        try (Stream<Path> fileStream = Files.list(fileStoreDir)) {
+            assertEquals(0, fileStream.count());
+        }
+    }
+
+    @Test
+    public void exportLimitedToCallerSubstudies() throws Exception {
+        mockUpload();
+        BridgeUtils.setRequestContext(new RequestContext.Builder()
+                .withCallerSubstudies(ImmutableSet.of("substudyA")).build());
+        when(mockRosterDao.getPartitionBoundaries(any(), any(), anyInt())).thenReturn(ImmutableList.of());
+        when(mockRosterDao.getRosterPage(any(), any(), any(), any(), any(), any(), anyInt()))
+                .thenReturn(ImmutableList.of());
+
+        // The export thread has no request context, so the caller's substudies are kept with the job.
+        RosterExportJob job = service.startExport(STUDY, RosterExportJob.Format.CSV);
+        assertEquals(ImmutableSet.of("substudyA"), job.getSubstudyIds());
+        verify(mockRosterDao).getPartitionBoundaries(STUDY_ID, ImmutableSet.of("substudyA"),
+                ParticipantRosterExportService.PARTITION_COUNT);
+        verify(mockRosterDao).getRosterPage(eq(STUDY_ID), eq(ImmutableSet.of("substudyA")), isNull(), isNull(),
+                isNull(), isNull(), anyInt());
+    }
+
+    @Test
+    public void jobIsVisibleFromOtherServers() throws Exception {
+        mockUpload();
+        mockPresignedUrl();
+        when(mockRosterDao.getPartitionBoundaries(any(), any(), anyInt())).thenReturn(ImmutableList.of());
+        when(mockRosterDao.getRosterPage(any(), any(), any(), any(), any(), any(), anyInt()))
+                .thenReturn(ImmutableList.of());
+        RosterExportJob job = service.startExport(STUDY, RosterExportJob.Format.CSV);
+
+        // Another server shares only the job store and S3.
+        ParticipantRosterExportService otherService = new ParticipantRosterExportService();
+        otherService.setCacheProvider(mockCacheProvider);
+        otherService.setS3Client(mockS3Client);
+        otherService.setBridgeConfig(mockBridgeConfig);
+
+        RosterExportJob otherJob = otherService.getJob(STUDY, job.getJobId());
+        assertEquals(RosterExportJob.Status.SUCCEEDED, otherJob.getStatus());
+        assertEquals(STUDY_ID, otherJob.getStudyId());
+        assertEquals("https://" + BUCKET + "/" + job.getFileName(),
+                otherService.getExportUrl(STUDY, job.getJobId()));
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void getJobOfWholeStudyFromSubstudyCaller() {
+        RosterExportJob job = savePendingJob();
+
+        BridgeUtils.setRequestContext(new RequestContext.Builder()
+                .withCallerSubstudies(ImmutableSet.of("substudyA")).build());
+        service.getJob(STUDY, job.getJobId());
+    }
+
+    @Test
+    public void getJob() throws Exception {
+        RosterExportJob job = savePendingJob();
+
+        // The stored job keeps the study and substudies, but never a URL, which is presigned on every read.
+        JsonNode storedNode = BridgeObjectMapper.get().readTree(jobStore.values().iterator().next());
+        assertEquals(STUDY_ID, storedNode.get("studyId").textValue());
+        assertTrue(storedNode.has("substudyIds"));
+        assertFalse(storedNode.has("url"));
+
+        RosterExportJob loadedJob = service.getJob(STUDY, job.getJobId());
+        assertEquals(job.getJobId(), loadedJob.getJobId());
+        assertEquals(RosterExportJob.Status.PENDING, loadedJob.getStatus());
+        assertNull(loadedJob.getUrl());
+
+        JsonNode publicNode = BridgeObjectMapper.get().readTree(
+                RosterExportJob.PUBLIC_JOB_WRITER.writeValueAsString(loadedJob));
+        assertFalse(publicNode.has("studyId"));
+        assertFalse(publicNode.has("substudyIds"));
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void getJobFromOtherStudy() {
+        RosterExportJob job = savePendingJob();
+        service.getJob(new StudyIdentifierImpl("other-study"), job.getJobId());
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void getExpiredJob() {
+        savePendingJob();
+        service.getJob(STUDY, "expired-job-id");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getExportUrlOfUnfinishedJob() {
+        RosterExportJob job = savePendingJob();
+        service.getExportUrl(STUDY, job.getJobId());
+    }
+
+    // Saves a job directly, as if another server had started it and not yet run it.
+    private RosterExportJob savePendingJob() {
+        RosterExportJob job = new RosterExportJob("job-id", STUDY_ID, ImmutableSet.of(), RosterExportJob.Format.CSV,
+                CREATED_ON);
+        job.setUrl("https://example.com/");
+        try {
+            mockCacheProvider.setObject(CacheKey.viewKey(RosterExportJob.class, job.getJobId()),
+                    RosterExportJob.STORED_JOB_WRITER.writeValueAsString(job), 60);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return job;
+    }
+
+    // The local file is deleted after the upload, so the mock reads it during the upload.
+    private void mockUpload() {
+        when(mockBridgeConfig.getProperty(ParticipantRosterExportService.EXPORT_BUCKET_PROPERTY)).thenReturn(BUCKET);
+        when(mockS3Client.putObject(any(PutObjectRequest.class))).thenAnswer(invocation -> {
+            PutObjectRequest request = invocation.getArgument(0);
+            assertEquals(BUCKET, request.getBucketName());
+            assertEquals("application/gzip", request.getMetadata().getContentType());
+            uploadedBytes = Files.readAllBytes(request.getFile().toPath());
+            return new PutObjectResult();
+        });
+    }
+
+    private void mockPresignedUrl() {
+        when(mockBridgeConfig.getProperty(ParticipantRosterExportService.EXPORT_BUCKET_PROPERTY)).thenReturn(BUCKET);
+        when(mockS3Client.generatePresignedUrl(eq(BUCKET), anyString(), any(Date.class), eq(HttpMethod.GET)))
+                .thenAnswer(invocation -> new URL("https://" + BUCKET + "/" + invocation.getArgument(1)));
+    }
+
+    private List<String> readUploadedLines() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+                new ByteArrayInputStream(uploadedBytes)), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+
+    private static ParticipantRosterEntry makeEntry(String id) {
+        return new ParticipantRosterEntry(id, CREATED_ON, null, null, id + "@example.com", null, null,
+                AccountStatus.ENABLED);
+    }
+}
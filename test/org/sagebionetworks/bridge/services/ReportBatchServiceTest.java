@@ -0,0 +1,184 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.dao.ReportBatchDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
+import org.sagebionetworks.bridge.models.reports.ReportData;
+import org.sagebionetworks.bridge.models.reports.ReportDataKey;
+import org.sagebionetworks.bridge.models.reports.ReportIndex;
+import org.sagebionetworks.bridge.models.reports.ReportType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReportBatchServiceTest {
+    private static final String IDENTIFIER = "report-id";
+
+    @Mock
+    private ReportBatchDao mockDao;
+
+    @Captor
+    private ArgumentCaptor<List<ReportData>> reportDataListCaptor;
+
+    @Captor
+    private ArgumentCaptor<List<ReportIndex>> indexListCaptor;
+
+    private ReportBatchService service;
+
+    @Before
+    public void before() {
+        service = new ReportBatchService();
+        service.setReportBatchDao(mockDao);
+        BridgeUtils.setRequestContext(RequestContext.NULL_INSTANCE);
+    }
+
+    @After
+    public void after() {
+        BridgeUtils.setRequestContext(RequestContext.NULL_INSTANCE);
+    }
+
+    @Test
+    public void saveStudyReports() {
+        BridgeUtils.setRequestContext(new RequestContext.Builder()
+                .withCallerSubstudies(TestConstants.USER_SUBSTUDY_IDS).build());
+        List<ReportData> reportDataList = ImmutableList.of(createReport("2018-01-01", "a"),
+                createReport("2018-01-02", "b"), createReport("2018-01-01", "c"));
+
+        int count = service.saveStudyReports(TEST_STUDY, IDENTIFIER, reportDataList);
+        assertEquals(2, count);
+
+        ReportDataKey key = new ReportDataKey.Builder().withStudyIdentifier(TEST_STUDY)
+                .withReportType(ReportType.STUDY).withIdentifier(IDENTIFIER).build();
+
+        // The later record for the same date replaces the earlier one.
+        verify(mockDao).saveReportData(reportDataListCaptor.capture());
+        List<ReportData> savedList = reportDataListCaptor.getValue();
+        assertEquals(2, savedList.size());
+        assertEquals(key.getKeyString(), savedList.get(0).getKey());
+        assertEquals("c", savedList.get(0).getData().get("field").textValue());
+        assertEquals("2018-01-02", savedList.get(1).getDate());
+
+        verify(mockDao).addIndicesIfMissing(indexListCaptor.capture());
+        ReportIndex index = indexListCaptor.getValue().get(0);
+        assertEquals(key.getIndexKeyString(), index.getKey());
+        assertEquals(IDENTIFIER, index.getIdentifier());
+        assertEquals(TestConstants.USER_SUBSTUDY_IDS, index.getSubstudyIds());
+    }
+
+    @Test
+    public void saveParticipantReports() {
+        Map<String, List<ReportData>> reportDataByHealthCode = new LinkedHashMap<>();
+        reportDataByHealthCode.put("healthCode1", ImmutableList.of(createReport("2018-01-01", "a"),
+                createReport("2018-01-02", "b")));
+        reportDataByHealthCode.put("healthCode2", ImmutableList.of(createReport("2018-01-01", "c")));
+
+        int count = service.saveParticipantReports(TEST_STUDY, IDENTIFIER, reportDataByHealthCode);
+        assertEquals(3, count);
+
+        ReportDataKey key1 = new ReportDataKey.Builder().withStudyIdentifier(TEST_STUDY)
+                .withReportType(ReportType.PARTICIPANT).withIdentifier(IDENTIFIER).withHealthCode("healthCode1")
+                .build();
+        ReportDataKey key2 = new ReportDataKey.Builder().withStudyIdentifier(TEST_STUDY)
+                .withReportType(ReportType.PARTICIPANT).withIdentifier(IDENTIFIER).withHealthCode("healthCode2")
+                .build();
+
+        // One batch write for all participants.
+        verify(mockDao).saveReportData(reportDataListCaptor.capture());
+        List<ReportData> savedList = reportDataListCaptor.getValue();
+        assertEquals(3, savedList.size());
+        assertEquals(key1.getKeyString(), savedList.get(0).getKey());
+        assertEquals(key1.getKeyString(), savedList.get(1).getKey());
+        assertEquals(key2.getKeyString(), savedList.get(2).getKey());
+
+        // And one index for the report.
+        verify(mockDao).addIndicesIfMissing(indexListCaptor.capture());
+        List<ReportIndex> indexList = indexListCaptor.getValue();
+        assertEquals(1, indexList.size());
+        assertEquals(key1.getIndexKeyString(), indexList.get(0).getKey());
+    }
+
+    @Test(expected = InvalidEntityException.class)
+    public void saveParticipantReportsRequiresHealthCode() {
+        service.saveParticipantReports(TEST_STUDY, IDENTIFIER, ImmutableMap.of(" ",
+                ImmutableList.of(createReport("2018-01-01", "a"))));
+    }
+
+    @Test(expected = InvalidEntityException.class)
+    public void saveStudyReportsRequiresIdentifier() {
+        service.saveStudyReports(TEST_STUDY, null, ImmutableList.of(createReport("2018-01-01", "a")));
+    }
+
+    @Test
+    public void saveStudyReportsRequiresDate() {
+        ReportData reportData = createReport("2018-01-01", "a");
+        reportData.setLocalDate(null);
+        try {
+            service.saveStudyReports(TEST_STUDY, IDENTIFIER, ImmutableList.of(reportData));
+            fail("Should have thrown exception");
+        } catch (InvalidEntityException ex) {
+            verify(mockDao, never()).saveReportData(any());
+        }
+    }
+
+    @Test
+    public void saveStudyReportsRequiresData() {
+        ReportData reportData = createReport("2018-01-01", "a");
+        reportData.setData(null);
+        try {
+            service.saveStudyReports(TEST_STUDY, IDENTIFIER, ImmutableList.of(createReport("2018-01-02", "b"),
+                    reportData));
+            fail("Should have thrown exception");
+        } catch (InvalidEntityException ex) {
+            verify(mockDao, never()).saveReportData(any());
+        }
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void saveStudyReportsRejectsNullRecord() {
+        service.saveStudyReports(TEST_STUDY, IDENTIFIER, Collections.singletonList(null));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void saveStudyReportsRequiresRecords() {
+        service.saveStudyReports(TEST_STUDY, IDENTIFIER, ImmutableList.of());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void saveStudyReportsTooMany() {
+        service.saveStudyReports(TEST_STUDY, IDENTIFIER, Collections.nCopies(ReportBatchService.MAX_BATCH_SIZE + 1,
+                createReport("2018-01-01", "a")));
+    }
+
+    private static ReportData createReport(String date, String value) {
+        ReportData reportData = ReportData.create();
+        reportData.setLocalDate(LocalDate.parse(date));
+        reportData.setData(JsonNodeFactory.instance.objectNode().put("field", value));
+        return reportData;
+    }
+}
@@ -0,0 +1,136 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY_IDENTIFIER;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.cache.ViewCache;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.ReportTypeResourceList;
+import org.sagebionetworks.bridge.models.ResourceList;
+import org.sagebionetworks.bridge.models.reports.ReportIndex;
+import org.sagebionetworks.bridge.models.reports.ReportType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReportIndexCacheTest {
+    private static final String REPORT_ID = "report-id";
+    private static final String OTHER_REPORT_ID = "other-report-id";
+    private static final CacheKey CACHE_KEY = CacheKey.viewKey(ReportIndex.class, TEST_STUDY_IDENTIFIER,
+            ReportType.STUDY.name());
+
+    @Mock
+    private ReportService mockReportService;
+
+    @Mock
+    private CacheProvider mockCacheProvider;
+
+    private ReportIndexCache cache;
+
+    @Before
+    public void before() {
+        // With a mock cache provider, the view cache never has a hit, so only the local cache is tested.
+        ViewCache viewCache = new ViewCache();
+        viewCache.setCacheProvider(mockCacheProvider);
+        viewCache.setObjectMapper(BridgeObjectMapper.get());
+        viewCache.setCachePeriod(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS);
+
+        cache = new ReportIndexCache();
+        cache.setReportService(mockReportService);
+        cache.setViewCache(viewCache);
+    }
+
+    @Test
+    public void getReportIndicesIsCached() {
+        doReturn(makeIndices(REPORT_ID)).when(mockReportService).getReportIndices(TEST_STUDY, ReportType.STUDY);
+
+        ReportTypeResourceList<ReportIndex> indices = cache.getReportIndices(TEST_STUDY, ReportType.STUDY);
+        assertEquals(1, indices.getItems().size());
+        assertEquals(REPORT_ID, indices.getItems().get(0).getIdentifier());
+        assertTrue(indices.getItems().get(0).isPublic());
+
+        cache.getReportIndices(TEST_STUDY, ReportType.STUDY);
+        verify(mockReportService).getReportIndices(TEST_STUDY, ReportType.STUDY);
+    }
+
+    @Test
+    public void getReportIndex() {
+        doReturn(makeIndices(REPORT_ID)).when(mockReportService).getReportIndices(TEST_STUDY, ReportType.STUDY);
+
+        ReportIndex index = cache.getReportIndex(TEST_STUDY, ReportType.STUDY, REPORT_ID);
+        assertEquals(REPORT_ID, index.getIdentifier());
+
+        assertNull(cache.getReportIndex(TEST_STUDY, ReportType.STUDY, OTHER_REPORT_ID));
+    }
+
+    @Test
+    public void reportSavedForExistingReportDoesNotReload() {
+        doReturn(makeIndices(REPORT_ID)).when(mockReportService).getReportIndices(TEST_STUDY, ReportType.STUDY);
+
+        cache.reportSaved(TEST_STUDY, ReportType.STUDY, REPORT_ID);
+        cache.reportSaved(TEST_STUDY, ReportType.STUDY, REPORT_ID);
+
+        verify(mockReportService).getReportIndices(TEST_STUDY, ReportType.STUDY);
+    }
+
+    @Test
+    public void reportSavedForNewReportReloads() {
+        doReturn(makeIndices(REPORT_ID), makeIndices(REPORT_ID, OTHER_REPORT_ID)).when(mockReportService)
+                .getReportIndices(TEST_STUDY, ReportType.STUDY);
+
+        cache.reportSaved(TEST_STUDY, ReportType.STUDY, OTHER_REPORT_ID);
+
+        assertEquals(OTHER_REPORT_ID,
+                cache.getReportIndex(TEST_STUDY, ReportType.STUDY, OTHER_REPORT_ID).getIdentifier());
+        verify(mockReportService, times(2)).getReportIndices(TEST_STUDY, ReportType.STUDY);
+    }
+
+    @Test
+    public void reloadReplacesCachedIndices() throws Exception {
+        ViewCache mockViewCache = mock(ViewCache.class);
+        cache.setViewCache(mockViewCache);
+        when(mockViewCache.getView(eq(CACHE_KEY), any())).thenReturn(
+                BridgeObjectMapper.get().writeValueAsString(makeIndices(REPORT_ID)),
+                BridgeObjectMapper.get().writeValueAsString(makeIndices(OTHER_REPORT_ID)));
+
+        assertEquals(REPORT_ID, cache.getReportIndices(TEST_STUDY, ReportType.STUDY).getItems().get(0)
+                .getIdentifier());
+
+        cache.reload(TEST_STUDY, ReportType.STUDY);
+
+        verify(mockViewCache).removeView(CACHE_KEY);
+        assertEquals(OTHER_REPORT_ID, cache.getReportIndices(TEST_STUDY, ReportType.STUDY).getItems().get(0)
+                .getIdentifier());
+        verify(mockViewCache, times(2)).getView(eq(CACHE_KEY), any());
+    }
+
+    private static ReportTypeResourceList<ReportIndex> makeIndices(String... identifiers) {
+        ImmutableList.Builder<ReportIndex> builder = ImmutableList.builder();
+        for (String identifier : identifiers) {
+            ReportIndex index = ReportIndex.create();
+            index.setIdentifier(identifier);
+            index.setPublic(true);
+            builder.add(index);
+        }
+        return new ReportTypeResourceList<>(builder.build())
+                .withRequestParam(ResourceList.REPORT_TYPE, ReportType.STUDY);
+    }
+}
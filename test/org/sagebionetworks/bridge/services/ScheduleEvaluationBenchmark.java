@@ -0,0 +1,133 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY_IDENTIFIER;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.models.ClientInfo;
+import org.sagebionetworks.bridge.models.schedules.ScheduleContext;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationParticipant;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationRequest;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationResult;
+import org.sagebionetworks.bridge.models.schedules.SchedulePlan;
+import org.sagebionetworks.bridge.models.studies.Study;
+
+/**
+ * Compares evaluating the schedules of a synthetic study participant by participant, as a worker emulating each
+ * participant would, with evaluating them once per signature. This generates schedule.benchmark.users participants
+ * (100,000 if the property is set without a value), enrolled over 60 days in 3 time zones with 4 combinations of
+ * data groups, and runs both in memory, for example:
+ *
+ * <pre>sbt -Dschedule.benchmark.users=100000 "testOnly *ScheduleEvaluationBenchmark"</pre>
+ *
+ * It's skipped unless the property is set.
+ */
+public class ScheduleEvaluationBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleEvaluationBenchmark.class);
+
+    private static final String USER_COUNT_PROPERTY = "schedule.benchmark.users";
+    private static final int DEFAULT_USER_COUNT = 100000;
+    private static final int ENROLLMENT_DAYS = 60;
+    private static final List<DateTimeZone> TIME_ZONES = ImmutableList.of(DateTimeZone.forOffsetHours(-8),
+            DateTimeZone.forOffsetHours(-5), DateTimeZone.UTC);
+    private static final List<Set<String>> DATA_GROUPS = ImmutableList.of(ImmutableSet.of(),
+            ImmutableSet.of("group1"), ImmutableSet.of("group2"), ImmutableSet.of("group1", "group2"));
+    private static final DateTime STARTS_ON = DateTime.parse("2018-06-01T00:00:00.000Z");
+    private static final DateTime ENDS_ON = STARTS_ON.plusDays(14);
+
+    private List<ScheduleEvaluationParticipant> participantList;
+    private List<SchedulePlan> plans;
+    private ExecutorService executorService;
+    private ScheduleEvaluationService service;
+
+    @Before
+    public void before() {
+        String userCountString = System.getProperty(USER_COUNT_PROPERTY);
+        assumeTrue(userCountString != null);
+        int userCount = userCountString.isEmpty() ? DEFAULT_USER_COUNT : Integer.parseInt(userCountString);
+
+        Random random = new Random(0);
+        participantList = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            DateTimeZone timeZone = TIME_ZONES.get(random.nextInt(TIME_ZONES.size()));
+            DateTime enrolledOn = STARTS_ON.minusDays(random.nextInt(ENROLLMENT_DAYS))
+                    .minusMinutes(random.nextInt(24 * 60)).withZone(timeZone);
+            participantList.add(new ScheduleEvaluationParticipant("user-" + i, "healthCode-" + i,
+                    DATA_GROUPS.get(random.nextInt(DATA_GROUPS.size())), null, timeZone.getID(), enrolledOn));
+        }
+
+        plans = TestUtils.getSchedulePlans(TEST_STUDY);
+        SchedulePlanService mockSchedulePlanService = mock(SchedulePlanService.class);
+        when(mockSchedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY, false))
+                .thenReturn(plans);
+
+        executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        service = new ScheduleEvaluationService();
+        service.setSchedulePlanService(mockSchedulePlanService);
+        service.setEvaluationExecutorService(executorService);
+    }
+
+    @After
+    public void after() {
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void compareUserByUserAndGroupedEvaluation() {
+        long userStartNanos = System.nanoTime();
+        long userActivityCount = 0;
+        for (ScheduleEvaluationParticipant participant : participantList) {
+            DateTimeZone timeZone = DateTimeZone.forID(participant.getTimeZone());
+            ScheduleContext context = new ScheduleContext.Builder()
+                    .withStudyIdentifier(TEST_STUDY)
+                    .withClientInfo(ClientInfo.UNKNOWN_CLIENT)
+                    .withHealthCode(participant.getHealthCode())
+                    .withUserDataGroups(participant.getDataGroups())
+                    .withInitialTimeZone(timeZone)
+                    .withAccountCreatedOn(participant.getEnrolledOn())
+                    .withStartsOn(STARTS_ON.withZone(timeZone))
+                    .withEndsOn(ENDS_ON.withZone(timeZone))
+                    .withEvents(ImmutableMap.of(ScheduleEvaluationService.ENROLLMENT_EVENT,
+                            participant.getEnrolledOn())).build();
+            userActivityCount += TestUtils.runSchedulerForActivities(plans, context).size();
+        }
+        long userMillis = (System.nanoTime() - userStartNanos) / 1_000_000;
+
+        Study study = Study.create();
+        study.setIdentifier(TEST_STUDY_IDENTIFIER);
+        long groupStartNanos = System.nanoTime();
+        ScheduleEvaluationResult result = service.evaluateSchedules(study,
+                new ScheduleEvaluationRequest(STARTS_ON, ENDS_ON, participantList));
+        long groupMillis = (System.nanoTime() - groupStartNanos) / 1_000_000;
+
+        long groupActivityCount = result.getGroups().stream()
+                .mapToLong(group -> (long) group.getUserIds().size() * group.getActivities().size()).sum();
+        assertEquals(userActivityCount, groupActivityCount);
+        LOG.info(String.format("Schedules of %d participants: user by user %d ms, grouped %d ms in %d groups",
+                participantList.size(), userMillis, groupMillis, result.getGroupCount()));
+    }
+}
@@ -0,0 +1,225 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY_IDENTIFIER;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.dynamodb.DynamoSchedulePlan;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.models.ClientInfo;
+import org.sagebionetworks.bridge.models.Criteria;
+import org.sagebionetworks.bridge.models.schedules.Activity;
+import org.sagebionetworks.bridge.models.schedules.CriteriaScheduleStrategy;
+import org.sagebionetworks.bridge.models.schedules.Schedule;
+import org.sagebionetworks.bridge.models.schedules.ScheduleContext;
+import org.sagebionetworks.bridge.models.schedules.ScheduleCriteria;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationGroup;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationParticipant;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationRequest;
+import org.sagebionetworks.bridge.models.schedules.ScheduleEvaluationResult;
+import org.sagebionetworks.bridge.models.schedules.SchedulePlan;
+import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
+import org.sagebionetworks.bridge.models.schedules.SimpleScheduleStrategy;
+import org.sagebionetworks.bridge.models.studies.Study;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScheduleEvaluationServiceTest {
+    private static final DateTimeZone TIME_ZONE = DateTimeZone.forOffsetHours(-7);
+    private static final DateTime ENROLLED_ON = DateTime.parse("2018-03-01T09:30:00.000-07:00");
+    private static final DateTime STARTS_ON = DateTime.parse("2018-03-01T00:00:00.000-07:00");
+    private static final DateTime ENDS_ON = DateTime.parse("2018-03-08T23:59:59.000-07:00");
+    private static final Set<String> DATA_GROUPS = ImmutableSet.of("group1");
+
+    @Mock
+    private SchedulePlanService mockSchedulePlanService;
+
+    private Study study;
+
+    private ScheduleEvaluationService service;
+
+    @Before
+    public void before() {
+        study = Study.create();
+        study.setIdentifier(TEST_STUDY_IDENTIFIER);
+
+        service = new ScheduleEvaluationService();
+        service.setSchedulePlanService(mockSchedulePlanService);
+        service.setEvaluationExecutorService(MoreExecutors.newDirectExecutorService());
+    }
+
+    @Test
+    public void participantsWithTheSameSignatureShareOneGroup() {
+        List<SchedulePlan> plans = TestUtils.getSchedulePlans(TEST_STUDY);
+        when(mockSchedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY, false))
+                .thenReturn(plans);
+
+        ScheduleEvaluationResult result = service.evaluateSchedules(study, makeRequest(
+                makeParticipant("user-1", null, ENROLLED_ON),
+                makeParticipant("user-2", null, ENROLLED_ON.plusHours(2)),
+                makeParticipant("user-3", null, ENROLLED_ON.plusDays(1))));
+
+        assertEquals(3, result.getParticipantCount());
+        assertEquals(2, result.getGroupCount());
+        ScheduleEvaluationGroup group = result.getGroups().get(0);
+        assertEquals(ImmutableList.of("user-1", "user-2"), group.getUserIds());
+        assertEquals(DATA_GROUPS, group.getDataGroups());
+        assertEquals(TIME_ZONE.getID(), group.getTimeZone());
+        assertEquals(ENROLLED_ON.toLocalDate(), group.getEnrollmentDate());
+        assertEquals(ImmutableList.of("user-3"), result.getGroups().get(1).getUserIds());
+
+        // The plans schedule activities at a time of day, so the group gets what each user would get on their own.
+        assertFalse(group.getActivities().isEmpty());
+        assertEquals(getGuids(TestUtils.runSchedulerForActivities(plans, makeUserContext("healthCode", ENROLLED_ON))),
+                getGuids(group.getActivities()));
+        for (ScheduledActivity activity : group.getActivities()) {
+            assertNull(activity.getHealthCode());
+        }
+    }
+
+    @Test
+    public void abTestPlanSplitsGroupsByAssignedSchedule() {
+        SchedulePlan plan = TestUtils.getABTestSchedulePlan(TEST_STUDY);
+        when(mockSchedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY, false))
+                .thenReturn(ImmutableList.of(plan));
+
+        ImmutableList.Builder<ScheduleEvaluationParticipant> builder = ImmutableList.builder();
+        for (int i = 0; i < 20; i++) {
+            builder.add(makeParticipant("user-" + i, "healthCode-" + i, ENROLLED_ON));
+        }
+        ScheduleEvaluationResult result = service.evaluateSchedules(study,
+                new ScheduleEvaluationRequest(STARTS_ON, ENDS_ON, builder.build()));
+
+        assertEquals(20, result.getParticipantCount());
+        for (ScheduleEvaluationGroup group : result.getGroups()) {
+            Set<Schedule> assignedSchedules = group.getUserIds().stream()
+                    .map(userId -> plan.getStrategy().getScheduleForUser(plan,
+                            makeUserContext(userId.replace("user-", "healthCode-"), ENROLLED_ON)))
+                    .collect(Collectors.toSet());
+            assertEquals(1, assignedSchedules.size());
+        }
+    }
+
+    @Test
+    public void criteriaPlanUsesFirstMatchingSchedule() {
+        Criteria groupCriteria = Criteria.create();
+        groupCriteria.setAllOfGroups(DATA_GROUPS);
+        CriteriaScheduleStrategy strategy = new CriteriaScheduleStrategy();
+        strategy.addCriteria(new ScheduleCriteria(getSchedule(TestUtils.getActivity1()), groupCriteria));
+        strategy.addCriteria(new ScheduleCriteria(getSchedule(TestUtils.getActivity2()), Criteria.create()));
+        SchedulePlan plan = new DynamoSchedulePlan();
+        plan.setGuid("criteria-plan");
+        plan.setStudyKey(TEST_STUDY_IDENTIFIER);
+        plan.setStrategy(strategy);
+        when(mockSchedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY, false))
+                .thenReturn(ImmutableList.of(plan));
+
+        ScheduleEvaluationResult result = service.evaluateSchedules(study, makeRequest(
+                makeParticipant("user-1", null, ENROLLED_ON),
+                new ScheduleEvaluationParticipant("user-2", null, null, null, TIME_ZONE.getID(), ENROLLED_ON)));
+
+        assertEquals(2, result.getGroupCount());
+        for (ScheduledActivity activity : result.getGroups().get(0).getActivities()) {
+            assertEquals(TestUtils.getActivity1().getGuid(), activity.getActivity().getGuid());
+        }
+        for (ScheduledActivity activity : result.getGroups().get(1).getActivities()) {
+            assertEquals(TestUtils.getActivity2().getGuid(), activity.getActivity().getGuid());
+        }
+        assertFalse(result.getGroups().get(0).getActivities().isEmpty());
+        assertFalse(result.getGroups().get(1).getActivities().isEmpty());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void abTestPlanRequiresHealthCode() {
+        when(mockSchedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY, false))
+                .thenReturn(ImmutableList.of(TestUtils.getABTestSchedulePlan(TEST_STUDY)));
+
+        service.evaluateSchedules(study, makeRequest(makeParticipant("user-1", null, ENROLLED_ON)));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void invalidTimeZone() {
+        when(mockSchedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY, false))
+                .thenReturn(TestUtils.getSchedulePlans(TEST_STUDY));
+
+        service.evaluateSchedules(study, makeRequest(new ScheduleEvaluationParticipant("user-1", null, DATA_GROUPS,
+                null, "Not/A_Zone", ENROLLED_ON)));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void missingEnrolledOn() {
+        when(mockSchedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY, false))
+                .thenReturn(TestUtils.getSchedulePlans(TEST_STUDY));
+
+        service.evaluateSchedules(study, makeRequest(makeParticipant("user-1", null, null)));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void windowRequired() {
+        service.evaluateSchedules(study, new ScheduleEvaluationRequest(STARTS_ON, null,
+                ImmutableList.of(makeParticipant("user-1", null, ENROLLED_ON))));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void windowTooLong() {
+        service.evaluateSchedules(study, new ScheduleEvaluationRequest(STARTS_ON,
+                STARTS_ON.plusDays(ScheduleEvaluationService.MAX_WINDOW_DAYS + 1),
+                ImmutableList.of(makeParticipant("user-1", null, ENROLLED_ON))));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void participantsRequired() {
+        service.evaluateSchedules(study, new ScheduleEvaluationRequest(STARTS_ON, ENDS_ON, null));
+    }
+
+    private static Schedule getSchedule(Activity activity) {
+        return ((SimpleScheduleStrategy) TestUtils.getStrategy("P1D", activity)).getSchedule();
+    }
+
+    private static ScheduleEvaluationRequest makeRequest(ScheduleEvaluationParticipant... participants) {
+        return new ScheduleEvaluationRequest(STARTS_ON, ENDS_ON, ImmutableList.copyOf(participants));
+    }
+
+    private static ScheduleEvaluationParticipant makeParticipant(String userId, String healthCode,
+            DateTime enrolledOn) {
+        return new ScheduleEvaluationParticipant(userId, healthCode, DATA_GROUPS, null, TIME_ZONE.getID(),
+                enrolledOn);
+    }
+
+    // The context the scheduler gets for a single user, enrolled at their actual enrollment time.
+    private static ScheduleContext makeUserContext(String healthCode, DateTime enrolledOn) {
+        return new ScheduleContext.Builder()
+                .withStudyIdentifier(TEST_STUDY)
+                .withClientInfo(ClientInfo.UNKNOWN_CLIENT)
+                .withHealthCode(healthCode)
+                .withUserDataGroups(DATA_GROUPS)
+                .withInitialTimeZone(TIME_ZONE)
+                .withAccountCreatedOn(enrolledOn)
+                .withStartsOn(STARTS_ON)
+                .withEndsOn(ENDS_ON)
+                .withEvents(ImmutableMap.of(ScheduleEvaluationService.ENROLLMENT_EVENT, enrolledOn)).build();
+    }
+
+    private static List<String> getGuids(List<ScheduledActivity> activities) {
+        return activities.stream().map(ScheduledActivity::getGuid).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,93 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.dynamodb.DynamoSchedulePlan;
+import org.sagebionetworks.bridge.models.schedules.SchedulePlan;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SchedulePlanCacheTest {
+    private static final StudyIdentifier OTHER_STUDY = new StudyIdentifierImpl("other-study");
+
+    @Mock
+    private Supplier<List<SchedulePlan>> mockLoader;
+
+    @Mock
+    private Supplier<List<SchedulePlan>> mockOtherLoader;
+
+    private SchedulePlanCache cache;
+
+    @Before
+    public void before() {
+        cache = new SchedulePlanCache();
+        when(mockLoader.get()).thenReturn(makePlans("plan-1", "plan-2"));
+    }
+
+    @Test
+    public void getSchedulePlansIsCached() {
+        List<SchedulePlan> plans = cache.getSchedulePlans(TEST_STUDY, false, mockLoader);
+        assertEquals(2, plans.size());
+        assertEquals("plan-1", plans.get(0).getGuid());
+
+        assertSame(plans, cache.getSchedulePlans(TEST_STUDY, false, mockLoader));
+        verify(mockLoader).get();
+    }
+
+    @Test
+    public void getSchedulePlansIsCachedPerIncludeDeleted() {
+        cache.getSchedulePlans(TEST_STUDY, false, mockLoader);
+        cache.getSchedulePlans(TEST_STUDY, true, mockLoader);
+        cache.getSchedulePlans(TEST_STUDY, false, mockLoader);
+        cache.getSchedulePlans(TEST_STUDY, true, mockLoader);
+
+        verify(mockLoader, times(2)).get();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getSchedulePlansCannotBeModified() {
+        cache.getSchedulePlans(TEST_STUDY, false, mockLoader).clear();
+    }
+
+    @Test
+    public void plansChangedDropsOnlyThatStudy() {
+        when(mockOtherLoader.get()).thenReturn(makePlans("plan-3"));
+        cache.getSchedulePlans(TEST_STUDY, false, mockLoader);
+        cache.getSchedulePlans(TEST_STUDY, true, mockLoader);
+        cache.getSchedulePlans(OTHER_STUDY, false, mockOtherLoader);
+
+        cache.plansChanged(TEST_STUDY);
+
+        cache.getSchedulePlans(TEST_STUDY, false, mockLoader);
+        cache.getSchedulePlans(TEST_STUDY, true, mockLoader);
+        cache.getSchedulePlans(OTHER_STUDY, false, mockOtherLoader);
+        verify(mockLoader, times(4)).get();
+        verify(mockOtherLoader).get();
+    }
+
+    private static List<SchedulePlan> makePlans(String... guids) {
+        ImmutableList.Builder<SchedulePlan> builder = ImmutableList.builder();
+        for (String guid : guids) {
+            SchedulePlan plan = new DynamoSchedulePlan();
+            plan.setGuid(guid);
+            builder.add(plan);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,161 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY_IDENTIFIER;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.cache.ViewCache;
+import org.sagebionetworks.bridge.dao.SurveyBatchDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.BatchItemResult;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SurveyBatchServiceTest {
+    private static final String CREATED_ON_STRING = "2018-05-01T10:00:00.000Z";
+    private static final long CREATED_ON = DateTime.parse(CREATED_ON_STRING).getMillis();
+    private static final GuidCreatedOnVersionHolder CACHED_KEYS = new GuidCreatedOnVersionHolderImpl("cached-guid",
+            CREATED_ON);
+    private static final GuidCreatedOnVersionHolder LOADED_KEYS = new GuidCreatedOnVersionHolderImpl("loaded-guid",
+            CREATED_ON);
+    private static final GuidCreatedOnVersionHolder MISSING_KEYS = new GuidCreatedOnVersionHolderImpl(
+            "missing-guid", CREATED_ON);
+
+    @Mock
+    private SurveyBatchDao mockSurveyBatchDao;
+
+    @Mock
+    private CacheProvider mockCacheProvider;
+
+    @Mock
+    private WorkerSurveyCache mockWorkerSurveyCache;
+
+    private SurveyBatchService service;
+
+    @Before
+    public void before() {
+        ViewCache viewCache = new ViewCache();
+        viewCache.setCacheProvider(mockCacheProvider);
+        viewCache.setObjectMapper(BridgeObjectMapper.get());
+        viewCache.setCachePeriod(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS);
+
+        service = new SurveyBatchService();
+        service.setSurveyBatchDao(mockSurveyBatchDao);
+        service.setCacheProvider(mockCacheProvider);
+        service.setViewCache(viewCache);
+        service.setWorkerSurveyCache(mockWorkerSurveyCache);
+    }
+
+    @Test
+    public void getSurveysForStudy() throws Exception {
+        CacheKey cachedKey = CacheKey.viewKey(Survey.class, "cached-guid", CREATED_ON_STRING, TEST_STUDY_IDENTIFIER);
+        CacheKey loadedKey = CacheKey.viewKey(Survey.class, "loaded-guid", CREATED_ON_STRING, TEST_STUDY_IDENTIFIER);
+        when(mockCacheProvider.getObject(cachedKey, String.class)).thenReturn(
+                BridgeObjectMapper.get().writeValueAsString(makeSurvey("cached-guid", TEST_STUDY_IDENTIFIER)));
+        // A survey of another study is treated as not found.
+        when(mockSurveyBatchDao.getSurveys(ImmutableList.of(LOADED_KEYS, MISSING_KEYS))).thenReturn(ImmutableList.of(
+                makeSurvey("loaded-guid", TEST_STUDY_IDENTIFIER), makeSurvey("missing-guid", "other-study")));
+
+        List<BatchItemResult<JsonNode>> resultList = service.getSurveys(TEST_STUDY, ImmutableList.of(MISSING_KEYS,
+                CACHED_KEYS, LOADED_KEYS, CACHED_KEYS));
+
+        assertEquals(3, resultList.size());
+        assertResult(resultList.get(0), "missing-guid", 404);
+        assertResult(resultList.get(1), "cached-guid", 200);
+        assertResult(resultList.get(2), "loaded-guid", 200);
+
+        // Loaded surveys are added to the view cache.
+        verify(mockCacheProvider).setObject(eq(loadedKey), anyString(), anyInt());
+        verify(mockCacheProvider, never()).setObject(eq(cachedKey), anyString(), anyInt());
+    }
+
+    @Test
+    public void getSurveysForWorker() throws Exception {
+        when(mockWorkerSurveyCache.getCachedSurveyJson("cached-guid", CREATED_ON)).thenReturn(
+                BridgeObjectMapper.get().writeValueAsString(makeSurvey("cached-guid", TEST_STUDY_IDENTIFIER)));
+        Survey loadedSurvey = makeSurvey("loaded-guid", "other-study");
+        when(mockSurveyBatchDao.getSurveys(ImmutableList.of(LOADED_KEYS))).thenReturn(ImmutableList.of(loadedSurvey));
+        when(mockWorkerSurveyCache.cacheSurvey(loadedSurvey)).thenReturn(
+                BridgeObjectMapper.get().writeValueAsString(loadedSurvey));
+
+        List<BatchItemResult<JsonNode>> resultList = service.getSurveys(null, ImmutableList.of(CACHED_KEYS,
+                LOADED_KEYS));
+
+        assertEquals(2, resultList.size());
+        assertResult(resultList.get(0), "cached-guid", 200);
+        assertResult(resultList.get(1), "loaded-guid", 200);
+        verify(mockCacheProvider, never()).getObject(any(), eq(String.class));
+    }
+
+    @Test
+    public void getSurveysAllCached() throws Exception {
+        when(mockWorkerSurveyCache.getCachedSurveyJson("cached-guid", CREATED_ON)).thenReturn(
+                BridgeObjectMapper.get().writeValueAsString(makeSurvey("cached-guid", TEST_STUDY_IDENTIFIER)));
+
+        List<BatchItemResult<JsonNode>> resultList = service.getSurveys(null, ImmutableList.of(CACHED_KEYS));
+
+        assertTrue(resultList.get(0).isSucceeded());
+        verify(mockSurveyBatchDao, never()).getSurveys(any());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getSurveysEmptyList() {
+        service.getSurveys(TEST_STUDY, ImmutableList.of());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getSurveysTooMany() {
+        List<GuidCreatedOnVersionHolder> keysList = new ArrayList<>();
+        for (int i = 0; i <= SurveyBatchService.MAX_BATCH_SIZE; i++) {
+            keysList.add(new GuidCreatedOnVersionHolderImpl("guid-" + i, CREATED_ON));
+        }
+        service.getSurveys(TEST_STUDY, keysList);
+    }
+
+    private static void assertResult(BatchItemResult<JsonNode> result, String surveyGuid, int statusCode) {
+        assertEquals(surveyGuid + ":" + CREATED_ON_STRING, result.getKey());
+        assertEquals(statusCode, result.getStatusCode());
+        if (statusCode == 200) {
+            assertEquals(surveyGuid, result.getItem().get("guid").textValue());
+        } else {
+            assertFalse(result.isSucceeded());
+            assertEquals(SurveyBatchService.NOT_FOUND_MESSAGE, result.getMessage());
+        }
+    }
+
+    private static Survey makeSurvey(String surveyGuid, String studyId) {
+        Survey survey = new DynamoSurvey();
+        survey.setGuid(surveyGuid);
+        survey.setCreatedOn(CREATED_ON);
+        survey.setStudyIdentifier(studyId);
+        return survey;
+    }
+}
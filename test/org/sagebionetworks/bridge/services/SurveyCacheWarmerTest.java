@@ -0,0 +1,134 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY_IDENTIFIER;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.cache.ViewCache;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.surveys.SurveyCacheWarmingMetrics;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SurveyCacheWarmerTest {
+    private static final String SURVEY_GUID = "survey-guid";
+    private static final long CREATED_ON = DateTime.parse("2018-05-01T10:00:00.000Z").getMillis();
+    private static final CacheKey VERSION_KEY = CacheKey.viewKey(Survey.class, SURVEY_GUID,
+            "2018-05-01T10:00:00.000Z", TEST_STUDY_IDENTIFIER);
+    private static final CacheKey PUBLISHED_KEY = CacheKey.viewKey(Survey.class, SURVEY_GUID,
+            SurveyCacheWarmer.PUBLISHED_KEY, TEST_STUDY_IDENTIFIER);
+
+    @Mock
+    private StudyService mockStudyService;
+
+    @Mock
+    private SurveyService mockSurveyService;
+
+    @Mock
+    private CacheProvider mockCacheProvider;
+
+    private SurveyCacheWarmer warmer;
+
+    @Before
+    public void before() {
+        ViewCache viewCache = new ViewCache();
+        viewCache.setCacheProvider(mockCacheProvider);
+        viewCache.setObjectMapper(BridgeObjectMapper.get());
+        viewCache.setCachePeriod(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS);
+
+        warmer = new SurveyCacheWarmer();
+        warmer.setStudyService(mockStudyService);
+        warmer.setSurveyService(mockSurveyService);
+        warmer.setViewCache(viewCache);
+        warmer.setWarmingExecutorService(MoreExecutors.newDirectExecutorService());
+    }
+
+    @Test
+    public void warmSurveyCachesVersionAndPublishedViews() {
+        when(mockSurveyService.getSurvey(eq(TEST_STUDY), any(), eq(true), eq(true))).thenReturn(makeSurvey());
+        when(mockSurveyService.getSurveyMostRecentlyPublishedVersion(TEST_STUDY, SURVEY_GUID, true))
+                .thenReturn(makeSurvey());
+
+        warmer.warmSurvey(TEST_STUDY, SURVEY_GUID, CREATED_ON);
+
+        verify(mockCacheProvider).setObject(eq(VERSION_KEY), anyString(), anyInt());
+        verify(mockCacheProvider).setObject(eq(PUBLISHED_KEY), anyString(), anyInt());
+
+        SurveyCacheWarmingMetrics metrics = warmer.getMetrics();
+        assertEquals(1, metrics.getQueuedCount());
+        assertEquals(1, metrics.getWarmedCount());
+        assertEquals(0, metrics.getFailedCount());
+        assertEquals(0, metrics.getRemainingCount());
+    }
+
+    @Test
+    public void warmSurveyCountsFailures() {
+        when(mockSurveyService.getSurvey(eq(TEST_STUDY), any(), eq(true), eq(true)))
+                .thenThrow(new IllegalStateException("DynamoDB is unavailable"));
+
+        warmer.warmSurvey(TEST_STUDY, SURVEY_GUID, CREATED_ON);
+
+        verify(mockCacheProvider, never()).setObject(any(), anyString(), anyInt());
+
+        SurveyCacheWarmingMetrics metrics = warmer.getMetrics();
+        assertEquals(1, metrics.getQueuedCount());
+        assertEquals(0, metrics.getWarmedCount());
+        assertEquals(1, metrics.getFailedCount());
+    }
+
+    @Test
+    public void warmPublishedSurveysSkipsInactiveStudies() {
+        Study activeStudy = Study.create();
+        activeStudy.setIdentifier(TEST_STUDY_IDENTIFIER);
+        activeStudy.setActive(true);
+        Study inactiveStudy = Study.create();
+        inactiveStudy.setIdentifier("inactive-study");
+        inactiveStudy.setActive(false);
+        when(mockStudyService.getStudies()).thenReturn(ImmutableList.of(activeStudy, inactiveStudy));
+        when(mockSurveyService.getAllSurveysMostRecentlyPublishedVersion(TEST_STUDY, false))
+                .thenReturn(ImmutableList.of(makeSurvey()));
+        when(mockSurveyService.getSurvey(eq(TEST_STUDY), any(GuidCreatedOnVersionHolder.class), anyBoolean(),
+                anyBoolean())).thenReturn(makeSurvey());
+        when(mockSurveyService.getSurveyMostRecentlyPublishedVersion(TEST_STUDY, SURVEY_GUID, true))
+                .thenReturn(makeSurvey());
+
+        warmer.warmPublishedSurveys();
+
+        verify(mockSurveyService, never()).getAllSurveysMostRecentlyPublishedVersion(
+                new StudyIdentifierImpl("inactive-study"), false);
+        assertEquals(1, warmer.getMetrics().getQueuedCount());
+        assertEquals(1, warmer.getMetrics().getWarmedCount());
+    }
+
+    private static Survey makeSurvey() {
+        Survey survey = new DynamoSurvey();
+        survey.setGuid(SURVEY_GUID);
+        survey.setCreatedOn(CREATED_ON);
+        survey.setStudyIdentifier(TEST_STUDY_IDENTIFIER);
+        return survey;
+    }
+}
@@ -0,0 +1,171 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.upload.CompiledUploadSchema;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UploadSchemaCacheTest {
+    private static final String SCHEMA_ID = "test-schema";
+
+    @Mock
+    private CacheProvider mockCacheProvider;
+
+    @Mock
+    private UploadSchemaService mockUploadSchemaService;
+
+    // Stands in for the shared cache, so stamps written by one server are read by another.
+    private Map<CacheKey, Object> sharedCache;
+
+    private UploadSchemaCache cache;
+
+    @Before
+    public void before() {
+        sharedCache = new HashMap<>();
+        cache = makeCache();
+    }
+
+    @Test
+    public void getUploadSchemaByIdAndRevIsCached() throws Exception {
+        UploadSchema schema = makeSchema(2);
+        when(mockUploadSchemaService.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2)).thenReturn(schema);
+
+        CompiledUploadSchema compiled = cache.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2);
+        assertSame(schema, compiled.getSchema());
+        assertSame(compiled, cache.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2));
+
+        verify(mockUploadSchemaService).getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2);
+        // Specific revisions are served from memory, without reading the stamp.
+        verifyZeroInteractions(mockCacheProvider);
+    }
+
+    @Test
+    public void compiledSchemaLooksUpFieldsByName() throws Exception {
+        when(mockUploadSchemaService.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2)).thenReturn(makeSchema(2));
+
+        CompiledUploadSchema compiled = cache.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2);
+        assertEquals(ImmutableList.of("first-field", "second-field"),
+                ImmutableList.copyOf(compiled.getFieldDefinitionsByName().keySet()));
+        assertEquals("second-field", compiled.getFieldDefinition("second-field").getName());
+        assertNull(compiled.getFieldDefinition("missing-field"));
+    }
+
+    @Test
+    public void getLatestUploadSchemaAlsoCachesRevision() throws Exception {
+        mockSharedCache();
+        when(mockUploadSchemaService.getUploadSchema(TEST_STUDY, SCHEMA_ID)).thenReturn(makeSchema(3));
+
+        CompiledUploadSchema latest = cache.getLatestUploadSchema(TEST_STUDY, SCHEMA_ID);
+        assertEquals(3, latest.getSchema().getRevision());
+        assertSame(latest, cache.getLatestUploadSchema(TEST_STUDY, SCHEMA_ID));
+        assertSame(latest, cache.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 3));
+
+        verify(mockUploadSchemaService).getUploadSchema(TEST_STUDY, SCHEMA_ID);
+    }
+
+    @Test
+    public void schemaChangedDropsAllRevisions() throws Exception {
+        mockSharedCache();
+        when(mockUploadSchemaService.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2)).thenReturn(makeSchema(2));
+        when(mockUploadSchemaService.getUploadSchema(TEST_STUDY, SCHEMA_ID)).thenReturn(makeSchema(3));
+        when(mockUploadSchemaService.getUploadSchemaByIdAndRev(TEST_STUDY, "other-schema", 1)).thenReturn(
+                makeSchema(1));
+        cache.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2);
+        cache.getLatestUploadSchema(TEST_STUDY, SCHEMA_ID);
+        cache.getUploadSchemaByIdAndRev(TEST_STUDY, "other-schema", 1);
+
+        cache.schemaChanged(TEST_STUDY, SCHEMA_ID);
+
+        cache.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2);
+        cache.getLatestUploadSchema(TEST_STUDY, SCHEMA_ID);
+        cache.getUploadSchemaByIdAndRev(TEST_STUDY, "other-schema", 1);
+        verify(mockUploadSchemaService, times(2)).getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2);
+        verify(mockUploadSchemaService, times(2)).getUploadSchema(TEST_STUDY, SCHEMA_ID);
+        // Other schemas are kept.
+        verify(mockUploadSchemaService).getUploadSchemaByIdAndRev(TEST_STUDY, "other-schema", 1);
+    }
+
+    @Test
+    public void schemaChangedOnAnotherServerDropsLatestRevision() throws Exception {
+        mockSharedCache();
+        when(mockUploadSchemaService.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2)).thenReturn(makeSchema(2));
+        when(mockUploadSchemaService.getUploadSchema(TEST_STUDY, SCHEMA_ID)).thenReturn(makeSchema(3));
+        cache.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2);
+        cache.getLatestUploadSchema(TEST_STUDY, SCHEMA_ID);
+
+        // A new revision can be created on any server.
+        makeCache().schemaChanged(TEST_STUDY, SCHEMA_ID);
+
+        cache.getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2);
+        cache.getLatestUploadSchema(TEST_STUDY, SCHEMA_ID);
+        verify(mockUploadSchemaService, times(2)).getUploadSchema(TEST_STUDY, SCHEMA_ID);
+        // Specific revisions cached on this server are kept until they expire.
+        verify(mockUploadSchemaService).getUploadSchemaByIdAndRev(TEST_STUDY, SCHEMA_ID, 2);
+    }
+
+    @Test
+    public void missingStampRereadsLatestRevision() throws Exception {
+        mockSharedCache();
+        when(mockUploadSchemaService.getUploadSchema(TEST_STUDY, SCHEMA_ID)).thenReturn(makeSchema(3));
+        cache.getLatestUploadSchema(TEST_STUDY, SCHEMA_ID);
+
+        // Stamps that have expired from the shared cache are replaced, and don't match any cached revisions.
+        sharedCache.clear();
+
+        cache.getLatestUploadSchema(TEST_STUDY, SCHEMA_ID);
+        verify(mockUploadSchemaService, times(2)).getUploadSchema(TEST_STUDY, SCHEMA_ID);
+    }
+
+    private void mockSharedCache() {
+        when(mockCacheProvider.getObject(any(), eq(String.class)))
+                .thenAnswer(invocation -> sharedCache.get(invocation.getArgument(0)));
+        doAnswer(invocation -> sharedCache.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(mockCacheProvider).setObject(any(), anyString(), anyInt());
+    }
+
+    private UploadSchemaCache makeCache() {
+        UploadSchemaCache uploadSchemaCache = new UploadSchemaCache();
+        uploadSchemaCache.setCacheProvider(mockCacheProvider);
+        uploadSchemaCache.setUploadSchemaService(mockUploadSchemaService);
+        return uploadSchemaCache;
+    }
+
+    private static UploadSchema makeSchema(int revision) throws Exception {
+        return BridgeObjectMapper.get().readValue("{\n" +
+                "   \"name\":\"Test Schema\",\n" +
+                "   \"revision\":" + revision + ",\n" +
+                "   \"schemaId\":\"" + SCHEMA_ID + "\",\n" +
+                "   \"schemaType\":\"ios_data\",\n" +
+                "   \"fieldDefinitions\":[\n" +
+                "       {\"name\":\"first-field\", \"required\":true, \"type\":\"STRING\"},\n" +
+                "       {\"name\":\"second-field\", \"required\":false, \"type\":\"INT\"}\n" +
+                "   ]\n" +
+                "}", UploadSchema.class);
+    }
+}
@@ -0,0 +1,78 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WorkerSurveyCacheTest {
+    private static final String SURVEY_GUID = "survey-guid";
+    private static final long CREATED_ON = DateTime.parse("2018-05-01T10:00:00.000Z").getMillis();
+    private static final GuidCreatedOnVersionHolder KEYS = new GuidCreatedOnVersionHolderImpl(SURVEY_GUID,
+            CREATED_ON);
+
+    @Mock
+    private SurveyService mockSurveyService;
+
+    private WorkerSurveyCache cache;
+
+    @Before
+    public void before() {
+        cache = new WorkerSurveyCache();
+        cache.setSurveyService(mockSurveyService);
+    }
+
+    @Test
+    public void publishedSurveyIsCached() throws Exception {
+        when(mockSurveyService.getSurvey(null, KEYS, true, true)).thenReturn(makeSurvey(true));
+
+        String json = cache.getSurveyJson(SURVEY_GUID, CREATED_ON);
+        assertEquals(SURVEY_GUID, BridgeObjectMapper.get().readValue(json, Survey.class).getGuid());
+        assertEquals(json, cache.getSurveyJson(SURVEY_GUID, CREATED_ON));
+
+        verify(mockSurveyService).getSurvey(null, KEYS, true, true);
+    }
+
+    @Test
+    public void unpublishedSurveyIsNotCached() {
+        when(mockSurveyService.getSurvey(null, KEYS, true, true)).thenReturn(makeSurvey(false));
+
+        cache.getSurveyJson(SURVEY_GUID, CREATED_ON);
+        cache.getSurveyJson(SURVEY_GUID, CREATED_ON);
+
+        verify(mockSurveyService, times(2)).getSurvey(null, KEYS, true, true);
+    }
+
+    @Test
+    public void removeSurvey() {
+        when(mockSurveyService.getSurvey(null, KEYS, true, true)).thenReturn(makeSurvey(true));
+
+        cache.getSurveyJson(SURVEY_GUID, CREATED_ON);
+        cache.removeSurvey(SURVEY_GUID, CREATED_ON);
+        cache.getSurveyJson(SURVEY_GUID, CREATED_ON);
+
+        verify(mockSurveyService, times(2)).getSurvey(null, KEYS, true, true);
+    }
+
+    private static Survey makeSurvey(boolean published) {
+        Survey survey = new DynamoSurvey();
+        survey.setGuid(SURVEY_GUID);
+        survey.setCreatedOn(CREATED_ON);
+        survey.setPublished(published);
+        return survey;
+    }
+}